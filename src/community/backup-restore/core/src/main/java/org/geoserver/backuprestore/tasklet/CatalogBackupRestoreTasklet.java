@@ -41,6 +41,7 @@ import org.geoserver.gwc.config.GWCInitializer;
 import org.geoserver.gwc.config.GeoserverXMLResourceProvider;
 import org.geoserver.gwc.layer.DefaultTileLayerCatalog;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfo;
+import org.geoserver.gwc.layer.IndexedTileLayerCatalog;
 import org.geoserver.gwc.layer.TileLayerCatalog;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
@@ -1024,6 +1025,16 @@ public class CatalogBackupRestoreTasklet extends AbstractCatalogBackupRestoreTas
                 final DefaultTileLayerCatalog gwcBackupCatalog =
                         new DefaultTileLayerCatalog(resourceLoader, gwcXmlPersisterFactory);
 
+                // the layers are backed up as one XML file each whatever the storage in use, drop
+                // the raw copy of the indexed catalog files, and of the outdated layer files it
+                // imported on its first startup
+                if (gwcCatalog instanceof IndexedTileLayerCatalog) {
+                    Resource gwcLayersBackupDir = targetBackupFolder.get("gwc-layers");
+                    if (Resources.exists(gwcLayersBackupDir)) {
+                        Files.delete(gwcLayersBackupDir.dir());
+                    }
+                }
+
                 for (String layerName : gwcCatalog.getLayerNames()) {
                     GeoServerTileLayerInfo gwcLayerInfo = gwcCatalog.getLayerByName(layerName);
 
@@ -1151,11 +1162,23 @@ public class CatalogBackupRestoreTasklet extends AbstractCatalogBackupRestoreTas
                 final DefaultTileLayerCatalog gwcRestoreCatalog =
                         new DefaultTileLayerCatalog(resourceLoader, gwcXmlPersisterFactory);
 
-                Resource gwcCatalogPersistenceLocation =
-                        targetGWCProviderRestoreDir
-                                .parent()
-                                .get(gwcCatalog.getPersistenceLocation());
-                Files.delete(gwcCatalogPersistenceLocation.dir());
+                if (gwcCatalog instanceof IndexedTileLayerCatalog) {
+                    // a single file, updated through the catalog rather than deleted, the layers
+                    // missing from the backup are removed the same way
+                    if (!filterIsValid() && !isDryRun()) {
+                        for (String layerName : gwcCatalog.getLayerNames()) {
+                            if (gwcRestoreCatalog.getLayerByName(layerName) == null) {
+                                gwcCatalog.delete(gwcCatalog.getLayerId(layerName));
+                            }
+                        }
+                    }
+                } else {
+                    Resource gwcCatalogPersistenceLocation =
+                            targetGWCProviderRestoreDir
+                                    .parent()
+                                    .get(gwcCatalog.getPersistenceLocation());
+                    Files.delete(gwcCatalogPersistenceLocation.dir());
+                }
                 if (!filterIsValid()) {
                     restoreGWCTileLayersInfos(gwcCatalog, layersByName, gwcRestoreCatalog);
                 } else {
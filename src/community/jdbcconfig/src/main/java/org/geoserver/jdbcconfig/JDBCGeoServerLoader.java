@@ -58,6 +58,9 @@ public class JDBCGeoServerLoader extends DefaultGeoServerLoader {
 
         Resource initScript = config.isInitDb() ? config.getInitScript() : null;
         configDatabase.initDb(initScript);
+        if (config.isNearCache()) {
+            configDatabase.enableNearCache(config.getNearCachePollInterval());
+        }
 
         config.setInitDb(false);
         config.save();
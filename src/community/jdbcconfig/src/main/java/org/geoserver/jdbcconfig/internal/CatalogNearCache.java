@@ -0,0 +1,444 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.jdbcconfig.internal;
+
+import static org.geoserver.jdbcconfig.internal.DbUtils.logStatement;
+import static org.geoserver.jdbcconfig.internal.DbUtils.params;
+
+import com.google.common.base.Stopwatch;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.impl.ClassMappings;
+import org.geotools.util.logging.Logging;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In memory copy of the whole catalog, as decoded from the database, allowing {@link
+ * ConfigDatabase} to answer lookups and queries without going through SQL and XStream.
+ *
+ * <p>Every change to the catalog is recorded by its object id in the {@code object_change} table,
+ * with an increasing sequence number. The cache is loaded in full on first use, and then kept up
+ * to date by polling the changes made since the last known sequence number, which also catches the
+ * changes made by the other nodes of a cluster. Local changes are applied right away by the
+ * catalog listeners, an object being modified is marked dirty until its post modify event, and the
+ * cache is not used for queries while there are dirty objects.
+ *
+ * <p>Polling happens on the request threads, at most once per poll interval and by one thread at a
+ * time, the others keep working against the current state, or against the database until the
+ * cache is first loaded.
+ */
+public class CatalogNearCache {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogNearCache.class);
+
+    /** Prefix used in the change log for the default object keys, as opposed to object ids */
+    static final String DEFAULT_PREFIX = "default_object:";
+
+    /** How long to wait for a missing sequence number to show up, e.g., a slow transaction */
+    static final long GAP_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    static final int MAX_GAPS = 1000;
+
+    /** How many levels of objects referring to a changed one get reloaded */
+    static final int MAX_REFERRER_DEPTH = 4;
+
+    /** How long changes are kept in the log */
+    static final long RETENTION = TimeUnit.DAYS.toMillis(1);
+
+    static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /** How long an object can be dirty before assuming its modification failed */
+    static final long DIRTY_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final NamedParameterJdbcOperations template;
+
+    private final Dialect dialect;
+
+    private final DbMappings dbMappings;
+
+    private final RowMapper<CatalogInfo> rowMapper;
+
+    private final long pollInterval;
+
+    /** Called with the previous version of any object changed by another node */
+    private final Consumer<CatalogInfo> remoteChangeListener;
+
+    /** Sorted by id, so that listing needs no sorting */
+    private final Map<String, CatalogInfo> infos = new ConcurrentSkipListMap<>();
+
+    private final Map<String, String> defaults = new ConcurrentHashMap<>();
+
+    /** Ids of the objects being modified, and when the modification started */
+    private final Map<String, Long> dirty = new ConcurrentHashMap<>();
+
+    private final ReentrantLock pollLock = new ReentrantLock();
+
+    private volatile boolean loaded;
+
+    private volatile long lastPoll;
+
+    // guarded by pollLock
+    private long lastSequence;
+
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    private long lastPrune;
+
+    private List<Integer> typeIds;
+
+    public CatalogNearCache(
+            NamedParameterJdbcOperations template,
+            Dialect dialect,
+            DbMappings dbMappings,
+            RowMapper<CatalogInfo> rowMapper,
+            long pollInterval,
+            Consumer<CatalogInfo> remoteChangeListener) {
+        this.template = template;
+        this.dialect = dialect;
+        this.dbMappings = dbMappings;
+        this.rowMapper = rowMapper;
+        this.pollInterval = pollInterval;
+        this.remoteChangeListener = remoteChangeListener;
+    }
+
+    /**
+     * Returns true if queries can be answered from memory: the cache is loaded, and no object is
+     * in the middle of a modification. Polls for changes if the poll interval elapsed.
+     */
+    public boolean isUsable() {
+        refresh();
+        return loaded && dirty.isEmpty();
+    }
+
+    /** Returns the cached object, or null if not found or not loaded yet */
+    @Nullable
+    public CatalogInfo get(String id) {
+        refresh();
+        return loaded ? infos.get(id) : null;
+    }
+
+    /** Returns the cached objects of the given type, sorted by id */
+    public List<CatalogInfo> list(Class<?> type) {
+        List<CatalogInfo> result = new ArrayList<>();
+        for (CatalogInfo info : infos.values()) {
+            if (type.isInstance(info)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the id of the default object for the given key, or null if there is none */
+    @Nullable
+    public String getDefault(String key) {
+        return defaults.get(key);
+    }
+
+    public void setDefault(String key, @Nullable String id) {
+        if (id == null) {
+            defaults.remove(key);
+        } else {
+            defaults.put(key, id);
+        }
+    }
+
+    /** Adds or replaces an object, committed to the database */
+    public void put(CatalogInfo info) {
+        infos.put(info.getId(), info);
+        dirty.remove(info.getId());
+    }
+
+    /** Removes an object about to be modified, until {@link #put(CatalogInfo)} is called */
+    public void invalidate(String id) {
+        dirty.put(id, System.currentTimeMillis());
+        infos.remove(id);
+    }
+
+    /** Removes an object deleted from the database */
+    public void remove(String id) {
+        infos.remove(id);
+        dirty.remove(id);
+    }
+
+    /** Records a change to the object with the given id, for the other nodes to pick up */
+    public void logChange(String id) {
+        logChange(template, dialect, id);
+    }
+
+    static void logChange(NamedParameterJdbcOperations template, Dialect dialect, String id) {
+        String sql =
+                String.format(
+                        "insert into object_change (seq, id) values (%s, :id)",
+                        dialect.nextVal("seq_OBJECT_CHANGE"));
+        Map<String, ?> params = params("id", id);
+        logStatement(sql, params);
+        template.update(sql, params);
+    }
+
+    /** Empties the cache, it will be reloaded in full on next use */
+    public void clear() {
+        pollLock.lock();
+        try {
+            loaded = false;
+            lastPoll = 0;
+            infos.clear();
+            defaults.clear();
+            dirty.clear();
+            gaps.clear();
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    /** Returns the number of cached objects */
+    public int size() {
+        return infos.size();
+    }
+
+    /** Returns the last change log sequence number applied */
+    public long getLastSequence() {
+        pollLock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    /** Loads the cache, or polls the changes, if the poll interval elapsed */
+    void refresh() {
+        long now = System.currentTimeMillis();
+        if (now - lastPoll < pollInterval
+                // don't read from within a write transaction, its connection is busy and
+                // the changes are not committed yet anyways
+                || TransactionSynchronizationManager.isActualTransactionActive()
+                // decoding objects while loading may look up other objects
+                || pollLock.isHeldByCurrentThread()
+                || !pollLock.tryLock()) {
+            return;
+        }
+        try {
+            if (now - lastPoll < pollInterval) {
+                return;
+            }
+            if (!loaded) {
+                load();
+            } else {
+                poll();
+                expireDirty(now);
+            }
+            if (now - lastPrune > PRUNE_INTERVAL) {
+                prune();
+                lastPrune = now;
+            }
+        } catch (RuntimeException e) {
+            // don't risk serving stale contents, go back to the database until the next
+            // successful load
+            LOGGER.log(Level.WARNING, "Failed to refresh the catalog near cache", e);
+            loaded = false;
+            infos.clear();
+            defaults.clear();
+            gaps.clear();
+        } finally {
+            lastPoll = System.currentTimeMillis();
+            pollLock.unlock();
+        }
+    }
+
+    private void load() {
+        Stopwatch sw = Stopwatch.createStarted();
+        // changes made from now on will be picked up by the next poll
+        String sql = "select max(seq) from object_change";
+        logStatement(sql, Collections.emptyMap());
+        Long max = template.queryForObject(sql, Collections.emptyMap(), Long.class);
+        lastSequence = max == null ? 0 : max;
+        gaps.clear();
+
+        sql = "select blob from object where type_id in (:types)";
+        Map<String, ?> params = params("types", typeIds());
+        logStatement(sql, params);
+        infos.clear();
+        for (CatalogInfo info : template.query(sql, params, rowMapper)) {
+            if (!dirty.containsKey(info.getId())) {
+                infos.put(info.getId(), info);
+            }
+        }
+
+        sql = "select def_key, id from default_object";
+        logStatement(sql, Collections.emptyMap());
+        defaults.clear();
+        template.query(
+                sql,
+                Collections.emptyMap(),
+                rs -> {
+                    defaults.put(rs.getString(1), rs.getString(2));
+                });
+
+        loaded = true;
+        sw.stop();
+        LOGGER.info("Loaded " + infos.size() + " catalog objects in the near cache in " + sw);
+    }
+
+    private void poll() {
+        // the new changes, and the ones whose sequence was skipped and might have been committed
+        // in the meantime
+        Set<Long> pending = gaps.keySet();
+        Map<String, ?> params = params("seq", lastSequence, "gaps", new ArrayList<>(pending));
+        String sql =
+                "select seq, id from object_change where seq > :seq"
+                        + (pending.isEmpty() ? "" : " or seq in (:gaps)")
+                        + " order by seq";
+        logStatement(sql, params);
+        final Set<String> changed = new LinkedHashSet<>();
+        final long now = System.currentTimeMillis();
+        template.query(
+                sql,
+                params,
+                rs -> {
+                    long seq = rs.getLong(1);
+                    changed.add(rs.getString(2));
+                    if (gaps.remove(seq) == null && seq > lastSequence) {
+                        for (long s = lastSequence + 1; s < seq && gaps.size() < MAX_GAPS; s++) {
+                            gaps.put(s, now);
+                        }
+                        lastSequence = seq;
+                    }
+                });
+        // give up on the gaps that have been there for too long, e.g., rolled back transactions
+        for (Iterator<Long> it = gaps.values().iterator(); it.hasNext(); ) {
+            if (now - it.next() > GAP_TIMEOUT) {
+                it.remove();
+            }
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (String id : changed) {
+            if (id.startsWith(DEFAULT_PREFIX)) {
+                reloadDefault(id.substring(DEFAULT_PREFIX.length()));
+            } else {
+                reload(id);
+                ids.add(id);
+            }
+        }
+        // the cached objects referring to the changed ones hold the old versions, e.g., a layer
+        // holds its resolved resource, reload them as well
+        Set<String> reloaded = new HashSet<>(ids);
+        for (int depth = 0; depth < MAX_REFERRER_DEPTH && !ids.isEmpty(); depth++) {
+            ids = referrers(ids);
+            ids.removeAll(reloaded);
+            reloaded.addAll(ids);
+            for (String id : ids) {
+                reload(id);
+            }
+        }
+        if (!changed.isEmpty() && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Refreshed " + changed.size() + " objects in the catalog near cache");
+        }
+    }
+
+    /** Reloads the objects whose modification did not complete in a reasonable time */
+    private void expireDirty(long now) {
+        for (Map.Entry<String, Long> entry : dirty.entrySet()) {
+            if (now - entry.getValue() > DIRTY_TIMEOUT
+                    && dirty.remove(entry.getKey(), entry.getValue())) {
+                LOGGER.warning("Modification of " + entry.getKey() + " did not complete");
+                reload(entry.getKey());
+            }
+        }
+    }
+
+    private void reload(String id) {
+        String sql = "select blob from object where id = :id and type_id in (:types)";
+        Map<String, ?> params = params("id", id, "types", typeIds());
+        logStatement(sql, params);
+        List<CatalogInfo> found = template.query(sql, params, rowMapper);
+        CatalogInfo previous;
+        if (found.isEmpty()) {
+            previous = infos.remove(id);
+        } else {
+            // don't clear the dirty flag, a local modification might still be in progress
+            previous = infos.put(id, found.get(0));
+        }
+        if (previous != null) {
+            remoteChangeListener.accept(previous);
+        }
+    }
+
+    /** Returns the ids of the objects having a relationship property to the given ones */
+    private Set<String> referrers(Set<String> ids) {
+        String sql =
+                "select distinct o.id from object o, object_property p, object r "
+                        + "where p.oid = o.oid and p.related_oid = r.oid and r.id in (:ids)";
+        Map<String, ?> params = params("ids", new ArrayList<>(ids));
+        logStatement(sql, params);
+        return new HashSet<>(template.queryForList(sql, params, String.class));
+    }
+
+    private void reloadDefault(String key) {
+        String sql = "select id from default_object where def_key = :key";
+        Map<String, ?> params = params("key", key);
+        logStatement(sql, params);
+        try {
+            defaults.put(key, template.queryForObject(sql, params, String.class));
+        } catch (EmptyResultDataAccessException notFound) {
+            defaults.remove(key);
+        }
+    }
+
+    private void prune() {
+        prune(template);
+    }
+
+    /** Removes the changes older than the retention time from the change log */
+    static void prune(NamedParameterJdbcOperations template) {
+        String sql = "delete from object_change where created < :limit";
+        Map<String, ?> params =
+                params("limit", new Timestamp(System.currentTimeMillis() - RETENTION));
+        logStatement(sql, params);
+        int count = template.update(sql, params);
+        if (count > 0 && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Removed " + count + " old entries from the catalog change log");
+        }
+    }
+
+    /** The type ids of all the concrete catalog object types */
+    private List<Integer> typeIds() {
+        if (typeIds == null) {
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (ClassMappings mapping : ClassMappings.values()) {
+                if (CatalogInfo.class.isAssignableFrom(mapping.getInterface())) {
+                    for (Class<?> type : mapping.concreteInterfaces()) {
+                        Integer id = dbMappings.getTypeId(type);
+                        if (id != null) {
+                            ids.add(id);
+                        }
+                    }
+                }
+            }
+            typeIds = new ArrayList<>(ids);
+        }
+        return typeIds;
+    }
+}
@@ -15,17 +15,16 @@ import static org.geoserver.catalog.Predicates.isNull;
 import static org.geoserver.jdbcconfig.internal.DbUtils.logStatement;
 import static org.geoserver.jdbcconfig.internal.DbUtils.params;
 
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import java.io.IOException;
@@ -33,6 +32,8 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Proxy;
 import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -53,6 +54,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import org.apache.commons.collections.CollectionUtils;
@@ -104,6 +106,7 @@ import org.opengis.filter.PropertyIsEqualTo;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -150,6 +153,27 @@ public class ConfigDatabase {
 
     private ConcurrentMap<String, Semaphore> locks;
 
+    private CatalogNearCache nearCache;
+
+    /** Number of objects fetched with a single query when listing */
+    static final int PREFETCH_PAGE_SIZE = 100;
+
+    /** Levels of references prefetched along with the listed objects */
+    static final int PREFETCH_DEPTH = 3;
+
+    /** Whether the object_change table exists, older databases may lack it */
+    private Boolean changeLog;
+
+    /** Last time the change log was pruned of the old changes */
+    private volatile long changeLogPruned;
+
+    /**
+     * The near cache objects already resolved against the catalog, by identity, so that queries
+     * evaluate their filters without resolving and wrapping the whole catalog each time
+     */
+    private final Cache<CatalogInfo, Boolean> resolvedNearCache =
+            CacheBuilder.newBuilder().weakKeys().build();
+
     /** Protected default constructor needed by spring-jdbc instrumentation */
     protected ConfigDatabase() {
         //
@@ -220,6 +244,139 @@ public class ConfigDatabase {
         return dbMappings;
     }
 
+    /**
+     * Enables the in memory copy of the catalog, see {@link CatalogNearCache}. Requires the
+     * object_change table, as found in the database initialization scripts.
+     *
+     * @param pollInterval how often to look for changes made by other nodes, in milliseconds
+     */
+    public void enableNearCache(long pollInterval) {
+        if (!hasChangeLog()) {
+            LOGGER.warning(
+                    "Cannot enable the catalog near cache, the object_change table is missing. "
+                            + "Create it as found in the database initialization scripts");
+            return;
+        }
+        nearCache =
+                new CatalogNearCache(
+                        template,
+                        dialect(),
+                        dbMappings,
+                        catalogRowMapper,
+                        pollInterval,
+                        this::clearCache);
+    }
+
+    /** Returns the catalog near cache, or null if not enabled */
+    @Nullable
+    public CatalogNearCache getNearCache() {
+        return nearCache;
+    }
+
+    private boolean hasChangeLog() {
+        if (changeLog == null) {
+            try (Connection conn = dataSource.getConnection()) {
+                DatabaseMetaData metadata = conn.getMetaData();
+                // look only in the schema the configuration tables are used from
+                String catalog = conn.getCatalog();
+                String schema = conn.getSchema();
+                boolean found = false;
+                for (String name : new String[] {"object_change", "OBJECT_CHANGE"}) {
+                    try (ResultSet tables = metadata.getTables(catalog, schema, name, null)) {
+                        found |= tables.next();
+                    }
+                }
+                changeLog = found;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return changeLog;
+    }
+
+    /**
+     * Records the change in the change log, for the near caches of all nodes to pick up. The log
+     * is written even without a local near cache, as other nodes might have one, and pruned here
+     * as well, since with no near cache anywhere nothing else would.
+     */
+    private void logChange(String id) {
+        if (hasChangeLog()) {
+            CatalogNearCache.logChange(template, dialect(), id);
+            long now = System.currentTimeMillis();
+            if (now - changeLogPruned > CatalogNearCache.PRUNE_INTERVAL) {
+                changeLogPruned = now;
+                CatalogNearCache.prune(template);
+            }
+        }
+    }
+
+    private boolean useNearCache(Class<?> type) {
+        return nearCache != null
+                && CatalogInfo.class.isAssignableFrom(type)
+                && nearCache.isUsable();
+    }
+
+    /**
+     * Answers a query from the near cache, evaluating filter and sorting in memory. Filters are
+     * evaluated against the cached objects, only the matching ones get wrapped.
+     */
+    private <T extends Info> List<T> queryNearCache(
+            final Class<T> of, final Filter filter, @Nullable SortBy... sortOrder) {
+        List<CatalogInfo> matches = matchNearCache(of, filter);
+        if (sortOrder != null) {
+            // stable sorts, least significant first
+            for (int i = sortOrder.length - 1; i >= 0; i--) {
+                if (sortOrder[i] != null) {
+                    Collections.sort(matches, comparator(sortOrder[i]));
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(matches.size());
+        for (CatalogInfo info : matches) {
+            T wrapped = wrap(info, of);
+            if (wrapped != null) {
+                result.add(wrapped);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the near cache objects of the given type matching the filter */
+    private List<CatalogInfo> matchNearCache(final Class<?> of, final Filter filter) {
+        List<CatalogInfo> matches = new ArrayList<>();
+        for (CatalogInfo info : nearCache.list(of)) {
+            if (resolvedNearCache.getIfPresent(info) == null) {
+                // resolution happens in place, once per cached copy
+                resolveCatalog(info);
+                resolvedNearCache.put(info, Boolean.TRUE);
+            }
+            if (Filter.INCLUDE.equals(filter) || filter.evaluate(info)) {
+                matches.add(info);
+            }
+        }
+        return matches;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static Comparator<Object> comparator(final SortBy sortBy) {
+        final PropertyName property = sortBy.getPropertyName();
+        Comparator<Object> comparator =
+                (o1, o2) -> {
+                    Object v1 = property.evaluate(o1);
+                    Object v2 = property.evaluate(o2);
+                    if (v1 == null || v2 == null) {
+                        return v1 == null ? (v2 == null ? 0 : -1) : 1;
+                    }
+                    if (v1 instanceof Comparable && v1.getClass().isInstance(v2)) {
+                        return ((Comparable) v1).compareTo(v2);
+                    }
+                    return v1.toString().compareTo(v2.toString());
+                };
+        return SortOrder.DESCENDING.equals(sortBy.getSortOrder())
+                ? comparator.reversed()
+                : comparator;
+    }
+
     public void setCatalog(CatalogImpl catalog) {
         this.catalog = catalog;
         this.binding.setCatalog(catalog);
@@ -245,6 +402,9 @@ public class ConfigDatabase {
     }
 
     public <T extends CatalogInfo> int count(final Class<T> of, final Filter filter) {
+        if (useNearCache(of)) {
+            return matchNearCache(of, filter).size();
+        }
 
         QueryBuilder<T> sqlBuilder = QueryBuilder.forCount(dialect, of, dbMappings).filter(filter);
 
@@ -301,6 +461,12 @@ public class ConfigDatabase {
         checkArgument(offset == null || offset.intValue() >= 0);
         checkArgument(limit == null || limit.intValue() >= 0);
 
+        if (useNearCache(of)) {
+            List<T> matches = queryNearCache(of, filter, sortOrder);
+            return applyOffsetLimit(
+                    new CloseableIteratorAdapter<T>(matches.iterator()), offset, limit);
+        }
+
         QueryBuilder<T> sqlBuilder =
                 QueryBuilder.forIds(dialect, of, dbMappings)
                         .filter(filter)
@@ -370,21 +536,9 @@ public class ConfigDatabase {
             }
         }
 
-        List<T> lazyTransformed =
-                Lists.transform(
-                        ids,
-                        new Function<String, T>() {
-                            @Nullable
-                            @Override
-                            public T apply(String id) {
-                                return getById(id, of);
-                            }
-                        });
-
         CloseableIterator<T> result;
         Iterator<T> iterator =
-                Iterators.filter(
-                        lazyTransformed.iterator(), com.google.common.base.Predicates.notNull());
+                Iterators.filter(fetch(ids, of), com.google.common.base.Predicates.notNull());
 
         if (fullySupported) {
             result = new CloseableIteratorAdapter<T>(iterator);
@@ -406,6 +560,11 @@ public class ConfigDatabase {
         checkNotNull(of);
         checkNotNull(filter);
 
+        if (useNearCache(of)) {
+            List<String> ids = Lists.transform(matchNearCache(of, filter), Info::getId);
+            return new CloseableIteratorAdapter<String>(ids.iterator());
+        }
+
         QueryBuilder<T> sqlBuilder = QueryBuilder.forIds(dialect, of, dbMappings).filter(filter);
 
         final StringBuilder sql = sqlBuilder.build();
@@ -483,6 +642,10 @@ public class ConfigDatabase {
     }
 
     public <T extends CatalogInfo> T getDefault(final String key, Class<T> type) {
+        if (useNearCache(type)) {
+            String id = nearCache.getDefault(key);
+            return id == null ? null : getById(id, type);
+        }
         String sql = "SELECT ID FROM DEFAULT_OBJECT WHERE DEF_KEY = :key";
 
         String defaultObjectId;
@@ -533,6 +696,9 @@ public class ConfigDatabase {
             key = keyHolder.getKey();
         }
         addAttributes(info, key);
+        if (info instanceof CatalogInfo) {
+            logChange(id);
+        }
 
         return getById(id, interf);
     }
@@ -767,6 +933,9 @@ public class ConfigDatabase {
         logStatement(deleteRelatedProperties, params);
         final int relatedPropCount = template.update(deleteRelatedProperties, params);
         LOGGER.fine("Removed " + relatedPropCount + " related properties of " + info.getId());
+        if (info instanceof CatalogInfo) {
+            logChange(info.getId());
+        }
     }
 
     /** @param info */
@@ -824,6 +993,9 @@ public class ConfigDatabase {
         template.update(updateStatement, params);
 
         updateQueryableProperties(oldObject, objectId, changedProperties);
+        if (info instanceof CatalogInfo) {
+            logChange(id);
+        }
 
         Class<T> clazz = ClassMappings.fromImpl(oldObject.getClass()).getInterface();
 
@@ -997,6 +1169,16 @@ public class ConfigDatabase {
     public <T extends Info> T getById(final String id, final Class<T> type) {
         Assert.notNull(id, "id");
 
+        Info info = nearCache == null ? null : nearCache.get(id);
+        if (info == null) {
+            info = load(id, type);
+        }
+        return wrap(info, type);
+    }
+
+    /** Loads the object through the cache */
+    @Nullable
+    private Info load(final String id, final Class<? extends Info> type) {
         Info info = null;
         try {
             final Callable<? extends Info> valueLoader;
@@ -1035,7 +1217,12 @@ public class ConfigDatabase {
         } catch (ExecutionException e) {
             Throwables.propagate(e.getCause());
         }
+        return info;
+    }
 
+    /** Resolves the cached object, and wraps it in a modification proxy */
+    @Nullable
+    private <T extends Info> T wrap(@Nullable Info info, final Class<T> type) {
         if (info == null) {
             return null;
         }
@@ -1173,6 +1360,9 @@ public class ConfigDatabase {
      * @return immutable list of results
      */
     public <T extends Info> List<T> getAll(final Class<T> clazz) {
+        if (useNearCache(clazz)) {
+            return ImmutableList.copyOf(queryNearCache(clazz, Filter.INCLUDE));
+        }
 
         Map<String, ?> params = params("types", typesParam(clazz));
 
@@ -1186,21 +1376,103 @@ public class ConfigDatabase {
             LOGGER.fine("query returned " + ids.size() + " records in " + sw);
         }
 
-        List<T> transformed =
-                Lists.transform(
-                        ids,
-                        new Function<String, T>() {
-                            @Nullable
-                            @Override
-                            public T apply(String input) {
-                                return getById(input, clazz);
-                            }
-                        });
-        Iterable<T> filtered =
-                Iterables.filter(transformed, com.google.common.base.Predicates.notNull());
+        Iterator<T> filtered =
+                Iterators.filter(fetch(ids, clazz), com.google.common.base.Predicates.notNull());
         return ImmutableList.copyOf(filtered);
     }
 
+    /**
+     * Lazily loads the objects with the given ids, a page at a time. Each page is {@link
+     * #prefetch(List, Class) prefetched} before its objects are looked up, so that listing a
+     * large number of objects does not take a database round trip for each of them.
+     */
+    private <T extends Info> Iterator<T> fetch(final List<String> ids, final Class<T> type) {
+        Iterator<List<String>> pages = Lists.partition(ids, PREFETCH_PAGE_SIZE).iterator();
+        return Iterators.concat(
+                Iterators.transform(
+                        pages,
+                        page -> {
+                            prefetch(page, type);
+                            return Iterators.transform(page.iterator(), id -> getById(id, type));
+                        }));
+    }
+
+    /**
+     * Loads in the cache the objects among the given ones that are not cached yet, along with the
+     * objects they reference (e.g., the resource, store and workspace of a layer). Each level of
+     * references takes a fixed number of queries, regardless of the number of ids, and the
+     * objects are decoded in parallel.
+     *
+     * <p>Only catalog objects are prefetched, configuration objects need the post processing of
+     * the {@link ConfigLoader}, and there are few of them anyways.
+     */
+    void prefetch(final List<String> ids, final Class<? extends Info> type) {
+        if (!CatalogInfo.class.isAssignableFrom(type)) {
+            return;
+        }
+        Collection<String> loaded = load(ids);
+        // the references of objects that were cached already are most likely cached as well
+        String sql =
+                "select distinct r.id from object o, object_property p, object r "
+                        + "where p.oid = o.oid and p.related_oid = r.oid and o.id in (:ids)";
+        for (int depth = 0; depth < PREFETCH_DEPTH && !loaded.isEmpty(); depth++) {
+            List<String> referenced = new ArrayList<>();
+            for (List<String> page : Lists.partition(new ArrayList<>(loaded), PREFETCH_PAGE_SIZE)) {
+                Map<String, ?> params = params("ids", page);
+                logStatement(sql, params);
+                referenced.addAll(template.queryForList(sql, params, String.class));
+            }
+            loaded = load(referenced);
+        }
+    }
+
+    /**
+     * Loads the catalog objects not yet cached among the given ones, returns the ids of those
+     * loaded
+     */
+    private Collection<String> load(final Collection<String> ids) {
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            if (cache.getIfPresent(id) == null) {
+                missing.add(id);
+            }
+        }
+        final String sql = "select id, blob from object where id in (:ids)";
+        List<String[]> rows = new ArrayList<>();
+        for (List<String> page : Lists.partition(missing, PREFETCH_PAGE_SIZE)) {
+            Map<String, ?> params = params("ids", page);
+            logStatement(sql, params);
+            rows.addAll(
+                    template.query(
+                            sql,
+                            params,
+                            (rs, rowNum) -> new String[] {rs.getString(1), rs.getString(2)}));
+        }
+        // decoding is the expensive part, and the XStream persister is thread safe
+        return rows.parallelStream()
+                .filter(
+                        row -> {
+                            CatalogInfo info;
+                            try {
+                                info = catalogRowMapper.decode(row[1]);
+                            } catch (RuntimeException e) {
+                                // leave it to getById to report the failure
+                                LOGGER.log(Level.FINE, "Failed to prefetch " + row[0], e);
+                                return false;
+                            }
+                            if (info == null) {
+                                return false;
+                            }
+                            // don't override a value loaded or updated in the meantime
+                            if (cache.asMap().putIfAbsent(row[0], info) == null) {
+                                cacheIdentities(info);
+                            }
+                            return true;
+                        })
+                .map(row -> row[0])
+                .collect(Collectors.toList());
+    }
+
     private <T extends Info> List<Integer> typesParam(final Class<T> clazz) {
 
         final Class<?>[] actualTypes;
@@ -1231,6 +1503,10 @@ public class ConfigDatabase {
             logStatement(sql, params);
             template.update(sql, params);
         }
+        logChange(CatalogNearCache.DEFAULT_PREFIX + key);
+        if (nearCache != null) {
+            nearCache.setDefault(key, id);
+        }
     }
 
     public void dispose() {
@@ -1239,6 +1515,9 @@ public class ConfigDatabase {
         identityCache.invalidateAll();
         identityCache.cleanUp();
         disposeServiceCache();
+        if (nearCache != null) {
+            nearCache.clear();
+        }
     }
 
     private void disposeServiceCache() {
@@ -1486,6 +1765,9 @@ public class ConfigDatabase {
     void updateCache(Info info) {
         info = ModificationProxy.unwrap(info);
         cache.put(info.getId(), info);
+        if (nearCache != null && info instanceof CatalogInfo) {
+            nearCache.put((CatalogInfo) info);
+        }
         List<InfoIdentity> identities = InfoIdentities.get().getIdentities(info);
         for (InfoIdentity identity : identities) {
             if (identityCache.getIfPresent(identity) == null) {
@@ -1497,6 +1779,20 @@ public class ConfigDatabase {
         }
     }
 
+    /**
+     * Records the identities of an object loaded ahead of time. Unlike {@link #updateCache(Info)}
+     * the entries already pointing to the object are left alone, as it did not change.
+     */
+    private void cacheIdentities(Info info) {
+        for (InfoIdentity identity : InfoIdentities.get().getIdentities(info)) {
+            String cached = identityCache.asMap().putIfAbsent(identity, info.getId());
+            if (cached != null && !cached.equals(info.getId())) {
+                // not a unique identity
+                identityCache.invalidate(identity);
+            }
+        }
+    }
+
     public <T extends Info> T get(Class<T> type, Filter filter) throws IllegalArgumentException {
 
         CloseableIterator<T> it =
@@ -1571,6 +1867,9 @@ public class ConfigDatabase {
             }
             acquireWriteLock(event.getSource().getId());
             clearCache(event.getSource());
+            if (nearCache != null) {
+                nearCache.invalidate(event.getSource().getId());
+            }
         }
 
         public void handlePostModifyEvent(CatalogPostModifyEvent event) {
@@ -1585,6 +1884,9 @@ public class ConfigDatabase {
 
         public void handleRemoveEvent(CatalogRemoveEvent event) {
             clearCache(event.getSource());
+            if (nearCache != null) {
+                nearCache.remove(event.getSource().getId());
+            }
         }
 
         public void reloaded() {}
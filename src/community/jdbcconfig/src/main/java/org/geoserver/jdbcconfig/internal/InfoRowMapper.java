@@ -44,7 +44,11 @@ public final class InfoRowMapper<T extends Info> implements RowMapper<T> {
     @Override
     public T mapRow(final ResultSet rs, final int rowNum) throws SQLException {
         // InputStream binaryStream = lobHandler.getBlobAsBinaryStream(rs, colNum);
-        String xml = rs.getString(colNum);
+        return decode(rs.getString(colNum));
+    }
+
+    /** Decodes an object from its XML representation, as stored in the blob column */
+    public T decode(final String xml) {
         ByteArrayInputStream in;
         try {
             byte[] bytes = xml.getBytes("UTF-8");
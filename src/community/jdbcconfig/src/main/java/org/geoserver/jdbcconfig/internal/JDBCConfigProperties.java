@@ -16,4 +16,17 @@ public class JDBCConfigProperties extends JDBCLoaderProperties {
 
     // jdbcconfig specific properties  may go here.
 
+    /** Whether the catalog should be answered from an in-memory copy of the database */
+    public boolean isNearCache() {
+        return Boolean.parseBoolean(getProperty("nearCache", "false"));
+    }
+
+    public void setNearCache(boolean nearCache) {
+        setProperty("nearCache", String.valueOf(nearCache));
+    }
+
+    /** Milliseconds between checks of the change log, when the near cache is enabled */
+    public long getNearCachePollInterval() {
+        return Long.parseLong(getProperty("nearCache.pollInterval", "5000"));
+    }
 }
@@ -20,6 +20,8 @@ DROP TABLE OBJECT_PROPERTY CASCADE CONSTRAINTS;
 DROP TABLE TYPE CASCADE CONSTRAINTS;
 DROP TABLE PROPERTY_TYPE CASCADE CONSTRAINTS;
 DROP TABLE DEFAULT_OBJECT CASCADE CONSTRAINTS;
+DROP TABLE OBJECT_CHANGE CASCADE CONSTRAINTS;
 DROP SEQUENCE SEQ_OBJECT;
 DROP SEQUENCE SEQ_TYPE;
 DROP SEQUENCE SEQ_PROPERTY_TYPE;
+DROP SEQUENCE SEQ_OBJECT_CHANGE;
@@ -26,3 +26,4 @@ DROP TABLE IF EXISTS object_property CASCADE;
 DROP TABLE IF EXISTS type CASCADE;
 DROP TABLE IF EXISTS property_type CASCADE;
 DROP TABLE IF EXISTS default_object CASCADE;
+DROP TABLE IF EXISTS object_change CASCADE;
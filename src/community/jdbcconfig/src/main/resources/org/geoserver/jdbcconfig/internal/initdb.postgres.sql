@@ -40,6 +40,13 @@ CREATE TABLE default_object (
 
 );
 
+CREATE TABLE object_change (
+  seq bigserial NOT NULL, 
+  id text NOT NULL, 
+  created timestamp NOT NULL DEFAULT now(), 
+  PRIMARY KEY (seq)
+);
+
 -- foreign keys
 ALTER TABLE object_property ADD CONSTRAINT fk_object_property 
   FOREIGN KEY (oid) REFERENCES object (oid) ON DELETE CASCADE;
@@ -78,6 +85,8 @@ CREATE INDEX property_type_collection_idx ON property_type (collection);
 CREATE INDEX default_object_def_key_idx ON default_object (def_key);
 CREATE INDEX default_object_id_idx ON default_object (id);
 
+CREATE INDEX object_change_created_idx ON object_change (created);
+
 -- views
 -- workspace view 
 CREATE OR REPLACE VIEW workspace AS
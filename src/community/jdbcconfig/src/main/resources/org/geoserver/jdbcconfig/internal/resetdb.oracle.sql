@@ -6,6 +6,7 @@ ALTER TABLE OBJECT_PROPERTY DISABLE CONSTRAINT FK_OBJECT_PROPERTY_PROP_TYPE;
 
 TRUNCATE TABLE OBJECT_PROPERTY;
 TRUNCATE TABLE DEFAULT_OBJECT;
+TRUNCATE TABLE OBJECT_CHANGE;
 TRUNCATE TABLE PROPERTY_TYPE;
 TRUNCATE TABLE TYPE;
 TRUNCATE TABLE OBJECT;
@@ -2,4 +2,5 @@ TRUNCATE TABLE object CASCADE;
 TRUNCATE TABLE object_property CASCADE;
 TRUNCATE TABLE type CASCADE;
 TRUNCATE TABLE property_type CASCADE;
-TRUNCATE TABLE default_object CASCADE;
\ No newline at end of file
+TRUNCATE TABLE default_object CASCADE;
+TRUNCATE TABLE object_change CASCADE;
\ No newline at end of file
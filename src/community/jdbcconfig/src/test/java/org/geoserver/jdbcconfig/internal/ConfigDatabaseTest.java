@@ -21,9 +21,14 @@ import static org.junit.Assert.*;
 
 import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import org.easymock.Capture;
 import org.easymock.IAnswer;
 import org.geoserver.catalog.Catalog;
@@ -31,6 +36,7 @@ import org.geoserver.catalog.CatalogException;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.Info;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
@@ -54,6 +60,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import org.opengis.filter.Filter;
 
 /** @author groldan */
 @RunWith(Parameterized.class)
@@ -295,6 +302,111 @@ public class ConfigDatabaseTest {
         assertNotNull(ws3);
     }
 
+    @Test
+    public void testNearCache() throws Exception {
+        database.enableNearCache(0);
+        CatalogNearCache nearCache = database.getNearCache();
+        assertNotNull(nearCache);
+
+        WorkspaceInfo ws = addWorkspace();
+        assertTrue(nearCache.isUsable());
+        int size = nearCache.size();
+        long sequence = nearCache.getLastSequence();
+        assertEquals(1, database.count(WorkspaceInfo.class, Predicates.equal("name", "ws1")));
+        assertEquals(0, database.count(WorkspaceInfo.class, Predicates.equal("name", "ws2")));
+
+        // Simulates another GeoServer instance changing the shared database
+        Connection conn = testSupport.getDataSource().getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            assertEquals(
+                    1,
+                    stmt.executeUpdate(
+                            "UPDATE object SET blob=(SELECT replace(blob, '<name>ws1</name>', '<name>ws2</name>') FROM object WHERE id = '"
+                                    + ws.getId()
+                                    + "')"));
+            assertEquals(
+                    1,
+                    stmt.executeUpdate(
+                            "INSERT INTO object_change (id) VALUES ('" + ws.getId() + "')"));
+        } finally {
+            conn.close();
+        }
+
+        // the change log is polled and the object reloaded
+        WorkspaceInfo ws2 = database.getById(ws.getId(), WorkspaceInfo.class);
+        assertEquals("ws2", ws2.getName());
+        assertEquals(1, database.count(WorkspaceInfo.class, Predicates.equal("name", "ws2")));
+        assertTrue(nearCache.getLastSequence() > sequence);
+
+        database.remove(ws2);
+        assertNull(database.getById(ws.getId(), WorkspaceInfo.class));
+        assertEquals(size - 1, nearCache.size());
+    }
+
+    @Test
+    public void testChangeLogPruned() throws Exception {
+        Connection conn = testSupport.getDataSource().getConnection();
+        String sql = "INSERT INTO object_change (id, created) VALUES ('old', ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis() - 2 * 86_400_000L));
+            assertEquals(1, stmt.executeUpdate());
+        } finally {
+            conn.close();
+        }
+
+        // no near cache, the writes still keep the log from growing forever
+        assertNull(database.getNearCache());
+        addWorkspace();
+
+        conn = testSupport.getDataSource().getConnection();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id FROM object_change")) {
+            List<String> ids = new ArrayList<>();
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+            assertEquals(Arrays.asList("wsid"), ids);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        WorkspaceInfo ws = addWorkspace();
+        DataStoreInfo ds = addDataStore(ws);
+        database.clearCache(ws);
+        database.clearCache(ds);
+
+        // loads the store along with the workspace it references
+        database.prefetch(Arrays.asList(ds.getId()), DataStoreInfo.class);
+
+        Connection conn = testSupport.getDataSource().getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            assertEquals(
+                    1,
+                    stmt.executeUpdate(
+                            "UPDATE object SET blob=(SELECT replace(blob, '<name>ws1</name>', '<name>ws2</name>') FROM object WHERE id = '"
+                                    + ws.getId()
+                                    + "')"));
+        } finally {
+            conn.close();
+        }
+
+        // both served from the cache
+        DataStoreInfo cached = database.getById(ds.getId(), DataStoreInfo.class);
+        assertEquals("data store one", cached.getName());
+        assertEquals("ws1", cached.getWorkspace().getName());
+        assertEquals("ws1", database.getById(ws.getId(), WorkspaceInfo.class).getName());
+
+        // listing goes through the prefetch too
+        List<DataStoreInfo> stores = database.getAll(DataStoreInfo.class);
+        assertEquals(1, stores.size());
+        assertEquals(ds.getId(), stores.get(0).getId());
+    }
+
     @Test
     public void testCacheResourceLayer() throws Exception {
         // check that saving a resource updates the layer cache
@@ -410,4 +522,20 @@ public class ConfigDatabaseTest {
         service = database.getAll(WMSInfo.class).iterator().next();
         assertNotNull(service.getGeoServer());
     }
+
+    @Test
+    public void testListServicesWithGeoServerRef() {
+        WMSInfo service = new WMSInfoImpl();
+        ((WMSInfoImpl) service).setId("WMS-TEST");
+        service.setName("WMS");
+        service = database.add(service);
+        database.clearCache(service);
+
+        // listing does not bypass the configuration objects post processing
+        List<ServiceInfo> services =
+                database.queryAsList(ServiceInfo.class, Filter.INCLUDE, null, null, null);
+        assertEquals(1, services.size());
+        assertNotNull(services.get(0).getGeoServer());
+        assertNotNull(database.getById(service.getId(), ServiceInfo.class).getGeoServer());
+    }
 }
@@ -14,10 +14,13 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
 import org.apache.commons.io.output.ProxyOutputStream;
 import org.apache.commons.lang3.ArrayUtils;
+import org.geoserver.jdbcstore.cache.ContentCache;
 import org.geoserver.jdbcstore.cache.ResourceCache;
 import org.geoserver.jdbcstore.internal.JDBCDirectoryStructure;
 import org.geoserver.jdbcstore.internal.JDBCResourceStoreProperties;
@@ -51,12 +54,21 @@ public class JDBCResourceStore implements ResourceStore {
 
     protected JDBCDirectoryStructure dir;
     protected ResourceCache cache;
+    protected ContentCache contentCache;
     protected ResourceStore oldResourceStore;
 
     public void setCache(ResourceCache cache) {
         this.cache = cache;
     }
 
+    /**
+     * Configure the local copy of the resource contents used by {@link Resource#in()}, if not
+     * set contents are read from the database every time.
+     */
+    public void setContentCache(ContentCache contentCache) {
+        this.contentCache = contentCache;
+    }
+
     LockProvider getLockProvider() {
         return lockProvider;
     }
@@ -100,7 +112,11 @@ public class JDBCResourceStore implements ResourceStore {
                     Resource root = oldResourceStore.get("");
                     for (Resource child : root.list()) {
                         if (!ArrayUtils.contains(config.getIgnoreDirs(), child.name())) {
-                            Resources.copy(child, get(child.name()));
+                            inTransaction(
+                                    () -> {
+                                        Resources.copy(child, get(child.name()));
+                                        return null;
+                                    });
                         }
                     }
                     config.setImport(false);
@@ -125,6 +141,14 @@ public class JDBCResourceStore implements ResourceStore {
         return new JDBCResource(dir.createEntry(path));
     }
 
+    /**
+     * Runs all the database operations performed by the task, in the current thread, in a single
+     * transaction, e.g., to save a number of resources with a single commit.
+     */
+    public <T> T inTransaction(Callable<T> task) {
+        return dir.inTransaction(task);
+    }
+
     @Override
     public boolean remove(String path) {
         return dir.createEntry(path).delete();
@@ -161,7 +185,20 @@ public class JDBCResourceStore implements ResourceStore {
         }
 
         private InputStream getIStream() {
-            return entry.getContent();
+            Integer oid = entry.getOid();
+            Timestamp lastModified = entry.getLastModified();
+            if (contentCache == null || oid == null || lastModified == null) {
+                return entry.getContent();
+            }
+            InputStream cached = contentCache.get(oid, lastModified.getTime());
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                return contentCache.put(oid, lastModified.getTime(), entry.getContent());
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
         }
 
         @Override
@@ -372,13 +409,25 @@ public class JDBCResourceStore implements ResourceStore {
 
             @Override
             public void close() throws IOException {
+                super.close();
                 final Lock lock = lock();
                 try {
                     List<ResourceNotification.Event> events =
                             SimpleResourceNotificationDispatcher.createEvents(
                                     JDBCResource.this, ResourceNotification.Kind.ENTRY_MODIFY);
 
-                    entry.setContent(new FileInputStream(tempFile));
+                    try (InputStream in = new FileInputStream(tempFile)) {
+                        entry.setContent(in);
+                    }
+                    if (contentCache != null && entry.getOid() != null) {
+                        // the new content is at hand, no need to fetch it back on next read
+                        contentCache
+                                .put(
+                                        entry.getOid(),
+                                        entry.getLastModified().getTime(),
+                                        new FileInputStream(tempFile))
+                                .close();
+                    }
 
                     resourceNotificationDispatcher.changed(
                             new ResourceNotification(
@@ -388,6 +437,9 @@ public class JDBCResourceStore implements ResourceStore {
                                     events));
                 } finally {
                     lock.release();
+                    if (!tempFile.delete()) {
+                        LOGGER.log(Level.FINE, "Could not delete temporary file " + tempFile);
+                    }
                 }
             }
         }
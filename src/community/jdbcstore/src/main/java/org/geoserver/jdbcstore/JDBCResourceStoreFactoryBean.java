@@ -6,6 +6,7 @@ package org.geoserver.jdbcstore;
 
 import com.google.common.base.Preconditions;
 import javax.sql.DataSource;
+import org.geoserver.jdbcstore.cache.ContentCache;
 import org.geoserver.jdbcstore.cache.ResourceCache;
 import org.geoserver.jdbcstore.internal.JDBCResourceStoreProperties;
 import org.geoserver.platform.resource.LockProvider;
@@ -39,6 +40,12 @@ public class JDBCResourceStoreFactoryBean implements FactoryBean<ResourceStore>,
         }
     }
 
+    public void setContentCache(ContentCache contentCache) {
+        if (resourceStore instanceof JDBCResourceStore) {
+            ((JDBCResourceStore) resourceStore).setContentCache(contentCache);
+        }
+    }
+
     /**
      * Configure LockProvider used during {@link Resource#out()}.
      *
@@ -0,0 +1,203 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.jdbcstore.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Local, size bounded copy of the resource contents, so that reading a resource that did not
+ * change does not require fetching its blob from the database again.
+ *
+ * <p>Contents are stored in files named after their SHA-1 hash, and looked up by resource version,
+ * that is, object id and last modification time. Identical contents are stored only once, and
+ * moving a resource keeps its cached content valid. When the total size exceeds the limit, the
+ * least recently used contents are removed.
+ */
+public class ContentCache {
+
+    private static final Logger LOGGER =
+            org.geotools.util.logging.Logging.getLogger(ContentCache.class);
+
+    /** Default size limit, 64MB */
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private File base;
+
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    /** Size of each stored content by hash, in access order */
+    private final LinkedHashMap<String, Long> contents = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /** The hash of the content of each known resource version */
+    private final Cache<String, String> versions =
+            CacheBuilder.newBuilder().maximumSize(100000).build();
+
+    public ContentCache() {}
+
+    /**
+     * @param base The directory where contents are stored, emptied on startup
+     * @param maxSize The maximum total size of the stored contents, in bytes
+     */
+    public ContentCache(File base, long maxSize) {
+        setBase(base);
+        this.maxSize = maxSize;
+    }
+
+    public File getBase() {
+        return base;
+    }
+
+    /** Sets the directory where contents are stored, its current contents are removed */
+    public synchronized void setBase(File base) {
+        // the versions are not persisted, the contents left by a previous run are unreachable
+        try {
+            if (base.exists()) {
+                FileUtils.cleanDirectory(base);
+            } else if (!base.mkdirs()) {
+                throw new IOException("Could not create " + base);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to initialize the content cache", e);
+        }
+        this.base = base;
+        contents.clear();
+        versions.invalidateAll();
+        size = 0;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /** Sets the maximum total size of the stored contents, in bytes */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached content of a resource version, or null if not available
+     *
+     * @param oid The resource object id
+     * @param lastModified The resource last modification time
+     */
+    public InputStream get(Integer oid, long lastModified) {
+        String hash = versions.getIfPresent(key(oid, lastModified));
+        if (hash == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (contents.get(hash) == null) {
+                return null;
+            }
+            try {
+                return new FileInputStream(file(hash));
+            } catch (FileNotFoundException e) {
+                contents.remove(hash);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stores the content of a resource version, and returns a stream reading the stored copy.
+     * Closes the provided stream.
+     *
+     * @param oid The resource object id
+     * @param lastModified The resource last modification time
+     * @param content The resource content
+     */
+    public InputStream put(Integer oid, long lastModified, InputStream content)
+            throws IOException {
+        File temp = File.createTempFile("content", null, base);
+        String hash;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (InputStream in = content;
+                    OutputStream out =
+                            new DigestOutputStream(Files.newOutputStream(temp.toPath()), digest)) {
+                IOUtils.copy(in, out);
+            }
+            hash = toHex(digest.digest());
+            synchronized (this) {
+                File file = file(hash);
+                if (contents.get(hash) == null) {
+                    file.getParentFile().mkdirs();
+                    Files.move(
+                            temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    contents.put(hash, file.length());
+                    size += file.length();
+                    evict(hash);
+                }
+                versions.put(key(oid, lastModified), hash);
+                return new FileInputStream(file);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Removes the least recently used contents until back within the limit */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = contents.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            it.remove();
+            size -= entry.getValue();
+            if (!file(entry.getKey()).delete()) {
+                // e.g., still open on Windows, will be overwritten if needed again
+                LOGGER.log(Level.FINE, "Could not delete cached content " + entry.getKey());
+            }
+        }
+    }
+
+    /** Returns the total size of the stored contents, in bytes */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private File file(String hash) {
+        // spread over subdirectories, a single one with many files can get slow
+        return new File(new File(base, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    private static String key(Integer oid, long lastModified) {
+        return oid + "@" + lastModified;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,26 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.jdbcstore.cache;
+
+import java.io.File;
+import javax.servlet.ServletContext;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.springframework.web.context.ServletContextAware;
+
+/** Content Cache that uses the tmp directory of the GeoServer Data Directory. */
+public class DataDirectoryContentCache extends ContentCache implements ServletContextAware {
+
+    public DataDirectoryContentCache() {}
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        String data = GeoServerResourceLoader.lookupGeoServerDataDirectory(servletContext);
+        if (data != null) {
+            setBase(new File(data, "tmp/jdbcstore/content"));
+        } else {
+            throw new IllegalStateException("Unable to determine data directory");
+        }
+    }
+}
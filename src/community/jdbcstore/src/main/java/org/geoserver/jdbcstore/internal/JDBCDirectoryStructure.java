@@ -70,6 +70,12 @@ public class JDBCDirectoryStructure {
         public Integer oid;
         public Boolean dir;
         public Timestamp lastModified;
+
+        void read(Map<String, Object> record) {
+            oid = (Integer) record.get(OID.getFieldName());
+            dir = (Boolean) record.get(DIRECTORY.getFieldName());
+            lastModified = (Timestamp) record.get(LAST_MODIFIED.getFieldName());
+        }
     }
 
     /** Resource/Directory entry in the database. */
@@ -116,14 +122,25 @@ public class JDBCDirectoryStructure {
             return md.lastModified;
         }
 
+        /**
+         * Lists the children, refreshing the cached metadata of all of them with a single query,
+         * so that walking a directory does not take a query per child.
+         */
         public List<Entry> getChildren() {
             List<Entry> list = new ArrayList<Entry>();
             Integer oid = getOid();
             if (oid != null) {
                 for (Map<String, Object> result :
                         helper.multiSelectQuery(
-                                TABLE_RESOURCES, new FieldSelector<Integer>(PARENT, oid), NAME)) {
-                    list.add(createEntry(path, (String) result.get(NAME.getFieldName())));
+                                TABLE_RESOURCES,
+                                new FieldSelector<Integer>(PARENT, oid),
+                                NAME,
+                                OID,
+                                DIRECTORY,
+                                LAST_MODIFIED)) {
+                    ArrayList<String> childPath = new ArrayList<String>(path);
+                    childPath.add((String) result.get(NAME.getFieldName()));
+                    list.add(new Entry(childPath, cacheMetaData(childPath, result)));
                 }
             }
             return list;
@@ -224,27 +241,44 @@ public class JDBCDirectoryStructure {
         }
 
         public void setContent(InputStream is) {
-            md.lastModified = new Timestamp(System.currentTimeMillis());
-            if (helper.updateQuery(
-                            TABLE_RESOURCES,
-                            new PathSelector(path),
-                            new Assignment<InputStream>(CONTENT, is),
-                            new Assignment<Timestamp>(LAST_MODIFIED, md.lastModified))
-                    <= 0) {
-                LOGGER.warning("Unable to write content to entry " + toString());
-            }
-            List<String> parentPath = path;
-            while (!parentPath.isEmpty()) {
-                parentPath = parentPath.subList(0, parentPath.size() - 1);
-                if (helper.updateQuery(
-                                TABLE_RESOURCES,
-                                new PathSelector(parentPath),
-                                new Assignment<Timestamp>(LAST_MODIFIED, md.lastModified))
-                        <= 0) {
-                    LOGGER.warning("Unable to update last modified for directory " + toString());
+            final Timestamp lastModified = new Timestamp(System.currentTimeMillis());
+            // the parents have been created along with the resource, their oids are cached
+            final List<Entry> parents = new ArrayList<Entry>();
+            final List<Integer> parentOids = new ArrayList<Integer>();
+            for (Entry parent = getParent(); parent != null; parent = parent.getParent()) {
+                if (parent.getOid() != null) {
+                    parents.add(parent);
+                    parentOids.add(parent.getOid());
                 }
             }
-
+            // one transaction and two statements, regardless of the depth of the path
+            helper.inTransaction(
+                    () -> {
+                        if (helper.updateQuery(
+                                        TABLE_RESOURCES,
+                                        new PathSelector(path),
+                                        new Assignment<InputStream>(CONTENT, is),
+                                        new Assignment<Timestamp>(LAST_MODIFIED, lastModified))
+                                <= 0) {
+                            LOGGER.warning("Unable to write content to entry " + toString());
+                        }
+                        if (!parentOids.isEmpty()
+                                && helper.updateQuery(
+                                                TABLE_RESOURCES,
+                                                new InSelector<Integer>(OID, parentOids),
+                                                new Assignment<Timestamp>(
+                                                        LAST_MODIFIED, lastModified))
+                                        < parentOids.size()) {
+                            LOGGER.warning(
+                                    "Unable to update last modified for directory " + toString());
+                        }
+                        return null;
+                    });
+
+            md.lastModified = lastModified;
+            for (Entry parent : parents) {
+                parent.md.lastModified = lastModified;
+            }
             entryCache.put(path, md);
         }
 
@@ -416,30 +450,9 @@ public class JDBCDirectoryStructure {
                                                             DIRECTORY,
                                                             LAST_MODIFIED);
                                             if (record != null) {
-                                                md.oid = (Integer) record.get(OID.getFieldName());
-                                                md.dir =
-                                                        (Boolean)
-                                                                record.get(
-                                                                        DIRECTORY.getFieldName());
-                                                md.lastModified =
-                                                        (Timestamp)
-                                                                record.get(
-                                                                        LAST_MODIFIED
-                                                                                .getFieldName());
+                                                md.read(record);
                                             }
-                                            resourceNotificationDispatcher.addListener(
-                                                    mergePath(path),
-                                                    new ResourceListener() {
-
-                                                        @Override
-                                                        public void changed(
-                                                                ResourceNotification notify) {
-                                                            entryCache().invalidate(path);
-                                                            resourceNotificationDispatcher
-                                                                    .removeListener(
-                                                                            md.toString(), this);
-                                                        }
-                                                    });
+                                            listen(path);
                                             return md;
                                         }
                                     }));
@@ -448,6 +461,46 @@ public class JDBCDirectoryStructure {
         }
     }
 
+    /** Caches the metadata of an entry read along with others, or refreshes the cached one */
+    private EntryMetaData cacheMetaData(ArrayList<String> path, Map<String, Object> record) {
+        EntryMetaData md = entryCache().getIfPresent(path);
+        if (md != null) {
+            // shared with the existing entry objects, update in place
+            md.read(record);
+            return md;
+        }
+        md = new EntryMetaData();
+        md.read(record);
+        EntryMetaData previous = entryCache().asMap().putIfAbsent(path, md);
+        if (previous != null) {
+            return previous;
+        }
+        listen(path);
+        return md;
+    }
+
+    /** Drops the cached metadata when the resource changes */
+    private void listen(ArrayList<String> path) {
+        resourceNotificationDispatcher.addListener(
+                mergePath(path),
+                new ResourceListener() {
+
+                    @Override
+                    public void changed(ResourceNotification notify) {
+                        entryCache().invalidate(path);
+                        resourceNotificationDispatcher.removeListener(mergePath(path), this);
+                    }
+                });
+    }
+
+    /**
+     * Runs all the database operations performed by the task in a single transaction, e.g., to
+     * save a number of resources in one go.
+     */
+    public <T> T inTransaction(Callable<T> task) {
+        return helper.inTransaction(task);
+    }
+
     protected Entry createEntry(List<String> parent, String child) {
         ArrayList<String> path = new ArrayList<String>(parent);
         path.add(child);
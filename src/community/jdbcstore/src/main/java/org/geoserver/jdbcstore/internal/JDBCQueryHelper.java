@@ -4,8 +4,11 @@
  */
 package org.geoserver.jdbcstore.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -16,9 +19,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.ProxyInputStream;
 import org.geoserver.jdbcconfig.internal.Util;
 import org.geoserver.platform.resource.Resource;
@@ -262,6 +267,29 @@ public class JDBCQueryHelper {
         }
     }
 
+    /** Filter on a field being any of a list of values. */
+    public static class InSelector<T> implements Selector {
+        private final Field<T> field;
+        private final List<T> values;
+
+        InSelector(Field<T> field, List<T> values) {
+            assert (!values.isEmpty());
+            this.field = field;
+            this.values = values;
+        }
+
+        @Override
+        public QueryBuilder appendCondition(QueryBuilder sb) {
+            sb.append(field.getFieldExpression() + " IN (");
+            for (int i = 0; i < values.size(); i++) {
+                sb.append(i > 0 ? ", ?" : "?");
+                sb.addParameter(new Parameter<T>(field.getType(), values.get(i)));
+            }
+            sb.append(")");
+            return sb;
+        }
+    }
+
     /**
      * Provides an assignment for an update query.
      *
@@ -297,10 +325,76 @@ public class JDBCQueryHelper {
 
     private final DataSource ds;
 
+    /** The connection of the transaction running in the current thread, if any */
+    private final ThreadLocal<Connection> transaction = new ThreadLocal<Connection>();
+
     public JDBCQueryHelper(DataSource ds) {
         this.ds = ds;
     }
 
+    /**
+     * Runs all the queries performed by the given task, in the current thread, in a single
+     * transaction. Nested calls join the transaction already running.
+     */
+    public <T> T inTransaction(Callable<T> task) {
+        if (transaction.get() != null) {
+            return call(task);
+        }
+        try (Connection c = ds.getConnection()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            transaction.set(c);
+            try {
+                T result = call(task);
+                c.commit();
+                return result;
+            } catch (RuntimeException | Error ex) {
+                c.rollback();
+                throw ex;
+            } finally {
+                transaction.remove();
+                c.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Transaction Failed", ex);
+        }
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns a connection to run a query with, the one of the current transaction if any, in
+     * which case closing it is left to {@link #inTransaction(Callable)}.
+     */
+    private Connection getConnection() throws SQLException {
+        final Connection c = transaction.get();
+        if (c == null) {
+            return ds.getConnection();
+        }
+        return (Connection)
+                Proxy.newProxyInstance(
+                        JDBCQueryHelper.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        (proxy, method, args) -> {
+                            if ("close".equals(method.getName())) {
+                                return null;
+                            }
+                            try {
+                                return method.invoke(c, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+    }
+
     private QueryBuilder createSelect(String table, Selector sel, Field<?>... fields) {
         QueryBuilder builder = new QueryBuilder();
 
@@ -390,7 +484,7 @@ public class JDBCQueryHelper {
     public List<Map<String, Object>> anyMultiQuery(QueryBuilder query, Field<?>... fields) {
         LOGGER.log(Level.FINEST, query.toString());
 
-        try (Connection c = ds.getConnection()) {
+        try (Connection c = getConnection()) {
             try (PreparedStatement stmt = query.toStatement(c)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     ArrayList<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
@@ -412,7 +506,7 @@ public class JDBCQueryHelper {
     public Map<String, Object> anyQuery(QueryBuilder query, Field<?>... fields) {
         LOGGER.log(Level.FINEST, query.toString());
 
-        try (Connection c = ds.getConnection()) {
+        try (Connection c = getConnection()) {
             try (PreparedStatement stmt = query.toStatement(c)) {
                 try (ResultSet rs = stmt.executeQuery()) {
                     if (rs.next()) {
@@ -435,7 +529,7 @@ public class JDBCQueryHelper {
     public int anyUpdateQuery(QueryBuilder query) {
         LOGGER.log(Level.FINEST, query.toString());
 
-        try (Connection c = ds.getConnection()) {
+        try (Connection c = getConnection()) {
             try (PreparedStatement stmt = query.toStatement(c)) {
                 return stmt.executeUpdate();
             }
@@ -447,7 +541,7 @@ public class JDBCQueryHelper {
     public List<Integer> anyInsertQuery(QueryBuilder query) {
         LOGGER.log(Level.FINEST, query.toString());
 
-        try (Connection c = ds.getConnection()) {
+        try (Connection c = getConnection()) {
             try (PreparedStatement stmt = query.toStatement(c, Statement.RETURN_GENERATED_KEYS)) {
                 if (stmt.executeUpdate() <= 0) {
                     return null;
@@ -473,7 +567,7 @@ public class JDBCQueryHelper {
         Connection c;
         boolean closeConnection = false;
         try {
-            c = ds.getConnection();
+            c = getConnection();
         } catch (SQLException ex) {
             throw new IllegalStateException("Could not connect to DataSource.", ex);
         }
@@ -483,6 +577,14 @@ public class JDBCQueryHelper {
                     if (rs.next()) {
                         assert (rs.isLast());
                         InputStream is = field.getValue(rs);
+                        if (is != null && transaction.get() != null) {
+                            // the transaction may end before the stream is read
+                            try (InputStream in = is) {
+                                return new ByteArrayInputStream(IOUtils.toByteArray(in));
+                            } catch (IOException ex) {
+                                throw new IllegalStateException("BlobQuery Failed", ex);
+                            }
+                        }
                         return is == null ? null : new ClosingInputStreamWrapper(is, c);
                     } else {
                         closeConnection = true;
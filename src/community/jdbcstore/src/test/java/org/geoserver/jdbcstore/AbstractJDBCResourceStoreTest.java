@@ -11,12 +11,15 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import org.geoserver.catalog.impl.StyleInfoImpl;
 import org.geoserver.config.GeoServerDataDirectory;
 import org.geoserver.config.GeoServerDataDirectoryTest;
+import org.geoserver.jdbcstore.cache.ContentCache;
 import org.geoserver.jdbcstore.cache.SimpleResourceCache;
 import org.geoserver.jdbcstore.internal.JDBCResourceStoreProperties;
 import org.geoserver.platform.GeoServerResourceLoader;
@@ -37,6 +40,9 @@ import org.geotools.styling.PointSymbolizer;
 import org.geotools.styling.Style;
 import org.geotools.styling.Symbolizer;
 import org.geotools.util.Version;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
@@ -308,6 +314,102 @@ public abstract class AbstractJDBCResourceStoreTest {
         }
     }
 
+    @Test
+    public void testContentCache() throws Exception {
+        standardData();
+        cache.create();
+
+        JDBCResourceStoreProperties config = getConfig(true, false);
+
+        JDBCResourceStore store = new JDBCResourceStore(support.getDataSource(), config);
+        store.setLockProvider(new NullLockProvider());
+        ContentCache contentCache = new ContentCache(cache.getRoot(), 1024);
+        store.setContentCache(contentCache);
+
+        Resource r = store.get("FileA");
+        assertThat(r.in(), hasContents("FileA Contents"));
+
+        // Change the database behind the store back without touching the timestamp
+        try (PreparedStatement stmt =
+                support.getConnection()
+                        .prepareStatement("UPDATE resources SET content = ? WHERE name = ?")) {
+            stmt.setBytes(1, "FileA Changed".getBytes());
+            stmt.setString(2, "FileA");
+            assertThat(stmt.executeUpdate(), equalTo(1));
+        }
+        // same version, served locally
+        assertThat(r.in(), hasContents("FileA Contents"));
+
+        // a new version is both written and cached
+        byte[] expected = "FileA Updated Contents".getBytes();
+        try (OutputStream out = r.out()) {
+            out.write(expected);
+        }
+        assertThat(r.in(), hasContents("FileA Updated Contents"));
+        assertThat(store.get("FileA").in(), hasContents("FileA Updated Contents"));
+
+        // identical contents are stored once
+        Resource copy = store.get("DirE/FileCopy");
+        try (OutputStream out = copy.out()) {
+            out.write(expected);
+        }
+        assertThat(copy.in(), hasContents("FileA Updated Contents"));
+        assertThat(
+                contentCache.getSize(),
+                equalTo((long) "FileA Contents".length() + expected.length));
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        standardData();
+
+        JDBCResourceStoreProperties config = getConfig(true, false);
+
+        JDBCResourceStore store = new JDBCResourceStore(support.getDataSource(), config);
+        store.setLockProvider(new NullLockProvider());
+
+        store.inTransaction(
+                () -> {
+                    for (String name : new String[] {"DirC/FileX", "DirC/DirF/FileY"}) {
+                        try (OutputStream out = store.get(name).out()) {
+                            out.write(name.getBytes());
+                        }
+                    }
+                    // reads see the changes of the running transaction
+                    assertThat(store.get("DirC/FileX").in(), hasContents("DirC/FileX"));
+                    return null;
+                });
+
+        assertThat(store.get("DirC/DirF/FileY").in(), hasContents("DirC/DirF/FileY"));
+        // all the children of a directory are listed with their metadata
+        for (Resource child : store.get("DirC").list()) {
+            assertThat(child.getType(), not(equalTo(Resource.Type.UNDEFINED)));
+            assertThat(child.lastmodified(), greaterThan(0L));
+        }
+    }
+
+    static Matcher<InputStream> hasContents(String expected) {
+        return new BaseMatcher<InputStream>() {
+
+            String actual;
+
+            @Override
+            public boolean matches(Object item) {
+                try (InputStream in = (InputStream) item) {
+                    actual = IOUtils.toString(in);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return expected.equals(actual);
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("stream with contents ").appendValue(expected);
+            }
+        };
+    }
+
     @Test
     public void testDelete() throws Exception {
         standardData();
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.flow.config.DefaultControlFlowConfigurator;
+import org.geoserver.flow.controller.AdaptiveThreadBlocker;
 import org.geoserver.ows.Request;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.util.logging.Logging;
@@ -83,7 +84,9 @@ public class DefaultFlowControllerProvider implements FlowControllerProvider {
             List<FlowController> newControllers =
                     new ArrayList<FlowController>(configurator.buildFlowControllers());
             Collections.sort(newControllers, new ControllerPriorityComparator());
+            AdaptiveThreadBlocker.unregister(controllers);
             controllers = newControllers;
+            AdaptiveThreadBlocker.register(controllers);
             int controllersCount = controllers.size();
             if (controllersCount > 0) {
                 LOGGER.info("Control-flow active with " + controllersCount + " flow controllers");
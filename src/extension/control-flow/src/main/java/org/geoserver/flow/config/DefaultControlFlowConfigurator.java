@@ -18,8 +18,10 @@ import java.util.regex.Pattern;
 import org.geoserver.config.GeoServerPluginConfigurator;
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveThreadBlocker;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.CookieKeyGenerator;
+import org.geoserver.flow.controller.CostEstimator;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
 import org.geoserver.flow.controller.IpFlowController;
@@ -29,10 +31,12 @@ import org.geoserver.flow.controller.OWSRequestMatcher;
 import org.geoserver.flow.controller.PriorityProvider;
 import org.geoserver.flow.controller.PriorityThreadBlocker;
 import org.geoserver.flow.controller.RateFlowController;
+import org.geoserver.flow.controller.RenderCostEstimator;
 import org.geoserver.flow.controller.SimpleThreadBlocker;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.ThreadBlocker;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
+import org.geoserver.flow.controller.WeightedThreadBlocker;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.resource.Files;
@@ -52,6 +56,11 @@ public class DefaultControlFlowConfigurator
         implements ControlFlowConfigurator, GeoServerPluginConfigurator {
     static final Pattern RATE_PATTERN = Pattern.compile("(\\d+)/([smhd])(;(\\d+)s)?");
 
+    static final Pattern ADAPTIVE_PATTERN =
+            Pattern.compile("adaptive\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)");
+
+    static final Pattern COST_PATTERN = Pattern.compile("cost\\(\\s*(\\d+)\\s*\\)");
+
     static final Logger LOGGER = Logging.getLogger(DefaultControlFlowConfigurator.class);
     static final String PROPERTYFILENAME = "controlflow.properties";
 
@@ -93,6 +102,9 @@ public class DefaultControlFlowConfigurator
 
     long timeout = -1;
 
+    /** Shared by the cost based rules, and kept across reloads, as it learns over time */
+    CostEstimator costEstimator = new RenderCostEstimator();
+
     /** Default watches controlflow.properties */
     public DefaultControlFlowConfigurator() {
         GeoServerResourceLoader loader = GeoServerExtensions.bean(GeoServerResourceLoader.class);
@@ -123,13 +135,33 @@ public class DefaultControlFlowConfigurator
             String[] keys = key.split("\\s*\\.\\s*");
 
             int queueSize = 0;
+            // adaptive limits and cost budgets, only for the ows rules
+            int minLimit = 0;
+            boolean weighted = false;
             StringTokenizer tokenizer = new StringTokenizer(value, ",");
+            Matcher adaptive = ADAPTIVE_PATTERN.matcher(value.trim());
+            Matcher cost = COST_PATTERN.matcher(value.trim());
             try {
                 // some properties are not integers
                 if ("ip.blacklist".equals(key)
                         || "ip.whitelist".equals(key)
                         || "ows.priority.http".equals(key)) {
                     continue;
+                } else if ("ows".equals(keys[0]) && adaptive.matches()) {
+                    minLimit = Integer.parseInt(adaptive.group(1));
+                    queueSize = Integer.parseInt(adaptive.group(2));
+                    if (minLimit < 1 || queueSize < minLimit) {
+                        LOGGER.severe(
+                                "Adaptive rules should be expressed as adaptive(<min>,<max>), "
+                                        + "with 1 <= min <= max, instead "
+                                        + key
+                                        + " is associated to "
+                                        + value);
+                        continue;
+                    }
+                } else if ("ows".equals(keys[0]) && cost.matches()) {
+                    weighted = true;
+                    queueSize = Integer.parseInt(cost.group(1));
                 } else {
                     if (!key.startsWith("user.ows") && !key.startsWith("ip.ows")) {
                         if (tokenizer.countTokens() == 1) {
@@ -156,10 +188,13 @@ public class DefaultControlFlowConfigurator
             if ("ows.global".equalsIgnoreCase(key)) {
                 controller =
                         new GlobalFlowController(
-                                queueSize, buildBlocker(queueSize, priorityProvider));
+                                queueSize,
+                                buildBlocker(
+                                        key, minLimit, weighted, queueSize, priorityProvider));
             } else if ("ows".equals(keys[0])) {
                 // todo: check, if possible, if the service, method and output format actually exist
-                ThreadBlocker threadBlocker = buildBlocker(queueSize, priorityProvider);
+                ThreadBlocker threadBlocker =
+                        buildBlocker(key, minLimit, weighted, queueSize, priorityProvider);
                 if (keys.length >= 4) {
                     controller =
                             new BasicOWSController(
@@ -256,13 +291,27 @@ public class DefaultControlFlowConfigurator
     /**
      * Builds a {@link ThreadBlocker} based on a queue size and a prority provider
      *
+     * @param key The rule name
+     * @param minLimit The minimum count of concurrent requests for adaptive rules, zero otherwise
+     * @param weighted True if requests are admitted by cost, in which case the queue size is the
+     *     cost budget
      * @param queueSize The count of concurrent requests allowed to run
      * @param priorityProvider The priority provider (if not null, a {@link
-     *     org.geoserver.flow.controller.PriorityThreadBlocker} will be built
+     *     org.geoserver.flow.controller.PriorityThreadBlocker} will be built, cost rules use it to
+     *     order their waiting requests
      * @return a {@link ThreadBlocker}
      */
-    private ThreadBlocker buildBlocker(int queueSize, PriorityProvider priorityProvider) {
-        if (priorityProvider != null) {
+    private ThreadBlocker buildBlocker(
+            String key,
+            int minLimit,
+            boolean weighted,
+            int queueSize,
+            PriorityProvider priorityProvider) {
+        if (weighted) {
+            return new WeightedThreadBlocker(queueSize, costEstimator, priorityProvider);
+        } else if (minLimit > 0) {
+            return new AdaptiveThreadBlocker(key, minLimit, queueSize, priorityProvider);
+        } else if (priorityProvider != null) {
             return new PriorityThreadBlocker(queueSize, priorityProvider);
         } else {
             return new SimpleThreadBlocker(queueSize);
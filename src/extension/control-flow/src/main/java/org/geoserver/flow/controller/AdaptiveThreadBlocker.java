@@ -0,0 +1,333 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Blocker whose concurrency limit adapts to the observed request latency, instead of being fixed.
+ *
+ * <p>The limit follows a gradient: the ratio between the long term and the recent average
+ * execution time. While requests run as fast as usual the limit grows by about the square root of
+ * its value, probing for more throughput, as soon as latency rises because the server is saturated
+ * the limit shrinks proportionally, keeping the server near the knee of its latency curve. The
+ * limit only grows if it is actually constraining, that is, when requests are queued or at least
+ * half of the slots are in use, and always stays between the configured minimum and maximum.
+ *
+ * <p>Waiting requests are released in priority order when a {@link PriorityProvider} is
+ * available, first come first served otherwise. The blocker state is published over JMX, see
+ * {@link AdaptiveThreadBlockerMXBean}.
+ */
+public class AdaptiveThreadBlocker implements ThreadBlocker, AdaptiveThreadBlockerMXBean {
+
+    static final Logger LOGGER = Logging.getLogger(AdaptiveThreadBlocker.class);
+
+    static final String DOMAIN = "org.geoserver.flow";
+
+    /** Samples averaged by the recent latency */
+    static final int SHORT_WINDOW = 10;
+
+    /** Samples averaged by the long term latency */
+    static final int LONG_WINDOW = 500;
+
+    /** Latency increase considered noise rather than saturation */
+    static final double TOLERANCE = 1.5;
+
+    /** Weight of each new limit estimate, damps oscillations */
+    static final double SMOOTHING = 0.2;
+
+    final String name;
+
+    final int minLimit;
+
+    final int maxLimit;
+
+    final PriorityProvider priorityProvider;
+
+    LongSupplier clock = System::nanoTime;
+
+    // all the following are guarded by this
+    double limit;
+
+    double shortLatency;
+
+    double longLatency;
+
+    double queueWait;
+
+    long samples;
+
+    long sequence;
+
+    final PriorityQueue<WaitToken> queue = new PriorityQueue<>();
+
+    /** Running requests, with the time they were let through */
+    final Map<Request, Long> running = new HashMap<>();
+
+    /**
+     * Builds a new blocker
+     *
+     * @param name the rule name, used to publish the blocker over JMX
+     * @param minLimit the minimum concurrency, also used as the initial limit
+     * @param maxLimit the maximum concurrency
+     * @param priorityProvider the priority of queued requests, or null for first come first served
+     */
+    public AdaptiveThreadBlocker(
+            String name, int minLimit, int maxLimit, PriorityProvider priorityProvider) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid adaptive limits, need 1 <= min <= max: " + minLimit + ", " + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.priorityProvider = priorityProvider;
+        this.limit = minLimit;
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) throws InterruptedException {
+        WaitToken token;
+        synchronized (this) {
+            if (queue.isEmpty() && running.size() < getLimit()) {
+                running.put(request, clock.getAsLong());
+                return true;
+            }
+            int priority = priorityProvider != null ? priorityProvider.getPriority(request) : 0;
+            token = new WaitToken(request, priority, sequence++, clock.getAsLong());
+            queue.add(token);
+        }
+
+        boolean released;
+        try {
+            if (timeout > 0) {
+                released = token.latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                token.latch.await();
+                released = true;
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                // give back the slot if it was assigned meanwhile
+                if (!queue.remove(token) && running.remove(request) != null) {
+                    releaseNext();
+                }
+            }
+            throw e;
+        }
+        if (!released) {
+            synchronized (this) {
+                // released while timing out? Then the slot is ours anyways
+                released = !queue.remove(token);
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        synchronized (this) {
+            // timed out requests never made it to the running set
+            Long start = running.remove(request);
+            if (start != null) {
+                sample(clock.getAsLong() - start, running.size() + 1);
+            }
+            releaseNext();
+        }
+    }
+
+    /**
+     * Updates the limit with the execution time of a request
+     *
+     * @param latency the execution time, in nanoseconds
+     * @param inFlight the requests running while the sampled one completed, itself included
+     */
+    synchronized void sample(long latency, int inFlight) {
+        samples++;
+        if (samples == 1) {
+            shortLatency = longLatency = latency;
+        } else {
+            shortLatency += (latency - shortLatency) / Math.min(samples, SHORT_WINDOW);
+            longLatency += (latency - longLatency) / Math.min(samples, LONG_WINDOW);
+        }
+        // after a sustained latency drift, let the long term average catch up faster
+        if (longLatency / shortLatency > 2) {
+            longLatency *= 0.95;
+        }
+
+        boolean constrained = !queue.isEmpty() || inFlight * 2 >= limit;
+        double gradient =
+                shortLatency > 0
+                        ? Math.max(0.5, Math.min(1, TOLERANCE * longLatency / shortLatency))
+                        : 1;
+        if (gradient == 1 && !constrained) {
+            // the limit is not what keeps the throughput low, don't let it grow unbounded
+            return;
+        }
+        double estimate = limit * gradient + (gradient == 1 ? Math.sqrt(limit) : 0);
+        double next = limit * (1 - SMOOTHING) + estimate * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest(name + " limit is now " + limit + ", gradient " + gradient);
+        }
+    }
+
+    private void releaseNext() {
+        assert Thread.holdsLock(this);
+
+        long now = clock.getAsLong();
+        while (running.size() < getLimit() && !queue.isEmpty()) {
+            WaitToken token = queue.poll();
+            running.put(token.request, now);
+            queueWait += ((now - token.created) - queueWait) / SHORT_WINDOW;
+            token.latch.countDown();
+        }
+    }
+
+    @Override
+    public synchronized int getRunningRequestsCount() {
+        return running.size();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public synchronized int getRunningRequests() {
+        return running.size();
+    }
+
+    @Override
+    public synchronized int getQueuedRequests() {
+        return queue.size();
+    }
+
+    @Override
+    public synchronized double getShortLatency() {
+        return shortLatency / 1e6;
+    }
+
+    @Override
+    public synchronized double getLongLatency() {
+        return longLatency / 1e6;
+    }
+
+    @Override
+    public synchronized double getQueueWait() {
+        return queueWait / 1e6;
+    }
+
+    public PriorityProvider getPriorityProvider() {
+        return priorityProvider;
+    }
+
+    ObjectName getObjectName() throws Exception {
+        return new ObjectName(
+                DOMAIN + ":type=AdaptiveThreadBlocker,name=" + ObjectName.quote(name));
+    }
+
+    /** Publishes over JMX the adaptive blockers of the given controllers */
+    public static void register(List<FlowController> controllers) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (AdaptiveThreadBlocker blocker : blockers(controllers)) {
+            try {
+                ObjectName objectName = blocker.getObjectName();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(blocker, objectName);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to publish " + blocker + " over JMX", e);
+            }
+        }
+    }
+
+    /** Removes from JMX the adaptive blockers of the given controllers */
+    public static void unregister(List<FlowController> controllers) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (AdaptiveThreadBlocker blocker : blockers(controllers)) {
+            try {
+                ObjectName objectName = blocker.getObjectName();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to remove " + blocker + " from JMX", e);
+            }
+        }
+    }
+
+    private static List<AdaptiveThreadBlocker> blockers(List<FlowController> controllers) {
+        List<AdaptiveThreadBlocker> blockers = new ArrayList<>();
+        for (FlowController controller : controllers) {
+            if (controller instanceof SingleQueueFlowController) {
+                ThreadBlocker blocker = ((SingleQueueFlowController) controller).getBlocker();
+                if (blocker instanceof AdaptiveThreadBlocker) {
+                    blockers.add((AdaptiveThreadBlocker) blocker);
+                }
+            }
+        }
+        return blockers;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveThreadBlocker(" + name + "," + minLimit + "-" + maxLimit + ")";
+    }
+
+    /** A queued request, sorted by priority, higher to lower, then by arrival */
+    private static class WaitToken implements Comparable<WaitToken> {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Request request;
+        final int priority;
+        final long sequence;
+        final long created;
+
+        WaitToken(Request request, int priority, long sequence, long created) {
+            this.request = request;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.created = created;
+        }
+
+        @Override
+        public int compareTo(WaitToken o) {
+            int diff = Integer.compare(o.priority, priority);
+            return diff != 0 ? diff : Long.compare(sequence, o.sequence);
+        }
+    }
+}
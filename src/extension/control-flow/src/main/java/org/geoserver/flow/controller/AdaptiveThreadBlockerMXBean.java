@@ -0,0 +1,34 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+/** JMX view of an {@link AdaptiveThreadBlocker} */
+public interface AdaptiveThreadBlockerMXBean {
+
+    /** The control-flow rule the blocker was built for */
+    String getName();
+
+    /** The current concurrency limit */
+    int getLimit();
+
+    int getMinLimit();
+
+    int getMaxLimit();
+
+    /** Number of requests currently allowed to run */
+    int getRunningRequests();
+
+    /** Number of requests currently waiting for a free slot */
+    int getQueuedRequests();
+
+    /** Recent average execution time, in milliseconds */
+    double getShortLatency();
+
+    /** Long term average execution time, in milliseconds */
+    double getLongLatency();
+
+    /** Recent average time spent waiting in queue, in milliseconds */
+    double getQueueWait();
+}
@@ -0,0 +1,33 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import org.geoserver.ows.Request;
+
+/**
+ * Estimates how expensive a request is going to be, used by the {@link WeightedThreadBlocker} to
+ * admit requests by total cost rather than by count.
+ */
+public interface CostEstimator {
+
+    /**
+     * Estimates the request cost. The unit is arbitrary but must be consistent across requests,
+     * with 1 being the cost of a cheap request.
+     *
+     * @param request the request, with its parsed operation
+     * @return the estimated cost
+     */
+    double estimate(Request request);
+
+    /**
+     * Called when a request admitted by its estimated cost completed, allowing the estimator to
+     * learn from the actual execution time
+     *
+     * @param request the request
+     * @param cost the cost estimated when the request was admitted
+     * @param nanos the execution time, in nanoseconds
+     */
+    void completed(Request request, double cost, long nanos);
+}
@@ -0,0 +1,197 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.util.OwsUtils;
+import org.geoserver.platform.Operation;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Estimates the cost of rendering requests, such as a WMS GetMap, from their output size, layers
+ * and format. The cost unit is a single layer, 256x256 tile.
+ *
+ * <p>The estimator learns from the completed requests: each layer gets its own average render time
+ * per pixel, and each format a multiplier, so that slow layers and formats weight more than the
+ * others. Until a layer or format is seen, the average over all requests is used instead. The
+ * format multipliers are relative to their mean, so that a 256x256 tile of an average layer, in an
+ * average format, keeps costing 1 however fast or slow the server is.
+ *
+ * <p>The request parameters are inspected by reflection, looking for the {@code width}, {@code
+ * height}, {@code layers} and {@code format} properties, requests without a size cost 1.
+ */
+public class RenderCostEstimator implements CostEstimator {
+
+    static final Logger LOGGER = Logging.getLogger(RenderCostEstimator.class);
+
+    static final double REFERENCE_PIXELS = 256 * 256;
+
+    /** Samples in the running averages */
+    static final int WINDOW = 50;
+
+    /** Running average of nanoseconds per pixel, for a layer or for all of them */
+    static final class Rate {
+        double value;
+
+        long samples;
+
+        synchronized void add(double sample) {
+            samples++;
+            value += (sample - value) / Math.min(samples, WINDOW);
+        }
+
+        synchronized double get(double fallback) {
+            return samples > 0 ? value : fallback;
+        }
+    }
+
+    /** Size, layers and format of a rendering request */
+    static final class Shape {
+        final double pixels;
+
+        final List<String> layers;
+
+        final String format;
+
+        Shape(double pixels, List<String> layers, String format) {
+            this.pixels = pixels;
+            this.layers = layers;
+            this.format = format;
+        }
+    }
+
+    final Rate globalRate = new Rate();
+
+    final Map<String, Rate> layerRates = new ConcurrentHashMap<>();
+
+    /** Ratio between the actual and the layer based predicted time, by format */
+    final Map<String, Rate> formatFactors = new ConcurrentHashMap<>();
+
+    @Override
+    public double estimate(Request request) {
+        Shape shape = shape(request);
+        if (shape == null) {
+            return 1;
+        }
+        double global = globalRate.get(1);
+        double cost =
+                predict(shape, global)
+                        * formatFactor(shape.format)
+                        / (global * REFERENCE_PIXELS);
+        return Math.max(1, cost);
+    }
+
+    @Override
+    public void completed(Request request, double cost, long nanos) {
+        Shape shape = shape(request);
+        if (shape == null || nanos <= 0) {
+            return;
+        }
+        double global = globalRate.get(1);
+        // learn the format multiplier against the layer based prediction
+        double predicted = predict(shape, global);
+        if (shape.format != null && globalRate.get(0) > 0) {
+            formatFactors.computeIfAbsent(shape.format, k -> new Rate()).add(nanos / predicted);
+        }
+        // then the per pixel rates, net of the format multiplier
+        double rate = nanos / formatFactor(shape.format) / (shape.pixels * shape.layers.size());
+        globalRate.add(rate);
+        for (String layer : shape.layers) {
+            layerRates.computeIfAbsent(layer, k -> new Rate()).add(rate);
+        }
+    }
+
+    /** Expected render time, in nanoseconds, ignoring the format */
+    double predict(Shape shape, double global) {
+        double time = 0;
+        for (String layer : shape.layers) {
+            Rate rate = layerRates.get(layer);
+            time += (rate != null ? rate.get(global) : global) * shape.pixels;
+        }
+        return time;
+    }
+
+    /** Format multiplier, relative to the mean of all the known formats */
+    double formatFactor(String format) {
+        Rate factor = format != null ? formatFactors.get(format) : null;
+        if (factor == null) {
+            return 1;
+        }
+        double sum = 0;
+        int count = 0;
+        for (Rate rate : formatFactors.values()) {
+            sum += rate.get(1);
+            count++;
+        }
+        double mean = sum / count;
+        return mean > 0 ? factor.get(1) / mean : 1;
+    }
+
+    /** Extracts the size, layers and format of the request, or returns null if it has no size */
+    Shape shape(Request request) {
+        Operation operation = request != null ? request.getOperation() : null;
+        if (operation == null || operation.getParameters() == null) {
+            return null;
+        }
+        for (Object parameter : operation.getParameters()) {
+            if (parameter == null
+                    || !OwsUtils.has(parameter, "width")
+                    || !OwsUtils.has(parameter, "height")) {
+                continue;
+            }
+            try {
+                Object width = OwsUtils.get(parameter, "width");
+                Object height = OwsUtils.get(parameter, "height");
+                if (!(width instanceof Number) || !(height instanceof Number)) {
+                    continue;
+                }
+                double pixels = ((Number) width).doubleValue() * ((Number) height).doubleValue();
+                if (pixels <= 0) {
+                    continue;
+                }
+                List<String> layers = new ArrayList<>();
+                if (OwsUtils.has(parameter, "layers")) {
+                    Object value = OwsUtils.get(parameter, "layers");
+                    if (value instanceof Collection) {
+                        for (Object layer : (Collection<?>) value) {
+                            layers.add(name(layer));
+                        }
+                    }
+                }
+                if (layers.isEmpty()) {
+                    // no layer list, e.g. a coverage request
+                    layers.add("");
+                }
+                String format = null;
+                if (OwsUtils.has(parameter, "format")) {
+                    Object value = OwsUtils.get(parameter, "format");
+                    format = value != null ? value.toString() : null;
+                }
+                return new Shape(pixels, layers, format);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not estimate the cost of " + request, e);
+            }
+        }
+        return null;
+    }
+
+    static String name(Object layer) {
+        if (layer == null) {
+            return "";
+        }
+        if (OwsUtils.has(layer, "name")) {
+            Object name = OwsUtils.get(layer, "name");
+            return name != null ? name.toString() : "";
+        }
+        return layer.toString();
+    }
+}
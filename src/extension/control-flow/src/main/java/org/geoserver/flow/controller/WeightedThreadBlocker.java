@@ -0,0 +1,253 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Blocker admitting requests by their estimated cost, instead of by count: requests run in parallel
+ * as long as the sum of their costs stays within the budget. A request costing more than the whole
+ * budget is counted as the budget, and thus runs alone.
+ *
+ * <p>Requests are released first come first served, but cheap requests are allowed to overtake an
+ * expensive one waiting for enough budget to free up, so that a few large requests do not starve
+ * the small ones. To avoid the opposite starvation, the requests overtaking the oldest waiting one
+ * cannot cost, in total, more than the budget.
+ *
+ * <p>When a {@link PriorityProvider} is given, the waiting requests are kept sorted by decreasing
+ * priority instead, and first come first served only applies among requests of the same priority.
+ */
+public class WeightedThreadBlocker implements ThreadBlocker {
+
+    static final Logger LOGGER = Logging.getLogger(WeightedThreadBlocker.class);
+
+    final int budget;
+
+    final CostEstimator estimator;
+
+    final PriorityProvider priorityProvider;
+
+    LongSupplier clock = System::nanoTime;
+
+    // all the following are guarded by this
+    double used;
+
+    final LinkedList<WaitToken> queue = new LinkedList<>();
+
+    final Map<Request, Admission> running = new HashMap<>();
+
+    /**
+     * Builds a new blocker
+     *
+     * @param budget the total cost of the requests allowed to run in parallel
+     * @param estimator the request cost estimator
+     */
+    public WeightedThreadBlocker(int budget, CostEstimator estimator) {
+        this(budget, estimator, null);
+    }
+
+    /**
+     * Builds a new blocker releasing the waiting requests by priority
+     *
+     * @param budget the total cost of the requests allowed to run in parallel
+     * @param estimator the request cost estimator
+     * @param priorityProvider the request priority provider, or null to release requests in
+     *     arrival order
+     */
+    public WeightedThreadBlocker(
+            int budget, CostEstimator estimator, PriorityProvider priorityProvider) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The cost budget must be positive: " + budget);
+        }
+        this.budget = budget;
+        this.estimator = estimator;
+        this.priorityProvider = priorityProvider;
+    }
+
+    @Override
+    public boolean requestIncoming(Request request, long timeout) throws InterruptedException {
+        double cost = Math.max(1, Math.min(budget, estimator.estimate(request)));
+        int priority = priorityProvider != null ? priorityProvider.getPriority(request) : 0;
+        WaitToken token;
+        synchronized (this) {
+            if (fits(cost) && (queue.isEmpty() || canOvertake(queue.getFirst(), cost))) {
+                if (!queue.isEmpty()) {
+                    queue.getFirst().overtaken += cost;
+                }
+                admit(request, cost);
+                return true;
+            }
+            token = new WaitToken(request, cost, priority);
+            enqueue(token);
+        }
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Queuing request with cost " + cost + ", budget in use " + used);
+        }
+
+        boolean released;
+        try {
+            if (timeout > 0) {
+                released = token.latch.await(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                token.latch.await();
+                released = true;
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                // give back the budget if it was assigned meanwhile
+                if (!queue.remove(token)) {
+                    release(request);
+                }
+            }
+            throw e;
+        }
+        if (!released) {
+            synchronized (this) {
+                // released while timing out? Then the budget is ours anyways
+                released = !queue.remove(token);
+                if (!released) {
+                    // a smaller request might fit now that this one left the queue head
+                    releaseNext();
+                }
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public void requestComplete(Request request) {
+        Admission admission;
+        synchronized (this) {
+            admission = release(request);
+        }
+        if (admission != null) {
+            estimator.completed(request, admission.cost, clock.getAsLong() - admission.start);
+        }
+    }
+
+    private Admission release(Request request) {
+        assert Thread.holdsLock(this);
+
+        // timed out requests never got any budget
+        Admission admission = running.remove(request);
+        if (admission != null) {
+            used = running.isEmpty() ? 0 : used - admission.cost;
+            releaseNext();
+        }
+        return admission;
+    }
+
+    /** Adds the token after all the ones with the same or higher priority */
+    private void enqueue(WaitToken token) {
+        assert Thread.holdsLock(this);
+
+        ListIterator<WaitToken> it = queue.listIterator(queue.size());
+        while (it.hasPrevious()) {
+            if (it.previous().priority >= token.priority) {
+                it.next();
+                break;
+            }
+        }
+        it.add(token);
+    }
+
+    private boolean fits(double cost) {
+        return used + cost <= budget;
+    }
+
+    private boolean canOvertake(WaitToken oldest, double cost) {
+        return oldest.overtaken + cost <= budget;
+    }
+
+    private void admit(Request request, double cost) {
+        used += cost;
+        running.put(request, new Admission(cost, clock.getAsLong()));
+    }
+
+    private void releaseNext() {
+        assert Thread.holdsLock(this);
+
+        WaitToken oldest = null;
+        for (Iterator<WaitToken> it = queue.iterator(); it.hasNext(); ) {
+            WaitToken token = it.next();
+            if (fits(token.cost) && (oldest == null || canOvertake(oldest, token.cost))) {
+                if (oldest != null) {
+                    oldest.overtaken += token.cost;
+                }
+                it.remove();
+                admit(token.request, token.cost);
+                token.latch.countDown();
+            } else if (oldest == null) {
+                oldest = token;
+            }
+            if (used >= budget) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getRunningRequestsCount() {
+        return running.size();
+    }
+
+    /** Returns the total cost of the running requests */
+    public synchronized double getUsedBudget() {
+        return used;
+    }
+
+    public synchronized int getQueuedRequestsCount() {
+        return queue.size();
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public CostEstimator getEstimator() {
+        return estimator;
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedThreadBlocker(" + budget + ")";
+    }
+
+    private static class Admission {
+        final double cost;
+        final long start;
+
+        Admission(double cost, long start) {
+            this.cost = cost;
+            this.start = start;
+        }
+    }
+
+    private static class WaitToken {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Request request;
+        final double cost;
+        final int priority;
+        /** Total cost of the requests admitted ahead of this one while it was the oldest waiting */
+        double overtaken;
+
+        WaitToken(Request request, double cost, int priority) {
+            this.request = request;
+            this.cost = cost;
+            this.priority = priority;
+        }
+    }
+}
@@ -7,6 +7,7 @@ package org.geoserver.flow.config;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -17,6 +18,7 @@ import java.util.List;
 import java.util.Properties;
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
+import org.geoserver.flow.controller.AdaptiveThreadBlocker;
 import org.geoserver.flow.controller.BasicOWSController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.HttpHeaderPriorityProvider;
@@ -27,6 +29,7 @@ import org.geoserver.flow.controller.RateFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
 import org.geoserver.flow.controller.ThreadBlocker;
 import org.geoserver.flow.controller.UserConcurrentFlowController;
+import org.geoserver.flow.controller.WeightedThreadBlocker;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.resource.Files;
 import org.geoserver.platform.resource.Resource;
@@ -160,6 +163,79 @@ public class DefaultControlFlowConfigurationTest {
         checkPriorityParsing(p);
     }
 
+    @Test
+    public void testParsingAdaptive() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.global", "adaptive(10, 100)");
+        p.put("ows.wms.getmap", "adaptive(2,16)");
+        p.put("ows.wfs", "adaptive(4)");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+
+        // the invalid wfs rule is skipped
+        assertEquals(2, controllers.size());
+        BasicOWSController getMap = (BasicOWSController) controllers.get(0);
+        assertEquals("wms.getmap", getMap.getMatcher().toString());
+        assertEquals(16, getMap.getPriority());
+        assertThat(getMap.getBlocker(), CoreMatchers.instanceOf(AdaptiveThreadBlocker.class));
+        AdaptiveThreadBlocker blocker = (AdaptiveThreadBlocker) getMap.getBlocker();
+        assertEquals("ows.wms.getmap", blocker.getName());
+        assertEquals(2, blocker.getMinLimit());
+        assertEquals(16, blocker.getMaxLimit());
+        assertEquals(2, blocker.getLimit());
+
+        GlobalFlowController global = (GlobalFlowController) controllers.get(1);
+        blocker = (AdaptiveThreadBlocker) global.getBlocker();
+        assertEquals(10, blocker.getMinLimit());
+        assertEquals(100, blocker.getMaxLimit());
+    }
+
+    @Test
+    public void testParsingInvalidAdaptiveLimits() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.wms.getmap", "adaptive(0,16)");
+        p.put("ows.wfs", "adaptive(8,4)");
+        p.put("ows.wcs", "adaptive(1,1)");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+
+        // a zero min limit and a max below the min are rejected, not silently made non adaptive
+        assertEquals(1, controllers.size());
+        BasicOWSController wcs = (BasicOWSController) controllers.get(0);
+        assertEquals("wcs", wcs.getMatcher().toString());
+        AdaptiveThreadBlocker blocker = (AdaptiveThreadBlocker) wcs.getBlocker();
+        assertEquals(1, blocker.getMinLimit());
+        assertEquals(1, blocker.getMaxLimit());
+    }
+
+    @Test
+    public void testParsingCost() throws Exception {
+        Properties p = new Properties();
+        p.put("ows.wms.getmap", "cost(64)");
+        p.put("ows.wms.getfeatureinfo", "cost( 8 )");
+
+        DefaultControlFlowConfigurator configurator =
+                new DefaultControlFlowConfigurator(new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        Collections.sort(controllers, new ControllerPriorityComparator());
+
+        assertEquals(2, controllers.size());
+        for (FlowController controller : controllers) {
+            BasicOWSController ows = (BasicOWSController) controller;
+            assertThat(ows.getBlocker(), CoreMatchers.instanceOf(WeightedThreadBlocker.class));
+            WeightedThreadBlocker blocker = (WeightedThreadBlocker) ows.getBlocker();
+            int budget = "wms.getmap".equals(ows.getMatcher().toString()) ? 64 : 8;
+            assertEquals(budget, blocker.getBudget());
+            // all rules learn from the same estimator
+            assertSame(configurator.costEstimator, blocker.getEstimator());
+        }
+    }
+
     private void checkPriorityParsing(Properties p) throws Exception {
         DefaultControlFlowConfigurator configurator =
                 new DefaultControlFlowConfigurator(new FixedWatcher(p));
@@ -0,0 +1,108 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.junit.Test;
+
+public class AdaptiveThreadBlockerTest extends AbstractFlowControllerTest {
+
+    static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testLimitGrowsWhenSaturated() {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker("test", 2, 20, null);
+        for (int i = 0; i < 100; i++) {
+            blocker.sample(10 * MS, blocker.getLimit());
+        }
+        assertEquals(20, blocker.getLimit());
+        assertEquals(10, blocker.getShortLatency(), 0.001);
+    }
+
+    @Test
+    public void testLimitStableWhenUnderused() {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker("test", 8, 20, null);
+        for (int i = 0; i < 100; i++) {
+            blocker.sample(10 * MS, 1);
+        }
+        assertEquals(8, blocker.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksWithLatency() {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker("test", 2, 20, null);
+        for (int i = 0; i < 100; i++) {
+            blocker.sample(10 * MS, blocker.getLimit());
+        }
+        int saturated = blocker.getLimit();
+        // the server is overloaded, latency goes up by a factor of 4
+        for (int i = 0; i < 5; i++) {
+            blocker.sample(40 * MS, blocker.getLimit());
+        }
+        int overloaded = blocker.getLimit();
+        assertTrue(overloaded < saturated);
+        for (int i = 0; i < 100; i++) {
+            blocker.sample(40 * MS, blocker.getLimit());
+        }
+        assertTrue(blocker.getLimit() >= 2);
+    }
+
+    @Test
+    public void testQueueing() throws Exception {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker("test", 1, 1, null);
+        GlobalFlowController controller = new GlobalFlowController(1, blocker);
+
+        FlowControllerTestingThread t1 =
+                new FlowControllerTestingThread(new Request(), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 =
+                new FlowControllerTestingThread(new Request(), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(1, blocker.getRunningRequests());
+            assertEquals(1, blocker.getQueuedRequests());
+
+            // let t1 go, t2 should get the slot
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitState(ThreadState.PROCESSING, t2, MAX_WAIT);
+            assertEquals(0, blocker.getQueuedRequests());
+            assertEquals(1, blocker.getRunningRequests());
+
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(0, blocker.getRunningRequests());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AdaptiveThreadBlocker blocker = new AdaptiveThreadBlocker("test", 1, 1, null);
+        Request r1 = new Request();
+        Request r2 = new Request();
+        assertTrue(blocker.requestIncoming(r1, 100));
+        assertEquals(false, blocker.requestIncoming(r2, 50));
+        assertEquals(0, blocker.getQueuedRequests());
+
+        // timed out requests are completed as well, must not free a slot
+        blocker.requestComplete(r2);
+        assertEquals(1, blocker.getRunningRequests());
+        blocker.requestComplete(r1);
+        assertEquals(0, blocker.getRunningRequests());
+    }
+}
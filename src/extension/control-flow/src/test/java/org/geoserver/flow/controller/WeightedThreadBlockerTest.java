@@ -0,0 +1,246 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.Operation;
+import org.junit.Test;
+
+public class WeightedThreadBlockerTest extends AbstractFlowControllerTest {
+
+    /** Estimator returning costs set by the test */
+    static class FixedCosts implements CostEstimator {
+        Map<Request, Double> costs = new ConcurrentHashMap<>();
+
+        Request request(double cost) {
+            Request request = new Request();
+            costs.put(request, cost);
+            return request;
+        }
+
+        @Override
+        public double estimate(Request request) {
+            return costs.getOrDefault(request, 1d);
+        }
+
+        @Override
+        public void completed(Request request, double cost, long nanos) {}
+    }
+
+    /** Mimics the properties of a GetMap request */
+    public static class MapRequest {
+        int width;
+        int height;
+        List<String> layers;
+        String format;
+
+        MapRequest(int width, int height, String format, String... layers) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.layers = Arrays.asList(layers);
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public List<String> getLayers() {
+            return layers;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+    }
+
+    static Request mapRequest(int width, int height, String format, String... layers) {
+        Request request = new Request();
+        request.setOperation(
+                new Operation(
+                        "GetMap",
+                        null,
+                        null,
+                        new Object[] {new MapRequest(width, height, format, layers)}));
+        return request;
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        FixedCosts costs = new FixedCosts();
+        WeightedThreadBlocker blocker = new WeightedThreadBlocker(10, costs);
+
+        Request r1 = costs.request(6);
+        Request r2 = costs.request(3);
+        Request r3 = costs.request(2);
+        assertTrue(blocker.requestIncoming(r1, 100));
+        assertTrue(blocker.requestIncoming(r2, 100));
+        assertEquals(9, blocker.getUsedBudget(), 0d);
+        // does not fit
+        assertFalse(blocker.requestIncoming(r3, 50));
+        assertEquals(0, blocker.getQueuedRequestsCount());
+
+        blocker.requestComplete(r3);
+        blocker.requestComplete(r1);
+        assertTrue(blocker.requestIncoming(r3, 100));
+        assertEquals(2, blocker.getRunningRequestsCount());
+        assertEquals(5, blocker.getUsedBudget(), 0d);
+    }
+
+    @Test
+    public void testLargeRequestRunsAlone() throws Exception {
+        FixedCosts costs = new FixedCosts();
+        WeightedThreadBlocker blocker = new WeightedThreadBlocker(10, costs);
+        Request huge = costs.request(1000);
+        assertTrue(blocker.requestIncoming(huge, 100));
+        assertEquals(10, blocker.getUsedBudget(), 0d);
+        assertFalse(blocker.requestIncoming(costs.request(1), 50));
+    }
+
+    @Test
+    public void testSmallOvertakeLarge() throws Exception {
+        FixedCosts costs = new FixedCosts();
+        WeightedThreadBlocker blocker = new WeightedThreadBlocker(4, costs);
+        Request running = costs.request(2);
+        assertTrue(blocker.requestIncoming(running, 100));
+
+        // a large request waits for the running one to complete
+        FlowControllerTestingThread large =
+                new FlowControllerTestingThread(
+                        costs.request(4),
+                        0,
+                        Long.MAX_VALUE,
+                        new GlobalFlowController(4, blocker));
+        try {
+            large.start();
+            waitBlocked(large, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, large.state);
+
+            // small ones can still go, until they overtook as much as the budget
+            Request small1 = costs.request(1);
+            Request small2 = costs.request(1);
+            assertTrue(blocker.requestIncoming(small1, 100));
+            assertTrue(blocker.requestIncoming(small2, 100));
+            blocker.requestComplete(small1);
+            blocker.requestComplete(small2);
+            Request small3 = costs.request(2);
+            assertTrue(blocker.requestIncoming(small3, 100));
+            blocker.requestComplete(small3);
+            assertFalse(blocker.requestIncoming(costs.request(1), 50));
+
+            // once the budget frees up, the large one goes
+            blocker.requestComplete(running);
+            waitState(ThreadState.PROCESSING, large, MAX_WAIT);
+            assertEquals(4, blocker.getUsedBudget(), 0d);
+            large.interrupt();
+            waitTerminated(large, MAX_WAIT);
+            assertEquals(0, blocker.getUsedBudget(), 0d);
+        } finally {
+            waitAndKill(large, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        FixedCosts costs = new FixedCosts();
+        Map<Request, Integer> priorities = new ConcurrentHashMap<>();
+        WeightedThreadBlocker blocker =
+                new WeightedThreadBlocker(2, costs, r -> priorities.getOrDefault(r, 0));
+        GlobalFlowController controller = new GlobalFlowController(2, blocker);
+        Request running = costs.request(2);
+        assertTrue(blocker.requestIncoming(running, 100));
+
+        Request lowRequest = costs.request(2);
+        priorities.put(lowRequest, 1);
+        Request highRequest = costs.request(2);
+        priorities.put(highRequest, 5);
+        FlowControllerTestingThread low =
+                new FlowControllerTestingThread(lowRequest, 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread high =
+                new FlowControllerTestingThread(highRequest, 0, Long.MAX_VALUE, controller);
+        try {
+            low.start();
+            waitBlocked(low, MAX_WAIT);
+            high.start();
+            waitBlocked(high, MAX_WAIT);
+            assertEquals(2, blocker.getQueuedRequestsCount());
+
+            // the high priority request goes first, although it came later
+            blocker.requestComplete(running);
+            waitState(ThreadState.PROCESSING, high, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, low.state);
+
+            high.interrupt();
+            waitState(ThreadState.PROCESSING, low, MAX_WAIT);
+        } finally {
+            waitAndKill(low, MAX_WAIT);
+            waitAndKill(high, MAX_WAIT);
+        }
+    }
+
+    @Test
+    public void testRenderCostReferenceTile() throws Exception {
+        RenderCostEstimator estimator = new RenderCostEstimator();
+        // whatever the actual render time, a learned reference tile costs about one
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < 100; i++) {
+            estimator.completed(mapRequest(256, 256, "image/png", "a"), 1, 6 * ms);
+        }
+        assertEquals(1, estimator.estimate(mapRequest(256, 256, "image/png", "a")), 0.1);
+        assertEquals(16, estimator.estimate(mapRequest(1024, 1024, "image/png", "a")), 1);
+        String[] layers = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"};
+        assertEquals(
+                16 * 10, estimator.estimate(mapRequest(1024, 1024, "image/png", layers)), 10);
+
+        // still true with several formats, for the average one
+        for (int i = 0; i < 100; i++) {
+            estimator.completed(mapRequest(256, 256, "image/png", "a"), 1, 6 * ms);
+            estimator.completed(mapRequest(256, 256, "image/jpeg", "a"), 1, 2 * ms);
+        }
+        double png = estimator.estimate(mapRequest(1024, 1024, "image/png", "a"));
+        double jpeg = estimator.estimate(mapRequest(1024, 1024, "image/jpeg", "a"));
+        assertEquals(16, (png + jpeg) / 2, 2);
+        assertEquals(3, png / jpeg, 0.5);
+    }
+
+    @Test
+    public void testRenderCostEstimate() throws Exception {
+        RenderCostEstimator estimator = new RenderCostEstimator();
+        // no size, minimum cost
+        assertEquals(1, estimator.estimate(new Request()), 0d);
+        // without history, cost grows with area and layers
+        assertEquals(1, estimator.estimate(mapRequest(256, 256, "image/png", "a")), 0d);
+        assertEquals(16, estimator.estimate(mapRequest(1024, 1024, "image/png", "a")), 0d);
+        assertEquals(32, estimator.estimate(mapRequest(1024, 1024, "image/png", "a", "b")), 0d);
+
+        // layer b turns out to be 4 times slower than a, pdf 2 times slower than png
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < 100; i++) {
+            estimator.completed(mapRequest(256, 256, "image/png", "a"), 1, ms);
+            estimator.completed(mapRequest(256, 256, "image/png", "b"), 1, 4 * ms);
+            estimator.completed(mapRequest(256, 256, "application/pdf", "a"), 1, 2 * ms);
+        }
+        // large enough not to be rounded up to the minimum cost
+        double a = estimator.estimate(mapRequest(1024, 1024, "image/png", "a"));
+        double b = estimator.estimate(mapRequest(1024, 1024, "image/png", "b"));
+        double pdf = estimator.estimate(mapRequest(1024, 1024, "application/pdf", "a"));
+        assertEquals(4, b / a, 0.5);
+        assertEquals(2, pdf / a, 0.5);
+    }
+}
@@ -0,0 +1,1029 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.geoserver.monitor.MemoryMonitorDAO.AndPredicate;
+import org.geoserver.monitor.MemoryMonitorDAO.DateRange;
+import org.geoserver.monitor.MemoryMonitorDAO.OrPredicate;
+import org.geoserver.monitor.MemoryMonitorDAO.Predicate;
+import org.geoserver.monitor.MemoryMonitorDAO.PropertyCompare;
+import org.geoserver.monitor.MemoryMonitorDAO.Sorter;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.Query.SortOrder;
+import org.geoserver.monitor.RequestSegment.Column;
+import org.geoserver.monitor.RequestSegment.Kind;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Monitor DAO persisting the request history in an embedded, append only columnar store, located
+ * in the {@code monitoring/history} directory of the data directory.
+ *
+ * <p>Completed requests are buffered in memory and periodically flushed into immutable {@link
+ * RequestSegment} files, partitioned by day of start time. Queries only decode the columns they
+ * need, skip the segments whose min/max indexes and dictionaries rule out a match, and compute
+ * aggregates while streaming over the segments.
+ *
+ * <p>The following configuration properties are supported:
+ *
+ * <ul>
+ *   <li>{@code columnar.flushSize}: number of buffered requests triggering a flush, 1000 by default
+ *   <li>{@code columnar.flushInterval}: seconds between periodic flushes, 30 by default
+ *   <li>{@code columnar.retentionDays}: days of history to keep, 0 (the default) keeps everything
+ * </ul>
+ *
+ * Segments are never modified: a request updated after being flushed, for example by a post
+ * processor, is buffered again and its new version, written in a later segment, replaces the old
+ * one in query results.
+ */
+public class ColumnarMonitorDAO implements MonitorDAO {
+
+    static final Logger LOGGER = Logging.getLogger(ColumnarMonitorDAO.class);
+
+    public static final String NAME = "columnar";
+
+    static final String EXTENSION = ".seg";
+
+    static final int DEFAULT_FLUSH_SIZE = 1000;
+
+    static final int DEFAULT_FLUSH_INTERVAL = 30;
+
+    static final Pattern AGGREGATE =
+            Pattern.compile("(count|sum|avg|min|max|p(\\d{1,2}))\\((\\w*)\\)");
+
+    GeoServerResourceLoader loader;
+
+    File directory;
+
+    int flushSize = DEFAULT_FLUSH_SIZE;
+
+    int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    int retentionDays = 0;
+
+    ScheduledExecutorService scheduler;
+
+    AtomicLong REQUEST_ID_GEN = new AtomicLong(1);
+
+    AtomicLong SEGMENT_SEQ_GEN = new AtomicLong(1);
+
+    Map<Long, RequestData> live = new ConcurrentHashMap<>();
+
+    /** Saved requests waiting to be flushed, guarded by this */
+    LinkedHashMap<Long, RequestData> buffer = new LinkedHashMap<>();
+
+    /** Ids of the buffered requests replacing a flushed version, guarded by this */
+    Set<Long> bufferUpdates = new HashSet<>();
+
+    /** Requests being written by the current flush, guarded by this */
+    List<RequestData> flushing = Collections.emptyList();
+
+    Set<Long> flushingUpdates = Collections.emptySet();
+
+    /** Segments in write order, guarded by this */
+    List<RequestSegment> segments = Collections.emptyList();
+
+    /** Segment holding the latest version of requests updated after flush, guarded by this */
+    Map<Long, RequestSegment> latest = new HashMap<>();
+
+    final Object flushLock = new Object();
+
+    public ColumnarMonitorDAO(GeoServerResourceLoader loader) {
+        this.loader = loader;
+    }
+
+    ColumnarMonitorDAO(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(MonitorConfig config) {
+        Integer size = config.getProperty(NAME, "flushSize", Integer.class);
+        if (size != null) {
+            flushSize = size;
+        }
+        Integer interval = config.getProperty(NAME, "flushInterval", Integer.class);
+        if (interval != null) {
+            flushInterval = interval;
+        }
+        Integer retention = config.getProperty(NAME, "retentionDays", Integer.class);
+        if (retention != null) {
+            retentionDays = retention;
+        }
+        try {
+            if (directory == null) {
+                directory = loader.findOrCreateDirectory("monitoring", "history");
+            }
+            open();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open the request history store", e);
+        }
+    }
+
+    /** Loads the segment headers and starts the periodic flush */
+    void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        TreeMap<Long, RequestSegment> sorted = new TreeMap<>();
+        for (File day : list(directory)) {
+            for (File file : list(day)) {
+                if (file.getName().endsWith(EXTENSION)) {
+                    try {
+                        sorted.put(sequence(file), RequestSegment.open(file));
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Skipping unreadable segment " + file, e);
+                    }
+                } else if (file.getName().endsWith(".tmp")) {
+                    // left over by an interrupted flush
+                    file.delete();
+                }
+            }
+        }
+
+        long maxId = 0;
+        Map<Long, RequestSegment> latest = new HashMap<>();
+        for (RequestSegment segment : sorted.values()) {
+            if (segment.rows > 0) {
+                maxId = Math.max(maxId, segment.info("id").max);
+            }
+            for (long id : segment.updates) {
+                latest.put(id, segment);
+            }
+        }
+        synchronized (this) {
+            this.segments = new ArrayList<>(sorted.values());
+            this.latest = latest;
+        }
+        REQUEST_ID_GEN.set(maxId + 1);
+        SEGMENT_SEQ_GEN.set(sorted.isEmpty() ? 1 : sorted.lastKey() + 1);
+
+        if (scheduler == null && flushInterval > 0) {
+            scheduler =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "GeoServer monitor history flush");
+                                t.setDaemon(true);
+                                return t;
+                            });
+            scheduler.scheduleWithFixedDelay(
+                    this::flushQuietly, flushInterval, flushInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    static File[] list(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    static long sequence(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    static SimpleDateFormat dayFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    public RequestData init(RequestData data) {
+        data.setId(REQUEST_ID_GEN.getAndIncrement());
+        return data;
+    }
+
+    public void add(RequestData data) {
+        live.put(data.getId(), data);
+    }
+
+    public void update(RequestData data) {
+        if (live.containsKey(data.getId())) {
+            live.put(data.getId(), data);
+            return;
+        }
+        synchronized (this) {
+            // no longer buffered, the new version supersedes the flushed one
+            if (buffer.put(data.getId(), data) == null) {
+                bufferUpdates.add(data.getId());
+            }
+        }
+    }
+
+    public void save(RequestData data) {
+        int buffered;
+        synchronized (this) {
+            buffer.put(data.getId(), data);
+            buffered = buffer.size();
+        }
+        live.remove(data.getId());
+        if (buffered >= flushSize) {
+            flushQuietly();
+        }
+    }
+
+    void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to flush the request history", e);
+        }
+    }
+
+    /** Writes the buffered requests into new segments, one per day of start time */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            List<RequestData> rows;
+            Set<Long> updates;
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                rows = new ArrayList<>(buffer.values());
+                updates = bufferUpdates;
+                flushing = rows;
+                flushingUpdates = updates;
+                buffer = new LinkedHashMap<>();
+                bufferUpdates = new HashSet<>();
+            }
+
+            Date now = new Date();
+            SimpleDateFormat format = dayFormat();
+            TreeMap<String, List<RequestData>> days = new TreeMap<>();
+            for (RequestData r : rows) {
+                Date start = r.getStartTime() != null ? r.getStartTime() : now;
+                days.computeIfAbsent(format.format(start), k -> new ArrayList<>()).add(r);
+            }
+
+            List<RequestSegment> written = new ArrayList<>();
+            try {
+                for (Map.Entry<String, List<RequestData>> e : days.entrySet()) {
+                    File dir = new File(directory, e.getKey());
+                    if (!dir.exists() && !dir.mkdirs()) {
+                        throw new IOException("Could not create " + dir);
+                    }
+                    long seq = SEGMENT_SEQ_GEN.getAndIncrement();
+                    File file = new File(dir, String.format("%010d", seq) + EXTENSION);
+                    long[] replaced =
+                            e.getValue()
+                                    .stream()
+                                    .mapToLong(RequestData::getId)
+                                    .filter(updates::contains)
+                                    .toArray();
+                    written.add(RequestSegment.write(file, e.getValue(), replaced));
+                }
+            } catch (IOException | RuntimeException e) {
+                for (RequestSegment segment : written) {
+                    segment.file.delete();
+                }
+                synchronized (this) {
+                    // put the requests back, ahead of the ones saved in the meantime
+                    LinkedHashMap<Long, RequestData> restored = new LinkedHashMap<>();
+                    for (RequestData r : rows) {
+                        restored.put(r.getId(), r);
+                    }
+                    restored.putAll(buffer);
+                    buffer = restored;
+                    bufferUpdates.addAll(updates);
+                    flushing = Collections.emptyList();
+                    flushingUpdates = Collections.emptySet();
+                }
+                throw e;
+            }
+
+            List<RequestSegment> expired = new ArrayList<>();
+            synchronized (this) {
+                List<RequestSegment> current = new ArrayList<>(segments);
+                current.addAll(written);
+                if (retentionDays > 0) {
+                    long retention = TimeUnit.DAYS.toMillis(retentionDays);
+                    String oldest = format.format(new Date(now.getTime() - retention));
+                    for (RequestSegment segment : current) {
+                        if (segment.file.getParentFile().getName().compareTo(oldest) < 0) {
+                            expired.add(segment);
+                        }
+                    }
+                    current.removeAll(expired);
+                }
+                Map<Long, RequestSegment> latest = new HashMap<>(this.latest);
+                latest.values().removeAll(expired);
+                for (RequestSegment segment : written) {
+                    for (long id : segment.updates) {
+                        latest.put(id, segment);
+                    }
+                }
+                this.segments = current;
+                this.latest = latest;
+                this.flushing = Collections.emptyList();
+                this.flushingUpdates = Collections.emptySet();
+            }
+            for (RequestSegment segment : expired) {
+                File dir = segment.file.getParentFile();
+                segment.file.delete();
+                if (list(dir).length == 0) {
+                    dir.delete();
+                }
+            }
+        }
+    }
+
+    public RequestData getRequest(long id) {
+        RequestData data = live.get(id);
+        if (data != null) {
+            return data;
+        }
+        Snapshot snapshot = snapshot();
+        data = snapshot.buffer.get(id);
+        if (data != null) {
+            return data;
+        }
+        for (RequestData r : snapshot.flushing) {
+            if (r.getId() == id) {
+                return r;
+            }
+        }
+        // the latest version of a request is in the most recent segment holding it
+        for (int i = snapshot.segments.size() - 1; i >= 0; i--) {
+            RequestSegment segment = snapshot.segments.get(i);
+            if (segment.rows == 0 || !segment.mayContain(id)) {
+                continue;
+            }
+            RequestData[] rows = new RequestData[segment.rows];
+            try {
+                segment.read(Collections.singleton(RequestSegment.column("id")), rows);
+                for (int j = 0; j < rows.length; j++) {
+                    if (rows[j].getId() == id) {
+                        segment.read(RequestSegment.COLUMNS, rows);
+                        return rows[j];
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read segment " + segment.file, e);
+            }
+        }
+        return null;
+    }
+
+    public List<RequestData> getRequests() {
+        return getRequests(new Query());
+    }
+
+    public List<RequestData> getRequests(Query q) {
+        Predicate predicate = toPredicate(q);
+        boolean sort = q.getSortBy() != null || q.getFromDate() != null || q.getToDate() != null;
+        long offset = q.getOffset() != null ? q.getOffset() : 0;
+        long count = q.getCount() != null ? q.getCount() : Long.MAX_VALUE;
+
+        List<RequestData> requests = new ArrayList<>();
+        if (!sort) {
+            // no need to look past the requested page
+            long[] skip = {offset};
+            scan(
+                    q,
+                    predicate,
+                    null,
+                    r -> {
+                        if (skip[0] > 0) {
+                            skip[0]--;
+                        } else {
+                            requests.add(r);
+                        }
+                        return requests.size() < count;
+                    });
+            return requests;
+        }
+
+        scan(q, predicate, null, requests::add);
+        if (q.getSortBy() != null) {
+            Collections.sort(requests, new Sorter(q.getSortBy(), q.getSortOrder()));
+        } else {
+            Collections.sort(requests, new Sorter("startTime", SortOrder.DESC));
+        }
+        return page(requests, offset, count);
+    }
+
+    public void getRequests(Query query, RequestDataVisitor visitor) {
+        if (query.getAggregates().isEmpty()) {
+            for (RequestData r : getRequests(query)) {
+                visitor.visit(r);
+            }
+        } else {
+            aggregate(query, visitor);
+        }
+    }
+
+    public long getCount(Query query) {
+        long[] count = {0};
+        // only decodes the columns used by the filter
+        scan(
+                query,
+                toPredicate(query),
+                Collections.emptySet(),
+                r -> {
+                    count[0]++;
+                    return true;
+                });
+        long offset = query.getOffset() != null ? query.getOffset() : 0;
+        long max = query.getCount() != null ? query.getCount() : Long.MAX_VALUE;
+        return Math.max(0, Math.min(count[0] - offset, max));
+    }
+
+    public Iterator<RequestData> getIterator(Query query) {
+        return getRequests(query).iterator();
+    }
+
+    public List<RequestData> getOwsRequests() {
+        return getRequests(new Query().filter("service", null, Comparison.NEQ));
+    }
+
+    public List<RequestData> getOwsRequests(String service, String operation, String version) {
+        Query q = new Query().filter("service", null, Comparison.NEQ);
+        if (service != null) {
+            q.and("service", service, Comparison.EQ);
+        }
+        if (operation != null) {
+            q.and("operation", operation, Comparison.EQ);
+        }
+        if (version != null) {
+            q.and("owsVersion", version, Comparison.EQ);
+        }
+        return getRequests(q);
+    }
+
+    public void clear() {
+        synchronized (flushLock) {
+            List<RequestSegment> removed;
+            synchronized (this) {
+                live.clear();
+                buffer.clear();
+                bufferUpdates.clear();
+                removed = segments;
+                segments = Collections.emptyList();
+                latest = new HashMap<>();
+            }
+            for (RequestSegment segment : removed) {
+                segment.file.delete();
+            }
+            for (File dir : list(directory)) {
+                if (dir.isDirectory() && list(dir).length == 0) {
+                    dir.delete();
+                }
+            }
+        }
+    }
+
+    public void dispose() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        flushQuietly();
+        live.clear();
+        synchronized (this) {
+            segments = Collections.emptyList();
+            latest = new HashMap<>();
+        }
+        REQUEST_ID_GEN = new AtomicLong(1);
+    }
+
+    /** Consumes the rows of a scan, returning false to stop it */
+    interface RowHandler {
+        boolean handle(RequestData data);
+    }
+
+    /** Consistent view of the requests that are not live */
+    static final class Snapshot {
+        List<RequestSegment> segments;
+
+        Map<Long, RequestSegment> latest;
+
+        List<RequestData> flushing;
+
+        Map<Long, RequestData> buffer;
+
+        /** Requests whose flushed versions have been superseded */
+        Set<Long> overrides;
+
+        /** Returns true if the row of the segment is the latest version of the request */
+        boolean isLatest(RequestSegment segment, long id) {
+            if (overrides.contains(id)) {
+                return false;
+            }
+            RequestSegment l = latest.get(id);
+            return l == null || l == segment;
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.segments = segments;
+        snapshot.latest = latest;
+        snapshot.flushing = flushing;
+        snapshot.buffer = new LinkedHashMap<>(buffer);
+        snapshot.overrides = new HashSet<>(bufferUpdates);
+        snapshot.overrides.addAll(flushingUpdates);
+        return snapshot;
+    }
+
+    /**
+     * Streams the requests matching the query filter and date range, oldest segments first, then
+     * the buffered and the live requests.
+     *
+     * @param columns the columns to decode besides the ones used by the filter, or null for all
+     */
+    void scan(Query q, Predicate predicate, Collection<Column> columns, RowHandler handler) {
+        Set<Column> filterColumns = new LinkedHashSet<>();
+        filterColumns.add(RequestSegment.column("id"));
+        collectColumns(q.getFilter(), filterColumns);
+        if (q.getFromDate() != null || q.getToDate() != null) {
+            filterColumns.add(RequestSegment.column("startTime"));
+        }
+        List<Column> otherColumns =
+                new ArrayList<>(columns != null ? columns : RequestSegment.COLUMNS);
+        otherColumns.removeAll(filterColumns);
+
+        Snapshot snapshot = snapshot();
+        for (RequestSegment segment : snapshot.segments) {
+            if (segment.rows == 0
+                    || (q.getFilter() != null && !segment.mayMatch(q.getFilter()))
+                    || !segment.mayMatch(q.getFromDate(), q.getToDate())) {
+                continue;
+            }
+            RequestData[] rows = new RequestData[segment.rows];
+            BitSet matches = new BitSet(rows.length);
+            try {
+                segment.read(filterColumns, rows);
+                for (int i = 0; i < rows.length; i++) {
+                    if (snapshot.isLatest(segment, rows[i].getId())
+                            && (predicate == null || predicate.matches(rows[i]))) {
+                        matches.set(i);
+                    }
+                }
+                if (matches.isEmpty()) {
+                    continue;
+                }
+                segment.read(otherColumns, rows);
+            } catch (IOException e) {
+                if (segment.file.exists()) {
+                    LOGGER.log(Level.WARNING, "Failed to read segment " + segment.file, e);
+                }
+                // otherwise removed by the retention, or cleared
+                continue;
+            }
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                if (!handler.handle(rows[i])) {
+                    return;
+                }
+            }
+        }
+
+        List<RequestData> recent = new ArrayList<>();
+        for (RequestData r : snapshot.flushing) {
+            if (!snapshot.buffer.containsKey(r.getId())) {
+                recent.add(r);
+            }
+        }
+        recent.addAll(snapshot.buffer.values());
+        List<RequestData> running = new ArrayList<>(live.values());
+        Collections.sort(running, new Sorter("id", SortOrder.ASC));
+        recent.addAll(running);
+        for (RequestData r : recent) {
+            if ((predicate == null || predicate.matches(r)) && !handler.handle(r)) {
+                return;
+            }
+        }
+    }
+
+    static void collectColumns(Filter filter, Set<Column> columns) {
+        if (filter == null) {
+            return;
+        }
+        if (filter instanceof CompositeFilter) {
+            for (Filter f : ((CompositeFilter) filter).getFilters()) {
+                collectColumns(f, columns);
+            }
+            return;
+        }
+        for (Object o : Arrays.asList(filter.getLeft(), filter.getRight())) {
+            if (o instanceof String && RequestSegment.column((String) o) != null) {
+                columns.add(RequestSegment.column((String) o));
+            }
+        }
+    }
+
+    static Predicate toPredicate(Query q) {
+        Predicate predicate = q.getFilter() != null ? toPredicate(q.getFilter()) : null;
+        if (q.getFromDate() != null || q.getToDate() != null) {
+            Predicate range = new DateRange(q.getFromDate(), q.getToDate());
+            predicate = predicate == null ? range : new AndPredicate(predicate, range);
+        }
+        return predicate;
+    }
+
+    /**
+     * Compiles the filter into a predicate reading the persisted properties directly, {@code
+     * resource} and {@code resources} match if any of the request resources does
+     */
+    static Predicate toPredicate(Filter f) {
+        if (f instanceof CompositeFilter) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (Filter child : ((CompositeFilter) f).getFilters()) {
+                predicates.add(toPredicate(child));
+            }
+            return f instanceof Or ? new OrPredicate(predicates) : new AndPredicate(predicates);
+        }
+        Object left = f.getLeft();
+        Object right = f.getRight();
+        if (left instanceof String && RequestSegment.column((String) left) != null) {
+            return new ColumnCompare(RequestSegment.column((String) left), f.getType(), right);
+        } else if (right instanceof String && RequestSegment.column((String) right) != null) {
+            return new ColumnCompare(RequestSegment.column((String) right), f.getType(), left);
+        }
+        // a property that is not persisted
+        return new PropertyCompare(left, f.getType(), right);
+    }
+
+    static class ColumnCompare implements Predicate {
+
+        Column column;
+        Comparison compare;
+        Object value;
+
+        ColumnCompare(Column column, Comparison compare, Object value) {
+            this.column = column;
+            this.compare = compare;
+            this.value = value;
+        }
+
+        public boolean matches(RequestData data) {
+            Object o = column.getter.apply(data);
+            if (column.kind == Kind.LIST) {
+                Collection<?> values = o != null ? (Collection<?>) o : Collections.emptyList();
+                switch (compare) {
+                    case EQ:
+                        return value == null ? values.isEmpty() : values.contains(value);
+                    case NEQ:
+                        return value == null ? !values.isEmpty() : !values.contains(value);
+                    case IN:
+                        if (value instanceof Collection) {
+                            for (Object v : values) {
+                                if (((Collection<?>) value).contains(v)) {
+                                    return true;
+                                }
+                            }
+                            return false;
+                        }
+                        // value IN resources
+                        return values.contains(value);
+                    default:
+                        throw new UnsupportedOperationException(
+                                "Resources only support equality, non-equality and IN comparison");
+                }
+            }
+
+            if (o == null) {
+                return value == null && compare == Comparison.EQ;
+            }
+            switch (compare) {
+                case EQ:
+                    return o.equals(value);
+                case NEQ:
+                    return !o.equals(value);
+                case IN:
+                    if (!(value instanceof Collection)) {
+                        throw new UnsupportedOperationException(
+                                "IN comparison only supported against list values");
+                    }
+                    return ((Collection<?>) value).contains(o);
+                default:
+                    @SuppressWarnings("unchecked")
+                    int c = ((Comparable<Object>) o).compareTo(value);
+                    switch (compare) {
+                        case LT:
+                            return c < 0;
+                        case LTE:
+                            return c <= 0;
+                        case GT:
+                            return c > 0;
+                        case GTE:
+                            return c >= 0;
+                        default:
+                            return false;
+                    }
+            }
+        }
+    }
+
+    static <T> List<T> page(List<T> list, long offset, long count) {
+        int from = (int) Math.min(offset, list.size());
+        int to = (int) Math.min(list.size(), from + Math.min(count, Integer.MAX_VALUE));
+        return list.subList(from, to);
+    }
+
+    /** A parsed aggregate function, one of count, sum, avg, min, max and pNN */
+    static final class Aggregate {
+        final String name;
+
+        final String function;
+
+        final Column column;
+
+        final int percentile;
+
+        Aggregate(String name) {
+            Matcher m = AGGREGATE.matcher(name.replace(" ", ""));
+            if (!m.matches()) {
+                throw new IllegalArgumentException("Unsupported aggregate " + name);
+            }
+            this.name = name;
+            this.function = m.group(2) != null ? "p" : m.group(1);
+            this.percentile = m.group(2) != null ? Integer.parseInt(m.group(2)) : 0;
+            String property = m.group(3);
+            if (property.isEmpty()) {
+                if (!"count".equals(function)) {
+                    throw new IllegalArgumentException("Unsupported aggregate " + name);
+                }
+                this.column = null;
+            } else {
+                this.column = RequestSegment.column(property);
+                if (column == null || !("count".equals(function) || column.isNumeric())) {
+                    throw new IllegalArgumentException("Unsupported aggregate " + name);
+                }
+            }
+        }
+
+        Accumulator accumulator() {
+            return new Accumulator(this);
+        }
+    }
+
+    /** Accumulates the values of an aggregate over a group */
+    static final class Accumulator {
+        final Aggregate aggregate;
+
+        long count;
+
+        long sum;
+
+        long min = Long.MAX_VALUE;
+
+        long max = Long.MIN_VALUE;
+
+        long[] values;
+
+        Accumulator(Aggregate aggregate) {
+            this.aggregate = aggregate;
+            if ("p".equals(aggregate.function)) {
+                values = new long[16];
+            }
+        }
+
+        void add(RequestData data) {
+            if (aggregate.column == null) {
+                count++;
+                return;
+            }
+            Object value = aggregate.column.getter.apply(data);
+            if (value == null) {
+                return;
+            }
+            if (aggregate.column.kind == Kind.LIST) {
+                count += ((Collection<?>) value).size();
+                return;
+            }
+            long v = aggregate.column.isNumeric() ? aggregate.column.toLong(value) : 0;
+            if (values != null) {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[(int) count] = v;
+            }
+            count++;
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        Object result() {
+            switch (aggregate.function) {
+                case "count":
+                    return count;
+                case "sum":
+                    return sum;
+                case "avg":
+                    return count > 0 ? (double) sum / count : null;
+                case "min":
+                    return count > 0 ? aggregate.column.fromLong(min) : null;
+                case "max":
+                    return count > 0 ? aggregate.column.fromLong(max) : null;
+                default:
+                    if (count == 0) {
+                        return null;
+                    }
+                    // nearest rank
+                    long[] sorted = Arrays.copyOf(values, (int) count);
+                    Arrays.sort(sorted);
+                    int rank = (int) Math.ceil(aggregate.percentile / 100d * count);
+                    return aggregate.column.fromLong(sorted[Math.max(0, rank - 1)]);
+            }
+        }
+    }
+
+    /** A group of an aggregate query with its accumulators */
+    static final class Group {
+        final List<Object> key;
+
+        final Accumulator[] accumulators;
+
+        Group(List<Object> key, List<Aggregate> aggregates) {
+            this.key = key;
+            this.accumulators = new Accumulator[aggregates.size()];
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i] = aggregates.get(i).accumulator();
+            }
+        }
+    }
+
+    /**
+     * Computes the aggregates of the query while streaming the matching requests. Grouping by
+     * {@code resource} counts a request once for each of its resources.
+     */
+    void aggregate(Query q, RequestDataVisitor visitor) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        Set<Column> columns = new LinkedHashSet<>();
+        for (String a : q.getAggregates()) {
+            Aggregate aggregate = new Aggregate(a);
+            aggregates.add(aggregate);
+            if (aggregate.column != null) {
+                columns.add(aggregate.column);
+            }
+        }
+        List<Column> groupBy = new ArrayList<>();
+        for (String g : q.getGroupBy()) {
+            Column column = RequestSegment.column(g);
+            if (column == null) {
+                throw new IllegalArgumentException("Unsupported group by property " + g);
+            }
+            groupBy.add(column);
+            columns.add(column);
+        }
+        boolean explode = groupBy.stream().anyMatch(c -> c.kind == Kind.LIST);
+
+        Predicate predicate = toPredicate(q);
+        Map<List<Object>, Group> groups = new LinkedHashMap<>();
+        scan(
+                q,
+                predicate,
+                columns,
+                r -> {
+                    if (!explode) {
+                        List<Object> key = new ArrayList<>(groupBy.size());
+                        for (Column c : groupBy) {
+                            key.add(c.getter.apply(r));
+                        }
+                        add(groups, key, aggregates, r);
+                        return true;
+                    }
+                    // one row per resource, the filter applies to the single resource
+                    List<String> resources =
+                            r.getResources().isEmpty()
+                                    ? Arrays.asList((String) null)
+                                    : r.getResources();
+                    for (String resource : resources) {
+                        RequestData single = new RequestData();
+                        for (Column c : RequestSegment.COLUMNS) {
+                            c.setter.accept(single, c.getter.apply(r));
+                        }
+                        single.setResources(
+                                resource != null
+                                        ? new ArrayList<>(Arrays.asList(resource))
+                                        : new ArrayList<>());
+                        if (predicate != null && !predicate.matches(single)) {
+                            continue;
+                        }
+                        List<Object> key = new ArrayList<>(groupBy.size());
+                        for (Column c : groupBy) {
+                            key.add(c.kind == Kind.LIST ? resource : c.getter.apply(single));
+                        }
+                        add(groups, key, aggregates, single);
+                    }
+                    return true;
+                });
+        if (groups.isEmpty() && groupBy.isEmpty()) {
+            groups.put(Collections.emptyList(), new Group(Collections.emptyList(), aggregates));
+        }
+
+        List<Group> results = new ArrayList<>(groups.values());
+        if (q.getSortBy() != null) {
+            Comparator<Group> comparator = comparator(q.getSortBy(), aggregates, groupBy);
+            if (q.getSortOrder() == SortOrder.DESC) {
+                comparator = comparator.reversed();
+            }
+            Collections.sort(results, comparator);
+        }
+        long offset = q.getOffset() != null ? q.getOffset() : 0;
+        long count = q.getCount() != null ? q.getCount() : Long.MAX_VALUE;
+        for (Group group : page(results, offset, count)) {
+            RequestData data = new RequestData();
+            for (int i = 0; i < groupBy.size(); i++) {
+                Column column = groupBy.get(i);
+                Object value = group.key.get(i);
+                if (column.kind == Kind.LIST) {
+                    List<String> resources = new ArrayList<>();
+                    if (value != null) {
+                        resources.add((String) value);
+                    }
+                    data.setResources(resources);
+                } else {
+                    column.setter.accept(data, value);
+                }
+            }
+            Object[] values = new Object[aggregates.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = group.accumulators[i].result();
+            }
+            visitor.visit(data, values);
+        }
+    }
+
+    static void add(
+            Map<List<Object>, Group> groups,
+            List<Object> key,
+            List<Aggregate> aggregates,
+            RequestData data) {
+        Group group = groups.computeIfAbsent(key, k -> new Group(k, aggregates));
+        for (Accumulator accumulator : group.accumulators) {
+            accumulator.add(data);
+        }
+    }
+
+    /** Sorts the groups by aggregate or group property, nulls last */
+    static Comparator<Group> comparator(
+            String sortBy, List<Aggregate> aggregates, List<Column> groupBy) {
+        for (int i = 0; i < aggregates.size(); i++) {
+            if (aggregates.get(i).name.equals(sortBy)) {
+                int index = i;
+                return (g1, g2) ->
+                        compare(
+                                g1.accumulators[index].result(), g2.accumulators[index].result());
+            }
+        }
+        Column column = RequestSegment.column(sortBy);
+        int index = groupBy.indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException(
+                    "Can only sort by an aggregate or a group by property: " + sortBy);
+        }
+        return (g1, g2) -> compare(g1.key.get(index), g2.key.get(index));
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Object o1, Object o2) {
+        if (o1 == null || o2 == null) {
+            return o1 == null ? (o2 == null ? 0 : 1) : -1;
+        }
+        if (o1 instanceof Comparable) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+        return o1.toString().compareTo(o2.toString());
+    }
+}
@@ -6,25 +6,40 @@
 package org.geoserver.monitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import org.geoserver.monitor.Query.Comparison;
 import org.geoserver.monitor.Query.SortOrder;
 import org.geoserver.ows.util.OwsUtils;
 
+/**
+ * Monitor DAO keeping the requests in memory.
+ *
+ * <p>Running requests are kept in a map by id, completed ones in a fixed size, lock free {@link
+ * RequestRing} holding the most recent ones ({@code memory.history} configuration property, 100 by
+ * default). Completed requests are also summarized in per minute {@link RequestRollups}, by
+ * service, operation and layer, covering the last {@code memory.rollupMinutes} minutes (60 by
+ * default). Aggregate queries are answered from the rollups, see {@link
+ * RequestRollups#query(Query, RequestDataVisitor)}.
+ */
 public class MemoryMonitorDAO implements MonitorDAO {
 
     public static final String NAME = "memory";
 
-    Queue<RequestData> live = new ConcurrentLinkedQueue<RequestData>();
-    Queue<RequestData> history = new ConcurrentLinkedQueue<RequestData>();
+    static final int DEFAULT_HISTORY = 100;
+
+    static final int DEFAULT_ROLLUP_MINUTES = 60;
+
+    Map<Long, RequestData> live = new ConcurrentHashMap<>();
+    volatile RequestRing history = new RequestRing(DEFAULT_HISTORY);
+    volatile RequestRollups rollups = new RequestRollups(DEFAULT_ROLLUP_MINUTES);
 
     AtomicLong REQUEST_ID_GEN = new AtomicLong(1);
 
@@ -34,7 +49,16 @@ public class MemoryMonitorDAO implements MonitorDAO {
     }
 
     @Override
-    public void init(MonitorConfig config) {}
+    public void init(MonitorConfig config) {
+        Integer size = config.getProperty(NAME, "history", Integer.class);
+        if (size != null && size != history.capacity()) {
+            history = new RequestRing(size);
+        }
+        Integer minutes = config.getProperty(NAME, "rollupMinutes", Integer.class);
+        if (minutes != null && minutes != rollups.minutes.length()) {
+            rollups = new RequestRollups(minutes);
+        }
+    }
 
     public RequestData init(RequestData data) {
         data.setId(REQUEST_ID_GEN.getAndIncrement());
@@ -42,69 +66,55 @@ public class MemoryMonitorDAO implements MonitorDAO {
     }
 
     public void add(RequestData data) {
-        live.add(data);
+        live.put(data.getId(), data);
     }
 
     public void update(RequestData data) {}
 
     public void save(RequestData data) {
-        live.remove(data);
+        live.remove(data.getId());
         history.add(data);
-
-        if (history.size() > 100) {
-            history.poll();
-        }
+        rollups.record(data);
     }
 
     public RequestData getRequest(long id) {
-        for (RequestData r : getRequests()) {
-            if (r.getId() == id) {
-                return r;
-            }
-        }
-        return null;
+        RequestData data = live.get(id);
+        return data != null ? data : history.get(id);
     }
 
     public List<RequestData> getRequests() {
-        List<RequestData> requests = new LinkedList();
-        requests.addAll(live);
-        requests.addAll(history);
+        List<RequestData> requests = new ArrayList<>(live.values());
+        Collections.sort(requests, new Sorter("id", SortOrder.ASC));
+        requests.addAll(history.snapshot());
         return requests;
     }
 
     public List<RequestData> getRequests(Query q) {
-        List<RequestData> requests = getRequests();
-
-        List<Predicate> predicates = new ArrayList();
+        Predicate predicate = null;
         if (q.getFilter() != null) {
-            Filter f = q.getFilter();
-            predicates.add(new PropertyCompare(f.getLeft(), f.getType(), f.getRight()));
+            predicate = toPredicate(q.getFilter());
         }
         if (q.getFromDate() != null || q.getToDate() != null) {
-            predicates.add(new DateRange(q.getFromDate(), q.getToDate()));
+            Predicate range = new DateRange(q.getFromDate(), q.getToDate());
+            predicate = predicate == null ? range : new AndPredicate(predicate, range);
         }
 
-        int i = 1, count = 0;
-
-        O:
-        for (Iterator<RequestData> it = requests.iterator(); it.hasNext(); ) {
-            RequestData r = it.next();
-            for (Predicate p : predicates) {
-                if (!p.matches(r)) {
-                    it.remove();
-                    continue O;
-                }
+        List<RequestData> all = getRequests();
+        List<RequestData> requests = new ArrayList<>(all.size());
+        long skip = q.getOffset() != null ? q.getOffset() : 0;
+        long count = q.getCount() != null ? q.getCount() : Long.MAX_VALUE;
+        for (RequestData r : all) {
+            if (requests.size() >= count) {
+                break;
             }
-
-            if (q.getOffset() != null && q.getOffset() >= i++) {
-                it.remove();
+            if (predicate != null && !predicate.matches(r)) {
                 continue;
             }
-            if (q.getCount() != null && q.getCount() <= count) {
-                it.remove();
+            if (skip > 0) {
+                skip--;
                 continue;
             }
-            count++;
+            requests.add(r);
         }
 
         if (q.getSortBy() != null) {
@@ -116,6 +126,9 @@ public class MemoryMonitorDAO implements MonitorDAO {
     }
 
     public void getRequests(Query query, RequestDataVisitor visitor) {
+        if (!query.getAggregates().isEmpty() && rollups.query(query, visitor)) {
+            return;
+        }
         for (RequestData r : getRequests(query)) {
             visitor.visit(r);
         }
@@ -161,18 +174,72 @@ public class MemoryMonitorDAO implements MonitorDAO {
     public void clear() {
         live.clear();
         history.clear();
+        rollups.clear();
     }
 
     public void dispose() {
         live.clear();
         history.clear();
+        rollups.clear();
         REQUEST_ID_GEN = new AtomicLong(1);
     }
 
+    /** Compiles the filter, including AND/OR combinations, into a predicate */
+    static Predicate toPredicate(Filter f) {
+        if (f instanceof CompositeFilter) {
+            List<Predicate> predicates = new ArrayList<>();
+            for (Filter child : ((CompositeFilter) f).getFilters()) {
+                predicates.add(toPredicate(child));
+            }
+            return f instanceof Or ? new OrPredicate(predicates) : new AndPredicate(predicates);
+        }
+        return new PropertyCompare(f.getLeft(), f.getType(), f.getRight());
+    }
+
     static interface Predicate {
         boolean matches(RequestData data);
     }
 
+    static class AndPredicate implements Predicate {
+
+        List<Predicate> predicates;
+
+        AndPredicate(Predicate... predicates) {
+            this(Arrays.asList(predicates));
+        }
+
+        AndPredicate(List<Predicate> predicates) {
+            this.predicates = predicates;
+        }
+
+        public boolean matches(RequestData data) {
+            for (Predicate p : predicates) {
+                if (!p.matches(data)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class OrPredicate implements Predicate {
+
+        List<Predicate> predicates;
+
+        OrPredicate(List<Predicate> predicates) {
+            this.predicates = predicates;
+        }
+
+        public boolean matches(RequestData data) {
+            for (Predicate p : predicates) {
+                if (p.matches(data)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     static class DateRange implements Predicate {
 
         Date from;
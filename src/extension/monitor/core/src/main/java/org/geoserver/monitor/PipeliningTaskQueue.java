@@ -10,11 +10,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geotools.util.logging.Logging;
@@ -22,6 +19,9 @@ import org.geotools.util.logging.Logging;
 /**
  * A task queue that groups tasks by key and ensures that tasks with same key execute serially.
  *
+ * <p>Each pipeline is drained by at most one task thread at a time, started when a task is queued
+ * into an idle pipeline, no polling is involved.
+ *
  * @author Justin Deoliveira, OpenGeo
  * @param <K> The key type.
  */
@@ -29,26 +29,22 @@ public class PipeliningTaskQueue<K> implements Runnable {
 
     static Logger LOGGER = Logging.getLogger("org.geoserver.monitor");
 
-    ConcurrentHashMap<K, Queue<Pipelineable<K>>> pipelines;
-    ScheduledExecutorService executor;
-    ExecutorService tasks;
+    ConcurrentHashMap<K, Pipeline<K>> pipelines;
+    volatile ExecutorService tasks;
+    volatile boolean started;
 
     public PipeliningTaskQueue() {
-        pipelines = new ConcurrentHashMap();
+        pipelines = new ConcurrentHashMap<>();
         tasks = Executors.newCachedThreadPool();
     }
 
     public void start() {
-        executor = Executors.newScheduledThreadPool(4);
-        executor.scheduleAtFixedRate(this, 0, 10, TimeUnit.MILLISECONDS);
-        executor.scheduleAtFixedRate(this, 0, 10, TimeUnit.MILLISECONDS);
-        executor.scheduleAtFixedRate(this, 0, 10, TimeUnit.MILLISECONDS);
-        executor.scheduleAtFixedRate(this, 0, 10, TimeUnit.MILLISECONDS);
+        started = true;
+        run();
     }
 
     public void stop() {
-        executor.shutdown();
-        executor = null;
+        started = false;
 
         tasks.shutdown();
         tasks = null;
@@ -59,21 +55,15 @@ public class PipeliningTaskQueue<K> implements Runnable {
     }
 
     public void execute(K key, Runnable task, String desc) {
-        Queue<Pipelineable<K>> pipeline = pipelines.get(key);
-        if (pipeline == null) {
-            synchronized (pipelines) {
-                pipeline = pipelines.get(key);
-                if (pipeline == null) {
-                    pipeline = new ConcurrentLinkedQueue();
-                    pipelines.put(key, pipeline);
-                }
-            }
-        }
+        Pipeline<K> pipeline = pipelines.computeIfAbsent(key, k -> new Pipeline<>());
 
         if (LOGGER.isLoggable(Level.FINEST)) {
             LOGGER.finest("Queuing task into pipeline " + key);
         }
-        pipeline.add(new Pipelineable<K>(key, task));
+        Pipelineable<K> job = new Pipelineable<K>(key, task);
+        job.desc = desc;
+        pipeline.add(job);
+        drain(pipeline);
     }
 
     public void clear(K key) {
@@ -81,51 +71,73 @@ public class PipeliningTaskQueue<K> implements Runnable {
     }
 
     public void shutdown() {
-        executor.shutdown();
+        started = false;
         tasks.shutdown();
     }
 
+    /** Starts draining all the pipelines that have queued tasks and are not being drained */
     public void run() {
+        for (Pipeline<K> pipeline : pipelines.values()) {
+            drain(pipeline);
+        }
+    }
 
-        for (Queue<Pipelineable<K>> pipeline : pipelines.values()) {
-            Pipelineable<K> job = pipeline.peek();
-            if (job != null) {
-                if (!job.lock.tryLock()) continue; // another thread already handling this job
-
-                if (job.future != null) {
-                    // job has been submitted, if it is done remove it from
-                    // the queue
-                    if (job.future.isDone()) {
-                        if (LOGGER.isLoggable(Level.FINEST)) {
-                            LOGGER.finest("Removing task from queue " + job.key);
-                        }
-                        pipeline.remove();
-                    }
-                } else {
-                    // start the job
-                    if (LOGGER.isLoggable(Level.FINEST)) {
-                        LOGGER.finest("Executing task in queue " + job.key);
-                    }
-                    job.future = tasks.submit(job.task);
-                }
+    /** Submits a task draining the pipeline, unless one is already running */
+    void drain(Pipeline<K> pipeline) {
+        if (!started || pipeline.isEmpty() || !pipeline.running.compareAndSet(false, true)) {
+            return;
+        }
+        // stop() clears the executor, read it once
+        ExecutorService executor = tasks;
+        if (executor == null) {
+            pipeline.running.set(false);
+            return;
+        }
+        try {
+            executor.submit(() -> runPipeline(pipeline));
+        } catch (RejectedExecutionException e) {
+            // shut down
+            pipeline.running.set(false);
+        }
+    }
 
-                job.lock.unlock();
+    private void runPipeline(Pipeline<K> pipeline) {
+        while (true) {
+            Pipelineable<K> job;
+            while ((job = pipeline.poll()) != null) {
+                if (LOGGER.isLoggable(Level.FINEST)) {
+                    LOGGER.finest("Executing task in queue " + job.key);
+                }
+                try {
+                    job.task.run();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.WARNING, "Task failed in queue " + job.key, t);
+                }
+            }
+            pipeline.running.set(false);
+            // a task might have been queued after the last poll, but before the flag was reset
+            if (pipeline.isEmpty() || !pipeline.running.compareAndSet(false, true)) {
+                return;
             }
         }
     }
 
-    public class Pipelineable<K> {
+    /** A queue of tasks executed serially */
+    static class Pipeline<K> extends ConcurrentLinkedQueue<Pipelineable<K>> {
+        private static final long serialVersionUID = 1L;
+
+        final AtomicBoolean running = new AtomicBoolean();
+    }
+
+    public static class Pipelineable<K> {
 
         K key;
         Runnable task;
-        Future<?> future;
-        Lock lock;
         String desc;
 
         public Pipelineable(K key, Runnable task) {
             this.key = key;
             this.task = task;
-            this.lock = new ReentrantLock();
         }
     }
 }
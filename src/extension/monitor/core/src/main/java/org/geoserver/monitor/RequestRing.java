@@ -0,0 +1,74 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size, lock free ring buffer holding the most recent completed requests. Writers claim a
+ * slot by incrementing a sequence and overwrite the oldest request, readers copy the slots without
+ * blocking writers.
+ */
+class RequestRing {
+
+    final AtomicReferenceArray<RequestData> slots;
+
+    final AtomicLong sequence = new AtomicLong();
+
+    RequestRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring capacity must be positive: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    void add(RequestData data) {
+        long seq = sequence.getAndIncrement();
+        slots.set((int) (seq % slots.length()), data);
+    }
+
+    /** Returns the requests in the ring, oldest first */
+    List<RequestData> snapshot() {
+        int capacity = slots.length();
+        long end = sequence.get();
+        long start = Math.max(0, end - capacity);
+        List<RequestData> result = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            RequestData data = slots.get((int) (seq % capacity));
+            // null if cleared, or if the slot has been claimed but not written yet
+            if (data != null) {
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    /** Looks up a request by id, newest first */
+    RequestData get(long id) {
+        int capacity = slots.length();
+        long end = sequence.get();
+        long start = Math.max(0, end - capacity);
+        for (long seq = end - 1; seq >= start; seq--) {
+            RequestData data = slots.get((int) (seq % capacity));
+            if (data != null && data.getId() == id) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+}
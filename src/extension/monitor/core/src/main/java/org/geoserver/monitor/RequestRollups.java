@@ -0,0 +1,458 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.Query.SortOrder;
+import org.geoserver.monitor.RequestData.Status;
+
+/**
+ * Per minute rollups of the completed requests, by service, operation and resource (layer).
+ *
+ * <p>Each minute keeps the request count, failures, response bytes, total time and a log-linear
+ * histogram of the request times, allowing to compute percentiles with a relative error below
+ * 12.5%. The minutes are kept in a fixed size ring, recording and querying are lock free.
+ *
+ * <p>Each request is recorded once in the request rollups, and once per resource in the resource
+ * rollups, so that queries not involving resources do not count multi-layer requests many times.
+ *
+ * <p>Aggregate queries (see {@link #query(Query, RequestDataVisitor)}) are answered from the
+ * rollups when possible, supporting:
+ *
+ * <ul>
+ *   <li>grouping by {@code service}, {@code operation} and {@code resource}
+ *   <li>the aggregates {@code count()}, {@code sum(responseLength)}, {@code avg(responseLength)},
+ *       {@code sum(totalTime)}, {@code avg(totalTime)}, {@code max(totalTime)} and {@code
+ *       pNN(totalTime)} for the NN-th percentile (e.g., {@code p95(totalTime)})
+ *   <li>filters on the group properties, with the EQ, NEQ and IN comparisons, combined with AND/OR
+ *   <li>a time range, rounded to the minute
+ * </ul>
+ */
+class RequestRollups {
+
+    static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    static final String SERVICE = "service";
+
+    static final String OPERATION = "operation";
+
+    static final String RESOURCE = "resource";
+
+    static final Set<String> KEY_PROPERTIES =
+            new HashSet<>(Arrays.asList(SERVICE, OPERATION, RESOURCE));
+
+    static final Pattern PERCENTILE = Pattern.compile("p(\\d{1,2})\\(totalTime\\)");
+
+    static final Set<String> AGGREGATES =
+            new HashSet<>(
+                    Arrays.asList(
+                            "count()",
+                            "sum(responseLength)",
+                            "avg(responseLength)",
+                            "sum(totalTime)",
+                            "avg(totalTime)",
+                            "max(totalTime)"));
+
+    /** Histogram sub-buckets per power of two */
+    static final int SUB_BUCKETS = 8;
+
+    /** Times above 2^MAX_EXPONENT milliseconds (about 4.6 hours) end up in the last bucket */
+    static final int MAX_EXPONENT = 23;
+
+    static final int BUCKETS = (MAX_EXPONENT - 2) * SUB_BUCKETS + SUB_BUCKETS;
+
+    /** The rollup grouping key, null values stand for "any" when summarizing */
+    static final class Key {
+        final String service;
+
+        final String operation;
+
+        final String resource;
+
+        Key(String service, String operation, String resource) {
+            this.service = service;
+            this.operation = operation;
+            this.resource = resource;
+        }
+
+        String get(String property) {
+            switch (property) {
+                case SERVICE:
+                    return service;
+                case OPERATION:
+                    return operation;
+                default:
+                    return resource;
+            }
+        }
+
+        /** Returns a key retaining only the given properties */
+        Key retain(List<String> properties) {
+            return new Key(
+                    properties.contains(SERVICE) ? service : null,
+                    properties.contains(OPERATION) ? operation : null,
+                    properties.contains(RESOURCE) ? resource : null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(service, other.service)
+                    && Objects.equals(operation, other.operation)
+                    && Objects.equals(resource, other.resource);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(service, operation, resource);
+        }
+    }
+
+    /** Statistics of a key in a minute, updated concurrently */
+    static final class Stats {
+        final LongAdder count = new LongAdder();
+
+        final LongAdder failed = new LongAdder();
+
+        final LongAdder bytes = new LongAdder();
+
+        final LongAdder time = new LongAdder();
+
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(RequestData data) {
+            long totalTime = Math.max(0, data.getTotalTime());
+            count.increment();
+            if (data.getStatus() == Status.FAILED) {
+                failed.increment();
+            }
+            bytes.add(data.getResponseLength());
+            time.add(totalTime);
+            max.accumulate(totalTime);
+            histogram.incrementAndGet(bucket(totalTime));
+        }
+    }
+
+    /** Statistics summarized over a time range */
+    static final class Summary {
+        long count;
+
+        long failed;
+
+        long bytes;
+
+        long time;
+
+        long max;
+
+        final long[] histogram = new long[BUCKETS];
+
+        void add(Stats stats) {
+            count += stats.count.sum();
+            failed += stats.failed.sum();
+            bytes += stats.bytes.sum();
+            time += stats.time.sum();
+            max = Math.max(max, stats.max.get());
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] += stats.histogram.get(i);
+            }
+        }
+
+        /** Returns the upper bound of the bucket containing the given percentile of the times */
+        long percentile(int percentile) {
+            long rank = (long) Math.ceil(percentile / 100d * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        Object aggregate(String aggregate) {
+            switch (aggregate) {
+                case "count()":
+                    return count;
+                case "sum(responseLength)":
+                    return bytes;
+                case "avg(responseLength)":
+                    return count > 0 ? (double) bytes / count : null;
+                case "sum(totalTime)":
+                    return time;
+                case "avg(totalTime)":
+                    return count > 0 ? (double) time / count : null;
+                case "max(totalTime)":
+                    return max;
+                default:
+                    Matcher m = PERCENTILE.matcher(aggregate);
+                    if (m.matches()) {
+                        return count > 0 ? percentile(Integer.parseInt(m.group(1))) : null;
+                    }
+                    throw new IllegalArgumentException("Unsupported aggregate " + aggregate);
+            }
+        }
+    }
+
+    /** The rollups of a single minute */
+    static final class Minute {
+        final long minute;
+
+        final Map<Key, Stats> requests = new ConcurrentHashMap<>();
+
+        final Map<Key, Stats> resources = new ConcurrentHashMap<>();
+
+        Minute(long minute) {
+            this.minute = minute;
+        }
+    }
+
+    final AtomicReferenceArray<Minute> minutes;
+
+    RequestRollups(int minutes) {
+        if (minutes <= 0) {
+            throw new IllegalArgumentException("Rollup minutes must be positive: " + minutes);
+        }
+        this.minutes = new AtomicReferenceArray<>(minutes);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        return (exponent - 2) * SUB_BUCKETS + (int) ((value >>> (exponent - 3)) & 7);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 2;
+        int sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + 1L + sub) << (exponent - 3)) - 1;
+    }
+
+    /** Records a completed request */
+    void record(RequestData data) {
+        Date start = data.getStartTime();
+        long minute = (start != null ? start.getTime() : System.currentTimeMillis()) / MINUTE;
+        Minute target = minute(minute);
+        if (target == null) {
+            return; // older than the retained minutes
+        }
+        String service = data.getService();
+        String operation = data.getOperation();
+        target.requests
+                .computeIfAbsent(new Key(service, operation, null), k -> new Stats())
+                .record(data);
+        List<String> resources = data.getResources();
+        if (resources == null || resources.isEmpty()) {
+            resources = Collections.singletonList(null);
+        }
+        for (String resource : resources) {
+            target.resources
+                    .computeIfAbsent(new Key(service, operation, resource), k -> new Stats())
+                    .record(data);
+        }
+    }
+
+    /** Returns the rollups for the given minute, recycling the ring slot if needed */
+    private Minute minute(long minute) {
+        int index = (int) (minute % minutes.length());
+        while (true) {
+            Minute current = minutes.get(index);
+            if (current != null && current.minute == minute) {
+                return current;
+            } else if (current != null && current.minute > minute) {
+                return null;
+            }
+            Minute created = new Minute(minute);
+            if (minutes.compareAndSet(index, current, created)) {
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Summarizes the rollups in the given time range
+     *
+     * @param from start of the range, inclusive, or null
+     * @param to end of the range, inclusive, or null
+     * @param filter selects the keys to be summarized
+     * @param groupBy the key properties to group on
+     * @param byResource if true the resource rollups are used, the request ones otherwise
+     */
+    Map<Key, Summary> summarize(
+            Date from, Date to, Predicate<Key> filter, List<String> groupBy, boolean byResource) {
+        long fromMinute = from != null ? from.getTime() / MINUTE : Long.MIN_VALUE;
+        long toMinute = to != null ? to.getTime() / MINUTE : Long.MAX_VALUE;
+        Map<Key, Summary> result = new LinkedHashMap<>();
+        for (int i = 0; i < minutes.length(); i++) {
+            Minute minute = minutes.get(i);
+            if (minute == null || minute.minute < fromMinute || minute.minute > toMinute) {
+                continue;
+            }
+            Map<Key, Stats> rollups = byResource ? minute.resources : minute.requests;
+            for (Map.Entry<Key, Stats> entry : rollups.entrySet()) {
+                if (filter.test(entry.getKey())) {
+                    result.computeIfAbsent(entry.getKey().retain(groupBy), k -> new Summary())
+                            .add(entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Answers an aggregate query from the rollups
+     *
+     * @return false if the query cannot be answered from the rollups
+     */
+    boolean query(Query q, RequestDataVisitor visitor) {
+        List<String> groupBy = q.getGroupBy();
+        List<String> aggregates = q.getAggregates();
+        if (aggregates.isEmpty()
+                || !KEY_PROPERTIES.containsAll(groupBy)
+                || !groupBy.containsAll(q.getProperties())) {
+            return false;
+        }
+        for (String aggregate : aggregates) {
+            if (!AGGREGATES.contains(aggregate) && !PERCENTILE.matcher(aggregate).matches()) {
+                return false;
+            }
+        }
+        String sortBy = q.getSortBy();
+        if (sortBy != null && !groupBy.contains(sortBy) && !aggregates.contains(sortBy)) {
+            return false;
+        }
+        Predicate<Key> filter = k -> true;
+        boolean byResource = groupBy.contains(RESOURCE);
+        if (q.getFilter() != null) {
+            Set<String> used = new HashSet<>();
+            filter = toPredicate(q.getFilter(), used);
+            if (filter == null) {
+                return false;
+            }
+            byResource |= used.contains(RESOURCE);
+        }
+
+        Map<Key, Summary> summaries =
+                summarize(q.getFromDate(), q.getToDate(), filter, groupBy, byResource);
+        if (groupBy.isEmpty() && summaries.isEmpty()) {
+            // aggregates without grouping always return a single row
+            summaries.put(new Key(null, null, null), new Summary());
+        }
+        List<Map.Entry<Key, Summary>> rows = new ArrayList<>(summaries.entrySet());
+        if (sortBy != null) {
+            Comparator<Map.Entry<Key, Summary>> comparator =
+                    groupBy.contains(sortBy)
+                            ? Comparator.comparing(
+                                    e -> e.getKey().get(sortBy),
+                                    Comparator.nullsLast(Comparator.naturalOrder()))
+                            : Comparator.comparing(
+                                    e -> (Comparable) e.getValue().aggregate(sortBy),
+                                    Comparator.nullsLast(Comparator.naturalOrder()));
+            rows.sort(q.getSortOrder() == SortOrder.DESC ? comparator.reversed() : comparator);
+        }
+
+        long offset = q.getOffset() != null ? q.getOffset() : 0;
+        long count = q.getCount() != null ? q.getCount() : Long.MAX_VALUE;
+        for (int i = (int) Math.min(offset, rows.size()); i < rows.size() && count > 0; i++) {
+            Key key = rows.get(i).getKey();
+            Summary summary = rows.get(i).getValue();
+            RequestData data = new RequestData();
+            data.setService(key.service);
+            data.setOperation(key.operation);
+            if (key.resource != null) {
+                data.getResources().add(key.resource);
+            }
+            Object[] values = new Object[aggregates.size()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = summary.aggregate(aggregates.get(j));
+            }
+            visitor.visit(data, values);
+            count--;
+        }
+        return true;
+    }
+
+    /**
+     * Turns a filter into a predicate on the rollup keys, returns null if the filter cannot be
+     * evaluated on the keys
+     */
+    static Predicate<Key> toPredicate(Filter filter, Set<String> used) {
+        if (filter instanceof CompositeFilter) {
+            Predicate<Key> result = null;
+            for (Filter f : ((CompositeFilter) filter).getFilters()) {
+                Predicate<Key> p = toPredicate(f, used);
+                if (p == null) {
+                    return null;
+                }
+                result =
+                        result == null ? p : filter instanceof Or ? result.or(p) : result.and(p);
+            }
+            return result != null ? result : k -> true;
+        }
+
+        String property;
+        Object value;
+        if (filter.getLeft() instanceof String && KEY_PROPERTIES.contains(filter.getLeft())) {
+            property = (String) filter.getLeft();
+            value = filter.getRight();
+        } else if (filter.getRight() instanceof String
+                && KEY_PROPERTIES.contains(filter.getRight())) {
+            property = (String) filter.getRight();
+            value = filter.getLeft();
+        } else {
+            return null;
+        }
+        used.add(property);
+        Comparison type = filter.getType();
+        if (type == Comparison.EQ) {
+            return k -> Objects.equals(k.get(property), value);
+        } else if (type == Comparison.NEQ) {
+            return k -> !Objects.equals(k.get(property), value);
+        } else if (type == Comparison.IN && value instanceof List) {
+            List<?> values = (List<?>) value;
+            return k -> values.contains(k.get(property));
+        }
+        return null;
+    }
+
+    void clear() {
+        for (int i = 0; i < minutes.length(); i++) {
+            minutes.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,703 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.RequestData.Category;
+import org.geoserver.monitor.RequestData.Status;
+
+/**
+ * An immutable, columnar file holding a batch of completed requests, written by the {@link
+ * ColumnarMonitorDAO}.
+ *
+ * <p>Each {@link RequestData} property is stored in its own compressed block: numbers and dates as
+ * zig-zag varint deltas, strings and enumerations as dictionary codes. The header keeps the min/max
+ * of each numeric column and the dictionary of each string column, allowing to skip whole segments
+ * that cannot match a query, and to decode only the columns a query needs.
+ *
+ * <p>The request body, bounding box and error object are not stored.
+ */
+class RequestSegment {
+
+    static final byte[] MAGIC = "GSMSEG01".getBytes(StandardCharsets.US_ASCII);
+
+    /** Encodes null in long, date and integer columns */
+    static final long NULL = Long.MIN_VALUE;
+
+    enum Kind {
+        LONG,
+        DATE,
+        INTEGER,
+        DOUBLE,
+        STRING,
+        ENUM,
+        LIST
+    }
+
+    /** A persisted {@link RequestData} property */
+    static final class Column {
+        final String name;
+
+        final Kind kind;
+
+        final Function<RequestData, Object> getter;
+
+        final BiConsumer<RequestData, Object> setter;
+
+        Column(
+                String name,
+                Kind kind,
+                Function<RequestData, Object> getter,
+                BiConsumer<RequestData, Object> setter) {
+            this.name = name;
+            this.kind = kind;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        boolean isNumeric() {
+            return kind == Kind.LONG || kind == Kind.DATE || kind == Kind.INTEGER;
+        }
+
+        boolean isDictionary() {
+            return kind == Kind.STRING || kind == Kind.ENUM || kind == Kind.LIST;
+        }
+
+        long toLong(Object value) {
+            if (value == null) {
+                return NULL;
+            }
+            return value instanceof Date ? ((Date) value).getTime() : ((Number) value).longValue();
+        }
+
+        Object fromLong(long value) {
+            switch (kind) {
+                case DATE:
+                    return value == NULL ? null : new Date(value);
+                case INTEGER:
+                    return value == NULL ? null : (int) value;
+                default:
+                    return value;
+            }
+        }
+
+        Object fromString(String value) {
+            if (kind != Kind.ENUM || value == null) {
+                return value;
+            }
+            return "status".equals(name) ? Status.valueOf(value) : Category.valueOf(value);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final List<Column> COLUMNS =
+            Arrays.asList(
+                    new Column("id", Kind.LONG, r -> r.getId(), (r, v) -> r.setId((Long) v)),
+                    new Column(
+                            "status",
+                            Kind.ENUM,
+                            r -> r.getStatus(),
+                            (r, v) -> r.setStatus((Status) v)),
+                    new Column(
+                            "category",
+                            Kind.ENUM,
+                            r -> r.getCategory(),
+                            (r, v) -> r.setCategory((Category) v)),
+                    string("path", RequestData::getPath, RequestData::setPath),
+                    string("queryString", RequestData::getQueryString, RequestData::setQueryString),
+                    new Column(
+                            "bodyContentLength",
+                            Kind.LONG,
+                            r -> r.getBodyContentLength(),
+                            (r, v) -> r.setBodyContentLength((Long) v)),
+                    string(
+                            "bodyContentType",
+                            RequestData::getBodyContentType,
+                            RequestData::setBodyContentType),
+                    string("httpMethod", RequestData::getHttpMethod, RequestData::setHttpMethod),
+                    new Column(
+                            "startTime",
+                            Kind.DATE,
+                            r -> r.getStartTime(),
+                            (r, v) -> r.setStartTime((Date) v)),
+                    new Column(
+                            "endTime",
+                            Kind.DATE,
+                            r -> r.getEndTime(),
+                            (r, v) -> r.setEndTime((Date) v)),
+                    new Column(
+                            "totalTime",
+                            Kind.LONG,
+                            r -> r.getTotalTime(),
+                            (r, v) -> r.setTotalTime((Long) v)),
+                    string("remoteAddr", RequestData::getRemoteAddr, RequestData::setRemoteAddr),
+                    string("remoteHost", RequestData::getRemoteHost, RequestData::setRemoteHost),
+                    string("remoteUser", RequestData::getRemoteUser, RequestData::setRemoteUser),
+                    string(
+                            "remoteUserAgent",
+                            RequestData::getRemoteUserAgent,
+                            RequestData::setRemoteUserAgent),
+                    string(
+                            "remoteCountry",
+                            RequestData::getRemoteCountry,
+                            RequestData::setRemoteCountry),
+                    string("remoteCity", RequestData::getRemoteCity, RequestData::setRemoteCity),
+                    new Column(
+                            "remoteLat",
+                            Kind.DOUBLE,
+                            r -> r.getRemoteLat(),
+                            (r, v) -> r.setRemoteLat((Double) v)),
+                    new Column(
+                            "remoteLon",
+                            Kind.DOUBLE,
+                            r -> r.getRemoteLon(),
+                            (r, v) -> r.setRemoteLon((Double) v)),
+                    string("host", RequestData::getHost, RequestData::setHost),
+                    string(
+                            "internalHost",
+                            RequestData::getInternalHost,
+                            RequestData::setInternalHost),
+                    string("service", RequestData::getService, RequestData::setService),
+                    string("operation", RequestData::getOperation, RequestData::setOperation),
+                    string("owsVersion", RequestData::getOwsVersion, RequestData::setOwsVersion),
+                    string(
+                            "subOperation",
+                            RequestData::getSubOperation,
+                            RequestData::setSubOperation),
+                    new Column(
+                            "resources",
+                            Kind.LIST,
+                            r -> r.getResources(),
+                            (r, v) -> r.setResources(castList(v))),
+                    new Column(
+                            "responseLength",
+                            Kind.LONG,
+                            r -> r.getResponseLength(),
+                            (r, v) -> r.setResponseLength((Long) v)),
+                    string(
+                            "responseContentType",
+                            RequestData::getResponseContentType,
+                            RequestData::setResponseContentType),
+                    new Column(
+                            "responseStatus",
+                            Kind.INTEGER,
+                            r -> r.getResponseStatus(),
+                            (r, v) -> r.setResponseStatus((Integer) v)),
+                    string(
+                            "errorMessage",
+                            RequestData::getErrorMessage,
+                            RequestData::setErrorMessage),
+                    string("httpReferer", RequestData::getHttpReferer, RequestData::setHttpReferer),
+                    string("cacheResult", RequestData::getCacheResult, RequestData::setCacheResult),
+                    string("missReason", RequestData::getMissReason, RequestData::setMissReason));
+
+    static final Map<String, Column> COLUMNS_BY_NAME = new HashMap<>();
+
+    static {
+        for (Column column : COLUMNS) {
+            COLUMNS_BY_NAME.put(column.name, column);
+        }
+        // name used by the hibernate DAO for the single resource of a request/resource join
+        COLUMNS_BY_NAME.put("resource", COLUMNS_BY_NAME.get("resources"));
+    }
+
+    private static Column string(
+            String name,
+            Function<RequestData, String> getter,
+            BiConsumer<RequestData, String> setter) {
+        return new Column(
+                name, Kind.STRING, r -> getter.apply(r), (r, v) -> setter.accept(r, (String) v));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castList(Object value) {
+        return (List<String>) value;
+    }
+
+    /** Returns the column for the given property name, or null if not persisted */
+    static Column column(String name) {
+        return COLUMNS_BY_NAME.get(name);
+    }
+
+    /** Header information about a column */
+    static final class ColumnInfo {
+        final Column column;
+
+        /** Min/max for numeric columns, ignoring nulls */
+        long min = Long.MAX_VALUE;
+
+        long max = Long.MIN_VALUE;
+
+        /** Dictionary for string columns, code 0 is reserved for null */
+        List<String> dictionary;
+
+        long offset;
+
+        int length;
+
+        ColumnInfo(Column column) {
+            this.column = column;
+        }
+    }
+
+    final File file;
+
+    final int rows;
+
+    /** Ids of the requests in this segment replacing versions stored in earlier segments */
+    final long[] updates;
+
+    final Map<String, ColumnInfo> columns;
+
+    RequestSegment(File file, int rows, long[] updates, Map<String, ColumnInfo> columns) {
+        this.file = file;
+        this.rows = rows;
+        this.updates = updates;
+        this.columns = columns;
+    }
+
+    ColumnInfo info(String name) {
+        return columns.get(name);
+    }
+
+    /**
+     * Writes the requests in a new segment file
+     *
+     * @param file the target file, written atomically
+     * @param requests the requests
+     * @param updates ids of requests replacing versions stored in earlier segments
+     */
+    static RequestSegment write(File file, List<RequestData> requests, long[] updates)
+            throws IOException {
+        Map<String, ColumnInfo> infos = new LinkedHashMap<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (Column column : COLUMNS) {
+            ColumnInfo info = new ColumnInfo(column);
+            info.offset = data.size();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream out =
+                    new DataOutputStream(
+                            new DeflaterOutputStream(new NonClosing(data), deflater))) {
+                encode(info, requests, out);
+            } finally {
+                deflater.end();
+            }
+            info.length = (int) (data.size() - info.offset);
+            infos.put(column.name, info);
+        }
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(requests.size());
+            out.writeInt(updates.length);
+            for (long id : updates) {
+                out.writeLong(id);
+            }
+            out.writeInt(infos.size());
+            for (ColumnInfo info : infos.values()) {
+                out.writeUTF(info.column.name);
+                out.writeLong(info.min);
+                out.writeLong(info.max);
+                if (info.column.isDictionary()) {
+                    out.writeInt(info.dictionary.size());
+                    for (int i = 1; i < info.dictionary.size(); i++) {
+                        writeString(out, info.dictionary.get(i));
+                    }
+                }
+                out.writeLong(info.offset);
+                out.writeInt(info.length);
+            }
+            data.writeTo(out);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    private static void encode(ColumnInfo info, List<RequestData> requests, DataOutputStream out)
+            throws IOException {
+        Column column = info.column;
+        if (column.isNumeric()) {
+            long previous = 0;
+            for (RequestData r : requests) {
+                long value = column.toLong(column.getter.apply(r));
+                if (value != NULL) {
+                    info.min = Math.min(info.min, value);
+                    info.max = Math.max(info.max, value);
+                }
+                writeVarLong(out, zigZag(value - previous));
+                previous = value;
+            }
+        } else if (column.kind == Kind.DOUBLE) {
+            for (RequestData r : requests) {
+                out.writeDouble((Double) column.getter.apply(r));
+            }
+        } else {
+            Map<String, Integer> codes = new HashMap<>();
+            info.dictionary = new ArrayList<>();
+            info.dictionary.add(null);
+            for (RequestData r : requests) {
+                Object value = column.getter.apply(r);
+                if (column.kind == Kind.LIST) {
+                    Collection<?> values = value != null ? (Collection<?>) value : Arrays.asList();
+                    writeVarLong(out, values.size());
+                    for (Object v : values) {
+                        writeVarLong(out, code(info, codes, v));
+                    }
+                } else {
+                    writeVarLong(out, code(info, codes, value));
+                }
+            }
+        }
+    }
+
+    private static int code(ColumnInfo info, Map<String, Integer> codes, Object value) {
+        if (value == null) {
+            return 0;
+        }
+        String s = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+        Integer code = codes.get(s);
+        if (code == null) {
+            code = info.dictionary.size();
+            info.dictionary.add(s);
+            codes.put(s, code);
+        }
+        return code;
+    }
+
+    /** Reads the header of a segment file */
+    static RequestSegment open(File file) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a request segment: " + file);
+            }
+            int rows = in.readInt();
+            long[] updates = new long[in.readInt()];
+            for (int i = 0; i < updates.length; i++) {
+                updates[i] = in.readLong();
+            }
+            int count = in.readInt();
+            Map<String, ColumnInfo> infos = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Column column = COLUMNS_BY_NAME.get(name);
+                ColumnInfo info = new ColumnInfo(column);
+                info.min = in.readLong();
+                info.max = in.readLong();
+                if (column != null && column.isDictionary()) {
+                    int size = in.readInt();
+                    info.dictionary = new ArrayList<>(size);
+                    info.dictionary.add(null);
+                    for (int j = 1; j < size; j++) {
+                        info.dictionary.add(readString(in));
+                    }
+                }
+                info.offset = in.readLong();
+                info.length = in.readInt();
+                if (column != null) {
+                    infos.put(name, info);
+                }
+            }
+            // make offsets absolute
+            long dataStart = file.length() - dataLength(infos);
+            for (ColumnInfo info : infos.values()) {
+                info.offset += dataStart;
+            }
+            return new RequestSegment(file, rows, updates, infos);
+        }
+    }
+
+    private static long dataLength(Map<String, ColumnInfo> infos) {
+        long end = 0;
+        for (ColumnInfo info : infos.values()) {
+            end = Math.max(end, info.offset + info.length);
+        }
+        return end;
+    }
+
+    /**
+     * Decodes the given columns into the target requests, which must have one entry per row. Null
+     * entries are created on the fly.
+     */
+    void read(Collection<Column> selected, RequestData[] target) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (Column column : selected) {
+                ColumnInfo info = columns.get(column.name);
+                if (info == null) {
+                    continue;
+                }
+                byte[] block = new byte[info.length];
+                raf.seek(info.offset);
+                raf.readFully(block);
+                try (DataInputStream in =
+                        new DataInputStream(
+                                new InflaterInputStream(new ByteArrayInputStream(block)))) {
+                    decode(info, in, target);
+                }
+            }
+        }
+    }
+
+    private void decode(ColumnInfo info, DataInputStream in, RequestData[] target)
+            throws IOException {
+        Column column = info.column;
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            if (target[i] == null) {
+                target[i] = new RequestData();
+            }
+            Object value;
+            if (column.isNumeric()) {
+                previous += unZigZag(readVarLong(in));
+                value = column.fromLong(previous);
+            } else if (column.kind == Kind.DOUBLE) {
+                value = in.readDouble();
+            } else if (column.kind == Kind.LIST) {
+                int size = (int) readVarLong(in);
+                List<String> values = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    values.add(info.dictionary.get((int) readVarLong(in)));
+                }
+                value = values;
+            } else {
+                value = column.fromString(info.dictionary.get((int) readVarLong(in)));
+            }
+            column.setter.accept(target[i], value);
+        }
+    }
+
+    /**
+     * Returns false if the segment certainly contains no request matching the filter, based on the
+     * column min/max and dictionaries
+     */
+    boolean mayMatch(Filter filter) {
+        if (filter instanceof CompositeFilter) {
+            boolean or = filter instanceof Or;
+            for (Filter f : ((CompositeFilter) filter).getFilters()) {
+                boolean match = mayMatch(f);
+                if (or && match) {
+                    return true;
+                } else if (!or && !match) {
+                    return false;
+                }
+            }
+            return !or;
+        }
+
+        Object property = filter.getLeft();
+        Object value = filter.getRight();
+        Comparison type = filter.getType();
+        if (!(property instanceof String) || column((String) property) == null) {
+            // literal on the left, swap the comparison
+            property = filter.getRight();
+            value = filter.getLeft();
+            type = swap(type);
+        }
+        if (!(property instanceof String) || type == null) {
+            return true;
+        }
+        Column column = column((String) property);
+        ColumnInfo info = column != null ? columns.get(column.name) : null;
+        if (info == null || column.kind == Kind.LIST) {
+            return true;
+        }
+        if (column.isDictionary()) {
+            if (type == Comparison.EQ) {
+                return inDictionary(info, value);
+            } else if (type == Comparison.IN && value instanceof Collection) {
+                for (Object v : (Collection<?>) value) {
+                    if (inDictionary(info, v)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+        if (column.isNumeric() && (value instanceof Number || value instanceof Date)) {
+            long v = column.toLong(value);
+            switch (type) {
+                case EQ:
+                    return v >= info.min && v <= info.max;
+                case LT:
+                    return info.min < v;
+                case LTE:
+                    return info.min <= v;
+                case GT:
+                    return info.max > v;
+                case GTE:
+                    return info.max >= v;
+                default:
+                    return true;
+            }
+        }
+        return true;
+    }
+
+    /** Returns false if the segment certainly contains no request started in the given range */
+    boolean mayMatch(Date from, Date to) {
+        ColumnInfo info = columns.get("startTime");
+        if (info == null) {
+            return true;
+        }
+        if (info.min > info.max) {
+            // no start times at all
+            return from == null && to == null;
+        }
+        return (from == null || info.max >= from.getTime())
+                && (to == null || info.min <= to.getTime());
+    }
+
+    /** Returns false if the segment certainly does not contain the given request id */
+    boolean mayContain(long id) {
+        ColumnInfo info = columns.get("id");
+        return info == null || (id >= info.min && id <= info.max);
+    }
+
+    private static boolean inDictionary(ColumnInfo info, Object value) {
+        if (value == null) {
+            return info.dictionary.contains(null);
+        }
+        String s = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+        for (String entry : info.dictionary) {
+            if (Objects.equals(s, entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Comparison swap(Comparison type) {
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case LT:
+                return Comparison.GT;
+            case LTE:
+                return Comparison.GTE;
+            case GT:
+                return Comparison.LT;
+            case GTE:
+                return Comparison.LTE;
+            case IN:
+                // literal IN property, e.g. a resource in the request resources
+                return null;
+            default:
+                return type;
+        }
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /** Writes a string without the 64KB limit of {@link DataOutput#writeUTF(String)} */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Lets a compressing stream finish without closing the shared target */
+    static final class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestSegment[" + file.getName() + ", rows=" + rows + "]";
+    }
+}
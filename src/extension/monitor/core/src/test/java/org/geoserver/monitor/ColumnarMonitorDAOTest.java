@@ -0,0 +1,229 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.monitor;
+
+import static org.geoserver.monitor.MonitorTestData.assertCovered;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.Query.SortOrder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ColumnarMonitorDAOTest extends MonitorDAOTestSupport {
+
+    static File directory;
+
+    @BeforeClass
+    public static void createDAO() throws Exception {
+        directory = Files.createTempDirectory("history").toFile();
+        dao = open(new File(directory, "shared"));
+        setUpData();
+        ((ColumnarMonitorDAO) dao).flush();
+    }
+
+    @AfterClass
+    public static void destroyDAO() throws Exception {
+        dao.dispose();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    static ColumnarMonitorDAO open(File dir) throws Exception {
+        ColumnarMonitorDAO dao = new ColumnarMonitorDAO(dir);
+        // flushes are triggered by the tests
+        dao.flushInterval = 0;
+        dao.open();
+        return dao;
+    }
+
+    void save(ColumnarMonitorDAO target, String service, String operation, String... layers) {
+        RequestData data = target.init(new RequestData());
+        data.setService(service);
+        data.setOperation(operation);
+        data.setResources(Arrays.asList(layers));
+        data.setStartTime(new Date());
+        data.setTotalTime(data.getId() * 10);
+        target.save(data);
+    }
+
+    ColumnarMonitorDAO aggregateDAO(String name) throws Exception {
+        ColumnarMonitorDAO target = open(new File(directory, name));
+        save(target, "foo", "x", "widgets");
+        save(target, "bar", "y", "things");
+        save(target, "baz", "x", "stuff");
+        save(target, "bam", "x", "widgets", "things");
+        save(target, "foo", "x", "things", "stuff");
+        target.flush();
+        save(target, "foo", "x", "stuff");
+        save(target, "bar", "z", "things", "stuff");
+        save(target, "bam", "y", "widgets");
+        save(target, "bam", "y", "stuff");
+        save(target, "foo", "x", "things");
+        // left in the buffer
+        save(target, null, null);
+        return target;
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        File dir = new File(directory, "reopen");
+        ColumnarMonitorDAO first = open(dir);
+        save(first, "wms", "GetMap", "topp:states");
+        save(first, "wfs", "GetFeature", "topp:roads");
+        first.dispose();
+
+        ColumnarMonitorDAO second = open(dir);
+        try {
+            List<RequestData> requests = second.getRequests();
+            assertEquals(2, requests.size());
+            assertEquals("wfs", second.getRequest(2).getService());
+            assertEquals("topp:roads", second.getRequest(2).getResources().get(0));
+            assertEquals(3, second.init(new RequestData()).getId());
+        } finally {
+            second.dispose();
+        }
+    }
+
+    @Test
+    public void testUpdateAfterFlush() throws Exception {
+        File dir = new File(directory, "update");
+        ColumnarMonitorDAO first = open(dir);
+        save(first, "wms", "GetMap", "topp:states");
+        first.flush();
+
+        RequestData data = first.getRequest(1);
+        data.setRemoteCountry("Italy");
+        first.update(data);
+        first.flush();
+        assertEquals(1, first.getRequests().size());
+        assertEquals(
+                1, first.getCount(new Query().filter("remoteCountry", "Italy", Comparison.EQ)));
+        first.dispose();
+
+        // the latest version wins after a restart too
+        ColumnarMonitorDAO second = open(dir);
+        try {
+            assertEquals(1, second.getRequests().size());
+            assertEquals("Italy", second.getRequest(1).getRemoteCountry());
+        } finally {
+            second.dispose();
+        }
+    }
+
+    @Test
+    public void testSegmentPruning() throws Exception {
+        ColumnarMonitorDAO target = aggregateDAO("pruning");
+        try {
+            RequestSegment first = target.segments.get(0);
+            assertTrue(first.mayMatch(new Filter("service", "foo", Comparison.EQ)));
+            assertFalse(first.mayMatch(new Filter("service", "qux", Comparison.EQ)));
+            assertFalse(first.mayMatch(new Filter("id", 6L, Comparison.GTE)));
+            assertTrue(
+                    first.mayMatch(
+                            new Filter("id", 6L, Comparison.GTE)
+                                    .or(new Filter("service", "baz", Comparison.EQ))));
+            assertNull(target.getRequest(42));
+        } finally {
+            target.dispose();
+        }
+    }
+
+    @Test
+    public void testAggregateByServiceOperation() throws Exception {
+        final List<RequestData> datas = new ArrayList<>();
+        final List<Object> aggs = new ArrayList<>();
+        ColumnarMonitorDAO target = aggregateDAO("operations");
+        try {
+            target.getRequests(
+                    new Query()
+                            .properties("service", "operation")
+                            .filter("service", null, Comparison.NEQ)
+                            .aggregate("count()")
+                            .group("service", "operation")
+                            .sort("count()", SortOrder.DESC),
+                    (data, aggregates) -> {
+                        datas.add(data);
+                        aggs.add(aggregates[0]);
+                    });
+        } finally {
+            target.dispose();
+        }
+
+        assertEquals(6, datas.size());
+        assertEquals("foo", datas.get(0).getService());
+        assertEquals("x", datas.get(0).getOperation());
+        assertEquals(4L, aggs.get(0));
+        assertEquals("bam", datas.get(1).getService());
+        assertEquals("y", datas.get(1).getOperation());
+        assertEquals(2L, aggs.get(1));
+    }
+
+    @Test
+    public void testAggregateByResource() throws Exception {
+        final List<RequestData> datas = new ArrayList<>();
+        final List<Object> aggs = new ArrayList<>();
+        ColumnarMonitorDAO target = aggregateDAO("resources");
+        try {
+            target.getRequests(
+                    new Query()
+                            .properties("resource")
+                            .filter("resource", null, Comparison.NEQ)
+                            .aggregate("count()", "max(totalTime)")
+                            .group("resource")
+                            .sort("resource", SortOrder.ASC),
+                    (data, aggregates) -> {
+                        datas.add(data);
+                        aggs.add(Arrays.asList(aggregates));
+                    });
+        } finally {
+            target.dispose();
+        }
+
+        assertEquals(3, datas.size());
+        assertEquals("stuff", datas.get(0).getResources().get(0));
+        assertEquals(Arrays.asList(5L, 90L), aggs.get(0));
+        assertEquals("things", datas.get(1).getResources().get(0));
+        assertEquals(Arrays.asList(5L, 100L), aggs.get(1));
+        assertEquals("widgets", datas.get(2).getResources().get(0));
+        assertEquals(Arrays.asList(3L, 80L), aggs.get(2));
+    }
+
+    @Test
+    public void testAggregateTotals() throws Exception {
+        final List<Object> aggs = new ArrayList<>();
+        ColumnarMonitorDAO target = aggregateDAO("totals");
+        try {
+            target.getRequests(
+                    new Query()
+                            .aggregate("count()", "sum(totalTime)", "avg(totalTime)")
+                            .aggregate("p50(totalTime)")
+                            .filter("service", "foo", Comparison.EQ),
+                    (data, aggregates) -> aggs.addAll(Arrays.asList(aggregates)));
+        } finally {
+            target.dispose();
+        }
+        // requests 1, 5, 6 and 10
+        assertEquals(Arrays.asList(4L, 220L, 55d, 50L), aggs);
+    }
+
+    @Test
+    public void testGetRequestsPagedUnsorted() throws Exception {
+        List<RequestData> datas =
+                dao.getRequests(
+                        new Query().filter("service", null, Comparison.NEQ).page(2L, 3L));
+        assertCovered(datas, 13, 14, 15);
+    }
+}
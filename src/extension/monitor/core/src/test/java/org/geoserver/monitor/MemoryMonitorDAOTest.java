@@ -5,7 +5,17 @@
  */
 package org.geoserver.monitor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.geoserver.monitor.Query.Comparison;
+import org.geoserver.monitor.Query.SortOrder;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
 
@@ -14,4 +24,130 @@ public class MemoryMonitorDAOTest extends MonitorDAOTestSupport {
         dao = new MemoryMonitorDAO();
         setUpData();
     }
+
+    /**
+     * Builds a DAO whose requests fall in the current minute, the test data spans more than the
+     * minutes covered by the rollups
+     */
+    MemoryMonitorDAO rollupDAO() {
+        MemoryMonitorDAO rollupDAO = new MemoryMonitorDAO();
+        save(rollupDAO, "foo", "x", "widgets");
+        save(rollupDAO, "bar", "y", "things");
+        save(rollupDAO, "baz", "x", "stuff");
+        save(rollupDAO, "bam", "x", "widgets", "things");
+        save(rollupDAO, "foo", "x", "things", "stuff");
+        save(rollupDAO, "foo", "x", "stuff");
+        save(rollupDAO, "bar", "z", "things", "stuff");
+        save(rollupDAO, "bam", "y", "widgets");
+        save(rollupDAO, "bam", "y", "stuff");
+        save(rollupDAO, "foo", "x", "things");
+        save(rollupDAO, null, null);
+        return rollupDAO;
+    }
+
+    void save(MemoryMonitorDAO target, String service, String operation, String... layers) {
+        RequestData data = target.init(new RequestData());
+        data.setService(service);
+        data.setOperation(operation);
+        data.setResources(Arrays.asList(layers));
+        data.setStartTime(new Date());
+        target.save(data);
+    }
+
+    @Test
+    public void testAggregateByServiceOperation() throws Exception {
+        final List<RequestData> datas = new ArrayList<>();
+        final List<Object> aggs = new ArrayList<>();
+        MemoryMonitorDAO dao = rollupDAO();
+        dao.getRequests(
+                new Query()
+                        .properties("service", "operation")
+                        .filter("service", null, Comparison.NEQ)
+                        .aggregate("count()")
+                        .group("service", "operation")
+                        .sort("count()", SortOrder.DESC),
+                (data, aggregates) -> {
+                    datas.add(data);
+                    aggs.add(aggregates[0]);
+                });
+
+        assertEquals(6, datas.size());
+        assertEquals("foo", datas.get(0).getService());
+        assertEquals("x", datas.get(0).getOperation());
+        assertEquals(4L, aggs.get(0));
+        assertEquals("bam", datas.get(1).getService());
+        assertEquals("y", datas.get(1).getOperation());
+        assertEquals(2L, aggs.get(1));
+    }
+
+    @Test
+    public void testAggregateByResource() throws Exception {
+        final List<RequestData> datas = new ArrayList<>();
+        final List<Object> aggs = new ArrayList<>();
+        MemoryMonitorDAO dao = rollupDAO();
+        dao.getRequests(
+                new Query()
+                        .properties("resource")
+                        .filter("resource", null, Comparison.NEQ)
+                        .aggregate("count()")
+                        .group("resource")
+                        .sort("resource", SortOrder.ASC),
+                (data, aggregates) -> {
+                    datas.add(data);
+                    aggs.add(aggregates[0]);
+                });
+
+        assertEquals(3, datas.size());
+        assertEquals("stuff", datas.get(0).getResources().get(0));
+        assertEquals(5L, aggs.get(0));
+        assertEquals("things", datas.get(1).getResources().get(0));
+        assertEquals(5L, aggs.get(1));
+        assertEquals("widgets", datas.get(2).getResources().get(0));
+        assertEquals(3L, aggs.get(2));
+    }
+
+    @Test
+    public void testAggregateCount() throws Exception {
+        final List<Object> aggs = new ArrayList<>();
+        MemoryMonitorDAO dao = rollupDAO();
+        dao.getRequests(
+                new Query().aggregate("count()").filter("service", "foo", Comparison.EQ),
+                (data, aggregates) -> aggs.add(aggregates[0]));
+        assertEquals(1, aggs.size());
+        assertEquals(4L, aggs.get(0));
+    }
+
+    @Test
+    public void testRollupPercentiles() throws Exception {
+        RequestRollups rollups = new RequestRollups(5);
+        Date now = new Date();
+        for (int i = 1; i <= 100; i++) {
+            RequestData data = new RequestData();
+            data.setService("wms");
+            data.setOperation("GetMap");
+            data.setStartTime(now);
+            data.setTotalTime(i * 10);
+            data.setResponseLength(1000);
+            rollups.record(data);
+        }
+
+        final List<Object> aggs = new ArrayList<>();
+        rollups.query(
+                new Query()
+                        .aggregate("count()", "sum(responseLength)", "p50(totalTime)")
+                        .aggregate("p99(totalTime)", "max(totalTime)"),
+                (data, aggregates) -> {
+                    for (Object a : aggregates) {
+                        aggs.add(a);
+                    }
+                });
+        assertEquals(100L, aggs.get(0));
+        assertEquals(100000L, aggs.get(1));
+        // log-linear histogram, the bucket upper bound is within 12.5% of the actual value
+        long p50 = (Long) aggs.get(2);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+        long p99 = (Long) aggs.get(3);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000L, aggs.get(4));
+    }
 }
@@ -0,0 +1,472 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import static org.geoserver.wms.mapbox.ProtobufBuffer.WIRE_FIXED32;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.WIRE_FIXED64;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.WIRE_LENGTH_DELIMITED;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.WIRE_VARINT;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.packedSize;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.varintSize;
+import static org.geoserver.wms.mapbox.ProtobufBuffer.zigZag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Encodes a Mapbox vector tile (version 2 of the specification) writing the features into the
+ * protocol buffers output as they are added, rather than building the whole tile in memory first.
+ *
+ * <p>Each layer collects its encoded features in a pooled {@link ProtobufBuffer}, along with its
+ * own dictionary of attribute keys and values. Geometry command streams are computed straight from
+ * the coordinate sequences, expected in tile coordinates, and written as varints into the layer
+ * buffer. The finished tile is written out with {@link #writeTo(OutputStream)} directly from the
+ * layer buffers, without assembling it in a single array.
+ */
+class MapBoxTileEncoder {
+
+    static final int TILE_LAYERS = 3;
+
+    static final int LAYER_NAME = 1;
+
+    static final int LAYER_FEATURES = 2;
+
+    static final int LAYER_KEYS = 3;
+
+    static final int LAYER_VALUES = 4;
+
+    static final int LAYER_EXTENT = 5;
+
+    static final int LAYER_VERSION = 15;
+
+    static final int FEATURE_ID = 1;
+
+    static final int FEATURE_TAGS = 2;
+
+    static final int FEATURE_TYPE = 3;
+
+    static final int FEATURE_GEOMETRY = 4;
+
+    static final int VALUE_STRING = 1;
+
+    static final int VALUE_FLOAT = 2;
+
+    static final int VALUE_DOUBLE = 3;
+
+    static final int VALUE_SINT = 6;
+
+    static final int VALUE_BOOL = 7;
+
+    static final int GEOM_POINT = 1;
+
+    static final int GEOM_LINESTRING = 2;
+
+    static final int GEOM_POLYGON = 3;
+
+    static final int CMD_MOVE_TO = 1;
+
+    static final int CMD_LINE_TO = 2;
+
+    static final int CMD_CLOSE_PATH = 7;
+
+    private final int extent;
+
+    private final Map<String, LayerWriter> layers = new LinkedHashMap<>();
+
+    /** The command stream of the current feature */
+    private int[] commands = new int[256];
+
+    private int commandCount;
+
+    /** The tags of the current feature */
+    private int[] tags = new int[32];
+
+    private int tagCount;
+
+    /** The cursor position in the current feature, in tile coordinates */
+    private int cursorX, cursorY;
+
+    private boolean finished;
+
+    private static final class LayerWriter {
+
+        final String name;
+
+        final ProtobufBuffer features = ProtobufBuffer.allocate();
+
+        final Map<String, Integer> keys = new LinkedHashMap<>();
+
+        final Map<Object, Integer> values = new LinkedHashMap<>();
+
+        /** The layer tag, length and header fields, written before the features */
+        ProtobufBuffer head;
+
+        /** The keys and values, written after the features */
+        ProtobufBuffer tail;
+
+        LayerWriter(String name) {
+            this.name = name;
+        }
+
+        void release() {
+            features.release();
+            if (head != null) {
+                head.release();
+                tail.release();
+            }
+        }
+    }
+
+    /** @param extent The tile extent, in tile coordinates */
+    MapBoxTileEncoder(int extent) {
+        this.extent = extent;
+    }
+
+    /**
+     * Adds a feature to the tile. Collections are split in one feature per component, each with
+     * the same attributes and identifier.
+     *
+     * @param layerName The layer name
+     * @param attributes The feature attributes, null values are skipped
+     * @param geometry The geometry, in tile coordinates
+     * @param id The feature identifier, or a negative value if not available
+     */
+    void addFeature(String layerName, Map<String, ?> attributes, Geometry geometry, long id) {
+        if (finished) {
+            throw new IllegalStateException("The tile has already been encoded");
+        }
+        if (geometry == null || geometry.isEmpty()) {
+            return;
+        }
+        LayerWriter layer = layers.computeIfAbsent(layerName, LayerWriter::new);
+        encodeTags(layer, attributes);
+        addGeometry(layer, geometry, id);
+    }
+
+    private void addGeometry(LayerWriter layer, Geometry geometry, long id) {
+        if (geometry.getClass() == GeometryCollection.class) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                addGeometry(layer, geometry.getGeometryN(i), id);
+            }
+            return;
+        }
+        commandCount = 0;
+        cursorX = 0;
+        cursorY = 0;
+        final int type;
+        if (geometry instanceof Point || geometry instanceof MultiPoint) {
+            type = GEOM_POINT;
+            encodePoints(geometry);
+        } else if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+            type = GEOM_LINESTRING;
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                LineString line = (LineString) geometry.getGeometryN(i);
+                encodeLine(line.getCoordinateSequence(), false, false);
+            }
+        } else if (geometry instanceof Polygon || geometry instanceof MultiPolygon) {
+            type = GEOM_POLYGON;
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                encodePolygon((Polygon) geometry.getGeometryN(i));
+            }
+        } else {
+            return;
+        }
+        if (commandCount > 0) {
+            writeFeature(layer, id, type);
+        }
+    }
+
+    private void encodePoints(Geometry geometry) {
+        int count = 0;
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            if (!geometry.getGeometryN(i).isEmpty()) {
+                count++;
+            }
+        }
+        addCommand(command(CMD_MOVE_TO, count));
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+            Point point = (Point) geometry.getGeometryN(i);
+            if (!point.isEmpty()) {
+                CoordinateSequence cs = point.getCoordinateSequence();
+                moveCursor(round(cs.getX(0)), round(cs.getY(0)));
+            }
+        }
+    }
+
+    private void encodePolygon(Polygon polygon) {
+        // the exterior ring must have a positive area in tile coordinates, holes a negative one
+        CoordinateSequence shell = polygon.getExteriorRing().getCoordinateSequence();
+        if (!encodeLine(shell, true, signedArea(shell) < 0)) {
+            // degenerate polygon, its holes do not matter
+            return;
+        }
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            CoordinateSequence hole = polygon.getInteriorRingN(i).getCoordinateSequence();
+            encodeLine(hole, true, signedArea(hole) > 0);
+        }
+    }
+
+    /**
+     * Encodes a line or a ring, skipping the points falling on the same tile coordinates as the
+     * previous one
+     *
+     * @return false if the line degenerated to a point, or the ring to a line, and was skipped
+     */
+    private boolean encodeLine(CoordinateSequence cs, boolean ring, boolean reverse) {
+        // rings skip the closing point
+        final int last = cs.size() - 1;
+        final int count = ring ? last : cs.size();
+        if (count < (ring ? 3 : 2)) {
+            return false;
+        }
+        final int startCommands = commandCount;
+        final int startX = cursorX;
+        final int startY = cursorY;
+
+        addCommand(command(CMD_MOVE_TO, 1));
+        int idx = reverse ? last : 0;
+        moveCursor(round(cs.getX(idx)), round(cs.getY(idx)));
+        final int lineToCommand = commandCount;
+        addCommand(0);
+        int lineTos = 0;
+        for (int i = 1; i < count; i++) {
+            idx = reverse ? last - i : i;
+            int x = round(cs.getX(idx));
+            int y = round(cs.getY(idx));
+            if (x != cursorX || y != cursorY) {
+                moveCursor(x, y);
+                lineTos++;
+            }
+        }
+        if (lineTos < (ring ? 2 : 1)) {
+            commandCount = startCommands;
+            cursorX = startX;
+            cursorY = startY;
+            return false;
+        }
+        commands[lineToCommand] = command(CMD_LINE_TO, lineTos);
+        if (ring) {
+            addCommand(command(CMD_CLOSE_PATH, 1));
+        }
+        return true;
+    }
+
+    /** Adds the parameters of a move to, or line to, the given position */
+    private void moveCursor(int x, int y) {
+        addCommand(zigZag(x - cursorX));
+        addCommand(zigZag(y - cursorY));
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private void addCommand(int value) {
+        if (commandCount == commands.length) {
+            commands = Arrays.copyOf(commands, commandCount * 2);
+        }
+        commands[commandCount++] = value;
+    }
+
+    private void encodeTags(LayerWriter layer, Map<String, ?> attributes) {
+        tagCount = 0;
+        if (attributes == null) {
+            return;
+        }
+        for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            if (tagCount + 2 > tags.length) {
+                tags = Arrays.copyOf(tags, tags.length * 2);
+            }
+            tags[tagCount++] = intern(layer.keys, entry.getKey());
+            tags[tagCount++] = intern(layer.values, normalize(entry.getValue()));
+        }
+    }
+
+    private static <T> int intern(Map<T, Integer> dictionary, T value) {
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(value, index);
+        }
+        return index;
+    }
+
+    /** Maps the attribute value to the object to encode, one of the types the tiles support */
+    private static Object normalize(Object value) {
+        if (value instanceof String
+                || value instanceof Boolean
+                || value instanceof Float
+                || value instanceof Double
+                || value instanceof Long) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value.toString();
+    }
+
+    private void writeFeature(LayerWriter layer, long id, int type) {
+        int length = 0;
+        if (id >= 0) {
+            length += varintSize(FEATURE_ID << 3) + varintSize(id);
+        }
+        if (tagCount > 0) {
+            length += packedSize(FEATURE_TAGS, tags, tagCount);
+        }
+        length += varintSize(FEATURE_TYPE << 3) + varintSize(type);
+        length += packedSize(FEATURE_GEOMETRY, commands, commandCount);
+
+        ProtobufBuffer out = layer.features;
+        out.writeTag(LAYER_FEATURES, WIRE_LENGTH_DELIMITED);
+        out.writeVarint(length);
+        if (id >= 0) {
+            out.writeTag(FEATURE_ID, WIRE_VARINT);
+            out.writeVarint(id);
+        }
+        if (tagCount > 0) {
+            out.writePacked(FEATURE_TAGS, tags, tagCount);
+        }
+        out.writeTag(FEATURE_TYPE, WIRE_VARINT);
+        out.writeVarint(type);
+        out.writePacked(FEATURE_GEOMETRY, commands, commandCount);
+    }
+
+    /** Completes the layers, no more features can be added afterwards */
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        for (LayerWriter layer : layers.values()) {
+            ProtobufBuffer tail = ProtobufBuffer.allocate();
+            for (String key : layer.keys.keySet()) {
+                tail.writeTag(LAYER_KEYS, WIRE_LENGTH_DELIMITED);
+                tail.writeString(key);
+            }
+            for (Object value : layer.values.keySet()) {
+                writeValue(tail, value);
+            }
+
+            ProtobufBuffer header = ProtobufBuffer.allocate();
+            header.writeTag(LAYER_VERSION, WIRE_VARINT);
+            header.writeVarint(2);
+            header.writeTag(LAYER_NAME, WIRE_LENGTH_DELIMITED);
+            header.writeString(layer.name);
+            header.writeTag(LAYER_EXTENT, WIRE_VARINT);
+            header.writeVarint(extent);
+
+            int length = header.size() + layer.features.size() + tail.size();
+            ProtobufBuffer head = ProtobufBuffer.allocate();
+            head.writeTag(TILE_LAYERS, WIRE_LENGTH_DELIMITED);
+            head.writeVarint(length);
+            // the header is tiny, copying it keeps the output to three segments per layer
+            head.write(header);
+            header.release();
+
+            layer.head = head;
+            layer.tail = tail;
+        }
+    }
+
+    private static void writeValue(ProtobufBuffer out, Object value) {
+        out.writeTag(LAYER_VALUES, WIRE_LENGTH_DELIMITED);
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(1 + varintSize(bytes.length) + bytes.length);
+            out.writeTag(VALUE_STRING, WIRE_LENGTH_DELIMITED);
+            out.writeBytes(bytes);
+        } else if (value instanceof Long) {
+            long encoded = zigZag((long) (Long) value);
+            out.writeVarint(1 + varintSize(encoded));
+            out.writeTag(VALUE_SINT, WIRE_VARINT);
+            out.writeVarint(encoded);
+        } else if (value instanceof Float) {
+            out.writeVarint(1 + 4);
+            out.writeTag(VALUE_FLOAT, WIRE_FIXED32);
+            out.writeFixed32(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            out.writeVarint(1 + 8);
+            out.writeTag(VALUE_DOUBLE, WIRE_FIXED64);
+            out.writeFixed64(Double.doubleToLongBits((Double) value));
+        } else {
+            out.writeVarint(1 + 1);
+            out.writeTag(VALUE_BOOL, WIRE_VARINT);
+            out.writeVarint(((Boolean) value) ? 1 : 0);
+        }
+    }
+
+    /** Returns the size of the encoded tile, in bytes */
+    int getSize() {
+        finish();
+        int size = 0;
+        for (LayerWriter layer : layers.values()) {
+            size += layer.head.size() + layer.features.size() + layer.tail.size();
+        }
+        return size;
+    }
+
+    /** Writes the encoded tile, can be called multiple times until the encoder is disposed */
+    void writeTo(OutputStream out) throws IOException {
+        finish();
+        for (LayerWriter layer : layers.values()) {
+            layer.head.writeTo(out);
+            layer.features.writeTo(out);
+            layer.tail.writeTo(out);
+        }
+    }
+
+    /** Returns the encoded tile as a byte array */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(getSize());
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            // cannot happen writing in memory
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the buffers to the pool, the encoder cannot be used afterwards */
+    void dispose() {
+        finished = true;
+        for (LayerWriter layer : layers.values()) {
+            layer.release();
+        }
+        layers.clear();
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int round(double ordinate) {
+        return (int) Math.round(ordinate);
+    }
+
+    /** Twice the signed area of the ring, positive when counter-clockwise in a y-up system */
+    private static double signedArea(CoordinateSequence ring) {
+        double sum = 0;
+        for (int i = 0, n = ring.size() - 1; i < n; i++) {
+            sum += ring.getX(i) * ring.getY(i + 1) - ring.getX(i + 1) * ring.getY(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,40 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.RawMap;
+
+/**
+ * WebMap writing a vector tile straight from the buffers of its {@link MapBoxTileEncoder}, which
+ * are returned to the pool once the map is disposed.
+ */
+class MapBoxTileMap extends RawMap {
+
+    private MapBoxTileEncoder encoder;
+
+    MapBoxTileMap(WMSMapContent mapContent, MapBoxTileEncoder encoder, String mimeType) {
+        super(mapContent, (byte[]) null, mimeType);
+        this.encoder = encoder;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (encoder == null) {
+            throw new IllegalStateException("The map has already been disposed");
+        }
+        encoder.writeTo(out);
+    }
+
+    @Override
+    public void disposeInternal() {
+        if (encoder != null) {
+            encoder.dispose();
+            encoder = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A growable byte buffer with the protocol buffers primitives needed to write vector tiles.
+ *
+ * <p>The backing arrays are taken from, and returned to, a small shared pool, so that encoding
+ * a tile does not allocate and grow new buffers each time.
+ */
+final class ProtobufBuffer {
+
+    static final int WIRE_VARINT = 0;
+
+    static final int WIRE_FIXED64 = 1;
+
+    static final int WIRE_LENGTH_DELIMITED = 2;
+
+    static final int WIRE_FIXED32 = 5;
+
+    static final int INITIAL_SIZE = 4096;
+
+    /** Larger arrays are left to the garbage collector rather than kept in the pool */
+    static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(64);
+
+    private byte[] buffer;
+
+    private int size;
+
+    private ProtobufBuffer(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /** Returns a new buffer, backed by a pooled array if available */
+    static ProtobufBuffer allocate() {
+        byte[] buffer = POOL.poll();
+        return new ProtobufBuffer(buffer == null ? new byte[INITIAL_SIZE] : buffer);
+    }
+
+    /** Returns the backing array to the pool, the buffer cannot be used afterwards */
+    void release() {
+        byte[] released = buffer;
+        buffer = null;
+        size = 0;
+        if (released != null && released.length <= MAX_POOLED_SIZE) {
+            POOL.offer(released);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    void writeFixed32(int value) {
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            buffer[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeFixed64(long value) {
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /** Writes a length delimited UTF-8 string, without the field tag */
+    void writeString(String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Writes a length delimited array of bytes, without the field tag */
+    void writeBytes(byte[] value) {
+        writeVarint(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, size, value.length);
+        size += value.length;
+    }
+
+    /** Appends the contents of another buffer */
+    void write(ProtobufBuffer other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.buffer, 0, buffer, size, other.size);
+        size += other.size;
+    }
+
+    /** Writes the given values as a packed varint field, including the field tag */
+    void writePacked(int field, int[] values, int count) {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += varintSize(values[i]);
+        }
+        writeTag(field, WIRE_LENGTH_DELIMITED);
+        writeVarint(length);
+        for (int i = 0; i < count; i++) {
+            writeVarint(values[i] & 0xFFFFFFFFL);
+        }
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    /** Returns the number of bytes needed to write the value as a varint */
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    /** Returns the number of bytes needed to write the unsigned 32 bits value as a varint */
+    static int varintSize(int value) {
+        return varintSize(value & 0xFFFFFFFFL);
+    }
+
+    /** Returns the number of bytes needed to write the packed field, including the field tag */
+    static int packedSize(int field, int[] values, int count) {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += varintSize(values[i]);
+        }
+        return varintSize(field << 3) + varintSize(length) + length;
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,233 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Objects;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.map.Layer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateFilter;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.opengis.feature.type.Name;
+
+/**
+ * Keeps the geometries of a layer simplified at a number of generalization levels, so that tiles
+ * at low zoom levels do not need to simplify the full resolution geometries of large features
+ * over and over.
+ *
+ * <p>Levels are powers of two of the simplification distance in the layer native CRS, a tile uses
+ * the largest level not exceeding the distance the tile pipeline simplifies with, and the pipeline
+ * then simplifies the already reduced geometry to the exact tolerance. Levels are filled
+ * incrementally, as the features are requested, and the simplified geometries are kept in memory
+ * up to a maximum number of coordinates, set with the {@code GS_VECTOR_TILES_PYRAMID_COORDINATES}
+ * system variable.
+ *
+ * <p>The output is not the same as simplifying the full resolution geometry: the errors of the two
+ * simplification steps add up, the level distance being at most the pipeline one, the output can
+ * be up to twice the pipeline distance away from the original geometry, instead of once.
+ *
+ * <p>The pyramid is only used for the layers having the {@link #ENABLED_KEY} metadata entry set
+ * to true.
+ */
+public class GeneralizationPyramid {
+
+    /** The feature type metadata key enabling the pyramid for the layer */
+    public static final String ENABLED_KEY = "vectorTiles.generalizationPyramid";
+
+    static final String MAX_COORDINATES_PROPERTY = "GS_VECTOR_TILES_PYRAMID_COORDINATES";
+
+    /** Geometries smaller than this are cheap to simplify, and are not cached */
+    static final int MIN_COORDINATES = 64;
+
+    private final Cache<Key, Entry> cache;
+
+    private static final class Key {
+
+        final String layerName;
+
+        final String featureId;
+
+        final int level;
+
+        Key(String layerName, String featureId, int level) {
+            this.layerName = layerName;
+            this.featureId = featureId;
+            this.level = level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return level == other.level
+                    && featureId.equals(other.featureId)
+                    && layerName.equals(other.layerName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(layerName, featureId, level);
+        }
+    }
+
+    private static final class Entry {
+
+        /** Used to tell if the feature geometry has been modified since it was simplified */
+        final int originalCoordinates;
+
+        final long originalHash;
+
+        final Geometry simplified;
+
+        Entry(Geometry original, long originalHash, Geometry simplified) {
+            this.originalCoordinates = original.getNumPoints();
+            this.originalHash = originalHash;
+            this.simplified = simplified;
+        }
+
+        boolean matches(Geometry original, long hash) {
+            return originalCoordinates == original.getNumPoints() && originalHash == hash;
+        }
+    }
+
+    /**
+     * Hashes all the coordinates of a geometry, a single linear pass, still a lot cheaper than
+     * simplifying it again
+     */
+    private static final class CoordinateHash implements CoordinateFilter {
+
+        long hash = 1;
+
+        @Override
+        public void filter(Coordinate coord) {
+            hash = 31 * hash + Double.doubleToLongBits(coord.x);
+            hash = 31 * hash + Double.doubleToLongBits(coord.y);
+        }
+
+        static long of(Geometry geometry) {
+            CoordinateHash filter = new CoordinateHash();
+            geometry.apply(filter);
+            return filter.hash;
+        }
+    }
+
+    /** The simplified geometries of a layer at a given generalization level */
+    public class Level {
+
+        private final String layerName;
+
+        private final int level;
+
+        private final double distanceTolerance;
+
+        Level(String layerName, int level) {
+            this.layerName = layerName;
+            this.level = level;
+            this.distanceTolerance = Math.pow(2, level);
+        }
+
+        /** Returns the simplification distance of this level, in the layer native CRS */
+        public double getDistanceTolerance() {
+            return distanceTolerance;
+        }
+
+        /**
+         * Returns the feature geometry simplified at this level, from the pyramid when available
+         *
+         * @param featureId The feature identifier
+         * @param geometry The full resolution feature geometry
+         */
+        public Geometry generalize(String featureId, Geometry geometry) {
+            if (geometry == null
+                    || geometry.getDimension() == 0
+                    || geometry.getNumPoints() < MIN_COORDINATES) {
+                return geometry;
+            }
+            Key key = new Key(layerName, featureId, level);
+            Entry entry = cache.getIfPresent(key);
+            long hash = CoordinateHash.of(geometry);
+            if (entry == null || !entry.matches(geometry, hash)) {
+                entry = new Entry(geometry, hash, simplify(geometry, distanceTolerance));
+                cache.put(key, entry);
+            }
+            return entry.simplified;
+        }
+    }
+
+    public GeneralizationPyramid() {
+        this(Long.getLong(MAX_COORDINATES_PROPERTY, 10_000_000));
+    }
+
+    GeneralizationPyramid(long maxCoordinates) {
+        this.cache =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxCoordinates)
+                        .weigher((Key k, Entry e) -> e.simplified.getNumPoints() + 1)
+                        .build();
+    }
+
+    /** Returns true if the pyramid is enabled for the given map layer */
+    public boolean isEnabled(WMSMapContent mapContent, Layer layer) {
+        GetMapRequest request = mapContent.getRequest();
+        if (request == null || layer.getFeatureSource() == null) {
+            return false;
+        }
+        Name name = layer.getFeatureSource().getSchema().getName();
+        for (MapLayerInfo info : request.getLayers()) {
+            FeatureTypeInfo featureType =
+                    info.getType() == MapLayerInfo.TYPE_VECTOR ? info.getFeature() : null;
+            if (featureType != null && featureType.getQualifiedName().equals(name)) {
+                Boolean enabled = featureType.getMetadata().get(ENABLED_KEY, Boolean.class);
+                return Boolean.TRUE.equals(enabled);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the level to use for the given layer and simplification distance, or null if the
+     * distance is too small to benefit from the pyramid
+     *
+     * @param layerName The layer name
+     * @param distanceTolerance The simplification distance, in the layer native CRS
+     */
+    public Level getLevel(String layerName, double distanceTolerance) {
+        if (!(distanceTolerance > 0) || Double.isInfinite(distanceTolerance)) {
+            return null;
+        }
+        int level = (int) Math.floor(Math.log(distanceTolerance) / Math.log(2));
+        return new Level(layerName, level);
+    }
+
+    /** Drops all the simplified geometries */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /** Returns the number of simplified geometries kept in memory */
+    long size() {
+        return cache.size();
+    }
+
+    static Geometry simplify(Geometry geometry, double distanceTolerance) {
+        switch (geometry.getDimension()) {
+            case 2:
+                return TopologyPreservingSimplifier.simplify(geometry, distanceTolerance);
+            case 1:
+                return DouglasPeuckerSimplifier.simplify(geometry, distanceTolerance);
+            default:
+                return geometry;
+        }
+    }
+}
@@ -109,6 +109,39 @@ public class PipelineBuilder {
         return new PipelineBuilder(context);
     }
 
+    /**
+     * Returns the smallest simplification distance the pipeline may use, expressed in the source
+     * CRS, so that geometries can be simplified before entering the pipeline without visible
+     * changes
+     *
+     * @param renderingArea The extent of the tile in target CRS
+     * @param paintArea The extent of the tile in screen/pixel coordinates
+     * @param sourceCrs The CRS of the features
+     * @param overSampleFactor Divisor for simplification tolerance.
+     */
+    public static double getSourceSimplificationDistance(
+            ReferencedEnvelope renderingArea,
+            Rectangle paintArea,
+            CoordinateReferenceSystem sourceCrs,
+            double overSampleFactor)
+            throws FactoryException {
+        CoordinateReferenceSystem mapCrs = renderingArea.getCoordinateReferenceSystem();
+        AffineTransform worldToScreen =
+                RendererUtilities.worldToScreenTransform(renderingArea, paintArea);
+        MathTransform sourceToScreen =
+                ConcatenatedTransform.create(
+                        buildTransform(sourceCrs, mapCrs),
+                        ProjectiveTransform.create(worldToScreen));
+        try {
+            double[] spans =
+                    Decimator.computeGeneralizationDistances(
+                            sourceToScreen.inverse(), paintArea, PIXEL_BASE_SAMPLE_SIZE);
+            return Math.min(spans[0], spans[1]) / overSampleFactor;
+        } catch (TransformException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     private static Context createContext(
             ReferencedEnvelope mapArea,
             Rectangle paintArea,
@@ -54,6 +54,8 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
 
     private boolean transformToScreenCoordinates;
 
+    private GeneralizationPyramid generalizationPyramid;
+
     public VectorTileMapOutputFormat(VectorTileBuilderFactory tileBuilderFactory) {
         super(tileBuilderFactory.getMimeType(), tileBuilderFactory.getOutputFormats());
         this.tileBuilderFactory = tileBuilderFactory;
@@ -82,6 +84,14 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
         this.transformToScreenCoordinates = useScreenCoords;
     }
 
+    /**
+     * Sets the pyramid providing pre-simplified geometries for the layers enabling it, if not set
+     * the geometries are always simplified from their full resolution
+     */
+    public void setGeneralizationPyramid(GeneralizationPyramid generalizationPyramid) {
+        this.generalizationPyramid = generalizationPyramid;
+    }
+
     @Override
     public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException, IOException {
         checkNotNull(mapContent);
@@ -124,13 +134,15 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
                                     (FeatureType) featureSource.getSchema()));
             Pipeline pipeline =
                     getPipeline(mapContent, renderingArea, paintArea, sourceCrs, buffer);
+            GeneralizationPyramid.Level pyramidLevel =
+                    getPyramidLevel(mapContent, layer, renderingArea, paintArea, sourceCrs);
 
             Query query = getStyleQuery(layer, mapContent);
             query.getHints().remove(Hints.SCREENMAP);
 
             FeatureCollection<?, ?> features = featureSource.getFeatures(query);
 
-            run(features, pipeline, geometryDescriptor, vectorTileBuilder, layer);
+            run(features, pipeline, pyramidLevel, geometryDescriptor, vectorTileBuilder, layer);
         }
 
         WebMap map = vectorTileBuilder.build(mapContent);
@@ -162,6 +174,26 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
         return pipeline;
     }
 
+    private GeneralizationPyramid.Level getPyramidLevel(
+            final WMSMapContent mapContent,
+            final Layer layer,
+            final ReferencedEnvelope renderingArea,
+            final Rectangle paintArea,
+            CoordinateReferenceSystem sourceCrs) {
+        if (generalizationPyramid == null || !generalizationPyramid.isEnabled(mapContent, layer)) {
+            return null;
+        }
+        try {
+            double distance =
+                    PipelineBuilder.getSourceSimplificationDistance(
+                            renderingArea, paintArea, sourceCrs, overSamplingFactor);
+            String layerName = layer.getFeatureSource().getSchema().getName().toString();
+            return generalizationPyramid.getLevel(layerName, distance);
+        } catch (FactoryException e) {
+            throw new ServiceException(e);
+        }
+    }
+
     private Map<String, Object> getProperties(ComplexAttribute feature) {
         Map<String, Object> props = new TreeMap<>();
         for (Property p : feature.getProperties()) {
@@ -185,6 +217,7 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
     void run(
             FeatureCollection<?, ?> features,
             Pipeline pipeline,
+            GeneralizationPyramid.Level pyramidLevel,
             GeometryDescriptor geometryDescriptor,
             VectorTileBuilder vectorTileBuilder,
             Layer layer) {
@@ -201,6 +234,10 @@ public class VectorTileMapOutputFormat extends AbstractMapOutputFormat {
                 Geometry finalGeom;
 
                 originalGeom = (Geometry) feature.getDefaultGeometryProperty().getValue();
+                if (pyramidLevel != null) {
+                    originalGeom =
+                            pyramidLevel.generalize(feature.getIdentifier().getID(), originalGeom);
+                }
                 try {
                     finalGeom = pipeline.execute(originalGeom);
                 } catch (Exception processingException) {
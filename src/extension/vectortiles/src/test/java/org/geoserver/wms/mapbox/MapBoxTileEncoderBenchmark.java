@@ -0,0 +1,142 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import no.ecc.vectortile.VectorTileEncoder;
+import no.ecc.vectortile.VectorTileEncoderNoClip;
+import org.apache.commons.io.output.NullOutputStream;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.util.SineStarFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the java-vector-tile encoder with the {@link MapBoxTileEncoder}, writing a tile with
+ * points, lines and polygons to the output. Not a unit test, run it with the {@link
+ * #main(String[])} method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapBoxTileEncoderBenchmark {
+
+    static final int EXTENT = 4096;
+
+    /** Number of features in each of the three layers */
+    @Param({"100", "1000", "10000"})
+    int features;
+
+    List<Geometry> points;
+
+    List<Geometry> lines;
+
+    List<Geometry> polygons;
+
+    List<Map<String, Object>> attributes;
+
+    OutputStream out = NullOutputStream.NULL_OUTPUT_STREAM;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(0);
+        points = new ArrayList<>();
+        lines = new ArrayList<>();
+        polygons = new ArrayList<>();
+        attributes = new ArrayList<>();
+        for (int i = 0; i < features; i++) {
+            points.add(gf.createPoint(randomCoordinate(random)));
+
+            Coordinate[] coordinates = new Coordinate[50];
+            coordinates[0] = randomCoordinate(random);
+            for (int j = 1; j < coordinates.length; j++) {
+                coordinates[j] =
+                        new Coordinate(
+                                coordinates[j - 1].x + random.nextInt(21) - 10,
+                                coordinates[j - 1].y + random.nextInt(21) - 10);
+            }
+            lines.add(gf.createLineString(coordinates));
+
+            SineStarFactory star = new SineStarFactory(gf);
+            star.setCentre(randomCoordinate(random));
+            star.setSize(10 + random.nextInt(200));
+            star.setNumPoints(100);
+            polygons.add(star.createSineStar());
+
+            Map<String, Object> feature = new LinkedHashMap<>();
+            feature.put("name", "feature" + i);
+            feature.put("category", "category" + (i % 10));
+            feature.put("rank", i % 100);
+            feature.put("value", random.nextDouble());
+            feature.put("active", i % 2 == 0);
+            attributes.add(feature);
+        }
+    }
+
+    private Coordinate randomCoordinate(Random random) {
+        return new Coordinate(random.nextInt(EXTENT), random.nextInt(EXTENT));
+    }
+
+    @Benchmark
+    public int vectorTileEncoder() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoderNoClip(EXTENT, EXTENT / 32, false);
+        for (int i = 0; i < features; i++) {
+            encoder.addFeature("points", attributes.get(i), points.get(i), i);
+            encoder.addFeature("lines", attributes.get(i), lines.get(i), i);
+            encoder.addFeature("polygons", attributes.get(i), polygons.get(i), i);
+        }
+        byte[] tile = encoder.encode();
+        out.write(tile);
+        return tile.length;
+    }
+
+    @Benchmark
+    public int mapBoxTileEncoder() throws Exception {
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(EXTENT);
+        try {
+            for (int i = 0; i < features; i++) {
+                encoder.addFeature("points", attributes.get(i), points.get(i), i);
+                encoder.addFeature("lines", attributes.get(i), lines.get(i), i);
+                encoder.addFeature("polygons", attributes.get(i), polygons.get(i), i);
+            }
+            encoder.writeTo(out);
+            return encoder.getSize();
+        } finally {
+            encoder.dispose();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(MapBoxTileEncoderBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,202 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.mapbox;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import no.ecc.vectortile.VectorTileDecoder;
+import no.ecc.vectortile.VectorTileDecoder.Feature;
+import no.ecc.vectortile.VectorTileEncoder;
+import no.ecc.vectortile.VectorTileEncoderNoClip;
+import org.junit.Test;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+public class MapBoxTileEncoderTest {
+
+    private Geometry geom(String wkt) throws ParseException {
+        return new WKTReader().read(wkt);
+    }
+
+    private List<Feature> decode(byte[] tile) throws Exception {
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<Feature> features = new ArrayList<>();
+        for (Feature feature : decoder.decode(tile)) {
+            features.add(feature);
+        }
+        return features;
+    }
+
+    @Test
+    public void testGeometryTypes() throws Exception {
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(geom("POINT(1 10)"));
+        geometries.add(geom("MULTIPOINT((1 10), (20 30))"));
+        geometries.add(geom("LINESTRING(0 0, 10 10, 20 0)"));
+        geometries.add(geom("MULTILINESTRING((0 0, 10 10), (20 20, 30 20))"));
+        geometries.add(
+                geom("POLYGON((0 0, 100 0, 100 100, 0 100, 0 0), (10 10, 10 20, 20 20, 10 10))"));
+        geometries.add(
+                geom(
+                        "MULTIPOLYGON(((0 0, 10 0, 10 10, 0 10, 0 0)), "
+                                + "((20 20, 30 20, 30 30, 20 30, 20 20)))"));
+        for (int i = 0; i < geometries.size(); i++) {
+            encoder.addFeature("layer", Collections.emptyMap(), geometries.get(i), i);
+        }
+
+        List<Feature> features = decode(encoder.encode());
+        assertEquals(geometries.size(), features.size());
+        for (int i = 0; i < geometries.size(); i++) {
+            Feature feature = features.get(i);
+            assertEquals(i, feature.getId());
+            assertTrue(
+                    geometries.get(i) + " != " + feature.getGeometry(),
+                    geometries.get(i).equalsTopo(feature.getGeometry()));
+        }
+    }
+
+    @Test
+    public void testPolygonOrientation() throws Exception {
+        // shell clockwise, hole counter-clockwise, the opposite of what the tiles expect
+        Geometry polygon =
+                geom("POLYGON((0 0, 0 100, 100 100, 100 0, 0 0), (10 10, 20 10, 20 20, 10 10))");
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        encoder.addFeature("layer", null, polygon, -1);
+
+        List<Feature> features = decode(encoder.encode());
+        assertEquals(1, features.size());
+        Polygon decoded = (Polygon) features.get(0).getGeometry();
+        assertEquals(1, decoded.getNumInteriorRing());
+        assertTrue(Orientation.isCCW(decoded.getExteriorRing().getCoordinates()));
+        assertTrue(!Orientation.isCCW(decoded.getInteriorRingN(0).getCoordinates()));
+        assertTrue(polygon.equalsTopo(decoded));
+    }
+
+    @Test
+    public void testDegenerateGeometries() throws Exception {
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        // collapse to a single tile coordinate
+        encoder.addFeature("layer", null, geom("LINESTRING(0 0, 0.1 0.1, 0.2 0.2)"), 1);
+        encoder.addFeature("layer", null, geom("POLYGON((0 0, 0.1 0, 0.1 0.1, 0 0))"), 2);
+        encoder.addFeature("layer", null, geom("POINT EMPTY"), 3);
+        // duplicate points are dropped, the rest is kept
+        encoder.addFeature("layer", null, geom("LINESTRING(0 0, 0.1 0.1, 5 5)"), 4);
+
+        List<Feature> features = decode(encoder.encode());
+        assertEquals(1, features.size());
+        assertEquals(4, features.get(0).getId());
+        assertEquals(geom("LINESTRING(0 0, 5 5)"), features.get(0).getGeometry());
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("string", "text");
+        attributes.put("int", 10);
+        attributes.put("long", -20L);
+        attributes.put("float", 1.5f);
+        attributes.put("double", 2.5d);
+        attributes.put("boolean", true);
+        attributes.put("other", new StringBuilder("converted"));
+        attributes.put("missing", null);
+
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        encoder.addFeature("layer", attributes, geom("POINT(1 1)"), 1);
+        encoder.addFeature("layer", ImmutableMap.of("int", 10), geom("POINT(2 2)"), 2);
+
+        List<Feature> features = decode(encoder.encode());
+        Map<String, Object> decoded = features.get(0).getAttributes();
+        assertEquals(7, decoded.size());
+        assertEquals("text", decoded.get("string"));
+        assertEquals(10L, ((Number) decoded.get("int")).longValue());
+        assertEquals(-20L, ((Number) decoded.get("long")).longValue());
+        assertEquals(1.5f, ((Number) decoded.get("float")).floatValue(), 0f);
+        assertEquals(2.5d, ((Number) decoded.get("double")).doubleValue(), 0d);
+        assertEquals(Boolean.TRUE, decoded.get("boolean"));
+        assertEquals("converted", decoded.get("other"));
+        assertEquals(10L, ((Number) features.get(1).getAttributes().get("int")).longValue());
+    }
+
+    @Test
+    public void testLayers() throws Exception {
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        encoder.addFeature("first", ImmutableMap.of("name", "f1"), geom("POINT(1 1)"), 1);
+        encoder.addFeature("second", ImmutableMap.of("name", "s1"), geom("POINT(2 2)"), 2);
+        // back to a layer already started
+        encoder.addFeature("first", ImmutableMap.of("name", "f2"), geom("POINT(3 3)"), 3);
+        // split in one feature per component
+        encoder.addFeature(
+                "second",
+                ImmutableMap.of("name", "s2"),
+                geom("GEOMETRYCOLLECTION(POINT(4 4), LINESTRING(0 0, 5 5))"),
+                4);
+
+        List<Feature> features = decode(encoder.encode());
+        assertEquals(5, features.size());
+        List<String> decoded = new ArrayList<>();
+        for (Feature feature : features) {
+            decoded.add(feature.getLayerName() + ":" + feature.getAttributes().get("name"));
+        }
+        assertEquals(
+                Arrays.asList("first:f1", "first:f2", "second:s1", "second:s2", "second:s2"),
+                decoded);
+    }
+
+    @Test
+    public void testSameAsVectorTileEncoder() throws Exception {
+        VectorTileEncoder reference = new VectorTileEncoderNoClip(4096, 128, false);
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(4096);
+        for (int i = 0; i < 50; i++) {
+            Map<String, Object> attributes = ImmutableMap.of("name", "f" + i, "value", i % 5);
+            int min = i * 10;
+            int max = min + 50;
+            Geometry geometry =
+                    geom(
+                            String.format(
+                                    "POLYGON((%d %d, %d %d, %d %d, %d %d, %d %d))",
+                                    min, min, max, min, max, max, min, max, min, min));
+            reference.addFeature("polygons", attributes, geometry, i);
+            encoder.addFeature("polygons", attributes, geometry, i);
+        }
+
+        List<Feature> expected = decode(reference.encode());
+        List<Feature> actual = decode(encoder.encode());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertTrue(expected.get(i).getGeometry().equalsTopo(actual.get(i).getGeometry()));
+            assertEquals(expected.get(i).getAttributes(), actual.get(i).getAttributes());
+        }
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        MapBoxTileEncoder encoder = new MapBoxTileEncoder(256);
+        encoder.addFeature("layer", ImmutableMap.of("name", "f1"), geom("POINT(1 1)"), 1);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        encoder.writeTo(first);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        encoder.writeTo(second);
+        assertEquals(encoder.getSize(), first.size());
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        encoder.dispose();
+    }
+}
@@ -0,0 +1,94 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class GeneralizationPyramidTest {
+
+    GeneralizationPyramid pyramid = new GeneralizationPyramid(1_000_000);
+
+    GeometryFactory gf = new GeometryFactory();
+
+    /** A mostly straight line, with a small zig-zag at each vertex */
+    private Geometry zigZag(int points, double offset) {
+        Coordinate[] coords = new Coordinate[points];
+        for (int i = 0; i < points; i++) {
+            coords[i] = new Coordinate(i, i % 2 == 0 ? 0 : offset);
+        }
+        return gf.createLineString(coords);
+    }
+
+    @Test
+    public void testLevels() {
+        assertEquals(2, pyramid.getLevel("layer", 3).getDistanceTolerance(), 0d);
+        assertEquals(0.25, pyramid.getLevel("layer", 0.3).getDistanceTolerance(), 0d);
+        assertNull(pyramid.getLevel("layer", 0));
+        assertNull(pyramid.getLevel("layer", Double.NaN));
+    }
+
+    @Test
+    public void testSmallGeometriesNotCached() {
+        Geometry line = zigZag(10, 0.1);
+        assertSame(line, pyramid.getLevel("layer", 1).generalize("f1", line));
+        Geometry point = gf.createPoint(new Coordinate(1, 1));
+        assertSame(point, pyramid.getLevel("layer", 1).generalize("f2", point));
+        assertEquals(0, pyramid.size());
+    }
+
+    @Test
+    public void testSimplifiedAndCached() {
+        Geometry line = zigZag(1000, 0.1);
+        GeneralizationPyramid.Level level = pyramid.getLevel("layer", 1);
+        Geometry simplified = level.generalize("f1", line);
+        assertEquals(2, simplified.getNumPoints());
+        assertEquals(1, pyramid.size());
+
+        // the same feature, read again from the store
+        assertSame(simplified, level.generalize("f1", zigZag(1000, 0.1)));
+        // another zoom band
+        GeneralizationPyramid.Level finer = pyramid.getLevel("layer", 0.05);
+        assertTrue(finer.generalize("f1", line).getNumPoints() > 2);
+        // another layer
+        assertNotSame(simplified, pyramid.getLevel("other", 1).generalize("f1", line));
+        assertEquals(3, pyramid.size());
+    }
+
+    @Test
+    public void testModifiedFeature() {
+        GeneralizationPyramid.Level level = pyramid.getLevel("layer", 1);
+        Geometry simplified = level.generalize("f1", zigZag(1000, 0.1));
+
+        // the feature was edited, the cached geometry is outdated
+        Geometry modified = level.generalize("f1", zigZag(500, 0.1));
+        assertNotSame(simplified, modified);
+        assertTrue(modified.getEnvelopeInternal().getMaxX() < 500);
+        assertEquals(1, pyramid.size());
+    }
+
+    @Test
+    public void testMovedVertex() {
+        GeneralizationPyramid.Level level = pyramid.getLevel("layer", 1);
+        Geometry line = zigZag(1000, 0.1);
+        Geometry simplified = level.generalize("f1", line);
+
+        // same number of points and same envelope, but a vertex moved
+        Geometry edited = zigZag(1000, 0.1);
+        edited.getCoordinates()[500].y = 0.05;
+        edited.geometryChanged();
+        assertEquals(line.getEnvelopeInternal(), edited.getEnvelopeInternal());
+        assertNotSame(simplified, level.generalize("f1", edited));
+        assertEquals(1, pyramid.size());
+    }
+}
@@ -64,6 +64,7 @@ import org.geoserver.gwc.layer.CatalogStyleChangeListener;
 import org.geoserver.gwc.layer.GeoServerTileLayer;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfo;
 import org.geoserver.gwc.layer.GeoServerTileLayerInfoImpl;
+import org.geoserver.gwc.layer.ParallelMetaTileEncoder;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
 import org.geoserver.ows.Response;
@@ -134,6 +135,7 @@ import org.geowebcache.storage.BlobStore;
 import org.geowebcache.storage.BlobStoreAggregator;
 import org.geowebcache.storage.CompositeBlobStore;
 import org.geowebcache.storage.DefaultStorageFinder;
+import org.geowebcache.storage.DiscontinuousTileRange;
 import org.geowebcache.storage.StorageBroker;
 import org.geowebcache.storage.StorageException;
 import org.geowebcache.storage.TileRange;
@@ -339,6 +341,7 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
         if (this.catalogStyleChangeListener != null) {
             catalog.removeListener(this.catalogStyleChangeListener);
         }
+        ParallelMetaTileEncoder.shutdownShared();
         GWC.set(null);
     }
 
@@ -466,18 +469,92 @@ public class GWC implements DisposableBean, InitializingBean, ApplicationContext
         }
     }
 
-    private BoundingBox getIntersectingBounds(
-            String layerName, GridSubset layerGrid, ReferencedEnvelope bounds) {
-        final GridSet gridSet = layerGrid.getGridSet();
-        final String gridSetId = gridSet.getName();
-        final SRS srs = gridSet.getSrs();
-        final CoordinateReferenceSystem gridSetCrs;
+    /**
+     * Truncates the tiles of a layer intersecting the given geometry, in all its grid subsets,
+     * formats and cached parameter combinations. Unlike {@link #truncate(String,
+     * ReferencedEnvelope)}, the tiles in the geometry bounds not touching the geometry itself are
+     * preserved. The geometry is buffered by the layer gutter, converted to grid set units at each
+     * zoom level, so that the tiles whose meta tile rendering reaches the area are removed too.
+     *
+     * @param layerName The tile layer name
+     * @param dirtyArea The area to truncate
+     * @param crs The CRS of the area
+     */
+    public void truncate(
+            final String layerName,
+            final Geometry dirtyArea,
+            final CoordinateReferenceSystem crs)
+            throws GeoWebCacheException {
+
+        final TileLayer tileLayer = tld.getTileLayer(layerName);
+        final Set<Map<String, String>> parameters = new HashSet<>();
         try {
-            gridSetCrs = CRS.decode("EPSG:" + srs.getNumber(), true);
+            parameters.addAll(storageBroker.getCachedParameters(layerName));
+        } catch (StorageException e) {
+            throw new GeoWebCacheException(e);
+        }
+        // the tiles cached without parameters
+        parameters.add(null);
+        // meta tiles are rendered with a gutter, features that close to a tile can affect it
+        final int gutter =
+                tileLayer instanceof GeoServerTileLayer
+                        ? ((GeoServerTileLayer) tileLayer).getInfo().getGutter()
+                        : 0;
+
+        for (String gridSetId : tileLayer.getGridSubsets()) {
+            GridSubset gridSubset = tileLayer.getGridSubset(gridSetId);
+            Geometry gridSetArea;
+            try {
+                CoordinateReferenceSystem gridSetCrs = getGridSetCrs(layerName, gridSubset);
+                MathTransform tx = CRS.findMathTransform(crs, gridSetCrs, true);
+                gridSetArea = JTS.transform(dirtyArea, tx);
+            } catch (Exception e) {
+                log.warning(
+                        "Can't truncate layer "
+                                + layerName
+                                + ": error transforming the modified area to layer gridset "
+                                + gridSetId
+                                + ": "
+                                + e.getMessage());
+                continue;
+            }
+            GeometryTileRangeMask mask =
+                    GeometryTileRangeMask.build(gridSubset, gridSetArea, gutter);
+            if (mask == null) {
+                continue;
+            }
+            for (MimeType mime : tileLayer.getMimeTypes()) {
+                for (Map<String, String> params : parameters) {
+                    TileRange range =
+                            new DiscontinuousTileRange(
+                                    layerName,
+                                    gridSetId,
+                                    gridSubset.getZoomStart(),
+                                    gridSubset.getZoomStop(),
+                                    mask,
+                                    mime,
+                                    params);
+                    GWCTask[] tasks = tileBreeder.createTasks(range, TRUNCATE, 1, false);
+                    tileBreeder.dispatchTasks(tasks);
+                }
+            }
+        }
+    }
+
+    private CoordinateReferenceSystem getGridSetCrs(String layerName, GridSubset layerGrid) {
+        final SRS srs = layerGrid.getGridSet().getSrs();
+        try {
+            return CRS.decode("EPSG:" + srs.getNumber(), true);
         } catch (Exception e) {
             throw new RuntimeException(
                     "Can't decode SRS for layer '" + layerName + "': ESPG:" + srs.getNumber());
         }
+    }
+
+    private BoundingBox getIntersectingBounds(
+            String layerName, GridSubset layerGrid, ReferencedEnvelope bounds) {
+        final String gridSetId = layerGrid.getGridSet().getName();
+        final CoordinateReferenceSystem gridSetCrs = getGridSetCrs(layerName, layerGrid);
 
         ReferencedEnvelope truncateBoundsInGridsetCrs;
 
@@ -8,7 +8,9 @@ package org.geoserver.gwc;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -21,13 +23,19 @@ import org.geoserver.wfs.*;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.CRS;
 import org.geotools.util.logging.Logging;
 import org.geowebcache.GeoWebCacheException;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
 /**
@@ -51,11 +59,34 @@ public class GWCTransactionListener implements TransactionCallback {
 
     static final String GWC_TRANSACTION_INFO_PLACEHOLDER = "GWC_TRANSACTION_INFO_PLACEHOLDER";
 
+    static final String GWC_TRANSACTION_GEOMETRIES_PLACEHOLDER =
+            "GWC_TRANSACTION_GEOMETRIES_PLACEHOLDER";
+
+    /** The layers whose geometries could not be reprojected, truncated by envelope instead */
+    static final String GWC_TRANSACTION_GEOMETRIES_FAILED_PLACEHOLDER =
+            "GWC_TRANSACTION_GEOMETRIES_FAILED_PLACEHOLDER";
+
+    /**
+     * Above this number of affected features, the bounds of the features are used as the modified
+     * area, instead of collecting each feature geometry
+     */
+    static final int MAX_GEOMETRIES = 1000;
+
+    private TruncationPlanner truncationPlanner;
+
     /** @param gwc */
     public GWCTransactionListener(final GWC gwc) {
         this.gwc = gwc;
     }
 
+    /**
+     * Sets the planner used to truncate the modified feature geometries, if not set the bounds of
+     * the modified features are truncated instead
+     */
+    public void setTruncationPlanner(TruncationPlanner truncationPlanner) {
+        this.truncationPlanner = truncationPlanner;
+    }
+
     /**
      * Not used, we're interested in the {@link #dataStoreChange} and {@link #afterTransaction}
      * hooks
@@ -95,6 +126,18 @@ public class GWCTransactionListener implements TransactionCallback {
     }
 
     private void afterTransactionInternal(final TransactionRequest transaction, boolean committed) {
+        final Map<String, List<Geometry>> byLayerGeometries =
+                truncationPlanner == null
+                        ? Collections.emptyMap()
+                        : getByLayerGeometries(transaction);
+        if (truncationPlanner != null) {
+            for (String tileLayerName : byLayerGeometries.keySet()) {
+                CoordinateReferenceSystem declaredCrs =
+                        CRS.getHorizontalCRS(gwc.getDeclaredCrs(tileLayerName));
+                truncationPlanner.addDirtyRegion(
+                        tileLayerName, byLayerGeometries.get(tileLayerName), declaredCrs);
+            }
+        }
 
         final Map<String, List<ReferencedEnvelope>> byLayerDirtyRegions =
                 getByLayerDirtyRegions(transaction);
@@ -102,6 +145,10 @@ public class GWCTransactionListener implements TransactionCallback {
             return;
         }
         for (String tileLayerName : byLayerDirtyRegions.keySet()) {
+            if (byLayerGeometries.containsKey(tileLayerName)) {
+                // already handed to the truncation planner
+                continue;
+            }
             List<ReferencedEnvelope> dirtyList = byLayerDirtyRegions.get(tileLayerName);
             ReferencedEnvelope dirtyRegion;
             try {
@@ -204,6 +251,106 @@ public class GWCTransactionListener implements TransactionCallback {
         for (String tileLayerName : affectedTileLayers) {
             addLayerDirtyRegion(request, tileLayerName, affectedBounds);
         }
+
+        if (truncationPlanner != null) {
+            final List<Geometry> geometries = getAffectedGeometries(affectedFeatures);
+            CoordinateReferenceSystem nativeCrs =
+                    affectedFeatures.getSchema().getCoordinateReferenceSystem();
+            if (nativeCrs == null && affectedBounds != null) {
+                nativeCrs = affectedBounds.getCoordinateReferenceSystem();
+            }
+            for (String tileLayerName : affectedTileLayers) {
+                try {
+                    addLayerGeometries(request, tileLayerName, geometries, nativeCrs);
+                } catch (TransformException | FactoryException e) {
+                    log.log(Level.WARNING, e.getMessage(), e);
+                    // fall back on the densified envelopes for the whole transaction
+                    getByLayerGeometries(request).remove(tileLayerName);
+                    getGeometriesFailedLayers(request).add(tileLayerName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the geometries of the affected features, or a polygon covering their bounds if there
+     * are too many
+     */
+    private List<Geometry> getAffectedGeometries(SimpleFeatureCollection affectedFeatures) {
+        final List<Geometry> geometries = new ArrayList<>();
+        final GeometryDescriptor descriptor = affectedFeatures.getSchema().getGeometryDescriptor();
+        if (descriptor != null) {
+            try (SimpleFeatureIterator it = affectedFeatures.features()) {
+                while (it.hasNext() && geometries.size() <= MAX_GEOMETRIES) {
+                    Object geometry = it.next().getDefaultGeometry();
+                    if (geometry instanceof Geometry && !((Geometry) geometry).isEmpty()) {
+                        geometries.add((Geometry) geometry);
+                    }
+                }
+            }
+        }
+        if (descriptor == null || geometries.size() > MAX_GEOMETRIES) {
+            ReferencedEnvelope bounds = affectedFeatures.getBounds();
+            geometries.clear();
+            if (bounds != null && !bounds.isNull()) {
+                geometries.add(JTS.toGeometry((Envelope) bounds));
+            }
+        }
+        return geometries;
+    }
+
+    private void addLayerGeometries(
+            final TransactionRequest transaction,
+            final String tileLayerName,
+            final List<Geometry> geometries,
+            final CoordinateReferenceSystem geometriesCrs)
+            throws TransformException, FactoryException {
+        if (geometries.isEmpty()
+                || getGeometriesFailedLayers(transaction).contains(tileLayerName)) {
+            return;
+        }
+        // the affected features are in the feature type native CRS, use the tile layer one
+        final CoordinateReferenceSystem declaredCrs =
+                CRS.getHorizontalCRS(gwc.getDeclaredCrs(tileLayerName));
+        final CoordinateReferenceSystem nativeCrs = CRS.getHorizontalCRS(geometriesCrs);
+        MathTransform transform = null;
+        if (nativeCrs != null
+                && declaredCrs != null
+                && !CRS.equalsIgnoreMetadata(nativeCrs, declaredCrs)) {
+            transform = CRS.findMathTransform(nativeCrs, declaredCrs, true);
+        }
+
+        // registered only once all of them are transformed, a partial list would leave out the
+        // remaining modified areas
+        List<Geometry> transformed = new ArrayList<>(geometries.size());
+        for (Geometry geometry : geometries) {
+            transformed.add(transform == null ? geometry : transform(geometry, transform));
+        }
+        getByLayerGeometries(transaction)
+                .computeIfAbsent(tileLayerName, n -> new ArrayList<>())
+                .addAll(transformed);
+    }
+
+    /** Reprojects a modified geometry to the tile layer CRS */
+    Geometry transform(Geometry geometry, MathTransform transform) throws TransformException {
+        return JTS.transform(geometry, transform);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> getGeometriesFailedLayers(final TransactionRequest transaction) {
+        final Map<Object, Object> extendedProperties = transaction.getExtendedProperties();
+        return (Set<String>)
+                extendedProperties.computeIfAbsent(
+                        GWC_TRANSACTION_GEOMETRIES_FAILED_PLACEHOLDER, k -> new HashSet<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, List<Geometry>> getByLayerGeometries(
+            final TransactionRequest transaction) {
+        final Map<Object, Object> extendedProperties = transaction.getExtendedProperties();
+        return (Map<String, List<Geometry>>)
+                extendedProperties.computeIfAbsent(
+                        GWC_TRANSACTION_GEOMETRIES_PLACEHOLDER, k -> new HashMap<>());
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,130 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import org.geowebcache.grid.BoundingBox;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.storage.TileRangeMask;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * A {@link TileRangeMask} selecting the tiles intersecting a geometry, so that truncating after an
+ * edit only removes the tiles actually touched by the modified features, rather than all the ones
+ * in their bounding box.
+ *
+ * <p>The geometry can be buffered by a number of pixels, e.g. the layer gutter, to also select the
+ * tiles whose rendering can reach the modified features. Being in pixels, the buffer distance in
+ * grid set units changes with the zoom level.
+ */
+class GeometryTileRangeMask implements TileRangeMask {
+
+    private final PreparedGeometry mask;
+
+    private final GridSubset gridSubset;
+
+    /** Tile coverages, by zoom level, starting from the grid subset zoom start */
+    private final long[][] byLevelTileCoverage;
+
+    /** Buffer distances in grid set units, by zoom level, starting from the zoom start */
+    private final double[] byLevelBuffer;
+
+    GeometryTileRangeMask(
+            Geometry mask,
+            GridSubset gridSubset,
+            long[][] byLevelTileCoverage,
+            double[] byLevelBuffer) {
+        this.mask = PreparedGeometryFactory.prepare(mask);
+        this.gridSubset = gridSubset;
+        this.byLevelTileCoverage = byLevelTileCoverage;
+        this.byLevelBuffer = byLevelBuffer;
+    }
+
+    /**
+     * Builds a mask for the given geometry, or returns null if it does not intersect the grid
+     * subset
+     *
+     * @param geometry The geometry, in the grid set CRS
+     */
+    static GeometryTileRangeMask build(GridSubset gridSubset, Geometry geometry) {
+        return build(gridSubset, geometry, 0);
+    }
+
+    /**
+     * Builds a mask for the given geometry buffered by the given number of pixels, or returns null
+     * if it does not intersect the grid subset
+     *
+     * @param geometry The geometry, in the grid set CRS
+     * @param bufferPixels The buffer, in pixels, converted to grid set units at each zoom level
+     */
+    static GeometryTileRangeMask build(
+            GridSubset gridSubset, Geometry geometry, int bufferPixels) {
+        final int zoomStart = gridSubset.getZoomStart();
+        final int zoomStop = gridSubset.getZoomStop();
+        double[] buffers = new double[zoomStop - zoomStart + 1];
+        for (int level = zoomStart; level <= zoomStop; level++) {
+            double resolution = gridSubset.getGridSet().getGrid(level).getResolution();
+            buffers[level - zoomStart] = Math.max(0, bufferPixels) * resolution;
+        }
+
+        // the first level has the coarsest resolution, hence the largest buffer
+        BoundingBox layerBounds = gridSubset.getOriginalExtent();
+        BoundingBox coarsest = bounds(geometry, buffers[0]);
+        if (!layerBounds.intersects(coarsest)) {
+            return null;
+        }
+        coarsest = BoundingBox.intersection(layerBounds, coarsest);
+        long[][] coverage = new long[buffers.length][];
+        for (int level = zoomStart; level <= zoomStop; level++) {
+            BoundingBox bounds = bounds(geometry, buffers[level - zoomStart]);
+            // a smaller buffer can miss the layer, the lookup will then discard all tiles
+            bounds =
+                    layerBounds.intersects(bounds)
+                            ? BoundingBox.intersection(layerBounds, bounds)
+                            : coarsest;
+            coverage[level - zoomStart] = gridSubset.getCoverageIntersection(level, bounds);
+        }
+        return new GeometryTileRangeMask(geometry, gridSubset, coverage, buffers);
+    }
+
+    private static BoundingBox bounds(Geometry geometry, double buffer) {
+        Envelope env = new Envelope(geometry.getEnvelopeInternal());
+        env.expandBy(buffer);
+        return new BoundingBox(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
+    }
+
+    @Override
+    public long[][] getGridCoverages() {
+        return byLevelTileCoverage.clone();
+    }
+
+    @Override
+    public boolean lookup(final long tileX, final long tileY, final int level) {
+        final int index = level - gridSubset.getZoomStart();
+        if (index < 0 || index >= byLevelTileCoverage.length) {
+            return false;
+        }
+        final long[] levelCoverage = byLevelTileCoverage[index];
+        if (tileX < levelCoverage[0]
+                || tileX > levelCoverage[2]
+                || tileY < levelCoverage[1]
+                || tileY > levelCoverage[3]) {
+            return false;
+        }
+        BoundingBox tileBounds = gridSubset.boundsFromIndex(new long[] {tileX, tileY, level});
+        Envelope tileEnvelope =
+                new Envelope(
+                        tileBounds.getMinX(),
+                        tileBounds.getMaxX(),
+                        tileBounds.getMinY(),
+                        tileBounds.getMaxY());
+        // expanding the tile is cheaper than buffering the geometry, and selects a few more tiles
+        // at most, around the corners
+        tileEnvelope.expandBy(byLevelBuffer[index]);
+        return mask.intersects(mask.getGeometry().getFactory().toGeometry(tileEnvelope));
+    }
+}
@@ -0,0 +1,178 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Accumulates the areas modified in the layers over a short time window, and truncates each layer
+ * once for all of them.
+ *
+ * <p>The modified geometries are merged per layer, and {@link GWC#truncate(String, Geometry,
+ * CoordinateReferenceSystem)} then removes only the tiles touching them, for each grid set, format
+ * and parameter combination. When many small transactions hit the same layer in a short time, this
+ * results in a single truncation covering only the modified features, instead of one bounding box
+ * truncation for each transaction.
+ *
+ * <p>The window, in milliseconds, is set with the {@code GWC_TRUNCATE_WINDOW} system variable. By
+ * default it is zero, and the modified areas are truncated as soon as they are reported.
+ */
+public class TruncationPlanner implements DisposableBean {
+
+    private static final Logger LOGGER = Logging.getLogger(TruncationPlanner.class);
+
+    static final String WINDOW_PROPERTY = "GWC_TRUNCATE_WINDOW";
+
+    private final GWC gwc;
+
+    private volatile long window = Long.getLong(WINDOW_PROPERTY, 0);
+
+    /** The modified areas not truncated yet, by layer name */
+    private Map<String, DirtyArea> dirtyAreas = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private static class DirtyArea {
+
+        final CoordinateReferenceSystem crs;
+
+        final List<Geometry> geometries = new ArrayList<>();
+
+        DirtyArea(CoordinateReferenceSystem crs) {
+            this.crs = crs;
+        }
+    }
+
+    public TruncationPlanner(GWC gwc) {
+        this.gwc = gwc;
+    }
+
+    /** Returns the time, in milliseconds, modified areas are accumulated before truncating */
+    public long getWindow() {
+        return window;
+    }
+
+    /** Sets the time, in milliseconds, modified areas are accumulated before truncating */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Marks the given geometries of a layer as modified, to be truncated at the end of the current
+     * window.
+     *
+     * @param layerName The tile layer name
+     * @param geometries The modified geometries
+     * @param crs The CRS of the geometries, all layer geometries are expected in the same one
+     */
+    public void addDirtyRegion(
+            String layerName,
+            Collection<? extends Geometry> geometries,
+            CoordinateReferenceSystem crs) {
+        checkNotNull(layerName, "layerName can't be null");
+        if (geometries.isEmpty()) {
+            return;
+        }
+        final long window = this.window;
+        synchronized (this) {
+            boolean schedule = dirtyAreas.isEmpty();
+            DirtyArea area = dirtyAreas.computeIfAbsent(layerName, n -> new DirtyArea(crs));
+            area.geometries.addAll(geometries);
+            if (window > 0 && schedule) {
+                getScheduler().schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (window <= 0) {
+            flush();
+        }
+    }
+
+    /** Truncates all the modified areas accumulated so far */
+    public void flush() {
+        final Map<String, DirtyArea> areas;
+        synchronized (this) {
+            if (dirtyAreas.isEmpty()) {
+                return;
+            }
+            areas = dirtyAreas;
+            dirtyAreas = new LinkedHashMap<>();
+        }
+        for (Map.Entry<String, DirtyArea> entry : areas.entrySet()) {
+            final String layerName = entry.getKey();
+            final DirtyArea area = entry.getValue();
+            try {
+                Geometry merged = merge(area.geometries);
+                gwc.truncate(layerName, merged, area.crs);
+            } catch (GeoWebCacheException | RuntimeException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Error truncating the modified area of tile layer " + layerName,
+                        e);
+            }
+        }
+    }
+
+    /** Returns the number of layers with modified areas waiting for truncation */
+    synchronized int getPendingLayerCount() {
+        return dirtyAreas.size();
+    }
+
+    private Geometry merge(List<Geometry> geometries) {
+        if (geometries.size() == 1) {
+            return geometries.get(0);
+        }
+        Geometry collection = geometries.get(0).getFactory().buildGeometry(geometries);
+        try {
+            return collection.union();
+        } catch (RuntimeException e) {
+            // topology errors on invalid geometries, the collection still works as a mask
+            LOGGER.log(Level.FINE, "Could not union the modified geometries", e);
+            return collection;
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler =
+                    Executors.newSingleThreadScheduledExecutor(
+                            r -> {
+                                Thread t = new Thread(r, "gwc-truncation-planner");
+                                t.setDaemon(true);
+                                return t;
+                            });
+        }
+        return scheduler;
+    }
+
+    @Override
+    public void destroy() {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = this.scheduler;
+            this.scheduler = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // do not lose the pending truncations
+        flush();
+    }
+}
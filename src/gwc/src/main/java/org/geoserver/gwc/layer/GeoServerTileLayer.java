@@ -608,11 +608,14 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         final int zLevel = (int) tile.getTileIndex()[2];
         tile.setMetaTileCacheOnly(!gridSubset.shouldCacheAtZoom(zLevel));
 
-        if (tryCache && tryCacheFetch(tile)) {
+        // null unless tiles are to be encoded in parallel
+        final ParallelMetaTileEncoder encoder = ParallelMetaTileEncoder.get();
+        if (tryCache && (tryCacheFetch(tile) || tryPendingFetch(encoder, tile))) {
             return finalizeTile(tile);
         }
 
         final GeoServerMetaTile metaTile = createMetaTile(tile, metaX, metaY);
+        boolean disposeMetaTile = true;
         Lock lock = null;
         try {
             /* ****************** Acquire lock ******************* */
@@ -624,6 +627,12 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
                                 + Thread.currentThread().getName()
                                 + " returns cache hit for "
                                 + Arrays.toString(metaTile.getMetaGridPos()));
+            } else if (tryCache && tryPendingFetch(encoder, tile)) {
+                LOGGER.finest(
+                        "--> "
+                                + Thread.currentThread().getName()
+                                + " returns pending tile for "
+                                + Arrays.toString(metaTile.getMetaGridPos()));
             } else {
                 LOGGER.finer(
                         "--> "
@@ -638,7 +647,15 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
                     map = dispatchGetMap(tile, metaTile);
                     checkNotNull(map, "Did not obtain a WebMap from GeoServer's Dispatcher");
                     metaTile.setWebMap(map);
-                    saveTiles(metaTile, tile, requestTime);
+                    if (encoder != null
+                            && metaTile.getTilesGridPositions().length > 1
+                            && getExpireCache(zLevel) != GWCVars.CACHE_DISABLE_CACHE) {
+                        // the encoder disposes the meta tile once all tiles are stored
+                        encoder.encode(this, metaTile, tile, requestTime);
+                        disposeMetaTile = false;
+                    } else {
+                        saveTiles(metaTile, tile, requestTime);
+                    }
                 } catch (Exception e) {
                     Throwables.propagateIfInstanceOf(e, GeoWebCacheException.class);
                     throw new GeoWebCacheException("Problem communicating with GeoServer", e);
@@ -649,7 +666,9 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
             if (lock != null) {
                 lock.release();
             }
-            metaTile.dispose();
+            if (disposeMetaTile) {
+                metaTile.dispose();
+            }
         }
 
         return finalizeTile(tile);
@@ -777,6 +796,11 @@ public class GeoServerTileLayer extends TileLayer implements ProxyLayer {
         return false;
     }
 
+    /** Picks the tile from the ones encoded in parallel but not stored yet, if any */
+    private boolean tryPendingFetch(ParallelMetaTileEncoder encoder, ConveyorTile tile) {
+        return encoder != null && encoder.fetchPending(tile);
+    }
+
     private ConveyorTile finalizeTile(ConveyorTile tile) {
         if (tile.getStatus() == 0 && !tile.getError()) {
             tile.setStatus(200);
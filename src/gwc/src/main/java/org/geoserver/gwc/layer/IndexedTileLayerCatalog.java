@@ -0,0 +1,775 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import static com.google.common.base.Throwables.propagate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.thoughtworks.xstream.XStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.config.util.SecureXStream;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceNotification;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.config.ContextualConfigurationProvider.Context;
+import org.geowebcache.config.XMLConfiguration;
+
+/**
+ * A {@link TileLayerCatalog} storing all the tile layers in a single append-only file, as an
+ * alternative to the one file per layer of {@link DefaultTileLayerCatalog}.
+ *
+ * <p>Each save or delete appends a record holding the layer id, name and XML representation.
+ * Startup only reads the record headers to build the id and name index, the XML is deserialized
+ * on first access to each layer. Superseded records are dropped by compacting the file on startup,
+ * once they take more space than the live ones. Records appended by other GeoServer instances
+ * sharing the data directory are picked up incrementally, and reported to the {@link
+ * TileLayerCatalogListener listeners} as they are read. Writes are serialized among instances by
+ * locking a separate file, which, unlike the data one, is never replaced by a compaction.
+ *
+ * <p>On first startup, the layers found in the {@code gwc-layers} directory are imported, the
+ * original files are left untouched.
+ */
+public class IndexedTileLayerCatalog implements TileLayerCatalog {
+
+    private static final Logger LOGGER = Logging.getLogger(IndexedTileLayerCatalog.class);
+
+    static final String LAYERINFO_DIRECTORY = "gwc-layers";
+
+    static final String CATALOG_FILE = "tile-layers.dat";
+
+    static final String LOCK_FILE = "tile-layers.lock";
+
+    private static final int MAGIC = 0x47574354; // GWCT
+
+    private static final byte SAVE = 'S';
+
+    private static final byte DELETE = 'D';
+
+    /** Compaction is not worth it below this size */
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /**
+     * File locks are held by the whole JVM, instances sharing the same file in the same process
+     * (e.g. in tests) are serialized by these, keyed by lock file path
+     */
+    private static final Map<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    /** Location of the XML representation of a layer in the file */
+    static final class Entry {
+        final String name;
+
+        final long offset;
+
+        final int length;
+
+        /** The size of the whole record, including the header */
+        final int recordLength;
+
+        Entry(String name, long offset, int length, int recordLength) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+    }
+
+    private final GeoServerResourceLoader resourceLoader;
+
+    private final XStream serializer;
+
+    private final Map<String, Entry> layersById = new ConcurrentHashMap<>();
+
+    /** View of layer ids by name */
+    private final Map<String, String> layersByName = new ConcurrentHashMap<>();
+
+    /** The layers deserialized so far */
+    private final Cache<String, GeoServerTileLayerInfo> decoded =
+            CacheBuilder.newBuilder().softValues().build();
+
+    private final List<TileLayerCatalogListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean initialized;
+
+    private File file;
+
+    private FileChannel channel;
+
+    private FileChannel lockChannel;
+
+    /** The lock held while running a {@link #locked(LockedAction)} action */
+    private FileLock fileLock;
+
+    /** Identifies the current version of the file, changes on compaction */
+    private long generation;
+
+    /** Offset past the last record read */
+    private long end;
+
+    /** Bytes taken by superseded records */
+    private long wasted;
+
+    public IndexedTileLayerCatalog(
+            GeoServerResourceLoader resourceLoader, XMLConfiguration xmlPersisterFactory)
+            throws IOException {
+        this(
+                resourceLoader,
+                xmlPersisterFactory.getConfiguredXStreamWithContext(
+                        new SecureXStream(), Context.PERSIST));
+    }
+
+    IndexedTileLayerCatalog(GeoServerResourceLoader resourceLoader, XStream configuredXstream) {
+        this.resourceLoader = resourceLoader;
+        this.serializer = configuredXstream;
+        this.serializer.allowTypeHierarchy(GeoServerTileLayerInfo.class);
+        // have to use a string here because UnmodifiableSet is private
+        this.serializer.allowTypes(new String[] {"java.util.Collections$UnmodifiableSet"});
+        // pick up the records appended by other instances
+        resourceLoader
+                .get(LAYERINFO_DIRECTORY)
+                .addListener(
+                        notify -> {
+                            for (ResourceNotification.Event event : notify.events()) {
+                                if (CATALOG_FILE.equals(event.getPath())
+                                        && event.getKind()
+                                                != ResourceNotification.Kind.ENTRY_DELETE) {
+                                    refresh();
+                                }
+                            }
+                        });
+    }
+
+    private Resource getResource() {
+        return resourceLoader.get(LAYERINFO_DIRECTORY).get(CATALOG_FILE);
+    }
+
+    @Override
+    public synchronized void reset() {
+        layersById.clear();
+        layersByName.clear();
+        decoded.invalidateAll();
+        closeChannel();
+        lockChannel = close(lockChannel);
+        this.initialized = false;
+    }
+
+    @Override
+    public synchronized void initialize() {
+        reset();
+        Resource resource = getResource();
+        LOGGER.info("Loading tile layers from " + resource.path());
+        try {
+            boolean existing = Resources.exists(resource);
+            file = resource.file();
+            openChannel();
+            locked(
+                    () -> {
+                        if (!existing || channel.size() == 0) {
+                            writeHeader(channel);
+                            importLayerFiles();
+                        }
+                        readIndex();
+                        if (wasted > COMPACTION_THRESHOLD && wasted > channel.size() / 2) {
+                            doCompact();
+                        }
+                        return null;
+                    });
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+        LOGGER.info("Indexed " + layersById.size() + " tile layers");
+        this.initialized = true;
+    }
+
+    private void checkInitialized() {
+        if (!initialized) {
+            synchronized (this) {
+                if (!initialized) {
+                    initialize();
+                }
+            }
+        }
+    }
+
+    @Override
+    public GeoServerTileLayerInfo getLayerById(final String id) {
+        checkInitialized();
+        GeoServerTileLayerInfo layer = decoded.getIfPresent(id);
+        if (layer == null) {
+            Entry entry = layersById.get(id);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                layer = depersist(read(entry));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error loading tile layer " + entry.name, e);
+                return null;
+            }
+            // a concurrent save might have changed the layer in the meantime
+            if (layersById.get(id) != entry) {
+                return getLayerById(id);
+            }
+            decoded.put(id, layer);
+        }
+        return layer.clone();
+    }
+
+    @Override
+    public GeoServerTileLayerInfo getLayerByName(String layerName) {
+        checkInitialized();
+        String id = getLayerId(layerName);
+        if (id == null) {
+            return null;
+        }
+        return getLayerById(id);
+    }
+
+    @Override
+    public Set<String> getLayerIds() {
+        checkInitialized();
+        return ImmutableSet.copyOf(layersById.keySet());
+    }
+
+    @Override
+    public boolean exists(String layerId) {
+        checkInitialized();
+        return layersById.containsKey(layerId);
+    }
+
+    @Override
+    public Set<String> getLayerNames() {
+        checkInitialized();
+        return ImmutableSet.copyOf(layersByName.keySet());
+    }
+
+    @Override
+    public synchronized GeoServerTileLayerInfo delete(final String tileLayerId) {
+        checkInitialized();
+        GeoServerTileLayerInfo info = getLayerById(tileLayerId);
+        if (info != null) {
+            try {
+                locked(
+                        () -> {
+                            readRecords(true);
+                            if (layersById.containsKey(tileLayerId)) {
+                                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                                DataOutputStream out = new DataOutputStream(bytes);
+                                writeRecord(out, DELETE, tileLayerId, "", null);
+                                append(bytes.toByteArray());
+                                readRecords(false);
+                            }
+                            return null;
+                        });
+            } catch (IOException e) {
+                throw propagate(e);
+            }
+        }
+        return info;
+    }
+
+    @Override
+    public GeoServerTileLayerInfo save(final GeoServerTileLayerInfo newValue) {
+        return saveAll(Collections.singletonList(newValue)).get(0);
+    }
+
+    /**
+     * Saves all the layers with a single write to the file.
+     *
+     * @throws IllegalArgumentException if a new layer has the same name as an existing one, in
+     *     which case none of the layers is saved
+     */
+    @Override
+    public synchronized List<GeoServerTileLayerInfo> saveAll(
+            List<? extends GeoServerTileLayerInfo> newValues) {
+        checkInitialized();
+        try {
+            return locked(
+                    () -> {
+                        // make sure the name checks run against the latest state
+                        readRecords(true);
+                        List<GeoServerTileLayerInfo> oldValues = new ArrayList<>();
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        DataOutputStream out = new DataOutputStream(bytes);
+                        Map<String, String> batchNames = new HashMap<>();
+                        for (GeoServerTileLayerInfo newValue : newValues) {
+                            oldValues.add(write(out, newValue, batchNames));
+                        }
+                        append(bytes.toByteArray());
+                        readRecords(false);
+                        return oldValues;
+                    });
+        } catch (IOException e) {
+            throw propagate(e);
+        }
+    }
+
+    /** Writes the save record of a layer, returns the previous version of the layer, if any */
+    private GeoServerTileLayerInfo write(
+            DataOutputStream out, GeoServerTileLayerInfo newValue, Map<String, String> batchNames)
+            throws IOException {
+        final String tileLayerId = newValue.getId();
+        Preconditions.checkNotNull(tileLayerId);
+        GeoServerTileLayerInfo oldValue = getLayerById(tileLayerId);
+        if (oldValue == null) {
+            String duplicateNameId = batchNames.get(newValue.getName());
+            if (duplicateNameId == null) {
+                duplicateNameId = layersByName.get(newValue.getName());
+            }
+            if (duplicateNameId != null) {
+                throw new IllegalArgumentException(
+                        "TileLayer with same name already exists: "
+                                + newValue.getName()
+                                + ": <"
+                                + duplicateNameId
+                                + ">");
+            }
+        }
+        batchNames.put(newValue.getName(), tileLayerId);
+        writeRecord(out, SAVE, tileLayerId, newValue.getName(), persist(newValue));
+        return oldValue;
+    }
+
+    /**
+     * Reads the records appended to the file by other instances, notifying the listeners about the
+     * layers created, modified or deleted.
+     */
+    public synchronized void refresh() {
+        if (!initialized) {
+            return;
+        }
+        try {
+            locked(
+                    () -> {
+                        readRecords(true);
+                        return null;
+                    });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error reading the tile layer changes", e);
+        }
+    }
+
+    /** Returns the size of the file, in bytes */
+    synchronized long getFileSize() throws IOException {
+        checkInitialized();
+        return channel.size();
+    }
+
+    /** Rewrites the file with the current version of each layer only */
+    public synchronized void compact() throws IOException {
+        checkInitialized();
+        locked(
+                () -> {
+                    readRecords(true);
+                    doCompact();
+                    return null;
+                });
+    }
+
+    private void doCompact() throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel target =
+                FileChannel.open(
+                        tmp.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            writeHeader(target);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Map.Entry<String, Entry> e : layersById.entrySet()) {
+                writeRecord(out, SAVE, e.getKey(), e.getValue().name, read(e.getValue()));
+            }
+            write(target, bytes.toByteArray(), target.size());
+            target.force(true);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g., Windows does not allow replacing an open file, try again on next startup
+            LOGGER.log(Level.INFO, "Could not compact " + file, e);
+            tmp.delete();
+            return;
+        }
+        LOGGER.fine("Compacted " + file + ", " + wasted + " bytes reclaimed");
+        reopen(false);
+    }
+
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs the action holding the lock file lock, to serialize access among GeoServer instances.
+     * The data file can be replaced by a compaction while the action runs, the lock file never is.
+     */
+    private <T> T locked(LockedAction<T> action) throws IOException {
+        File lockFile = new File(file.getParentFile(), LOCK_FILE);
+        ReentrantLock processLock =
+                PROCESS_LOCKS.computeIfAbsent(
+                        lockFile.getCanonicalPath(), k -> new ReentrantLock());
+        processLock.lock();
+        try {
+            if (lockChannel == null) {
+                lockChannel =
+                        FileChannel.open(
+                                lockFile.toPath(),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE);
+            }
+            fileLock = lockChannel.lock();
+            try {
+                return action.run();
+            } finally {
+                fileLock.release();
+                fileLock = null;
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /** Returns true if the inter process lock is currently held by this instance */
+    synchronized boolean holdsFileLock() {
+        return fileLock != null && fileLock.isValid();
+    }
+
+    private void openChannel() throws IOException {
+        channel =
+                FileChannel.open(
+                        file.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+    }
+
+    private void closeChannel() {
+        channel = close(channel);
+    }
+
+    private FileChannel close(FileChannel target) {
+        if (target != null) {
+            try {
+                target.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing " + file, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reopens the file after it has been replaced by a compaction, and rebuilds the index
+     *
+     * @param notify Whether the file was compacted by another instance, which might have
+     *     appended records not read yet, that the listeners should be notified about
+     */
+    private void reopen(boolean notify) throws IOException {
+        // the lock is held on the lock file, closing the data file does not release it
+        closeChannel();
+        openChannel();
+        Map<String, Entry> previous = new HashMap<>(layersById);
+        layersById.clear();
+        layersByName.clear();
+        decoded.invalidateAll();
+        readIndex();
+        if (notify) {
+            Set<String> ids = new HashSet<>(previous.keySet());
+            ids.addAll(layersById.keySet());
+            for (String id : ids) {
+                if (!previous.containsKey(id)) {
+                    fireEvent(id, TileLayerCatalogListener.Type.CREATE);
+                } else if (!layersById.containsKey(id)) {
+                    fireEvent(id, TileLayerCatalogListener.Type.DELETE);
+                } else {
+                    // cannot tell whether it changed before the compaction
+                    fireEvent(id, TileLayerCatalogListener.Type.MODIFY);
+                }
+            }
+        }
+    }
+
+    private void readIndex() throws IOException {
+        end = 0;
+        wasted = 0;
+        readRecords(false);
+    }
+
+    /**
+     * Reads the records past the current end, updating the index. Must be called holding the
+     * file lock.
+     */
+    private void readRecords(boolean notify) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            long fileGeneration = readHeader(new DataInputStream(in));
+            if (end > 0 && fileGeneration != generation) {
+                // compacted by another instance
+                reopen(notify);
+                return;
+            }
+            generation = fileGeneration;
+        }
+        if (end == 0) {
+            end = Integer.BYTES + Long.BYTES;
+        }
+        long size = channel.size();
+        if (end >= size) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            ByteStreams.skipFully(in, end);
+            final long base = end;
+            CountingInputStream counter = new CountingInputStream(new BufferedInputStream(in));
+            DataInputStream data = new DataInputStream(counter);
+            while (end < size) {
+                final long start = end;
+                byte type;
+                String id;
+                String name;
+                int length;
+                try {
+                    type = data.readByte();
+                    id = data.readUTF();
+                    name = data.readUTF();
+                    length = data.readInt();
+                    ByteStreams.skipFully(data, length);
+                } catch (EOFException e) {
+                    // incomplete record left by a crash, the next append overwrites it
+                    LOGGER.warning("Ignoring incomplete tile layer record at " + start);
+                    break;
+                }
+                end = base + counter.getCount();
+                apply(type, id, name, end - length, length, (int) (end - start), notify);
+            }
+        }
+    }
+
+    private void apply(
+            byte type,
+            String id,
+            String name,
+            long offset,
+            int length,
+            int recordLength,
+            boolean notify) {
+        Entry previous;
+        TileLayerCatalogListener.Type event;
+        if (type == SAVE) {
+            previous = layersById.put(id, new Entry(name, offset, length, recordLength));
+            event =
+                    previous == null
+                            ? TileLayerCatalogListener.Type.CREATE
+                            : TileLayerCatalogListener.Type.MODIFY;
+            if (previous != null && !previous.name.equals(name)) {
+                layersByName.remove(previous.name);
+            }
+            layersByName.put(name, id);
+        } else if (type == DELETE) {
+            previous = layersById.remove(id);
+            event = TileLayerCatalogListener.Type.DELETE;
+            if (previous != null) {
+                layersByName.remove(previous.name);
+            }
+            wasted += recordLength;
+        } else {
+            throw new IllegalStateException("Unknown tile layer record type " + type);
+        }
+        if (previous != null) {
+            wasted += previous.recordLength;
+        }
+        decoded.invalidate(id);
+        if (notify && (previous != null || type == SAVE)) {
+            fireEvent(id, event);
+        }
+    }
+
+    private void fireEvent(String id, TileLayerCatalogListener.Type type) {
+        for (TileLayerCatalogListener listener : listeners) {
+            try {
+                listener.onEvent(id, type);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error notifying tile layer change", e);
+            }
+        }
+    }
+
+    private void writeHeader(FileChannel target) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(UUID.randomUUID().getMostSignificantBits());
+        target.truncate(0);
+        write(target, bytes.toByteArray(), 0);
+    }
+
+    private long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a tile layer catalog file");
+        }
+        return in.readLong();
+    }
+
+    private static void writeRecord(
+            DataOutputStream out, byte type, String id, String name, byte[] xml)
+            throws IOException {
+        out.writeByte(type);
+        out.writeUTF(id);
+        out.writeUTF(name);
+        if (xml == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(xml.length);
+            out.write(xml);
+        }
+    }
+
+    /** Appends the records past the last complete one, and syncs the file */
+    private void append(byte[] records) throws IOException {
+        write(channel, records, end);
+        channel.truncate(end + records.length);
+        channel.force(false);
+    }
+
+    private static void write(FileChannel target, byte[] bytes, long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            position += target.write(buffer, position);
+        }
+    }
+
+    private synchronized byte[] read(Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        long position = entry.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Tile layer record truncated at " + position);
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    /** Imports the layers of the one file per layer storage */
+    private void importLayerFiles() throws IOException {
+        Resources.ExtensionFilter xmlFilter = new Resources.ExtensionFilter("XML");
+        List<Resource> layerFiles = resourceLoader.get(LAYERINFO_DIRECTORY).list();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int count = 0;
+        for (Resource res : layerFiles) {
+            if (!xmlFilter.accept(res)) {
+                continue;
+            }
+            try {
+                byte[] xml = res.getContents();
+                GeoServerTileLayerInfo info = depersist(xml);
+                writeRecord(out, SAVE, info.getId(), info.getName(), xml);
+                count++;
+            } catch (Exception e) {
+                LOGGER.log(
+                        Level.SEVERE,
+                        "Error depersisting tile layer information from file " + res.name(),
+                        e);
+            }
+        }
+        if (count > 0) {
+            LOGGER.info("Importing " + count + " tile layers from " + LAYERINFO_DIRECTORY);
+            write(channel, bytes.toByteArray(), channel.size());
+            channel.force(false);
+        }
+    }
+
+    private byte[] persist(GeoServerTileLayerInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(bytes, "UTF-8")) {
+            serializer.toXML(info, writer);
+        }
+        byte[] xml = bytes.toByteArray();
+        // sanity check
+        try {
+            depersist(xml);
+        } catch (Exception e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Persisted version of tile layer " + info.getName() + " can't be loaded back",
+                    e);
+            throw e;
+        }
+        return xml;
+    }
+
+    private GeoServerTileLayerInfoImpl depersist(final byte[] contents) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(contents), "UTF-8")) {
+            return (GeoServerTileLayerInfoImpl) serializer.fromXML(reader);
+        }
+    }
+
+    @Override
+    public String getLayerId(String layerName) {
+        checkInitialized();
+        final WorkspaceInfo ws = LocalWorkspace.get();
+        if (ws != null && !layerName.startsWith(ws.getName() + ":")) {
+            layerName = ws.getName() + ":" + layerName;
+        }
+        return layersByName.get(layerName);
+    }
+
+    @Override
+    public String getLayerName(String layerId) {
+        checkInitialized();
+        return layersById.get(layerId).name;
+    }
+
+    @Override
+    public String getPersistenceLocation() {
+        return getResource().path();
+    }
+
+    @Override
+    public void addListener(TileLayerCatalogListener listener) {
+        listeners.add(listener);
+    }
+}
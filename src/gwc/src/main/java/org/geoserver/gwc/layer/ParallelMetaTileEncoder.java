@@ -0,0 +1,318 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.Resource;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.StorageException;
+import org.geowebcache.storage.TileObject;
+
+/**
+ * Encodes the tiles of a {@link GeoServerMetaTile} in parallel, handing each one to the storage
+ * broker as soon as it is encoded.
+ *
+ * <p>The tile the caller asked for is encoded first, in the calling thread, so that it can be
+ * returned right away, while the other tiles are encoded and stored in the background. Until
+ * stored, the tiles are tracked as pending, so that requests for them can pick up the encoded
+ * result instead of rendering the meta tile again, see {@link #fetchPending(ConveyorTile)}.
+ *
+ * <p>Enabled by setting the {@code GWC_METATILE_ENCODER_THREADS} system variable to the number of
+ * encoding threads, by default tiles are encoded and stored sequentially by the requesting thread.
+ * The shared encoder threads are stopped by {@link #shutdownShared()}, on GWC disposal.
+ */
+public class ParallelMetaTileEncoder {
+
+    private static final Logger LOGGER = Logging.getLogger(ParallelMetaTileEncoder.class);
+
+    static final String THREADS_PROPERTY = "GWC_METATILE_ENCODER_THREADS";
+
+    /** Maximum wait for a pending tile, in seconds, after which the tile is rendered again */
+    static final long FETCH_TIMEOUT = 60;
+
+    private static volatile ParallelMetaTileEncoder instance;
+
+    /** Returns the shared encoder, or null if parallel encoding is not enabled */
+    static ParallelMetaTileEncoder get() {
+        if (instance == null) {
+            synchronized (ParallelMetaTileEncoder.class) {
+                if (instance == null) {
+                    int threads = Integer.getInteger(THREADS_PROPERTY, 0);
+                    if (threads <= 0) {
+                        return null;
+                    }
+                    instance = new ParallelMetaTileEncoder(threads);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the shared encoder, if any. The tiles already submitted are still encoded and stored,
+     * a later {@link #get()} creates a new encoder.
+     */
+    public static void shutdownShared() {
+        synchronized (ParallelMetaTileEncoder.class) {
+            if (instance != null) {
+                instance.shutdown();
+                instance = null;
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+
+    /** Limits the meta tiles kept in memory while their tiles are encoded in the background */
+    private final Semaphore backgroundMetaTiles;
+
+    /** The tiles encoded, or being encoded, but not stored yet */
+    private final ConcurrentHashMap<String, Future<Resource>> pending = new ConcurrentHashMap<>();
+
+    ParallelMetaTileEncoder(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory =
+                r -> {
+                    Thread t = new Thread(r, "gwc-metatile-encoder-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                };
+        this.executor = Executors.newFixedThreadPool(threads, factory);
+        this.backgroundMetaTiles = new Semaphore(threads * 2);
+    }
+
+    /** Stops the encoding threads once the tiles already submitted are stored */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Encodes the tiles of the meta tile, sets the requested one as the blob of {@code tile} and
+     * stores all of them. Returns as soon as the requested tile is encoded, the meta tile is
+     * disposed once all the tiles are stored.
+     *
+     * <p>As in the sequential {@code AbstractTileLayer.saveTiles()}, the tiles outside of the grid
+     * subset coverage are skipped, and so are the ones the meta tile fails to write.
+     *
+     * <p>Must be called while holding the meta tile lock, the pending tiles are registered before
+     * returning so that the lock can be released right after. If the requested tile cannot be
+     * encoded nothing is stored and the caller is still responsible for disposing the meta tile.
+     */
+    void encode(
+            GeoServerTileLayer layer,
+            GeoServerMetaTile metaTile,
+            ConveyorTile tile,
+            long requestTime)
+            throws GeoWebCacheException {
+        final long[][] positions = metaTile.getTilesGridPositions();
+        final int requested = indexOf(positions, tile.getTileIndex());
+        final GridSubset gridSubset = layer.getGridSubset(tile.getGridSetId());
+        // edge tiles may fall outside of the grid subset, those are not stored
+        final List<Integer> covered = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            if (i == requested || gridSubset.covers(positions[i])) {
+                covered.add(i);
+            }
+        }
+
+        final Resource resource;
+        try {
+            resource = encode(metaTile, requested);
+        } catch (Exception e) {
+            throw new GeoWebCacheException(e);
+        }
+        tile.setBlob(resource);
+
+        // keep a bound on the meta tiles waiting for encoding, when too many are queued up the
+        // caller waits for its own tiles to be stored before returning, e.g., while seeding
+        final boolean background = backgroundMetaTiles.tryAcquire();
+        final AtomicInteger remaining = new AtomicInteger(covered.size());
+        final CountDownLatch stored = new CountDownLatch(covered.size());
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Runnable> aborts = new ArrayList<>();
+        for (final int tileIdx : covered) {
+            final String key = key(tile, positions[tileIdx]);
+            final CompletableFuture<Resource> encoded =
+                    tileIdx == requested
+                            ? CompletableFuture.completedFuture(resource)
+                            : new CompletableFuture<>();
+            // until stored, other requests for the same tile get the encoded copy
+            pending.put(key, encoded);
+            final Runnable done =
+                    () -> {
+                        pending.remove(key, encoded);
+                        stored.countDown();
+                        if (remaining.decrementAndGet() == 0) {
+                            metaTile.dispose();
+                            if (background) {
+                                backgroundMetaTiles.release();
+                            }
+                        }
+                    };
+            tasks.add(
+                    () -> {
+                        try {
+                            if (!encoded.isDone()) {
+                                encoded.complete(encode(metaTile, tileIdx));
+                            }
+                            store(layer, tile, positions[tileIdx], encoded.get(), requestTime);
+                        } catch (Exception e) {
+                            encoded.completeExceptionally(e);
+                        } finally {
+                            // e.g. an OutOfMemoryError, the requests waiting for the tile render it
+                            if (!encoded.isDone()) {
+                                encoded.completeExceptionally(
+                                        new GeoWebCacheException(
+                                                "Encoding of tile " + tileIdx + " aborted"));
+                            }
+                            done.run();
+                        }
+                    });
+            aborts.add(
+                    () -> {
+                        encoded.completeExceptionally(
+                                new GeoWebCacheException("Encoder shut down, tile not stored"));
+                        done.run();
+                    });
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                executor.execute(tasks.get(i));
+            } catch (RejectedExecutionException e) {
+                // shut down in the meantime, the remaining tiles are not stored
+                LOGGER.log(Level.FINE, "Meta tile encoder shut down", e);
+                aborts.subList(i, aborts.size()).forEach(Runnable::run);
+                break;
+            }
+        }
+        if (!background) {
+            try {
+                stored.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        tile.getStorageObject().setCreated(requestTime);
+    }
+
+    /**
+     * Checks if the requested tile is pending storage, and if so waits for it to be encoded and
+     * sets it as the blob of {@code tile}. Waits at most {@link #FETCH_TIMEOUT} seconds.
+     *
+     * @return true if the tile blob was set, false otherwise
+     */
+    boolean fetchPending(ConveyorTile tile) {
+        Future<Resource> future = pending.get(key(tile, tile.getTileIndex()));
+        if (future == null) {
+            return false;
+        }
+        try {
+            tile.setBlob(future.get(FETCH_TIMEOUT, TimeUnit.SECONDS));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // the tile will be rendered again
+            LOGGER.log(Level.FINE, "Pending tile encoding failed", e.getCause());
+            return false;
+        } catch (TimeoutException e) {
+            LOGGER.log(Level.WARNING, "Timed out waiting for a pending tile, rendering it again");
+            return false;
+        }
+    }
+
+    /** Returns the number of tiles encoded, or being encoded, but not stored yet */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private Resource encode(GeoServerMetaTile metaTile, int tileIdx) throws Exception {
+        Resource resource = new ByteArrayResource(16 * 1024);
+        try {
+            if (!metaTile.writeTileToStream(tileIdx, resource)) {
+                throw new GeoWebCacheException(
+                        "metaTile.writeTileToStream returned false for tile " + tileIdx);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to encode tile " + tileIdx + " of " + metaTile, e);
+            throw e;
+        }
+        return resource;
+    }
+
+    private void store(
+            GeoServerTileLayer layer,
+            ConveyorTile proto,
+            long[] idx,
+            Resource resource,
+            long requestTime)
+            throws StorageException {
+        TileObject tile =
+                TileObject.createCompleteTileObject(
+                        layer.getName(),
+                        idx,
+                        proto.getGridSetId(),
+                        proto.getMimeType().getFormat(),
+                        proto.getFilteringParameters(),
+                        resource);
+        tile.setCreated(requestTime);
+        StorageBroker broker = proto.getStorageBroker();
+        try {
+            if (proto.isMetaTileCacheOnly()) {
+                broker.putTransient(tile);
+            } else {
+                broker.put(tile);
+            }
+        } catch (StorageException e) {
+            LOGGER.log(Level.WARNING, "Failed to store tile " + Arrays.toString(idx), e);
+            throw e;
+        }
+    }
+
+    private static int indexOf(long[][] positions, long[] tileIndex) {
+        for (int i = 0; i < positions.length; i++) {
+            if (Arrays.equals(positions[i], tileIndex)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Tile " + Arrays.toString(tileIndex) + " is not part of the meta tile");
+    }
+
+    private static String key(ConveyorTile tile, long[] idx) {
+        StringBuilder key = new StringBuilder(tile.getLayerId());
+        key.append("_").append(tile.getGridSetId());
+        key.append("_").append(idx[0]).append("_").append(idx[1]).append("_").append(idx[2]);
+        if (tile.getParametersId() != null) {
+            key.append("_").append(tile.getParametersId());
+        }
+        key.append(".").append(tile.getMimeType().getFileExtension());
+        return key.toString();
+    }
+}
@@ -5,6 +5,8 @@
  */
 package org.geoserver.gwc.layer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public interface TileLayerCatalog {
@@ -27,6 +29,21 @@ public interface TileLayerCatalog {
 
     public GeoServerTileLayerInfo save(GeoServerTileLayerInfo newValue);
 
+    /**
+     * Saves several layers at once, implementations can take advantage of it to reduce the
+     * persistence overhead.
+     *
+     * @return the previous version of each layer, or null for new layers, in the same order
+     */
+    public default List<GeoServerTileLayerInfo> saveAll(
+            List<? extends GeoServerTileLayerInfo> newValues) {
+        List<GeoServerTileLayerInfo> oldValues = new ArrayList<>();
+        for (GeoServerTileLayerInfo newValue : newValues) {
+            oldValues.add(save(newValue));
+        }
+        return oldValues;
+    }
+
     public boolean exists(String layerId);
 
     public void initialize();
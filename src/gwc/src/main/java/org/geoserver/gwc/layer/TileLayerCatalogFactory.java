@@ -0,0 +1,32 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import java.io.IOException;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geowebcache.config.XMLConfiguration;
+
+/**
+ * Creates the {@link TileLayerCatalog} selected by the {@code GWC_TILE_LAYER_CATALOG} property,
+ * either {@code default} for {@link DefaultTileLayerCatalog}, or {@code indexed} for {@link
+ * IndexedTileLayerCatalog}.
+ */
+public class TileLayerCatalogFactory {
+
+    public static final String CATALOG_PROPERTY = "GWC_TILE_LAYER_CATALOG";
+
+    private TileLayerCatalogFactory() {}
+
+    public static TileLayerCatalog create(
+            GeoServerResourceLoader resourceLoader, XMLConfiguration xmlPersisterFactory)
+            throws IOException {
+        String type = GeoServerExtensions.getProperty(CATALOG_PROPERTY);
+        if ("indexed".equalsIgnoreCase(type)) {
+            return new IndexedTileLayerCatalog(resourceLoader, xmlPersisterFactory);
+        }
+        return new DefaultTileLayerCatalog(resourceLoader, xmlPersisterFactory);
+    }
+}
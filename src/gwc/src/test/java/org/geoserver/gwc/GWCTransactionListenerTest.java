@@ -7,14 +7,18 @@ package org.geoserver.gwc;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
 import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -26,13 +30,24 @@ import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionEventType;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.CRS;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.mockito.ArgumentCaptor;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
 public class GWCTransactionListenerTest {
 
@@ -207,12 +222,109 @@ public class GWCTransactionListenerTest {
         verify(mediator, times(1)).truncate(eq("theGroup"), eq(expectedEnv));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAfterTransactionWithPlanner() throws Exception {
+        TruncationPlanner planner = mock(TruncationPlanner.class);
+        listener.setTruncationPlanner(planner);
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("testType");
+        tb.add("geom", Point.class, WGS84);
+        SimpleFeatureType schema = tb.buildFeatureType();
+        GeometryFactory gf = new GeometryFactory();
+        Point p1 = gf.createPoint(new Coordinate(-170, -80));
+        Point p2 = gf.createPoint(new Coordinate(170, 80));
+        ListFeatureCollection features = new ListFeatureCollection(schema);
+        features.add(SimpleFeatureBuilder.build(schema, new Object[] {p1}, null));
+        features.add(SimpleFeatureBuilder.build(schema, new Object[] {p2}, null));
+
+        Map<Object, Object> extendedProperties = new HashMap<Object, Object>();
+        issueInsert(extendedProperties, features);
+
+        TransactionRequest request = mock(TransactionRequest.class);
+        TransactionResponse result = mock(TransactionResponse.class);
+        when(request.getExtendedProperties()).thenReturn(extendedProperties);
+        when(mediator.getDeclaredCrs(anyString())).thenReturn(WGS84);
+        listener.afterTransaction(request, result, true);
+
+        // the feature geometries are truncated, not their bounds
+        ArgumentCaptor<List> geometries = ArgumentCaptor.forClass(List.class);
+        verify(planner).addDirtyRegion(eq("theLayer"), geometries.capture(), eq(WGS84));
+        assertEquals(Arrays.asList(p1, p2), geometries.getValue());
+        verify(planner).addDirtyRegion(eq("theGroup"), any(List.class), eq(WGS84));
+        verify(mediator, never()).truncate(anyString(), any(ReferencedEnvelope.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAfterTransactionWithPlannerTransformFailure() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("testType");
+        tb.add("geom", Point.class, WGS84);
+        SimpleFeatureType schema = tb.buildFeatureType();
+        GeometryFactory gf = new GeometryFactory();
+        Point p1 = gf.createPoint(new Coordinate(0, 0));
+        Point p2 = gf.createPoint(new Coordinate(10, 10));
+        ListFeatureCollection features = new ListFeatureCollection(schema);
+        features.add(SimpleFeatureBuilder.build(schema, new Object[] {p1}, null));
+        features.add(SimpleFeatureBuilder.build(schema, new Object[] {p2}, null));
+
+        // the second geometry cannot be reprojected
+        listener =
+                new GWCTransactionListener(mediator) {
+                    @Override
+                    Geometry transform(Geometry geometry, MathTransform transform)
+                            throws TransformException {
+                        if (geometry == p2) {
+                            throw new TransformException("Cannot transform " + geometry);
+                        }
+                        return super.transform(geometry, transform);
+                    }
+                };
+        TruncationPlanner planner = mock(TruncationPlanner.class);
+        listener.setTruncationPlanner(planner);
+        final CoordinateReferenceSystem webMercator = CRS.decode("EPSG:3857", true);
+        when(mediator.getDeclaredCrs(anyString())).thenReturn(webMercator);
+
+        Map<Object, Object> extendedProperties = new HashMap<Object, Object>();
+        issueInsert(extendedProperties, features);
+        // a later change that could be reprojected does not bring back a partial list
+        ListFeatureCollection more = new ListFeatureCollection(schema);
+        more.add(SimpleFeatureBuilder.build(schema, new Object[] {p1}, null));
+        issueInsert(extendedProperties, more);
+
+        Map<String, List<Geometry>> geometries =
+                (Map<String, List<Geometry>>)
+                        extendedProperties.get(
+                                GWCTransactionListener.GWC_TRANSACTION_GEOMETRIES_PLACEHOLDER);
+        assertFalse(geometries.containsKey("theLayer"));
+        assertFalse(geometries.containsKey("theGroup"));
+
+        TransactionRequest request = mock(TransactionRequest.class);
+        TransactionResponse result = mock(TransactionResponse.class);
+        when(request.getExtendedProperties()).thenReturn(extendedProperties);
+        listener.afterTransaction(request, result, true);
+
+        // truncated by envelope instead
+        verify(planner, never()).addDirtyRegion(anyString(), any(List.class), any());
+        verify(mediator).truncate(eq("theLayer"), any(ReferencedEnvelope.class));
+        verify(mediator).truncate(eq("theGroup"), any(ReferencedEnvelope.class));
+    }
+
     /**
      * Issues a fake dataStoreChange insert event that affects two tile layers: "theLayer" and
      * "theGroup"
      */
     private void issueInsert(
             Map<Object, Object> extendedProperties, ReferencedEnvelope affectedBounds) {
+        SimpleFeatureCollection affectedFeatures = mock(SimpleFeatureCollection.class);
+        when(affectedFeatures.getBounds()).thenReturn(affectedBounds);
+        issueInsert(extendedProperties, affectedFeatures);
+    }
+
+    private void issueInsert(
+            Map<Object, Object> extendedProperties, SimpleFeatureCollection affectedFeatures) {
 
         TransactionType transaction = mock(TransactionType.class);
         when(transaction.getExtendedProperties()).thenReturn(extendedProperties);
@@ -233,8 +345,6 @@ public class GWCTransactionListenerTest {
                         eq(layerName.getNamespaceURI()), eq(layerName.getLocalPart())))
                 .thenReturn(ImmutableSet.of("theLayer", "theGroup"));
 
-        SimpleFeatureCollection affectedFeatures = mock(SimpleFeatureCollection.class);
-        when(affectedFeatures.getBounds()).thenReturn(affectedBounds);
         when(event.getAffectedFeatures()).thenReturn(affectedFeatures);
 
         listener.dataStoreChange(event);
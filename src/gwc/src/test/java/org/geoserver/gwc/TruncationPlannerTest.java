@@ -0,0 +1,164 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc;
+
+import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.geowebcache.grid.GridSet;
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.GridSubsetFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+import org.mockito.ArgumentCaptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+public class TruncationPlannerTest {
+
+    private GWC mediator;
+
+    private TruncationPlanner planner;
+
+    @Before
+    public void setUp() {
+        mediator = mock(GWC.class);
+        planner = new TruncationPlanner(mediator);
+    }
+
+    @After
+    public void tearDown() {
+        planner.destroy();
+    }
+
+    private Geometry geometry(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+
+    @Test
+    public void testNoWindow() throws Exception {
+        planner.setWindow(0);
+        Geometry point = geometry("POINT(10 10)");
+        planner.addDirtyRegion("theLayer", Collections.singletonList(point), WGS84);
+
+        verify(mediator).truncate(eq("theLayer"), eq(point), eq(WGS84));
+        assertEquals(0, planner.getPendingLayerCount());
+    }
+
+    @Test
+    public void testMergeWithinWindow() throws Exception {
+        // long enough not to expire during the test
+        planner.setWindow(60000);
+        Geometry square1 = geometry("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))");
+        Geometry square2 = geometry("POLYGON((5 0, 15 0, 15 10, 5 10, 5 0))");
+        Geometry point = geometry("POINT(50 50)");
+        planner.addDirtyRegion("theLayer", Collections.singletonList(square1), WGS84);
+        planner.addDirtyRegion("theLayer", Collections.singletonList(square2), WGS84);
+        planner.addDirtyRegion("theGroup", Collections.singletonList(point), WGS84);
+
+        verify(mediator, never())
+                .truncate(
+                        any(String.class),
+                        any(Geometry.class),
+                        any(CoordinateReferenceSystem.class));
+        assertEquals(2, planner.getPendingLayerCount());
+
+        planner.flush();
+        ArgumentCaptor<Geometry> merged = ArgumentCaptor.forClass(Geometry.class);
+        verify(mediator).truncate(eq("theLayer"), merged.capture(), eq(WGS84));
+        assertTrue(merged.getValue().equalsTopo(square1.union(square2)));
+        verify(mediator).truncate(eq("theGroup"), eq(point), eq(WGS84));
+        assertEquals(0, planner.getPendingLayerCount());
+    }
+
+    @Test
+    public void testWindowExpiration() throws Exception {
+        planner.setWindow(10);
+        Geometry point = geometry("POINT(10 10)");
+        planner.addDirtyRegion("theLayer", Arrays.asList(point), WGS84);
+
+        verify(mediator, timeout(10000)).truncate(eq("theLayer"), eq(point), eq(WGS84));
+    }
+
+    @Test
+    public void testGeometryMask() throws Exception {
+        GridSetBroker gridSets = new GridSetBroker(true, true);
+        GridSubset gridSubset = GridSubsetFactory.createGridSubSet(gridSets.getWorldEpsg4326());
+        // a diagonal line, its bounds cover all the tiles at level 1
+        Geometry line = geometry("LINESTRING(-170 -80, 170 70)");
+        GeometryTileRangeMask mask = GeometryTileRangeMask.build(gridSubset, line);
+
+        assertTrue(mask.lookup(0, 0, 0));
+        assertTrue(mask.lookup(1, 0, 0));
+        assertTrue(mask.lookup(0, 0, 1));
+        assertTrue(mask.lookup(1, 0, 1));
+        assertTrue(mask.lookup(2, 0, 1));
+        assertTrue(mask.lookup(2, 1, 1));
+        assertTrue(mask.lookup(3, 1, 1));
+        assertFalse(mask.lookup(0, 1, 1));
+        assertFalse(mask.lookup(1, 1, 1));
+        assertFalse(mask.lookup(3, 0, 1));
+
+        // outside of the grid subset
+        assertNull(GeometryTileRangeMask.build(gridSubset, geometry("POINT(500 500)")));
+    }
+
+    @Test
+    public void testGeometryMaskZoomStart() throws Exception {
+        GridSetBroker gridSets = new GridSetBroker(true, true);
+        GridSet gridSet = gridSets.getWorldEpsg4326();
+        GridSubset gridSubset =
+                GridSubsetFactory.createGridSubSet(gridSet, gridSet.getOriginalExtent(), 1, 3);
+        Geometry line = geometry("LINESTRING(-170 -80, 170 70)");
+        GeometryTileRangeMask mask = GeometryTileRangeMask.build(gridSubset, line);
+
+        assertEquals(3, mask.getGridCoverages().length);
+        // levels are absolute, not relative to the zoom start
+        assertTrue(mask.lookup(0, 0, 1));
+        assertTrue(mask.lookup(3, 1, 1));
+        assertFalse(mask.lookup(0, 1, 1));
+        assertFalse(mask.lookup(3, 0, 1));
+        assertTrue(mask.lookup(0, 0, 3));
+        assertTrue(mask.lookup(15, 7, 3));
+        assertFalse(mask.lookup(0, 7, 3));
+        assertFalse(mask.lookup(15, 0, 3));
+        // outside of the grid subset levels
+        assertFalse(mask.lookup(0, 0, 0));
+        assertFalse(mask.lookup(0, 0, 4));
+    }
+
+    @Test
+    public void testGeometryMaskBuffer() throws Exception {
+        GridSetBroker gridSets = new GridSetBroker(true, true);
+        GridSubset gridSubset = GridSubsetFactory.createGridSubSet(gridSets.getWorldEpsg4326());
+        // one degree west of the tile boundary at longitude 0
+        Geometry point = geometry("POINT(-1 50)");
+
+        GeometryTileRangeMask unbuffered = GeometryTileRangeMask.build(gridSubset, point);
+        assertTrue(unbuffered.lookup(1, 1, 1));
+        assertFalse(unbuffered.lookup(2, 1, 1));
+
+        // 10 pixels are 3.5 degrees at level 1, but less than one degree at level 3
+        GeometryTileRangeMask buffered = GeometryTileRangeMask.build(gridSubset, point, 10);
+        assertTrue(buffered.lookup(1, 1, 1));
+        assertTrue(buffered.lookup(2, 1, 1));
+        assertTrue(buffered.lookup(7, 6, 3));
+        assertFalse(buffered.lookup(8, 6, 3));
+    }
+}
@@ -0,0 +1,263 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableSet;
+import com.thoughtworks.xstream.XStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.config.util.SecureXStream;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geowebcache.config.ContextualConfigurationProvider.Context;
+import org.geowebcache.config.XMLConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.WebApplicationContext;
+
+public class IndexedTileLayerCatalogTest {
+
+    private File baseDirectory;
+
+    private GeoServerResourceLoader resourceLoader;
+
+    private IndexedTileLayerCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDirectory = new File("target", "mockIndexedTileLayerCatalog");
+        FileUtils.deleteDirectory(baseDirectory);
+        baseDirectory.mkdirs();
+        resourceLoader = new GeoServerResourceLoader(baseDirectory);
+
+        new File(baseDirectory, "gwc-layers").mkdir();
+
+        catalog = newCatalog();
+    }
+
+    private IndexedTileLayerCatalog newCatalog() {
+        XStream xStream =
+                XMLConfiguration.getConfiguredXStreamWithContext(
+                        new SecureXStream(), (WebApplicationContext) null, Context.PERSIST);
+        return new IndexedTileLayerCatalog(resourceLoader, xStream);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        catalog.reset();
+        FileUtils.deleteDirectory(baseDirectory);
+    }
+
+    private GeoServerTileLayerInfo layer(String id, String name) {
+        GeoServerTileLayerInfo info = new GeoServerTileLayerInfoImpl();
+        info.setId(id);
+        info.setName(name);
+        return info;
+    }
+
+    @Test
+    public void testGetLayerById() {
+        GeoServerTileLayerInfo info = layer("id1", "name1");
+        catalog.save(info);
+        GeoServerTileLayerInfo actual = catalog.getLayerById("id1");
+        actual = ModificationProxy.unwrap(actual);
+        assertEquals(info, actual);
+    }
+
+    @Test
+    public void testGetLayerByName() {
+        GeoServerTileLayerInfo info = layer("id1", "name1");
+        catalog.save(info);
+        GeoServerTileLayerInfo actual = catalog.getLayerByName("name1");
+        actual = ModificationProxy.unwrap(actual);
+        assertEquals(info, actual);
+        assertEquals("id1", catalog.getLayerId("name1"));
+        assertEquals("name1", catalog.getLayerName("id1"));
+    }
+
+    @Test
+    public void testDelete() {
+        GeoServerTileLayerInfo info = layer("id1", "name1");
+        catalog.save(info);
+
+        GeoServerTileLayerInfo deleted = catalog.delete("id1");
+        assertEquals(info, ModificationProxy.unwrap(deleted));
+
+        assertNull(catalog.getLayerById("id1"));
+        assertNull(catalog.getLayerByName("name1"));
+        assertFalse(catalog.exists("id1"));
+        assertNull(catalog.delete("id1"));
+    }
+
+    @Test
+    public void testSave() {
+        GeoServerTileLayerInfo info = layer("id1", "name1");
+        info.getMimeFormats().add("image/png");
+        info.getMimeFormats().add("image/jpeg");
+        assertNull(catalog.save(info));
+
+        GeoServerTileLayerInfo original = catalog.getLayerById("id1");
+        assertEquals(info.getMimeFormats(), original.getMimeFormats());
+
+        original.getMimeFormats().clear();
+        original.getMimeFormats().add("image/gif");
+        original.setName("name2");
+
+        GeoServerTileLayerInfo oldValue = catalog.save(original);
+        assertNotNull(oldValue);
+        assertEquals(ImmutableSet.of("image/png", "image/jpeg"), oldValue.getMimeFormats());
+        assertEquals("name1", oldValue.getName());
+
+        assertNull(catalog.getLayerByName("name1"));
+        assertNotNull(catalog.getLayerByName("name2"));
+
+        GeoServerTileLayerInfo modified = catalog.getLayerById("id1");
+        assertEquals(ImmutableSet.of("image/gif"), modified.getMimeFormats());
+    }
+
+    @Test
+    public void testDuplicateName() {
+        catalog.save(layer("id1", "name1"));
+        try {
+            catalog.saveAll(Arrays.asList(layer("id2", "name2"), layer("id3", "name1")));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("name1"));
+        }
+        // the batch is saved as a whole, or not at all
+        assertEquals(ImmutableSet.of("id1"), catalog.getLayerIds());
+    }
+
+    @Test
+    public void testReload() {
+        List<GeoServerTileLayerInfo> layers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            layers.add(layer("id" + i, "name" + i));
+        }
+        List<GeoServerTileLayerInfo> oldValues = catalog.saveAll(layers);
+        assertEquals(100, oldValues.size());
+        assertNull(oldValues.get(0));
+        catalog.save(layer("id0", "renamed"));
+        catalog.delete("id1");
+
+        IndexedTileLayerCatalog reloaded = newCatalog();
+        catalog.reset();
+        assertEquals(99, reloaded.getLayerIds().size());
+        assertFalse(reloaded.exists("id1"));
+        assertEquals("id0", reloaded.getLayerId("renamed"));
+        assertNull(reloaded.getLayerId("name0"));
+        assertEquals(layers.get(50), ModificationProxy.unwrap(reloaded.getLayerById("id50")));
+        reloaded.reset();
+    }
+
+    @Test
+    public void testImportLayerFiles() throws Exception {
+        // layers saved in the one file per layer format
+        XStream xStream =
+                XMLConfiguration.getConfiguredXStreamWithContext(
+                        new SecureXStream(), (WebApplicationContext) null, Context.PERSIST);
+        DefaultTileLayerCatalog files = new DefaultTileLayerCatalog(resourceLoader, xStream);
+        files.save(layer("id1", "name1"));
+        files.save(layer("id2", "name2"));
+
+        assertEquals(ImmutableSet.of("name1", "name2"), catalog.getLayerNames());
+        assertEquals(layer("id2", "name2"), ModificationProxy.unwrap(catalog.getLayerById("id2")));
+        assertTrue(new File(baseDirectory, "gwc-layers/id1.xml").exists());
+    }
+
+    @Test
+    public void testIncrementalEvents() throws Exception {
+        catalog.save(layer("id1", "name1"));
+        catalog.save(layer("id2", "name2"));
+
+        List<String> events = new ArrayList<>();
+        catalog.addListener((id, type) -> events.add(type + " " + id));
+
+        // another instance sharing the same file, changes are only read on refresh
+        IndexedTileLayerCatalog other = newCatalog();
+        other.save(layer("id3", "name3"));
+        other.save(layer("id1", "renamed"));
+        other.delete("id2");
+        other.reset();
+        assertEquals(ImmutableSet.of("id1", "id2"), catalog.getLayerIds());
+
+        catalog.refresh();
+        assertEquals(Arrays.asList("CREATE id3", "MODIFY id1", "DELETE id2"), events);
+        assertEquals(ImmutableSet.of("id1", "id3"), catalog.getLayerIds());
+        assertEquals("renamed", catalog.getLayerById("id1").getName());
+
+        // nothing new, no events, including for the local changes
+        events.clear();
+        catalog.save(layer("id4", "name4"));
+        catalog.refresh();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            GeoServerTileLayerInfo info = layer("id1", "name1");
+            info.getMimeFormats().add("image/png" + i);
+            catalog.save(info);
+        }
+        catalog.save(layer("id2", "name2"));
+        catalog.delete("id2");
+        long size = catalog.getFileSize();
+
+        catalog.compact();
+        assertTrue(catalog.getFileSize() < size);
+        assertEquals(ImmutableSet.of("id1"), catalog.getLayerIds());
+        assertEquals(
+                ImmutableSet.of("image/png9"), catalog.getLayerById("id1").getMimeFormats());
+
+        // still appendable and readable from scratch
+        catalog.save(layer("id3", "name3"));
+        IndexedTileLayerCatalog reloaded = newCatalog();
+        catalog.reset();
+        assertEquals(ImmutableSet.of("id1", "id3"), reloaded.getLayerIds());
+        reloaded.reset();
+    }
+
+    @Test
+    public void testSaveAfterCompactionByOtherInstance() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            GeoServerTileLayerInfo info = layer("id1", "name1");
+            info.getMimeFormats().add("image/png" + i);
+            catalog.save(info);
+        }
+        IndexedTileLayerCatalog other = newCatalog();
+        assertEquals(ImmutableSet.of("id1"), other.getLayerIds());
+        catalog.compact();
+
+        // the other instance finds the file replaced while saving, and keeps holding the lock
+        List<Boolean> locked = new ArrayList<>();
+        other.addListener((id, type) -> locked.add(other.holdsFileLock()));
+        other.save(layer("id2", "name2"));
+        assertFalse(locked.isEmpty());
+        assertFalse(locked.contains(false));
+        assertFalse(other.holdsFileLock());
+
+        // neither instance overwrote the records of the other
+        catalog.save(layer("id3", "name3"));
+        assertEquals(ImmutableSet.of("id1", "id2", "id3"), catalog.getLayerIds());
+        other.reset();
+        IndexedTileLayerCatalog reloaded = newCatalog();
+        catalog.reset();
+        assertEquals(ImmutableSet.of("id1", "id2", "id3"), reloaded.getLayerIds());
+        assertEquals("name2", reloaded.getLayerById("id2").getName());
+        reloaded.reset();
+    }
+}
@@ -0,0 +1,258 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gwc.layer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.geowebcache.GeoWebCacheException;
+import org.geowebcache.conveyor.ConveyorTile;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.io.Resource;
+import org.geowebcache.mime.ImageMime;
+import org.geowebcache.storage.StorageBroker;
+import org.geowebcache.storage.TileObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ParallelMetaTileEncoderTest {
+
+    static final long[][] POSITIONS = {{0, 0, 1}, {1, 0, 1}, {0, 1, 1}, {1, 1, 1}};
+
+    ParallelMetaTileEncoder encoder;
+
+    GeoServerTileLayer layer;
+
+    GridSubset gridSubset;
+
+    @Before
+    public void setUp() {
+        encoder = new ParallelMetaTileEncoder(4);
+        gridSubset = mock(GridSubset.class);
+        when(gridSubset.covers(any(long[].class))).thenReturn(true);
+        layer = mock(GeoServerTileLayer.class);
+        when(layer.getName()).thenReturn("topp:states");
+        when(layer.getGridSubset("EPSG:4326")).thenReturn(gridSubset);
+    }
+
+    @After
+    public void tearDown() {
+        encoder.shutdown();
+    }
+
+    GeoServerMetaTile mockMetaTile() throws Exception {
+        GeoServerMetaTile metaTile = mock(GeoServerMetaTile.class);
+        when(metaTile.getTilesGridPositions()).thenReturn(POSITIONS);
+        when(metaTile.writeTileToStream(anyInt(), any(Resource.class)))
+                .then(
+                        invocation -> {
+                            int idx = (Integer) invocation.getArguments()[0];
+                            Resource target = (Resource) invocation.getArguments()[1];
+                            try (OutputStream out = target.getOutputStream()) {
+                                out.write(("tile" + idx).getBytes());
+                            }
+                            return true;
+                        });
+        return metaTile;
+    }
+
+    ConveyorTile mockTile(StorageBroker broker, long[] idx) {
+        ConveyorTile tile = mock(ConveyorTile.class);
+        when(tile.getTileIndex()).thenReturn(idx);
+        when(tile.getLayerId()).thenReturn("topp:states");
+        when(tile.getGridSetId()).thenReturn("EPSG:4326");
+        when(tile.getMimeType()).thenReturn(ImageMime.png);
+        when(tile.getFilteringParameters()).thenReturn(Collections.emptyMap());
+        when(tile.getStorageBroker()).thenReturn(broker);
+        when(tile.getStorageObject()).thenReturn(mock(TileObject.class));
+        return tile;
+    }
+
+    String contents(Resource resource) throws Exception {
+        return new String(IOUtils.toByteArray(resource.getInputStream()));
+    }
+
+    @Test
+    public void testRequestedTileBeforeStorage() throws Exception {
+        // the storage is blocked until the test is done checking the requested tile
+        CountDownLatch storageAllowed = new CountDownLatch(1);
+        StorageBroker broker = mock(StorageBroker.class);
+        when(broker.put(any(TileObject.class)))
+                .then(invocation -> storageAllowed.await(10, TimeUnit.SECONDS));
+        GeoServerMetaTile metaTile = mockMetaTile();
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[2]);
+        encoder.encode(layer, metaTile, tile, 1000);
+
+        ArgumentCaptor<Resource> blob = ArgumentCaptor.forClass(Resource.class);
+        verify(tile).setBlob(blob.capture());
+        assertEquals("tile2", contents(blob.getValue()));
+        verify(metaTile, never()).dispose();
+        assertEquals(4, encoder.getPendingCount());
+
+        // other requests for the same meta tile pick the encoded tiles
+        ConveyorTile other = mockTile(broker, POSITIONS[3]);
+        assertTrue(encoder.fetchPending(other));
+        verify(other).setBlob(blob.capture());
+        assertEquals("tile3", contents(blob.getValue()));
+
+        storageAllowed.countDown();
+        verify(metaTile, timeout(10000)).dispose();
+        ArgumentCaptor<TileObject> stored = ArgumentCaptor.forClass(TileObject.class);
+        verify(broker, times(4)).put(stored.capture());
+        for (TileObject object : stored.getAllValues()) {
+            assertEquals("topp:states", object.getLayerName());
+            assertEquals(1000, object.getCreated());
+        }
+        assertEquals(0, encoder.getPendingCount());
+        assertFalse(encoder.fetchPending(other));
+    }
+
+    @Test
+    public void testMetaTileCacheOnly() throws Exception {
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mockMetaTile();
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[0]);
+        when(tile.isMetaTileCacheOnly()).thenReturn(true);
+        encoder.encode(layer, metaTile, tile, 1000);
+
+        verify(metaTile, timeout(10000)).dispose();
+        ArgumentCaptor<TileObject> stored = ArgumentCaptor.forClass(TileObject.class);
+        verify(broker, times(4)).putTransient(stored.capture());
+        verify(broker, never()).put(any(TileObject.class));
+        assertArrayEquals(POSITIONS[0], stored.getAllValues().get(0).getXYZ());
+    }
+
+    @Test
+    public void testEncodingFailure() throws Exception {
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mock(GeoServerMetaTile.class);
+        when(metaTile.getTilesGridPositions()).thenReturn(POSITIONS);
+        when(metaTile.writeTileToStream(anyInt(), any(Resource.class)))
+                .thenThrow(new IllegalStateException("cannot encode"));
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[1]);
+        try {
+            encoder.encode(layer, metaTile, tile, 1000);
+            fail("Expected a GeoWebCacheException");
+        } catch (GeoWebCacheException e) {
+            // expected
+        }
+        // nothing stored, nothing pending, the caller still owns the meta tile
+        assertEquals(0, encoder.getPendingCount());
+        verify(metaTile, never()).dispose();
+        verify(broker, never()).put(any(TileObject.class));
+    }
+
+    @Test
+    public void testSkipUncoveredTiles() throws Exception {
+        // the meta tile goes past the grid subset bounds, like on its edges
+        when(gridSubset.covers(POSITIONS[1])).thenReturn(false);
+        when(gridSubset.covers(POSITIONS[3])).thenReturn(false);
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mockMetaTile();
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[0]);
+        encoder.encode(layer, metaTile, tile, 1000);
+
+        verify(metaTile, timeout(10000)).dispose();
+        ArgumentCaptor<TileObject> stored = ArgumentCaptor.forClass(TileObject.class);
+        verify(broker, times(2)).put(stored.capture());
+        for (TileObject object : stored.getAllValues()) {
+            assertEquals(0, object.getXYZ()[0]);
+        }
+        verify(metaTile, never()).writeTileToStream(eq(1), any(Resource.class));
+        verify(metaTile, never()).writeTileToStream(eq(3), any(Resource.class));
+    }
+
+    @Test
+    public void testWriteIncomplete() throws Exception {
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mockMetaTile();
+        // the meta tile reports it could not write one of the tiles
+        doReturn(false).when(metaTile).writeTileToStream(eq(3), any(Resource.class));
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[0]);
+        encoder.encode(layer, metaTile, tile, 1000);
+
+        verify(metaTile, timeout(10000)).dispose();
+        ArgumentCaptor<TileObject> stored = ArgumentCaptor.forClass(TileObject.class);
+        verify(broker, times(3)).put(stored.capture());
+        for (TileObject object : stored.getAllValues()) {
+            assertFalse(Arrays.equals(POSITIONS[3], object.getXYZ()));
+        }
+        assertEquals(0, encoder.getPendingCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testEncodingError() throws Exception {
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mockMetaTile();
+        // an Error, rather than an Exception, while a request waits for the tile
+        CountDownLatch fetching = new CountDownLatch(1);
+        doAnswer(
+                        invocation -> {
+                            fetching.await(10, TimeUnit.SECONDS);
+                            Thread.sleep(100);
+                            throw new OutOfMemoryError("test");
+                        })
+                .when(metaTile)
+                .writeTileToStream(eq(3), any(Resource.class));
+
+        ConveyorTile tile = mockTile(broker, POSITIONS[0]);
+        encoder.encode(layer, metaTile, tile, 1000);
+
+        // the waiting request gives up, and renders the tile again
+        ConveyorTile other = mockTile(broker, POSITIONS[3]);
+        fetching.countDown();
+        assertFalse(encoder.fetchPending(other));
+
+        verify(metaTile, timeout(10000)).dispose();
+        verify(broker, times(3)).put(any(TileObject.class));
+        assertEquals(0, encoder.getPendingCount());
+    }
+
+    @Test
+    public void testEncoderShutDown() throws Exception {
+        StorageBroker broker = mock(StorageBroker.class);
+        GeoServerMetaTile metaTile = mockMetaTile();
+        encoder.shutdown();
+
+        // the requested tile is still returned, the others are dropped
+        ConveyorTile tile = mockTile(broker, POSITIONS[0]);
+        encoder.encode(layer, metaTile, tile, 1000);
+        ArgumentCaptor<Resource> blob = ArgumentCaptor.forClass(Resource.class);
+        verify(tile).setBlob(blob.capture());
+        assertEquals("tile0", contents(blob.getValue()));
+
+        assertEquals(0, encoder.getPendingCount());
+        assertFalse(encoder.fetchPending(mockTile(broker, POSITIONS[1])));
+        verify(metaTile).dispose();
+        verify(broker, never()).put(any(TileObject.class));
+    }
+}
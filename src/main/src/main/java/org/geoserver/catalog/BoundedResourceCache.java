@@ -0,0 +1,164 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ForwardingConcurrentMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A {@link ResourcePool} cache with predictable eviction, based on a Guava {@link Cache}.
+ *
+ * <p>The cache behavior is driven by a {@link CacheBuilderSpec}, which allows to configure size
+ * and weight based eviction as well as time to live, e.g. <code>
+ * maximumWeight=100000,expireAfterAccess=30m</code>. The specification for a given cache is looked
+ * up using {@link GeoServerExtensions#getProperty(String)} with the {@link #SPEC_PROPERTY_PREFIX}
+ * prefix followed by the cache name, e.g. <code>
+ * -Dorg.geoserver.catalog.cache.featureTypes=maximumSize=5000</code>.
+ *
+ * <p>Unlike the Guava maps, this cache accepts <code>null</code> keys in lookups and removals,
+ * treating them as a miss, in order to behave like the {@link java.util.HashMap} instances it
+ * replaces.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class BoundedResourceCache<K, V> extends ForwardingConcurrentMap<K, V>
+        implements MeteredCache {
+
+    static final Logger LOGGER = Logging.getLogger(BoundedResourceCache.class);
+
+    /** Prefix of the properties used to configure the {@link ResourcePool} caches */
+    public static final String SPEC_PROPERTY_PREFIX = "org.geoserver.catalog.cache.";
+
+    final String name;
+
+    final ConcurrentMap<K, V> map;
+
+    final ResourceCacheStatistics statistics = new ResourceCacheStatistics();
+
+    /**
+     * Builds a new cache
+     *
+     * @param name The cache name, used for logging purposes
+     * @param spec The cache specification
+     * @param weigher Used to compute the weight of the entries, when <code>maximumWeight</code> is
+     *     part of the specification. If null, each entry will weigh one
+     * @param disposer Called when a value is removed from the cache, other than being replaced by
+     *     a new one, can be null
+     */
+    public BoundedResourceCache(
+            String name,
+            CacheBuilderSpec spec,
+            Weigher<? super K, ? super V> weigher,
+            BiConsumer<K, V> disposer) {
+        this.name = name;
+        RemovalListener<K, V> listener = n -> onRemoval(n, disposer);
+        CacheBuilder<K, V> builder = CacheBuilder.from(spec).removalListener(listener);
+        if (spec.toParsableString().contains("maximumWeight")) {
+            Weigher<? super K, ? super V> entryWeigher = weigher;
+            if (entryWeigher == null) {
+                entryWeigher = (k, v) -> 1;
+            }
+            builder = builder.weigher(entryWeigher);
+        }
+        Cache<K, V> cache = builder.build();
+        this.map = cache.asMap();
+    }
+
+    /**
+     * Looks up the cache specification for the given cache name, see {@link
+     * #SPEC_PROPERTY_PREFIX}
+     *
+     * @return The parsed specification, or null if not found or invalid
+     */
+    public static CacheBuilderSpec lookupSpec(String name) {
+        String value = GeoServerExtensions.getProperty(SPEC_PROPERTY_PREFIX + name);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return CacheBuilderSpec.parse(value.trim());
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(
+                    Level.WARNING,
+                    "Invalid cache specification '"
+                            + value
+                            + "' for resource pool cache "
+                            + name
+                            + ", using default settings",
+                    e);
+            return null;
+        }
+    }
+
+    private void onRemoval(RemovalNotification<K, V> notification, BiConsumer<K, V> disposer) {
+        // replacing a value is not a disposal, the caller is just refreshing the entry
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            return;
+        }
+        if (notification.wasEvicted()) {
+            statistics.recordEviction();
+        }
+        if (disposer != null && notification.getValue() != null) {
+            try {
+                disposer.accept(notification.getKey(), notification.getValue());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error disposing entry of cache " + name, e);
+            }
+        }
+    }
+
+    @Override
+    protected ConcurrentMap<K, V> delegate() {
+        return map;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = key == null ? null : map.get(key);
+        if (value == null) {
+            statistics.recordMiss();
+        } else {
+            statistics.recordHit();
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && map.containsKey(key);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key == null ? null : map.remove(key);
+    }
+
+    @Override
+    public ResourceCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedResourceCache[" + name + "]";
+    }
+}
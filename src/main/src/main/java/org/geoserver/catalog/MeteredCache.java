@@ -0,0 +1,16 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * Implemented by the {@link ResourcePool} caches that keep track of their usage
+ *
+ * @see ResourcePool#getCacheStatistics()
+ */
+public interface MeteredCache {
+
+    /** Returns the live statistics for this cache */
+    ResourceCacheStatistics getStatistics();
+}
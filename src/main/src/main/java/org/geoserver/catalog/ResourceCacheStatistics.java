@@ -0,0 +1,100 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss, load and eviction counters for one of the {@link ResourcePool} caches.
+ *
+ * <p>Counters are updated without locking, so a snapshot read while the cache is in use might be
+ * slightly inconsistent (e.g., hits and misses not adding up to the number of lookups done so far)
+ *
+ * @see ResourcePool#getCacheStatistics()
+ */
+public class ResourceCacheStatistics {
+
+    final LongAdder hits = new LongAdder();
+
+    final LongAdder misses = new LongAdder();
+
+    final LongAdder loads = new LongAdder();
+
+    final LongAdder loadTime = new LongAdder();
+
+    final LongAdder evictions = new LongAdder();
+
+    /** Records a successful lookup */
+    public void recordHit() {
+        hits.increment();
+    }
+
+    /** Records a lookup that did not find a value in the cache */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Records the creation of a new cache value
+     *
+     * @param nanos The time it took to build the value, in nanoseconds
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadTime.add(nanos);
+    }
+
+    /** Records the removal of a value from the cache due to size, weight, expiration or GC */
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /** Total time spent loading values, in milliseconds */
+    public long getTotalLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(loadTime.sum());
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /** Ratio of lookups that found a value in the cache, or 1 if no lookup was performed yet */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 1 : (double) hits / requests;
+    }
+
+    /** Average time spent loading a value, in milliseconds */
+    public double getAverageLoadTime() {
+        long loads = getLoadCount();
+        return loads == 0 ? 0 : loadTime.sum() / (loads * 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "hits=%d, misses=%d, hitRatio=%.2f, loads=%d, avgLoadTime=%.2fms, evictions=%d",
+                getHitCount(),
+                getMissCount(),
+                getHitRatio(),
+                getLoadCount(),
+                getAverageLoadTime(),
+                getEvictionCount());
+    }
+}
@@ -5,6 +5,8 @@
  */
 package org.geoserver.catalog;
 
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.Weigher;
 import java.awt.*;
 import java.io.*;
 import java.lang.reflect.Method;
@@ -17,6 +19,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.measure.Unit;
@@ -44,6 +47,7 @@ import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.ResourceListener;
 import org.geoserver.platform.resource.ResourceNotification;
 import org.geoserver.util.EntityResolverProvider;
+import org.geoserver.util.SingleFlightLoader;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.GridCoverage2DReader;
@@ -118,6 +122,11 @@ import si.uom.SI;
  *   <li>{@link #sldCache}
  *   <li>{@link #styleCache}
  *
+ * <p>The crs, feature type, attribute, sld and style caches can be replaced by {@link
+ * BoundedResourceCache} instances with size/weight based eviction and time to live, by setting the
+ * matching {@link BoundedResourceCache#SPEC_PROPERTY_PREFIX} property. Usage statistics for all
+ * caches are available via {@link #getCacheStatistics()}.
+ *
  * @author Justin Deoliveira, Boundless
  */
 public class ResourcePool {
@@ -157,6 +166,33 @@ public class ResourcePool {
     /** Default number of hard references */
     static int FEATURETYPE_CACHE_SIZE_DEFAULT = 100;
 
+    /** Name of the {@link CoordinateReferenceSystem} cache */
+    public static final String CRS_CACHE = "crs";
+
+    /** Name of the {@link DataAccess} cache */
+    public static final String DATASTORE_CACHE = "dataStores";
+
+    /** Name of the {@link FeatureType} cache */
+    public static final String FEATURETYPE_CACHE = "featureTypes";
+
+    /** Name of the {@link AttributeTypeInfo} cache */
+    public static final String FEATURETYPE_ATTRIBUTE_CACHE = "featureTypeAttributes";
+
+    /** Name of the {@link GridCoverageReader} cache */
+    public static final String COVERAGE_READER_CACHE = "coverageReaders";
+
+    /** Name of the {@link WebMapServer} cache */
+    public static final String WMS_CACHE = "wms";
+
+    /** Name of the {@link WebMapTileServer} cache */
+    public static final String WMTS_CACHE = "wmts";
+
+    /** Name of the {@link StyledLayerDescriptor} cache */
+    public static final String SLD_CACHE = "slds";
+
+    /** Name of the {@link Style} cache */
+    public static final String STYLE_CACHE = "styles";
+
     Catalog catalog;
     Map<String, CoordinateReferenceSystem> crsCache;
     DataStoreCache dataStoreCache;
@@ -167,6 +203,9 @@ public class ResourcePool {
     Map<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderCache;
     Map<StyleInfo, StyledLayerDescriptor> sldCache;
     Map<StyleInfo, Style> styleCache;
+    SingleFlightLoader<String, DataAccess> dataStoreLoader = new SingleFlightLoader<>();
+    SingleFlightLoader<CoverageHintReaderKey, GridCoverageReader> coverageReaderLoader =
+            new SingleFlightLoader<>();
     List<Listener> listeners;
     ThreadPoolExecutor coverageExecutor;
     CatalogRepository repository;
@@ -237,7 +276,7 @@ public class ResourcePool {
     }
 
     protected Map<String, CoordinateReferenceSystem> createCrsCache() {
-        return new HashMap<String, CoordinateReferenceSystem>();
+        return createBoundedCache(CRS_CACHE, null, null);
     }
 
     /**
@@ -273,6 +312,13 @@ public class ResourcePool {
     }
 
     protected Map<String, FeatureType> createFeatureTypeCache(int size) {
+        // an explicit cache specification wins over the configured size
+        if (BoundedResourceCache.lookupSpec(FEATURETYPE_CACHE) != null) {
+            return createBoundedCache(
+                    FEATURETYPE_CACHE,
+                    (key, ft) -> ft.getDescriptors().size() + 1,
+                    this::disposeFeatureType);
+        }
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
         return new FeatureTypeCache(size * 2);
@@ -291,6 +337,11 @@ public class ResourcePool {
     }
 
     protected Map<String, List<AttributeTypeInfo>> createFeatureTypeAttributeCache(int size) {
+        // an explicit cache specification wins over the configured size
+        if (BoundedResourceCache.lookupSpec(FEATURETYPE_ATTRIBUTE_CACHE) != null) {
+            return createBoundedCache(
+                    FEATURETYPE_ATTRIBUTE_CACHE, (key, atts) -> atts.size() + 1, null);
+        }
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
         return new FeatureTypeAttributeCache(size * 2);
@@ -319,7 +370,8 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, StyledLayerDescriptor> createSldCache() {
-        return new HashMap<StyleInfo, StyledLayerDescriptor>();
+        return createBoundedCache(
+                SLD_CACHE, (info, sld) -> sld.getStyledLayers().length + 1, null);
     }
 
     /**
@@ -332,7 +384,59 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
-        return new HashMap<StyleInfo, Style>();
+        return createBoundedCache(
+                STYLE_CACHE, (info, style) -> style.featureTypeStyles().size() + 1, null);
+    }
+
+    /**
+     * Creates a {@link BoundedResourceCache} configured by the {@link
+     * BoundedResourceCache#SPEC_PROPERTY_PREFIX} property matching the cache name. Without a
+     * specification the cache is unbounded.
+     *
+     * @param name The cache name
+     * @param weigher The entry weigher, used when the specification contains a maximum weight
+     * @param disposer Called when an entry is evicted or removed, can be null
+     */
+    protected <K, V> Map<K, V> createBoundedCache(
+            String name, Weigher<? super K, ? super V> weigher, BiConsumer<K, V> disposer) {
+        CacheBuilderSpec spec = BoundedResourceCache.lookupSpec(name);
+        if (spec == null) {
+            spec = CacheBuilderSpec.parse("");
+        }
+        return new BoundedResourceCache<>(name, spec, weigher, disposer);
+    }
+
+    /**
+     * Returns the usage statistics of the caches managed by this pool, keyed by cache name (see
+     * the <code>XXX_CACHE</code> constants). Caches replaced by subclasses with implementations
+     * not implementing {@link MeteredCache} are not reported.
+     */
+    public Map<String, ResourceCacheStatistics> getCacheStatistics() {
+        Map<String, ResourceCacheStatistics> result = new LinkedHashMap<>();
+        addStatistics(result, CRS_CACHE, crsCache);
+        addStatistics(result, DATASTORE_CACHE, dataStoreCache);
+        addStatistics(result, FEATURETYPE_CACHE, featureTypeCache);
+        addStatistics(result, FEATURETYPE_ATTRIBUTE_CACHE, featureTypeAttributeCache);
+        addStatistics(result, COVERAGE_READER_CACHE, hintCoverageReaderCache);
+        addStatistics(result, WMS_CACHE, wmsCache);
+        addStatistics(result, WMTS_CACHE, wmtsCache);
+        addStatistics(result, SLD_CACHE, sldCache);
+        addStatistics(result, STYLE_CACHE, styleCache);
+        return result;
+    }
+
+    private void addStatistics(
+            Map<String, ResourceCacheStatistics> statistics, String name, Map<?, ?> cache) {
+        if (cache instanceof MeteredCache) {
+            statistics.put(name, ((MeteredCache) cache).getStatistics());
+        }
+    }
+
+    /** Records the time spent loading a new value in the given cache, if it's metered */
+    static void recordLoad(Map<?, ?> cache, long start) {
+        if (cache instanceof MeteredCache) {
+            ((MeteredCache) cache).getStatistics().recordLoad(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -443,7 +547,9 @@ public class ResourcePool {
                 crs = crsCache.get(srsName);
                 if (crs == null) {
                     try {
+                        long start = System.nanoTime();
                         crs = CRS.decode(srsName);
+                        recordLoad(crsCache, start);
                         crsCache.put(srsName, crs);
                     } catch (Exception e) {
                         throw (IOException) new IOException().initCause(e);
@@ -500,122 +606,158 @@ public class ResourcePool {
 
         DataStoreInfo expandedStore = clone(info, true);
 
-        DataAccess<? extends FeatureType, ? extends Feature> dataStore = null;
         try {
             String id = info.getId();
-            dataStore = dataStoreCache.get(id);
+            DataAccess<? extends FeatureType, ? extends Feature> dataStore;
+            synchronized (dataStoreCache) {
+                dataStore = dataStoreCache.get(id);
+            }
             if (dataStore == null) {
-                synchronized (dataStoreCache) {
-                    dataStore = dataStoreCache.get(id);
-                    if (dataStore == null) {
-                        // create data store
-                        Map<String, Serializable> connectionParameters =
-                                expandedStore.getConnectionParameters();
-
-                        // call this method to execute the hack which recognizes
-                        // urls which are relative to the data directory
-                        // TODO: find a better way to do this
-                        connectionParameters =
-                                ResourcePool.getParams(
-                                        connectionParameters, catalog.getResourceLoader());
-
-                        // obtain the factory
-                        DataAccessFactory factory = null;
-                        try {
-                            factory = getDataStoreFactory(info);
-                        } catch (IOException e) {
-                            throw new IOException(
-                                    "Failed to find the datastore factory for "
-                                            + info.getName()
-                                            + ", did you forget to install the store extension jar?");
-                        }
-                        if (factory == null) {
-                            throw new IOException(
-                                    "Failed to find the datastore factory for "
-                                            + info.getName()
-                                            + ", did you forget to install the store extension jar?");
-                        }
-                        Param[] params = factory.getParametersInfo();
-
-                        // ensure that the namespace parameter is set for the datastore
-                        if (!connectionParameters.containsKey("namespace") && params != null) {
-                            // if we grabbed the factory, check that the factory actually supports
-                            // a namespace parameter, if we could not get the factory, assume that
-                            // it does
-                            boolean supportsNamespace = true;
-                            supportsNamespace = false;
-
-                            for (Param p : params) {
-                                if ("namespace".equalsIgnoreCase(p.key)) {
-                                    supportsNamespace = true;
-                                    break;
-                                }
-                            }
-
-                            if (supportsNamespace) {
-                                WorkspaceInfo ws = info.getWorkspace();
-                                NamespaceInfo ns =
-                                        info.getCatalog().getNamespaceByPrefix(ws.getName());
-                                if (ns == null) {
-                                    ns = info.getCatalog().getDefaultNamespace();
-                                }
-                                if (ns != null) {
-                                    connectionParameters.put("namespace", ns.getURI());
-                                }
-                            }
-                        }
+                // only one thread at a time builds a given store, others wait for it to be ready,
+                // stores with a different id are not blocked
+                dataStore =
+                        dataStoreLoader.load(
+                                id,
+                                () -> {
+                                    if (id != null) {
+                                        synchronized (dataStoreCache) {
+                                            DataAccess cached = dataStoreCache.get(id);
+                                            if (cached != null) {
+                                                return cached;
+                                            }
+                                        }
+                                    }
+                                    long start = System.nanoTime();
+                                    DataAccess created = createDataStore(info, expandedStore);
+                                    // cache only if the id is not null, no need to cache the
+                                    // stores returned from un-saved DataStoreInfo objects (it
+                                    // would be actually harmful, NPE when trying to dispose of
+                                    // them)
+                                    if (id != null) {
+                                        recordLoad(dataStoreCache, start);
+                                        synchronized (dataStoreCache) {
+                                            dataStoreCache.put(id, created);
+                                        }
+                                    }
+                                    return created;
+                                });
+            }
 
-                        // see if the store has a repository param, if so, pass the one wrapping
-                        // the store
-                        if (params != null) {
-                            for (Param p : params) {
-                                if (Repository.class.equals(p.getType())) {
-                                    connectionParameters.put(p.getName(), repository);
-                                }
-                            }
-                        }
+            return dataStore;
+        } catch (Exception e) {
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            } else {
+                throw (IOException) new IOException().initCause(e);
+            }
+        }
+    }
 
-                        // see if the store has a entity resolver param, if so, pass it down
-                        EntityResolver resolver = getEntityResolver();
-                        if (resolver != null && params != null) {
-                            for (Param p : params) {
-                                if (EntityResolver.class.equals(p.getType())) {
-                                    if (!(resolver instanceof Serializable)) {
-                                        resolver = new SerializableEntityResolver(resolver);
-                                    }
-                                    connectionParameters.put(p.getName(), (Serializable) resolver);
-                                }
-                            }
-                        }
+    /**
+     * Creates a new {@link DataAccess} for the given store, disposing it if anything goes wrong
+     * while setting it up
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private DataAccess<? extends FeatureType, ? extends Feature> createDataStore(
+            DataStoreInfo info, DataStoreInfo expandedStore) throws IOException {
+        DataAccess<? extends FeatureType, ? extends Feature> dataStore = null;
+        try {
+            // create data store
+            Map<String, Serializable> connectionParameters =
+                    expandedStore.getConnectionParameters();
+
+            // call this method to execute the hack which recognizes
+            // urls which are relative to the data directory
+            // TODO: find a better way to do this
+            connectionParameters =
+                    ResourcePool.getParams(connectionParameters, catalog.getResourceLoader());
+
+            // obtain the factory
+            DataAccessFactory factory = null;
+            try {
+                factory = getDataStoreFactory(info);
+            } catch (IOException e) {
+                throw new IOException(
+                        "Failed to find the datastore factory for "
+                                + info.getName()
+                                + ", did you forget to install the store extension jar?");
+            }
+            if (factory == null) {
+                throw new IOException(
+                        "Failed to find the datastore factory for "
+                                + info.getName()
+                                + ", did you forget to install the store extension jar?");
+            }
+            Param[] params = factory.getParametersInfo();
+
+            // ensure that the namespace parameter is set for the datastore
+            if (!connectionParameters.containsKey("namespace") && params != null) {
+                // if we grabbed the factory, check that the factory actually supports
+                // a namespace parameter, if we could not get the factory, assume that
+                // it does
+                boolean supportsNamespace = true;
+                supportsNamespace = false;
+
+                for (Param p : params) {
+                    if ("namespace".equalsIgnoreCase(p.key)) {
+                        supportsNamespace = true;
+                        break;
+                    }
+                }
 
-                        dataStore = DataStoreUtils.getDataAccess(connectionParameters);
-                        if (dataStore == null) {
-                            /*
-                             * Preserve DataStore retyping behaviour by calling
-                             * DataAccessFinder.getDataStore after the call to
-                             * DataStoreUtils.getDataStore above.
-                             *
-                             * TODO: DataAccessFinder can also find DataStores, and when retyping is
-                             * supported for DataAccess, we can use a single mechanism.
-                             */
-                            dataStore = DataAccessFinder.getDataStore(connectionParameters);
-                        }
+                if (supportsNamespace) {
+                    WorkspaceInfo ws = info.getWorkspace();
+                    NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix(ws.getName());
+                    if (ns == null) {
+                        ns = info.getCatalog().getDefaultNamespace();
+                    }
+                    if (ns != null) {
+                        connectionParameters.put("namespace", ns.getURI());
+                    }
+                }
+            }
 
-                        if (dataStore == null) {
-                            throw new NullPointerException(
-                                    "Could not acquire data access '" + info.getName() + "'");
-                        }
+            // see if the store has a repository param, if so, pass the one wrapping
+            // the store
+            if (params != null) {
+                for (Param p : params) {
+                    if (Repository.class.equals(p.getType())) {
+                        connectionParameters.put(p.getName(), repository);
+                    }
+                }
+            }
 
-                        // cache only if the id is not null, no need to cache the stores
-                        // returned from un-saved DataStoreInfo objects (it would be actually
-                        // harmful, NPE when trying to dispose of them)
-                        if (id != null) {
-                            dataStoreCache.put(id, dataStore);
+            // see if the store has a entity resolver param, if so, pass it down
+            EntityResolver resolver = getEntityResolver();
+            if (resolver != null && params != null) {
+                for (Param p : params) {
+                    if (EntityResolver.class.equals(p.getType())) {
+                        if (!(resolver instanceof Serializable)) {
+                            resolver = new SerializableEntityResolver(resolver);
                         }
+                        connectionParameters.put(p.getName(), (Serializable) resolver);
                     }
                 }
             }
 
+            dataStore = DataStoreUtils.getDataAccess(connectionParameters);
+            if (dataStore == null) {
+                /*
+                 * Preserve DataStore retyping behaviour by calling
+                 * DataAccessFinder.getDataStore after the call to
+                 * DataStoreUtils.getDataStore above.
+                 *
+                 * TODO: DataAccessFinder can also find DataStores, and when retyping is
+                 * supported for DataAccess, we can use a single mechanism.
+                 */
+                dataStore = DataAccessFinder.getDataStore(connectionParameters);
+            }
+
+            if (dataStore == null) {
+                throw new NullPointerException(
+                        "Could not acquire data access '" + info.getName() + "'");
+            }
+
             return dataStore;
         } catch (Exception e) {
             // if anything goes wrong we have to clean up the store anyways
@@ -725,6 +867,7 @@ public class ResourcePool {
             synchronized (featureTypeAttributeCache) {
                 atts = featureTypeAttributeCache.get(info.getId());
                 if (atts == null) {
+                    long start = System.nanoTime();
                     // load from feature type
                     atts = loadAttributes(info);
 
@@ -740,6 +883,7 @@ public class ResourcePool {
 
                     // cache attributes only if the id is not null -> the feature type is not new
                     if (info.getId() != null) {
+                        recordLoad(featureTypeAttributeCache, start);
                         featureTypeAttributeCache.put(info.getId(), atts);
                     }
                 }
@@ -910,6 +1054,7 @@ public class ResourcePool {
             synchronized (featureTypeCache) {
                 ft = featureTypeCache.get(key);
                 if (ft == null) {
+                    long start = System.nanoTime();
 
                     // grab the underlying feature type
                     DataAccess<? extends FeatureType, ? extends Feature> dataAccess =
@@ -922,6 +1067,7 @@ public class ResourcePool {
                     ft = dataAccess.getSchema(info.getQualifiedNativeName());
                     ft = buildFeatureType(info, handleProjectionPolicy, ft);
 
+                    recordLoad(featureTypeCache, start);
                     featureTypeCache.put(key, ft);
                 }
             }
@@ -1468,38 +1614,52 @@ public class ResourcePool {
             hints.add(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
         }
         // look into the cache
-        Object key = new CoverageHintReaderKey(info.getId(), hints);
-        GridCoverageReader reader = hintCoverageReaderCache.get(key);
+        final CoverageHintReaderKey key = new CoverageHintReaderKey(info.getId(), hints);
+        GridCoverageReader reader;
+        synchronized (hintCoverageReaderCache) {
+            reader = hintCoverageReaderCache.get(key);
+        }
 
-        // if not found in cache, create it
+        // if not found in cache, create it, making sure only one thread at a time builds
+        // the reader for a given key
         if (reader == null) {
-            synchronized (hintCoverageReaderCache) {
-                if (key != null) {
-                    reader = hintCoverageReaderCache.get(key);
-                }
-                if (reader == null) {
-                    /////////////////////////////////////////////////////////
-                    //
-                    // Getting coverage reader using the format and the real path.
-                    //
-                    // /////////////////////////////////////////////////////////
-                    final String urlString = expandedStore.getURL();
-                    Object readObject = getObjectToRead(urlString);
-
-                    // readers might change the provided hints, pass down a defensive copy
-                    reader = gridFormat.getReader(readObject, hints);
-                    if (reader == null) {
-                        throw new IOException(
-                                "Failed to create reader from "
-                                        + urlString
-                                        + " and hints "
-                                        + hints);
-                    }
-                    if (key != null) {
-                        hintCoverageReaderCache.put((CoverageHintReaderKey) key, reader);
-                    }
-                }
-            }
+            final Hints readerHints = hints;
+            reader =
+                    coverageReaderLoader.load(
+                            key,
+                            () -> {
+                                synchronized (hintCoverageReaderCache) {
+                                    GridCoverageReader cached = hintCoverageReaderCache.get(key);
+                                    if (cached != null) {
+                                        return cached;
+                                    }
+                                }
+                                long start = System.nanoTime();
+                                /////////////////////////////////////////////////////////
+                                //
+                                // Getting coverage reader using the format and the real path.
+                                //
+                                // /////////////////////////////////////////////////////////
+                                final String urlString = expandedStore.getURL();
+                                Object readObject = getObjectToRead(urlString);
+
+                                // readers might change the provided hints, pass down a
+                                // defensive copy
+                                GridCoverageReader created =
+                                        gridFormat.getReader(readObject, readerHints);
+                                if (created == null) {
+                                    throw new IOException(
+                                            "Failed to create reader from "
+                                                    + urlString
+                                                    + " and hints "
+                                                    + readerHints);
+                                }
+                                recordLoad(hintCoverageReaderCache, start);
+                                synchronized (hintCoverageReaderCache) {
+                                    hintCoverageReaderCache.put(key, created);
+                                }
+                                return created;
+                            });
         }
 
         if (coverageInfo == null && coverageName != null) {
@@ -1954,8 +2114,10 @@ public class ResourcePool {
             synchronized (sldCache) {
                 sld = sldCache.get(info);
                 if (sld == null) {
+                    long start = System.nanoTime();
                     sld = dataDir().parsedSld(info);
 
+                    recordLoad(sldCache, start);
                     sldCache.put(info, sld);
 
                     final Resource styleResource = dataDir().style(info);
@@ -1990,6 +2152,7 @@ public class ResourcePool {
             synchronized (styleCache) {
                 style = styleCache.get(info);
                 if (style == null) {
+                    long start = System.nanoTime();
                     style = dataDir().parsedStyle(info);
 
                     if (style == null) {
@@ -2002,6 +2165,7 @@ public class ResourcePool {
                     }
                     // remove this when wms works off style info
                     style.setName(info.getName());
+                    recordLoad(styleCache, start);
                     styleCache.put(info, style);
 
                     final Resource styleResource = dataDir().style(info);
@@ -2179,7 +2343,10 @@ public class ResourcePool {
      * @param <K>
      * @param <V>
      */
-    abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
+    abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V>
+            implements MeteredCache {
+
+        final ResourceCacheStatistics statistics = new ResourceCacheStatistics();
 
         public CatalogResourceCache() {
             this(100);
@@ -2192,11 +2359,28 @@ public class ResourcePool {
 
                         @Override
                         public void clean(Object key, Object object) {
+                            statistics.recordEviction();
                             dispose((K) key, (V) object);
                         }
                     };
         }
 
+        @Override
+        public V get(Object key) {
+            V value = super.get(key);
+            if (value == null) {
+                statistics.recordMiss();
+            } else {
+                statistics.recordHit();
+            }
+            return value;
+        }
+
+        @Override
+        public ResourceCacheStatistics getStatistics() {
+            return statistics;
+        }
+
         @Override
         public V remove(Object key) {
             V object = super.remove(key);
@@ -2228,19 +2412,24 @@ public class ResourcePool {
         }
 
         protected void dispose(String key, FeatureType featureType) {
-            String id = key.substring(0, key.indexOf(PROJECTION_POLICY_SEPARATOR));
-            FeatureTypeInfo info = catalog.getFeatureType(id);
-            if (info != null) {
-                LOGGER.fine("Disposing feature type '" + info.getName() + "'/" + id);
-                fireDisposed(info, featureType);
-                if (null != featureTypeAttributeCache.remove(id)) {
-                    LOGGER.fine(
-                            "AttributeType cache cleared for feature type '"
-                                    + info.getName()
-                                    + "'/"
-                                    + id
-                                    + " as a side effect of its cache disposal");
-                }
+            disposeFeatureType(key, featureType);
+        }
+    }
+
+    /** Disposes a feature type removed from the {@link #featureTypeCache} */
+    void disposeFeatureType(String key, FeatureType featureType) {
+        String id = key.substring(0, key.indexOf(PROJECTION_POLICY_SEPARATOR));
+        FeatureTypeInfo info = catalog.getFeatureType(id);
+        if (info != null) {
+            LOGGER.fine("Disposing feature type '" + info.getName() + "'/" + id);
+            fireDisposed(info, featureType);
+            if (null != featureTypeAttributeCache.remove(id)) {
+                LOGGER.fine(
+                        "AttributeType cache cleared for feature type '"
+                                + info.getName()
+                                + "'/"
+                                + id
+                                + " as a side effect of its cache disposal");
             }
         }
     }
@@ -0,0 +1,68 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.Map;
+import java.util.Optional;
+import org.geoserver.platform.ModuleStatus;
+
+/**
+ * Reports the {@link ResourcePool} cache statistics, making them available in the status page and
+ * in the REST API
+ */
+public class ResourcePoolStatus implements ModuleStatus {
+
+    Catalog catalog;
+
+    public ResourcePoolStatus(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public String getModule() {
+        return "gs-main";
+    }
+
+    @Override
+    public Optional<String> getComponent() {
+        return Optional.of("resource-pool");
+    }
+
+    @Override
+    public String getName() {
+        return "Resource Pool Caches";
+    }
+
+    @Override
+    public Optional<String> getVersion() {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Optional<String> getMessage() {
+        StringBuilder msg = new StringBuilder();
+        ResourcePool pool = catalog.getResourcePool();
+        for (Map.Entry<String, ResourceCacheStatistics> entry :
+                pool.getCacheStatistics().entrySet()) {
+            msg.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return Optional.of(msg.toString());
+    }
+
+    @Override
+    public Optional<String> getDocumentation() {
+        return Optional.empty();
+    }
+}
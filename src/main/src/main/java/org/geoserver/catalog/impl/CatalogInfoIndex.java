@@ -0,0 +1,249 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import org.geoserver.catalog.CatalogInfo;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.MultiValuedFilter.MatchAction;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * A secondary index for {@link CatalogInfoLookup}, grouping the catalog objects by the id of the
+ * other catalog objects they reference (e.g., stores by workspace, layers by style).
+ *
+ * <p>The index can recognize the filters it can answer, that is, equality comparisons against the
+ * id of the referenced objects (e.g. {@code workspace.id = 'ws123'}), as well as {@link And} and
+ * {@link Or} combinations of them. The index lookup returns a superset of the objects matching the
+ * filter, the filter is still supposed to be evaluated against the returned candidates.
+ *
+ * <p>The index is keyed by id only, so that it does not need to be updated when the referenced
+ * objects are modified, but only when the indexed objects are.
+ *
+ * @param <T>
+ */
+class CatalogInfoIndex<T extends CatalogInfo> {
+
+    /** Key used for objects not referencing anything */
+    static final String NULL_KEY = "";
+
+    final String name;
+
+    final Set<String> properties;
+
+    final boolean multiValued;
+
+    final Function<T, Collection<? extends CatalogInfo>> mapper;
+
+    final ConcurrentHashMap<String, Map<String, T>> buckets = new ConcurrentHashMap<>();
+
+    CatalogInfoIndex(
+            String name,
+            Function<T, Collection<? extends CatalogInfo>> mapper,
+            boolean multiValued,
+            String... properties) {
+        this.name = name;
+        this.mapper = mapper;
+        this.multiValued = multiValued;
+        this.properties = new HashSet<>(Arrays.asList(properties));
+    }
+
+    /**
+     * Indexes objects by the id of a single referenced object, answering filters on {@code
+     * property.id}
+     *
+     * @param property The name of the reference property, e.g., "workspace"
+     * @param mapper Extracts the referenced object
+     */
+    static <T extends CatalogInfo> CatalogInfoIndex<T> byReference(
+            String property, Function<T, ? extends CatalogInfo> mapper) {
+        return new CatalogInfoIndex<>(
+                property,
+                v -> Collections.singletonList(mapper.apply(v)),
+                false,
+                property + ".id");
+    }
+
+    /**
+     * Indexes objects by the ids of a set of referenced objects, answering filters on any of the
+     * given properties
+     *
+     * @param name The index name
+     * @param mapper Extracts the referenced objects
+     * @param properties The id properties the index can answer, e.g., "styles.id"
+     */
+    static <T extends CatalogInfo> CatalogInfoIndex<T> byReferences(
+            String name,
+            Function<T, Collection<? extends CatalogInfo>> mapper,
+            String... properties) {
+        return new CatalogInfoIndex<>(name, mapper, true, properties);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    Set<String> keys(T value) {
+        Collection<? extends CatalogInfo> references = mapper.apply(value);
+        if (references == null || references.isEmpty()) {
+            return multiValued ? Collections.emptySet() : Collections.singleton(NULL_KEY);
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        for (CatalogInfo reference : references) {
+            if (reference == null || reference.getId() == null) {
+                if (!multiValued) {
+                    keys.add(NULL_KEY);
+                }
+            } else {
+                keys.add(reference.getId());
+            }
+        }
+        return keys;
+    }
+
+    void add(T value) {
+        for (String key : keys(value)) {
+            Map<String, T> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>());
+            }
+            bucket.put(value.getId(), value);
+        }
+    }
+
+    void remove(T value) {
+        for (String key : keys(value)) {
+            Map<String, T> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(value.getId());
+            }
+        }
+    }
+
+    /**
+     * Moves the value among buckets if the references changed
+     *
+     * @param actualValue The stored object, still in its original state
+     * @param newState A proxy showing the modified state of the object
+     */
+    void update(T actualValue, T newState) {
+        Set<String> oldKeys = keys(actualValue);
+        Set<String> newKeys = keys(newState);
+        if (oldKeys.equals(newKeys)) {
+            return;
+        }
+        for (String key : oldKeys) {
+            if (!newKeys.contains(key)) {
+                Map<String, T> bucket = buckets.get(key);
+                if (bucket != null) {
+                    bucket.remove(actualValue.getId());
+                }
+            }
+        }
+        for (String key : newKeys) {
+            if (!oldKeys.contains(key)) {
+                buckets.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>())
+                        .put(actualValue.getId(), actualValue);
+            }
+        }
+    }
+
+    void clear() {
+        buckets.clear();
+    }
+
+    /** Returns the objects indexed under the given key */
+    Collection<T> get(String key) {
+        Map<String, T> bucket = buckets.get(key);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        return bucket.values();
+    }
+
+    /**
+     * Returns the index key that can be used to answer the filter, or null if the filter cannot be
+     * answered by this index
+     */
+    String getKey(Filter filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            return getKey((PropertyIsEqualTo) filter);
+        } else if (filter instanceof PropertyIsNull && !multiValued) {
+            Expression expression = ((PropertyIsNull) filter).getExpression();
+            if (isIndexed(expression)) {
+                return NULL_KEY;
+            }
+        } else if (filter instanceof And) {
+            // any of the children will do, the others will be evaluated as a predicate
+            for (Filter child : ((And) filter).getChildren()) {
+                String key = getKey(child);
+                if (key != null) {
+                    return key;
+                }
+            }
+        } else if (filter instanceof Or) {
+            // usable only if all children can be answered by the same bucket
+            List<Filter> children = ((Or) filter).getChildren();
+            String result = null;
+            for (Filter child : children) {
+                String key = getKey(child);
+                if (key == null || (result != null && !result.equals(key))) {
+                    return null;
+                }
+                result = key;
+            }
+            return result;
+        }
+
+        return null;
+    }
+
+    private String getKey(PropertyIsEqualTo equal) {
+        if (equal.getMatchAction() != MatchAction.ANY || !equal.isMatchingCase()) {
+            return null;
+        }
+        Expression ex1 = equal.getExpression1();
+        Expression ex2 = equal.getExpression2();
+        Literal literal;
+        if (isIndexed(ex1) && ex2 instanceof Literal) {
+            literal = (Literal) ex2;
+        } else if (isIndexed(ex2) && ex1 instanceof Literal) {
+            literal = (Literal) ex1;
+        } else {
+            return null;
+        }
+        Object value = literal.getValue();
+        if (value instanceof String && !NULL_KEY.equals(value)) {
+            return (String) value;
+        }
+        return null;
+    }
+
+    private boolean isIndexed(Expression expression) {
+        return expression instanceof PropertyName
+                && properties.contains(((PropertyName) expression).getPropertyName());
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogInfoIndex[" + name + "]";
+    }
+}
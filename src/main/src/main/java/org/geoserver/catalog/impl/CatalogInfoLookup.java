@@ -8,10 +8,13 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -19,8 +22,10 @@ import java.util.logging.Logger;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.ows.util.OwsUtils;
+import org.geotools.feature.NameImpl;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
 
 /**
  * A support index for {@link DefaultCatalogFacade}, can perform fast lookups of {@link CatalogInfo}
@@ -29,6 +34,9 @@ import org.opengis.feature.type.Name;
  * <p>The lookups by predicate have been tested and optimized for performance, in particular the
  * current for loops turned out to be significantly faster than building and returning streams
  *
+ * <p>Secondary {@link CatalogInfoIndex indexes} can be registered to speed up the lookups by
+ * filter, {@link #list(Class, Filter)} will use them automatically when the filter allows it.
+ *
  * @param <T>
  */
 class CatalogInfoLookup<T extends CatalogInfo> {
@@ -37,6 +45,7 @@ class CatalogInfoLookup<T extends CatalogInfo> {
     ConcurrentHashMap<Class<T>, Map<String, T>> idMultiMap = new ConcurrentHashMap<>();
     ConcurrentHashMap<Class<T>, Map<Name, T>> nameMultiMap = new ConcurrentHashMap<>();
     Function<T, Name> nameMapper;
+    List<CatalogInfoIndex<T>> indexes = new CopyOnWriteArrayList<>();
     static final Predicate TRUE = x -> true;
 
     public CatalogInfoLookup(Function<T, Name> nameMapper) {
@@ -44,6 +53,30 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         this.nameMapper = nameMapper;
     }
 
+    /**
+     * Registers a secondary index, and populates it with the current contents of the lookup
+     *
+     * @param index
+     * @return this lookup, to allow chaining calls
+     */
+    public CatalogInfoLookup<T> addIndex(CatalogInfoIndex<T> index) {
+        for (T value : values()) {
+            index.add(value);
+        }
+        indexes.add(index);
+        return this;
+    }
+
+    /** Returns the secondary index with the given name, or null if not found */
+    CatalogInfoIndex<T> getIndex(String name) {
+        for (CatalogInfoIndex<T> index : indexes) {
+            if (index.getName().equals(name)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
     <K> Map<K, T> getMapForValue(ConcurrentHashMap<Class<T>, Map<K, T>> maps, T value) {
         Class<T> vc;
         if (Proxy.isProxyClass(value.getClass())) {
@@ -74,7 +107,14 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Name name = nameMapper.apply(value);
         nameMap.put(name, value);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.put(value.getId(), value);
+        T previous = idMap.put(value.getId(), value);
+        for (CatalogInfoIndex<T> index : indexes) {
+            if (previous != null) {
+                index.remove(previous);
+            }
+            index.add(value);
+        }
+        return previous;
     }
 
     public Collection<T> values() {
@@ -91,7 +131,13 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         nameMap.remove(name);
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
-        return idMap.remove(value.getId());
+        T removed = idMap.remove(value.getId());
+        if (removed != null) {
+            for (CatalogInfoIndex<T> index : indexes) {
+                index.remove(removed);
+            }
+        }
+        return removed;
     }
 
     /** Updates the value in the name map. The new value must be a ModificationProxy */
@@ -106,11 +152,17 @@ class CatalogInfoLookup<T extends CatalogInfo> {
             nameMap.remove(oldName);
             nameMap.put(newName, actualValue);
         }
+        for (CatalogInfoIndex<T> index : indexes) {
+            index.update(actualValue, proxiedValue);
+        }
     }
 
     public void clear() {
         idMultiMap.clear();
         nameMultiMap.clear();
+        for (CatalogInfoIndex<T> index : indexes) {
+            index.clear();
+        }
     }
 
     /**
@@ -144,6 +196,57 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         return result;
     }
 
+    /**
+     * Looks up objects by class and filter, using a secondary index to locate the candidates if
+     * one can answer the filter, or scanning all the objects of the given class otherwise
+     *
+     * @param clazz
+     * @param filter
+     * @return
+     */
+    <U extends CatalogInfo> List<U> list(Class<U> clazz, Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return list(clazz, TRUE);
+        }
+        Predicate<U> predicate = o -> filter.evaluate(o);
+        for (CatalogInfoIndex<T> index : indexes) {
+            String key = index.getKey(filter);
+            if (key != null) {
+                return list(clazz, index, key, predicate);
+            }
+        }
+        return list(clazz, predicate);
+    }
+
+    /**
+     * Looks up objects by class and matching predicate among the ones found under the given key
+     * of a secondary index. The results are sorted by name, as the full scan would do.
+     *
+     * @param clazz
+     * @param index
+     * @param key
+     * @param predicate
+     * @return
+     */
+    <U extends CatalogInfo> List<U> list(
+            Class<U> clazz, CatalogInfoIndex<T> index, String key, Predicate<U> predicate) {
+        ArrayList<U> result = new ArrayList<U>();
+        for (T v : index.get(key)) {
+            if (clazz.isInstance(v)) {
+                final U u = (U) v;
+                if (predicate == TRUE || predicate.test(u)) {
+                    result.add(u);
+                }
+            }
+        }
+        if (result.size() > 1) {
+            Comparator<U> byName = Comparator.comparing(u -> (NameImpl) nameMapper.apply((T) u));
+            Collections.sort(result, byName);
+        }
+
+        return result;
+    }
+
     /**
      * Looks up a CatalogInfo by class and identifier
      *
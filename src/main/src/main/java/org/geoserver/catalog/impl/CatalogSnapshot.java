@@ -0,0 +1,43 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Immutable listings of the catalog contents at a given version, shared among all the threads
+ * accessing the catalog in {@link ReadOnlyCatalogMode}.
+ *
+ * <p>Listings are computed lazily, on first access, and never change afterwards. Every
+ * modification of the catalog increases its version, making the {@link DefaultCatalogFacade}
+ * publish a new, empty snapshot for the following reads.
+ */
+class CatalogSnapshot {
+
+    final long version;
+
+    final ConcurrentHashMap<Object, List<?>> lists = new ConcurrentHashMap<>();
+
+    CatalogSnapshot(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns the listing associated to the given key, computing it if missing
+     *
+     * @param key The listing key
+     * @param loader Builds the listing, the result must be unmodifiable
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> list(Object key, Supplier<List<T>> loader) {
+        List<?> result = lists.get(key);
+        if (result == null) {
+            result = lists.computeIfAbsent(key, k -> loader.get());
+        }
+        return (List<T>) result;
+    }
+}
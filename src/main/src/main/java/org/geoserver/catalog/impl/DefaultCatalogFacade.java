@@ -18,8 +18,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogFacade;
@@ -91,10 +94,39 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                             s.getWorkspace() != null ? s.getWorkspace().getId() : null,
                             s.getName());
 
+    /** Secondary index on the workspace of stores, layer groups and styles */
+    static final String WORKSPACE_INDEX = "workspace";
+
+    /** Secondary index on the store of resources */
+    static final String STORE_INDEX = "store";
+
+    /** Secondary index on the namespace of resources */
+    static final String NAMESPACE_INDEX = "namespace";
+
+    /** Secondary index on the resource of layers */
+    static final String RESOURCE_INDEX = "resource";
+
+    /** Secondary index on the styles used by layers, both default and alternate ones */
+    static final String STYLE_INDEX = "style";
+
     static final class LayerInfoLookup extends CatalogInfoLookup<LayerInfo> {
 
         public LayerInfoLookup() {
             super(LAYER_NAME_MAPPER);
+            addIndex(CatalogInfoIndex.byReference(RESOURCE_INDEX, LayerInfo::getResource));
+            addIndex(
+                    CatalogInfoIndex.byReferences(
+                            STYLE_INDEX,
+                            l -> {
+                                List<StyleInfo> styles = new ArrayList<>();
+                                styles.add(l.getDefaultStyle());
+                                if (l.getStyles() != null) {
+                                    styles.addAll(l.getStyles());
+                                }
+                                return styles;
+                            },
+                            "defaultStyle.id",
+                            "styles.id"));
         }
 
         public void update(ResourceInfo proxiedValue) {
@@ -120,16 +152,44 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         }
     }
 
+    static CatalogInfoLookup<StoreInfo> createStoreLookup() {
+        return new CatalogInfoLookup<>(STORE_NAME_MAPPER)
+                .addIndex(CatalogInfoIndex.byReference(WORKSPACE_INDEX, StoreInfo::getWorkspace));
+    }
+
+    static CatalogInfoLookup<ResourceInfo> createResourceLookup() {
+        return new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER)
+                .addIndex(CatalogInfoIndex.byReference(STORE_INDEX, ResourceInfo::getStore))
+                .addIndex(
+                        CatalogInfoIndex.byReference(NAMESPACE_INDEX, ResourceInfo::getNamespace));
+    }
+
+    static CatalogInfoLookup<LayerGroupInfo> createLayerGroupLookup() {
+        return new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER)
+                .addIndex(
+                        CatalogInfoIndex.byReference(
+                                WORKSPACE_INDEX, LayerGroupInfo::getWorkspace));
+    }
+
+    static CatalogInfoLookup<StyleInfo> createStyleLookup() {
+        return new CatalogInfoLookup<>(STYLE_NAME_MAPPER)
+                .addIndex(CatalogInfoIndex.byReference(WORKSPACE_INDEX, StyleInfo::getWorkspace));
+    }
+
+    /** Returns the key of the given object in the secondary indexes */
+    static String indexKey(CatalogInfo info) {
+        return info == null || info.getId() == null ? CatalogInfoIndex.NULL_KEY : info.getId();
+    }
+
     /** Contains the stores keyed by implementation class */
-    protected CatalogInfoLookup<StoreInfo> stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+    protected CatalogInfoLookup<StoreInfo> stores = createStoreLookup();
 
     /** The default store keyed by workspace id */
     protected Map<String, DataStoreInfo> defaultStores =
             new ConcurrentHashMap<String, DataStoreInfo>();
 
     /** resources */
-    protected CatalogInfoLookup<ResourceInfo> resources =
-            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+    protected CatalogInfoLookup<ResourceInfo> resources = createResourceLookup();
 
     /** The default namespace */
     protected volatile NamespaceInfo defaultNamespace;
@@ -152,15 +212,21 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     protected List<MapInfo> maps = new CopyOnWriteArrayList<MapInfo>();
 
     /** layer groups */
-    protected CatalogInfoLookup<LayerGroupInfo> layerGroups =
-            new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+    protected CatalogInfoLookup<LayerGroupInfo> layerGroups = createLayerGroupLookup();
 
     /** styles */
-    protected CatalogInfoLookup<StyleInfo> styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+    protected CatalogInfoLookup<StyleInfo> styles = createStyleLookup();
 
     /** the catalog */
     private CatalogImpl catalog;
 
+    /** Catalog version, incremented on every modification */
+    protected final AtomicLong version = new AtomicLong();
+
+    /** Listings shared by the threads working in {@link ReadOnlyCatalogMode} */
+    private final AtomicReference<CatalogSnapshot> snapshot =
+            new AtomicReference<>(new CatalogSnapshot(0));
+
     public DefaultCatalogFacade(Catalog catalog) {
         setCatalog(catalog);
     }
@@ -173,12 +239,38 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         return catalog;
     }
 
+    /**
+     * Returns the current catalog version, which is incremented every time an object is added,
+     * removed or saved
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /** Marks the catalog as modified, to be called after the change is complete */
+    protected void modified() {
+        version.incrementAndGet();
+    }
+
+    /** Returns the snapshot matching the current catalog version, publishing a new one if needed */
+    CatalogSnapshot snapshot() {
+        long current = version.get();
+        CatalogSnapshot result = snapshot.get();
+        while (result.version < current) {
+            // publish a new, lazily populated snapshot, unless another thread already did
+            snapshot.compareAndSet(result, new CatalogSnapshot(current));
+            result = snapshot.get();
+        }
+        return result;
+    }
+
     //
     // Stores
     //
     public StoreInfo add(StoreInfo store) {
         resolve(store);
         stores.add(store);
+        modified();
         return ModificationProxy.create(store, StoreInfo.class);
     }
 
@@ -188,6 +280,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (stores) {
             stores.remove(store);
         }
+        modified();
     }
 
     public void save(StoreInfo store) {
@@ -201,6 +294,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(store, propertyNames, oldValues, newValues);
         stores.update(store);
         commitProxy(store);
+        modified();
         afterSaved(store, propertyNames, oldValues, newValues);
     }
 
@@ -237,18 +331,26 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             ws = workspace;
         }
 
-        List<T> matches = stores.list(clazz, s -> ws.equals(s.getWorkspace()));
-        return ModificationProxy.createList(matches, clazz);
+        List<T> matches =
+                stores.list(
+                        clazz,
+                        stores.getIndex(WORKSPACE_INDEX),
+                        indexKey(ws),
+                        s -> ws.equals(s.getWorkspace()));
+        return wrapList(matches, clazz);
     }
 
     public <T extends StoreInfo> List<T> getStores(Class<T> clazz) {
-        return ModificationProxy.createList(stores.list(clazz, CatalogInfoLookup.TRUE), clazz);
+        return wrapListing(
+                Arrays.asList(StoreInfo.class, clazz),
+                clazz,
+                () -> stores.list(clazz, CatalogInfoLookup.TRUE));
     }
 
     public DataStoreInfo getDefaultDataStore(WorkspaceInfo workspace) {
         if (defaultStores.containsKey(workspace.getId())) {
             DataStoreInfo defaultStore = defaultStores.get(workspace.getId());
-            return ModificationProxy.create(defaultStore, DataStoreInfo.class);
+            return wrapInModificationProxy(defaultStore, DataStoreInfo.class);
         } else {
             return null;
         }
@@ -278,6 +380,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 Arrays.asList("defaultDataStore"),
                 Arrays.asList(old),
                 Arrays.asList(store));
+        modified();
     }
 
     //
@@ -288,6 +391,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (resources) {
             resources.add(resource);
         }
+        modified();
         return ModificationProxy.create(resource, ResourceInfo.class);
     }
 
@@ -296,6 +400,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (resources) {
             resources.remove(resource);
         }
+        modified();
     }
 
     public void save(ResourceInfo resource) {
@@ -310,6 +415,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         resources.update(resource);
         layers.update(resource);
         commitProxy(resource);
+        modified();
         afterSaved(resource, propertyNames, oldValues, newValues);
     }
 
@@ -336,7 +442,10 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public <T extends ResourceInfo> List<T> getResources(Class<T> clazz) {
-        return ModificationProxy.createList(resources.list(clazz, CatalogInfoLookup.TRUE), clazz);
+        return wrapListing(
+                Arrays.asList(ResourceInfo.class, clazz),
+                clazz,
+                () -> resources.list(clazz, CatalogInfoLookup.TRUE));
     }
 
     public <T extends ResourceInfo> List<T> getResourcesByNamespace(
@@ -349,8 +458,13 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             ns = namespace;
         }
 
-        List<T> matches = resources.list(clazz, r -> ns.equals(r.getNamespace()));
-        return ModificationProxy.createList(matches, clazz);
+        List<T> matches =
+                resources.list(
+                        clazz,
+                        resources.getIndex(NAMESPACE_INDEX),
+                        indexKey(ns),
+                        r -> ns.equals(r.getNamespace()));
+        return wrapList(matches, clazz);
     }
 
     public <T extends ResourceInfo> T getResourceByStore(
@@ -376,16 +490,43 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     private <T extends CatalogInfo> T wrapInModificationProxy(T ci, Class<T> clazz) {
-        if (ci != null) {
+        if (ci == null) {
+            return null;
+        } else if (ReadOnlyCatalogMode.isEnabled()) {
+            return ReadOnlyProxy.create(ci, clazz);
+        } else {
             return ModificationProxy.create(ci, clazz);
+        }
+    }
+
+    private <T> List<T> wrapList(List<T> list, Class<T> clazz) {
+        if (ReadOnlyCatalogMode.isEnabled()) {
+            return ReadOnlyProxy.createList(list, clazz);
         } else {
-            return null;
+            return ModificationProxy.createList(list, clazz);
+        }
+    }
+
+    /**
+     * Returns a full listing of the objects of a given type. In read only mode the listing is
+     * shared among all threads until the catalog is modified.
+     */
+    private <T> List<T> wrapListing(Object key, Class<T> clazz, Supplier<List<T>> listing) {
+        if (ReadOnlyCatalogMode.isEnabled()) {
+            return snapshot().list(key, () -> ReadOnlyProxy.createList(listing.get(), clazz));
+        } else {
+            return ModificationProxy.createList(listing.get(), clazz);
         }
     }
 
     public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
-        List<T> matches = resources.list(clazz, r -> store.equals(r.getStore()));
-        return ModificationProxy.createList(matches, clazz);
+        List<T> matches =
+                resources.list(
+                        clazz,
+                        resources.getIndex(STORE_INDEX),
+                        indexKey(store),
+                        r -> store.equals(r.getStore()));
+        return wrapList(matches, clazz);
     }
 
     //
@@ -395,11 +536,13 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         resolve(layer);
         layers.add(layer);
 
+        modified();
         return ModificationProxy.create(layer, LayerInfo.class);
     }
 
     public void remove(LayerInfo layer) {
         layers.remove(unwrap(layer));
+        modified();
     }
 
     public void save(LayerInfo layer) {
@@ -413,6 +556,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(layer, propertyNames, oldValues, newValues);
         layers.update(layer);
         commitProxy(layer);
+        modified();
         afterSaved(layer, propertyNames, oldValues, newValues);
     }
 
@@ -441,7 +585,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         } else {
             List<LayerInfo> matches = new ArrayList<>();
             matches.add(layer);
-            return ModificationProxy.createList(matches, LayerInfo.class);
+            return wrapList(matches, LayerInfo.class);
         }
 
         // we check the id first as it's faster to compare than a full blown equals
@@ -455,12 +599,15 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         List<LayerInfo> matches =
                 layers.list(
                         LayerInfo.class,
+                        layers.getIndex(STYLE_INDEX),
+                        indexKey(style),
                         li -> style.equals(li.getDefaultStyle()) || li.getStyles().contains(style));
-        return ModificationProxy.createList(matches, LayerInfo.class);
+        return wrapList(matches, LayerInfo.class);
     }
 
     public List<LayerInfo> getLayers() {
-        return ModificationProxy.createList(new ArrayList<>(layers.values()), LayerInfo.class);
+        return wrapListing(
+                LayerInfo.class, LayerInfo.class, () -> new ArrayList<>(layers.values()));
     }
 
     //
@@ -472,6 +619,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             maps.add(map);
         }
 
+        modified();
         return ModificationProxy.create(map, MapInfo.class);
     }
 
@@ -479,6 +627,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (maps) {
             maps.remove(unwrap(map));
         }
+        modified();
     }
 
     public void save(MapInfo map) {
@@ -491,6 +640,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         beforeSaved(map, propertyNames, oldValues, newValues);
         commitProxy(map);
+        modified();
         afterSaved(map, propertyNames, oldValues, newValues);
     }
 
@@ -501,7 +651,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     public MapInfo getMap(String id) {
         for (MapInfo map : maps) {
             if (id.equals(map.getId())) {
-                return ModificationProxy.create(map, MapInfo.class);
+                return wrapInModificationProxy(map, MapInfo.class);
             }
         }
 
@@ -511,7 +661,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     public MapInfo getMapByName(String name) {
         for (MapInfo map : maps) {
             if (name.equals(map.getName())) {
-                return ModificationProxy.create(map, MapInfo.class);
+                return wrapInModificationProxy(map, MapInfo.class);
             }
         }
 
@@ -519,7 +669,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public List<MapInfo> getMaps() {
-        return ModificationProxy.createList(new ArrayList(maps), MapInfo.class);
+        return wrapList(new ArrayList(maps), MapInfo.class);
     }
 
     //
@@ -530,6 +680,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (layerGroups) {
             layerGroups.add(layerGroup);
         }
+        modified();
         return ModificationProxy.create(layerGroup, LayerGroupInfo.class);
     }
 
@@ -540,6 +691,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (layerGroups) {
             layerGroups.remove(unwrap(layerGroup));
         }
+        modified();
     }
 
     /* (non-Javadoc)
@@ -556,6 +708,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(layerGroup, propertyNames, oldValues, newValues);
         layerGroups.update(layerGroup);
         commitProxy(layerGroup);
+        modified();
         afterSaved(layerGroup, propertyNames, oldValues, newValues);
     }
 
@@ -564,8 +717,10 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public List<LayerGroupInfo> getLayerGroups() {
-        return ModificationProxy.createList(
-                new ArrayList<>(layerGroups.values()), LayerGroupInfo.class);
+        return wrapListing(
+                LayerGroupInfo.class,
+                LayerGroupInfo.class,
+                () -> new ArrayList<>(layerGroups.values()));
     }
 
     public List<LayerGroupInfo> getLayerGroupsByWorkspace(WorkspaceInfo workspace) {
@@ -578,14 +733,22 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             ws = workspace;
         }
         Predicate<LayerGroupInfo> predicate;
+        String key;
         if (workspace == NO_WORKSPACE) {
             predicate = lg -> lg.getWorkspace() == null;
+            key = CatalogInfoIndex.NULL_KEY;
         } else {
             predicate = lg -> ws.equals(lg.getWorkspace());
+            key = indexKey(ws);
         }
 
-        List<LayerGroupInfo> matches = layerGroups.list(LayerGroupInfo.class, predicate);
-        return ModificationProxy.createList(matches, LayerGroupInfo.class);
+        List<LayerGroupInfo> matches =
+                layerGroups.list(
+                        LayerGroupInfo.class,
+                        layerGroups.getIndex(WORKSPACE_INDEX),
+                        key,
+                        predicate);
+        return wrapList(matches, LayerGroupInfo.class);
     }
 
     public LayerGroupInfo getLayerGroup(String id) {
@@ -621,6 +784,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         NamespaceInfo unwrapped = unwrap(namespace);
         namespaces.add(unwrapped);
 
+        modified();
         return ModificationProxy.create(unwrapped, NamespaceInfo.class);
     }
 
@@ -630,6 +794,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         }
 
         namespaces.remove(namespace);
+        modified();
     }
 
     public void save(NamespaceInfo namespace) {
@@ -643,6 +808,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(namespace, propertyNames, oldValues, newValues);
         namespaces.update(namespace);
         commitProxy(namespace);
+        modified();
         afterSaved(namespace, propertyNames, oldValues, newValues);
     }
 
@@ -671,6 +837,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 Arrays.asList("defaultNamespace"),
                 Arrays.asList(old),
                 Arrays.asList(defaultNamespace));
+        modified();
     }
 
     public NamespaceInfo getNamespace(String id) {
@@ -694,12 +861,14 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         List<NamespaceInfo> found =
                 namespaces.list(
                         NamespaceInfo.class, namespaceInfo -> namespaceInfo.getURI().equals(uri));
-        return ModificationProxy.createList(found, NamespaceInfo.class);
+        return wrapList(found, NamespaceInfo.class);
     }
 
     public List<NamespaceInfo> getNamespaces() {
-        return ModificationProxy.createList(
-                new ArrayList<>(namespaces.values()), NamespaceInfo.class);
+        return wrapListing(
+                NamespaceInfo.class,
+                NamespaceInfo.class,
+                () -> new ArrayList<>(namespaces.values()));
     }
 
     //
@@ -710,6 +879,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         resolve(workspace);
         WorkspaceInfo unwrapped = unwrap(workspace);
         workspaces.add(unwrapped);
+        modified();
         return ModificationProxy.create(unwrapped, WorkspaceInfo.class);
     }
 
@@ -718,6 +888,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             this.defaultWorkspace = null;
         }
         workspaces.remove(workspace);
+        modified();
     }
 
     public void save(WorkspaceInfo workspace) {
@@ -739,6 +910,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(workspace, propertyNames, oldValues, newValues);
         workspaces.update(workspace);
         commitProxy(workspace);
+        modified();
         afterSaved(workspace, propertyNames, oldValues, newValues);
     }
 
@@ -767,11 +939,14 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 Arrays.asList("defaultWorkspace"),
                 Arrays.asList(old),
                 Arrays.asList(workspace));
+        modified();
     }
 
     public List<WorkspaceInfo> getWorkspaces() {
-        return ModificationProxy.createList(
-                new ArrayList<>(workspaces.values()), WorkspaceInfo.class);
+        return wrapListing(
+                WorkspaceInfo.class,
+                WorkspaceInfo.class,
+                () -> new ArrayList<>(workspaces.values()));
     }
 
     public WorkspaceInfo getWorkspace(String id) {
@@ -792,6 +967,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (styles) {
             styles.add(style);
         }
+        modified();
         return ModificationProxy.create(style, StyleInfo.class);
     }
 
@@ -799,6 +975,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         synchronized (styles) {
             styles.remove(unwrap(style));
         }
+        modified();
     }
 
     public void save(StyleInfo style) {
@@ -812,6 +989,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         beforeSaved(style, propertyNames, oldValues, newValues);
         styles.update(style);
         commitProxy(style);
+        modified();
         afterSaved(style, propertyNames, oldValues, newValues);
     }
 
@@ -850,14 +1028,20 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public List<StyleInfo> getStyles() {
-        return ModificationProxy.createList(new ArrayList<>(styles.values()), StyleInfo.class);
+        return wrapListing(
+                StyleInfo.class, StyleInfo.class, () -> new ArrayList<>(styles.values()));
     }
 
     public List<StyleInfo> getStylesByWorkspace(WorkspaceInfo workspace) {
         // TODO: support ANY_WORKSPACE?
         List<StyleInfo> matches;
         if (workspace == NO_WORKSPACE) {
-            matches = styles.list(StyleInfo.class, s -> s.getWorkspace() == null);
+            matches =
+                    styles.list(
+                            StyleInfo.class,
+                            styles.getIndex(WORKSPACE_INDEX),
+                            CatalogInfoIndex.NULL_KEY,
+                            s -> s.getWorkspace() == null);
         } else {
             WorkspaceInfo ws;
             if (workspace == null) {
@@ -866,10 +1050,15 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 ws = workspace;
             }
 
-            matches = styles.list(StyleInfo.class, s -> ws.equals(s.getWorkspace()));
+            matches =
+                    styles.list(
+                            StyleInfo.class,
+                            styles.getIndex(WORKSPACE_INDEX),
+                            indexKey(ws),
+                            s -> ws.equals(s.getWorkspace()));
         }
 
-        return ModificationProxy.createList(matches, StyleInfo.class);
+        return wrapList(matches, StyleInfo.class);
     }
 
     public void dispose() {
@@ -882,6 +1071,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         if (layerGroups != null) layerGroups.clear();
         if (maps != null) maps.clear();
         if (styles != null) styles.clear();
+        modified();
     }
 
     public void resolve() {
@@ -906,7 +1096,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // stores
         if (stores == null) {
-            stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+            stores = createStoreLookup();
         }
         for (Object o : stores.values()) {
             resolve((StoreInfoImpl) o);
@@ -914,7 +1104,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // styles
         if (styles == null) {
-            styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+            styles = createStyleLookup();
         }
         for (StyleInfo s : styles.values()) {
             resolve(s);
@@ -922,7 +1112,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // resources
         if (resources == null) {
-            resources = new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+            resources = createResourceLookup();
         }
         for (Object o : resources.values()) {
             resolve((ResourceInfo) o);
@@ -938,7 +1128,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // layer groups
         if (layerGroups == null) {
-            layerGroups = new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+            layerGroups = createLayerGroupLookup();
         }
         for (LayerGroupInfo lg : layerGroups.values()) {
             resolve(lg);
@@ -970,6 +1160,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             other.maps = maps;
             other.layerGroups = layerGroups.setCatalog(catalog);
             other.styles = styles.setCatalog(catalog);
+            other.modified();
         } else {
             // do a manual import
             for (WorkspaceInfo ws : workspaces.values()) {
@@ -1010,6 +1201,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 }
             }
         }
+        modified();
     }
 
     @Override
@@ -1106,23 +1298,23 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         List<T> all;
 
         if (NamespaceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) namespaces.list(of, toPredicate(filter));
+            all = (List<T>) namespaces.list(of, filter);
         } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) workspaces.list(of, toPredicate(filter));
+            all = (List<T>) workspaces.list(of, filter);
         } else if (StoreInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) stores.list(of, toPredicate(filter));
+            all = (List<T>) stores.list(of, filter);
         } else if (ResourceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) resources.list(of, toPredicate(filter));
+            all = (List<T>) resources.list(of, filter);
         } else if (LayerInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) layers.list(of, toPredicate(filter));
+            all = (List<T>) layers.list(of, filter);
         } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) layerGroups.list(of, toPredicate(filter));
+            all = (List<T>) layerGroups.list(of, filter);
         } else if (PublishedInfo.class.isAssignableFrom(of)) {
             all = new ArrayList<>();
-            all.addAll((List<T>) layers.list(LayerInfo.class, toPredicate(filter)));
-            all.addAll((List<T>) layerGroups.list(LayerGroupInfo.class, toPredicate(filter)));
+            all.addAll((List<T>) layers.list(LayerInfo.class, filter));
+            all.addAll((List<T>) layerGroups.list(LayerGroupInfo.class, filter));
         } else if (StyleInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) styles.list(of, toPredicate(filter));
+            all = (List<T>) styles.list(of, filter);
         } else if (MapInfo.class.isAssignableFrom(of)) {
             all = (List<T>) new ArrayList<>(maps);
         } else {
@@ -1140,15 +1332,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             }
         }
 
-        return ModificationProxy.createList(all, of);
-    }
-
-    private <T> Predicate<T> toPredicate(Filter filter) {
-        if (filter != null && filter != Filter.INCLUDE) {
-            return o -> filter.evaluate(o);
-        } else {
-            return CatalogInfoLookup.TRUE;
-        }
+        return wrapList(all, of);
     }
 
     private Comparator<Object> comparator(final SortBy sortOrder) {
@@ -0,0 +1,37 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+/**
+ * Thread bound switch enabling the read only catalog access mode.
+ *
+ * <p>When enabled, the {@link DefaultCatalogFacade} returns shared, unmodifiable {@link
+ * ReadOnlyProxy} wrappers instead of {@link ModificationProxy} ones, and serves the full catalog
+ * listings from a {@link CatalogSnapshot} that is rebuilt only when the catalog is modified. This
+ * avoids the cost of cloning collections and creating new proxies on every access, and is meant
+ * for request threads that only need to read the configuration (e.g., GetCapabilities, GetMap).
+ *
+ * <p>Code running in read only mode cannot modify catalog objects, any attempt to call a setter or
+ * to alter a returned collection results in an {@link UnsupportedOperationException}.
+ */
+public class ReadOnlyCatalogMode {
+
+    static final ThreadLocal<Boolean> ENABLED = new ThreadLocal<>();
+
+    /** Enables read only mode for the current thread */
+    public static void enable() {
+        ENABLED.set(Boolean.TRUE);
+    }
+
+    /** Disables read only mode for the current thread */
+    public static void disable() {
+        ENABLED.remove();
+    }
+
+    /** Returns true if the read only mode is enabled for the current thread */
+    public static boolean isEnabled() {
+        return ENABLED.get() != null;
+    }
+}
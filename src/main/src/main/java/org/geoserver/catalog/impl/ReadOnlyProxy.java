@@ -0,0 +1,195 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import com.google.common.collect.MapMaker;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.platform.GeoServerExtensions;
+
+/**
+ * A {@link ModificationProxy} that does not allow modifications, used when the catalog is accessed
+ * in {@link ReadOnlyCatalogMode}.
+ *
+ * <p>Since it never records any state, a single instance can be shared among all the threads
+ * reading the same catalog object, and collections are returned as unmodifiable views instead of
+ * being cloned on every getter call. Setters throw an {@link UnsupportedOperationException}, as
+ * well as any attempt to modify the returned collections.
+ *
+ * <p>The proxy reads through to the live catalog object, so changes committed by writers become
+ * visible as soon as they are saved, as it happens with the normal modification proxies.
+ */
+public class ReadOnlyProxy extends ModificationProxy {
+
+    private static final long serialVersionUID = -5384591870651937154L;
+
+    /** Shared proxies, keyed by identity of the proxied object */
+    static final ConcurrentMap<Object, Object> PROXIES =
+            new MapMaker().weakKeys().weakValues().makeMap();
+
+    ReadOnlyProxy(Object proxyObject) {
+        super(proxyObject);
+    }
+
+    /**
+     * Returns a shared read only proxy for the given object
+     *
+     * @param proxyObject The object to proxy, if already a proxy it will be unwrapped first
+     * @param clazz The interface the proxy has to implement
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T create(T proxyObject, Class<T> clazz) {
+        if (proxyObject == null) {
+            return null;
+        }
+        T unwrapped = ModificationProxy.unwrap(proxyObject);
+        Object proxy = PROXIES.get(unwrapped);
+        if (proxy == null || !clazz.isInstance(proxy)) {
+            proxy = ProxyUtils.createProxy(unwrapped, clazz, new ReadOnlyProxy(unwrapped));
+            PROXIES.put(unwrapped, proxy);
+        }
+        return (T) proxy;
+    }
+
+    /** Wraps a list in an unmodifiable decorator which proxies each item in the list */
+    public static <T> List<T> createList(List<T> proxyList, Class<T> clazz) {
+        return new list(proxyList, clazz);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length == 1) {
+            throw new UnsupportedOperationException(
+                    "Catalog objects cannot be modified while the catalog is in read only mode");
+        }
+
+        Object result;
+        try {
+            result = method.invoke(getProxyObject(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+        if (result == null) {
+            return null;
+        }
+
+        // dangling live references are resolved against the catalog
+        if (result instanceof Proxy
+                && Proxy.getInvocationHandler(result) instanceof ResolvingProxy) {
+            ResolvingProxy rp = ProxyUtils.handler(result, ResolvingProxy.class);
+            final Catalog catalog = (Catalog) GeoServerExtensions.bean("catalog");
+            result = rp.resolve(catalog, result);
+            if (result == null) {
+                return null;
+            }
+        }
+
+        Class<?> type = method.getReturnType();
+        if (result instanceof Info && shouldProxyProperty(result.getClass())) {
+            return create(result, (Class) type);
+        } else if (result instanceof Collection) {
+            return readOnlyCollection((Collection) result, type);
+        } else if (result instanceof MetadataMap) {
+            return new MetadataMap(Collections.unmodifiableMap(((MetadataMap) result).getMap()));
+        } else if (result instanceof Map) {
+            return readOnlyMap((Map) result, type);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readOnlyCollection(Collection collection, Class<?> type)
+            throws InstantiationException, IllegalAccessException {
+        boolean hasInfos = false;
+        for (Object o : collection) {
+            if (o instanceof Info) {
+                hasInfos = true;
+                break;
+            }
+        }
+        if (type == List.class) {
+            if (!hasInfos) {
+                return Collections.unmodifiableList((List) collection);
+            }
+            List copy = new ArrayList<>(collection.size());
+            for (Object o : collection) {
+                copy.add(wrapElement(o));
+            }
+            return Collections.unmodifiableList(copy);
+        } else if (type == Set.class) {
+            if (!hasInfos) {
+                return Collections.unmodifiableSet((Set) collection);
+            }
+            Set copy = new LinkedHashSet<>();
+            for (Object o : collection) {
+                copy.add(wrapElement(o));
+            }
+            return Collections.unmodifiableSet(copy);
+        } else if (type == Collection.class && !hasInfos) {
+            return Collections.unmodifiableCollection(collection);
+        }
+        // specific collection class, fall back on the cloning approach
+        return ModificationProxyCloner.cloneCollection(collection, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readOnlyMap(Map map, Class<?> type)
+            throws InstantiationException, IllegalAccessException {
+        if (type == Map.class) {
+            return Collections.unmodifiableMap(map);
+        } else if (type == SortedMap.class) {
+            return Collections.unmodifiableSortedMap((SortedMap) map);
+        }
+        // specific map class, fall back on the cloning approach
+        return ModificationProxyCloner.cloneMap(map, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object wrapElement(Object o) {
+        if (o instanceof CatalogInfo) {
+            Class iface = ModificationProxyCloner.getDeepestCatalogInfoInterface((CatalogInfo) o);
+            return create(o, iface);
+        } else if (o instanceof Info) {
+            // the proxy implements all the interfaces of the object anyways
+            return create(o, (Class) Info.class);
+        }
+        return o;
+    }
+
+    @Override
+    public void commit() {
+        // nothing to commit, read only proxies never record modifications
+    }
+
+    static class list<T> extends ProxyList {
+
+        list(List<T> list, Class<T> clazz) {
+            super(list, clazz);
+        }
+
+        protected <T> T createProxy(T proxyObject, Class<T> proxyInterface) {
+            return ReadOnlyProxy.create(proxyObject, proxyInterface);
+        }
+
+        protected <U> U unwrapProxy(U proxy, java.lang.Class<U> proxyInterface) {
+            return ModificationProxy.unwrap(proxy);
+        };
+    }
+}
@@ -0,0 +1,254 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A binary snapshot of the catalog and configuration objects stored in the data directory, used to
+ * speed up the startup of GeoServer with large catalogs.
+ *
+ * <p>The snapshot contains, for each configuration file, its path, its last modification time and
+ * the object it contains, encoded with the same {@link XStreamPersister} converters used for the
+ * XML files, but as a binary stream, which is much faster to read. At startup the whole snapshot
+ * is memory mapped, and each configuration file whose last modification time matches the one in
+ * the snapshot is read from it, while the others are parsed from XML as usual.
+ *
+ * <p>The snapshot is disabled by default, set the {@link #SNAPSHOT_PROPERTY} system property to
+ * true to enable it. It is written by the {@link CatalogSnapshotWriter}.
+ */
+class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    /** The system/environment/servlet property enabling the snapshot */
+    static final String SNAPSHOT_PROPERTY = "GEOSERVER_CATALOG_SNAPSHOT";
+
+    /** The snapshot file name, in the root of the data directory */
+    static final String SNAPSHOT_FILE = "catalog.snapshot";
+
+    static final byte[] MAGIC = "GSSNAP01".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Prefix of the contents read from the snapshot, allows to tell them apart from XML contents
+     * (which cannot start with a zero byte followed by a letter)
+     */
+    static final byte[] PAYLOAD_MARKER = {0, 'G', 'S', 'B'};
+
+    static final class Entry {
+        final long lastModified;
+
+        final int offset;
+
+        final int length;
+
+        Entry(long lastModified, int offset, int length) {
+            this.lastModified = lastModified;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    final ByteBuffer buffer;
+
+    final Map<String, Entry> entries;
+
+    final AtomicInteger hits = new AtomicInteger();
+
+    final AtomicInteger misses = new AtomicInteger();
+
+    CatalogSnapshot(ByteBuffer buffer, Map<String, Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /** Returns true if the snapshot is enabled */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(SNAPSHOT_PROPERTY));
+    }
+
+    /**
+     * Returns a version identifier for the snapshot contents, snapshots written by a different
+     * GeoServer version are ignored, as the persisted classes might have changed
+     */
+    static String getVersion() {
+        Package pkg = CatalogSnapshot.class.getPackage();
+        String version = pkg != null ? pkg.getImplementationVersion() : null;
+        return version != null ? version : "unknown";
+    }
+
+    /**
+     * Opens the snapshot stored in the given resource
+     *
+     * @return The snapshot, or null if missing, invalid, or written by another GeoServer version
+     */
+    static CatalogSnapshot open(Resource resource) {
+        if (!Resources.exists(resource)) {
+            return null;
+        }
+        File file = resource.file();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                LOGGER.warning("Catalog snapshot too large to be mapped, ignoring it");
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(MAGIC, magic) || !getVersion().equals(readString(buffer))) {
+                LOGGER.info("Ignoring catalog snapshot written by another GeoServer version");
+                return null;
+            }
+            Map<String, Entry> entries = new HashMap<>();
+            String path;
+            while ((path = readString(buffer)) != null) {
+                long lastModified = buffer.getLong();
+                int length = buffer.getInt();
+                entries.put(path, new Entry(lastModified, buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+            return new CatalogSnapshot(buffer, entries);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the catalog snapshot, ignoring it", e);
+            return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the snapshot contents for the given path, if the snapshot has it and it has the
+     * expected last modification time, null otherwise. The contents can be parsed with {@link
+     * #load(XStreamPersister, byte[], Class)}
+     */
+    byte[] getContents(String path, long lastModified) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.lastModified != lastModified) {
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] contents = new byte[PAYLOAD_MARKER.length + entry.length];
+        System.arraycopy(PAYLOAD_MARKER, 0, contents, 0, PAYLOAD_MARKER.length);
+        // work on a duplicate, the snapshot is read by multiple threads
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(entry.offset);
+        bb.get(contents, PAYLOAD_MARKER.length, entry.length);
+        hits.incrementAndGet();
+        return contents;
+    }
+
+    /** Logs a summary of the snapshot usage */
+    void close() {
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(
+                    "Loaded "
+                            + hits.get()
+                            + " configuration objects from the catalog snapshot, "
+                            + misses.get()
+                            + " from their configuration files");
+        }
+    }
+
+    /** Returns true if the contents have been read from a snapshot */
+    static boolean isPayload(byte[] contents) {
+        if (contents.length < PAYLOAD_MARKER.length) {
+            return false;
+        }
+        for (int i = 0; i < PAYLOAD_MARKER.length; i++) {
+            if (contents[i] != PAYLOAD_MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Decodes contents returned by {@link #getContents(String, long)} */
+    static <T> T load(XStreamPersister xp, byte[] contents, Class<T> clazz) throws IOException {
+        try (InputStream in =
+                new ByteArrayInputStream(
+                        contents,
+                        PAYLOAD_MARKER.length,
+                        contents.length - PAYLOAD_MARKER.length)) {
+            return clazz.cast(xp.getXStream().unmarshal(new BinaryStreamReader(in)));
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to decode the catalog snapshot entry", e);
+        }
+    }
+
+    /** Writes a snapshot, entry by entry */
+    static class Writer implements AutoCloseable {
+
+        final DataOutputStream out;
+
+        final XStreamPersister xp;
+
+        /** Reused across entries */
+        final ByteArrayOutputStream entry = new ByteArrayOutputStream(4096);
+
+        Writer(OutputStream out, XStreamPersister xp) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.xp = xp;
+            this.out.write(MAGIC);
+            writeString(getVersion());
+        }
+
+        /** Adds the object stored in the file at the given path and modification time */
+        void add(String path, long lastModified, Object object) throws IOException {
+            entry.reset();
+            BinaryStreamWriter writer = new BinaryStreamWriter(entry);
+            xp.getXStream().marshal(XStreamPersister.unwrapProxies(object), writer);
+            writer.flush();
+            writeString(path);
+            out.writeLong(lastModified);
+            out.writeInt(entry.size());
+            entry.writeTo(out);
+        }
+
+        private void writeString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeInt(-1);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.WMSStoreInfo;
+import org.geoserver.catalog.WMTSLayerInfo;
+import org.geoserver.catalog.WMTSStoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.ExtensionPriority;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resources;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Writes the {@link CatalogSnapshot} after each configuration change, and on shutdown.
+ *
+ * <p>An object is added to the snapshot only if its configuration file is known to contain the
+ * object as it is in memory, that is, the file has not been modified since it was loaded, or it
+ * has been written by GeoServer itself after a configuration change. Files modified by other means
+ * (e.g., manual edits before a reload) are left out, and will be read from XML at the next startup.
+ *
+ * <p>The modification time of a file written by GeoServer is taken when the change event fires,
+ * right after the {@link GeoServerConfigPersister} wrote it, the writer being registered after the
+ * persister. Taking it at the delayed snapshot write would mistake an edit made in between for the
+ * GeoServer one, and mask it with the in memory object.
+ */
+class CatalogSnapshotWriter extends ConfigurationListenerAdapter
+        implements CatalogListener, ExtensionPriority {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshotWriter.class);
+
+    /** Delay between a configuration change and the snapshot write, to batch changes together */
+    static final long WRITE_DELAY = 5;
+
+    static final ScheduledExecutorService EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(
+                    r -> {
+                        Thread t = new Thread(r, "GeoServer catalog snapshot writer");
+                        t.setDaemon(true);
+                        return t;
+                    });
+
+    final GeoServerResourceLoader resourceLoader;
+
+    final GeoServerDataDirectory dd;
+
+    final XStreamPersisterFactory xpf;
+
+    /** The modification time of the configuration files, when loaded or written by GeoServer */
+    final Map<String, Long> stamps = new ConcurrentHashMap<>();
+
+    volatile Catalog catalog;
+
+    volatile GeoServer geoServer;
+
+    ScheduledFuture<?> pending;
+
+    CatalogSnapshotWriter(GeoServerResourceLoader resourceLoader, XStreamPersisterFactory xpf) {
+        this.resourceLoader = resourceLoader;
+        this.dd = new GeoServerDataDirectory(resourceLoader);
+        this.xpf = xpf;
+    }
+
+    void setCatalog(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    void setGeoServer(GeoServer geoServer) {
+        this.geoServer = geoServer;
+    }
+
+    /** Records the modification time of a configuration file being loaded */
+    void loaded(String path, long lastModified) {
+        stamps.put(path, lastModified);
+    }
+
+    /** Records the modification time of a file just written by GeoServer, schedules a write */
+    void written(Resource resource) {
+        if (resource != null) {
+            if (Resources.exists(resource)) {
+                stamps.put(resource.path(), resource.lastModified());
+            } else {
+                stamps.remove(resource.path());
+            }
+        }
+        scheduleWrite();
+    }
+
+    /** Schedules a snapshot write, unless one is already pending */
+    synchronized void scheduleWrite() {
+        if (pending == null || pending.isDone()) {
+            pending = EXECUTOR.schedule(this::writeQuietly, WRITE_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+        }
+    }
+
+    /** Writes the snapshot */
+    synchronized void write() throws IOException {
+        Catalog catalog = this.catalog;
+        if (catalog == null) {
+            return;
+        }
+        XStreamPersister xp = xpf.createXMLPersister();
+        xp.setCatalog(catalog);
+        Resource target = resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE);
+        int count = 0;
+        try (CatalogSnapshot.Writer writer =
+                new CatalogSnapshot.Writer(new BufferedOutputStream(target.out()), xp)) {
+            for (WorkspaceInfo ws : catalog.getWorkspaces()) {
+                count += add(writer, dd.config(ws), ws);
+            }
+            for (NamespaceInfo ns : catalog.getNamespaces()) {
+                count += add(writer, dd.config(ns), ns);
+            }
+            for (StyleInfo s : catalog.getStyles()) {
+                count += add(writer, dd.config(s), s);
+            }
+            for (StoreInfo s : catalog.getStores(StoreInfo.class)) {
+                // stores disabled at startup due to connection errors are not persisted as such
+                if (s.getError() == null) {
+                    count += add(writer, config(s), s);
+                }
+            }
+            for (ResourceInfo r : catalog.getResources(ResourceInfo.class)) {
+                count += add(writer, config(r), r);
+            }
+            for (LayerInfo l : catalog.getLayers()) {
+                count += add(writer, dd.config(l), l);
+            }
+            for (LayerGroupInfo lg : catalog.getLayerGroups()) {
+                count += add(writer, dd.config(lg), lg);
+            }
+            GeoServer geoServer = this.geoServer;
+            if (geoServer != null) {
+                if (geoServer.getGlobal() != null) {
+                    count += add(writer, dd.config(geoServer.getGlobal()), geoServer.getGlobal());
+                }
+                if (geoServer.getLogging() != null) {
+                    count +=
+                            add(writer, dd.config(geoServer.getLogging()), geoServer.getLogging());
+                }
+                for (WorkspaceInfo ws : catalog.getWorkspaces()) {
+                    SettingsInfo settings = geoServer.getSettings(ws);
+                    if (settings != null) {
+                        count += add(writer, dd.config(settings), settings);
+                    }
+                }
+            }
+        }
+        LOGGER.fine("Wrote " + count + " configuration objects in the catalog snapshot");
+    }
+
+    private int add(CatalogSnapshot.Writer writer, Resource resource, Object object)
+            throws IOException {
+        if (resource == null) {
+            return 0;
+        }
+        String path = resource.path();
+        Long stamp = stamps.get(path);
+        if (stamp == null || !Resources.exists(resource)) {
+            return 0;
+        }
+        long lastModified = resource.lastModified();
+        if (stamp != lastModified) {
+            // modified by something else than GeoServer, has to be read from XML
+            return 0;
+        }
+        writer.add(path, lastModified, object);
+        return 1;
+    }
+
+    /** Returns the configuration file of the given object, if it's persisted in its own file */
+    Resource config(CatalogInfo info) {
+        if (info instanceof WorkspaceInfo) {
+            return dd.config((WorkspaceInfo) info);
+        } else if (info instanceof NamespaceInfo) {
+            return dd.config((NamespaceInfo) info);
+        } else if (info instanceof DataStoreInfo) {
+            return dd.config((DataStoreInfo) info);
+        } else if (info instanceof CoverageStoreInfo) {
+            return dd.config((CoverageStoreInfo) info);
+        } else if (info instanceof WMSStoreInfo) {
+            return dd.config((WMSStoreInfo) info);
+        } else if (info instanceof WMTSStoreInfo) {
+            return dd.config((WMTSStoreInfo) info);
+        } else if (info instanceof FeatureTypeInfo) {
+            return dd.config((FeatureTypeInfo) info);
+        } else if (info instanceof CoverageInfo) {
+            return dd.config((CoverageInfo) info);
+        } else if (info instanceof WMTSLayerInfo) {
+            return dd.config((WMTSLayerInfo) info);
+        } else if (info instanceof WMSLayerInfo) {
+            return dd.config((WMSLayerInfo) info);
+        } else if (info instanceof LayerInfo) {
+            return dd.config((LayerInfo) info);
+        } else if (info instanceof LayerGroupInfo) {
+            return dd.config((LayerGroupInfo) info);
+        } else if (info instanceof StyleInfo) {
+            return dd.config((StyleInfo) info);
+        }
+        return null;
+    }
+
+    @Override
+    public int getPriority() {
+        // after the GeoServerConfigPersister, so that the configuration files are already written
+        return ExtensionPriority.LOWEST;
+    }
+
+    // catalog events
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        written(config(event.getSource()));
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        scheduleWrite();
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {}
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        written(config(event.getSource()));
+    }
+
+    @Override
+    public void reloaded() {}
+
+    // configuration events
+
+    @Override
+    public void handlePostGlobalChange(GeoServerInfo global) {
+        written(dd.config(global));
+    }
+
+    @Override
+    public void handleSettingsAdded(SettingsInfo settings) {
+        written(dd.config(settings));
+    }
+
+    @Override
+    public void handleSettingsPostModified(SettingsInfo settings) {
+        written(dd.config(settings));
+    }
+
+    @Override
+    public void handleSettingsRemoved(SettingsInfo settings) {
+        scheduleWrite();
+    }
+
+    @Override
+    public void handlePostLoggingChange(LoggingInfo logging) {
+        written(dd.config(logging));
+    }
+}
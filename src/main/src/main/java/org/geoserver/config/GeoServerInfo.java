@@ -283,6 +283,7 @@ public interface GeoServerInfo extends Info {
      * <ul>
      *   <li>nullLockProvider
      *   <li>memoryLockProvider
+     *   <li>hierarchicalLockProvider
      *   <li>fileLockProvider
      * </ul>
      *
@@ -79,15 +79,15 @@ public abstract class GeoServerLoader {
     }
 
     /** {@link ResourceMapper} for workspaces */
-    static final class WorkspaceMapper implements ResourceMapper<WorkspaceContents> {
+    final class WorkspaceMapper implements ResourceMapper<WorkspaceContents> {
 
         @Override
         public WorkspaceContents apply(Resource rd) throws IOException {
             Resource wr = rd.get("workspace.xml");
             Resource nr = rd.get("namespace.xml");
             if (Resources.exists(wr) && Resources.exists(nr)) {
-                byte[] contents = wr.getContents();
-                byte[] nrContents = nr.getContents();
+                byte[] contents = getContents(wr);
+                byte[] nrContents = getContents(nr);
                 return new WorkspaceContents(rd, contents, nrContents);
             } else {
                 LOGGER.warning("Ignoring workspace directory " + rd.path());
@@ -96,7 +96,7 @@ public abstract class GeoServerLoader {
         }
     }
 
-    /** Data store IO resources */
+    /** Store, style and layer group IO resources */
     static final class StoreContents {
         Resource resource;
         byte[] contents;
@@ -111,18 +111,21 @@ public abstract class GeoServerLoader {
     /** Layer IO resources */
     static final class LayerContents {
         Resource resource;
+        Resource file;
         byte[] contents;
         byte[] layerContents;
 
-        public LayerContents(Resource resource, byte[] contents, byte[] layerContents) {
+        public LayerContents(
+                Resource resource, Resource file, byte[] contents, byte[] layerContents) {
             this.resource = resource;
+            this.file = file;
             this.contents = contents;
             this.layerContents = layerContents;
         }
     }
 
     /** Resource/Layer mapper to IO resources (generic) */
-    static final class ResourceLayerMapper implements ResourceMapper<LayerContents> {
+    final class ResourceLayerMapper implements ResourceMapper<LayerContents> {
 
         private String resourceFileName;
         private String resourceType;
@@ -137,9 +140,9 @@ public abstract class GeoServerLoader {
             Resource r = rd.get(resourceFileName);
             Resource lr = rd.get("layer.xml");
             if (Resources.exists(r) && Resources.exists(lr)) {
-                byte[] contents = r.getContents();
-                byte[] lrContents = lr.getContents();
-                return new LayerContents(rd, contents, lrContents);
+                byte[] contents = getContents(r);
+                byte[] lrContents = getContents(lr);
+                return new LayerContents(rd, r, contents, lrContents);
             } else {
                 LOGGER.warning("Ignoring " + resourceType + " directory " + rd.path());
                 return null;
@@ -148,23 +151,22 @@ public abstract class GeoServerLoader {
     }
 
     /** Feature Type IO resource mapper */
-    static final ResourceLayerMapper FEATURE_LAYER_MAPPER =
+    final ResourceLayerMapper featureLayerMapper =
             new ResourceLayerMapper("featuretype.xml", "feature type");
     /** Coverage IO resource mapper */
-    static final ResourceLayerMapper COVERAGE_LAYER_MAPPER =
+    final ResourceLayerMapper coverageLayerMapper =
             new ResourceLayerMapper("coverage.xml", "coverage");
     /** WMS Layer IO resource mapper */
-    static final ResourceLayerMapper WMS_LAYER_MAPPER =
-            new ResourceLayerMapper("wmslayer.xml", "wms layer");
+    final ResourceLayerMapper wmsLayerMapper = new ResourceLayerMapper("wmslayer.xml", "wms layer");
     /** WMTS Layer IO resource mapper */
-    static final ResourceLayerMapper WMTS_LAYER_MAPPER =
+    final ResourceLayerMapper wmtsLayerMapper =
             new ResourceLayerMapper("wmtslayer.xml", "wmts layer");
     /**
      * Generic layer catalog loader for all types of IO resources
      *
      * @author Andrea Aime - GeoSolutions
      */
-    static final class LayerLoader<T extends ResourceInfo> implements Consumer<LayerContents> {
+    final class LayerLoader<T extends ResourceInfo> implements Consumer<LayerContents> {
 
         Class<T> clazz;
         XStreamPersister xp;
@@ -180,7 +182,7 @@ public abstract class GeoServerLoader {
         public void accept(LayerContents lc) {
             T ft = null;
             try {
-                ft = depersist(xp, lc.contents, clazz);
+                ft = depersist(xp, lc.file, lc.contents, clazz);
                 catalog.add(ft);
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Failed to load resource", e);
@@ -202,7 +204,8 @@ public abstract class GeoServerLoader {
             }
 
             try {
-                LayerInfo l = depersist(xp, lc.layerContents, LayerInfo.class);
+                Resource layerFile = lc.resource.get("layer.xml");
+                LayerInfo l = depersist(xp, layerFile, lc.layerContents, LayerInfo.class);
                 catalog.add(l);
 
                 LOGGER.info("Loaded layer '" + l.getName() + "'");
@@ -224,6 +227,12 @@ public abstract class GeoServerLoader {
     // this ugly hack can die
     static boolean legacy = false;
 
+    /** The catalog snapshot being used during the load, if any */
+    CatalogSnapshot snapshot;
+
+    /** Writes the catalog snapshot, null if the snapshot is not enabled */
+    CatalogSnapshotWriter snapshotWriter;
+
     public GeoServerLoader(GeoServerResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
     }
@@ -272,6 +281,7 @@ public abstract class GeoServerLoader {
                 XStreamPersister xp = xpf.createXMLPersister();
                 xp.setCatalog(geoserver.getCatalog());
                 loadGeoServer(geoserver, xp);
+                attachSnapshotWriter(geoserver);
 
                 // load initializers
                 loadInitializers(geoserver);
@@ -374,6 +384,7 @@ public abstract class GeoServerLoader {
 
         loadCatalog(catalog, xp);
         loadGeoServer(geoserver, xp);
+        attachSnapshotWriter(geoserver);
 
         reloadInitializers(geoserver);
     }
@@ -385,6 +396,7 @@ public abstract class GeoServerLoader {
         catalog.removeListeners(GeoServerConfigPersister.class);
         catalog.removeListeners(GeoServerResourcePersister.class);
         List<CatalogListener> listeners = new ArrayList<CatalogListener>(catalog.getListeners());
+        openSnapshot();
 
         // look for catalog.xml, if it exists assume we are dealing with
         // an old data directory
@@ -405,6 +417,68 @@ public abstract class GeoServerLoader {
         for (CatalogListener listener : listeners) {
             catalog.addListener(listener);
         }
+        if (snapshotWriter != null) {
+            snapshotWriter.setCatalog(catalog);
+            catalog.removeListener(snapshotWriter);
+            catalog.addListener(snapshotWriter);
+        }
+    }
+
+    /** Opens the catalog snapshot, if enabled */
+    void openSnapshot() {
+        if (!CatalogSnapshot.isEnabled()) {
+            return;
+        }
+        if (snapshotWriter == null) {
+            snapshotWriter = new CatalogSnapshotWriter(resourceLoader, xpf);
+        }
+        if (snapshot == null) {
+            snapshot = CatalogSnapshot.open(resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE));
+        }
+    }
+
+    /**
+     * Registers the snapshot writer once the configuration is loaded, after the persisters, so that
+     * it sees the configuration files already written, and releases the catalog snapshot
+     */
+    void attachSnapshotWriter(GeoServer geoServer) {
+        if (snapshotWriter != null) {
+            snapshotWriter.setGeoServer(geoServer);
+            geoServer.removeListener(snapshotWriter);
+            geoServer.addListener(snapshotWriter);
+        }
+        closeSnapshot();
+    }
+
+    /** Releases the catalog snapshot once the configuration is loaded, and writes a new one */
+    void closeSnapshot() {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+        if (snapshotWriter != null) {
+            snapshotWriter.scheduleWrite();
+        }
+    }
+
+    /**
+     * Reads the contents of a configuration file, from the catalog snapshot if available and up
+     * to date
+     */
+    byte[] getContents(Resource resource) throws IOException {
+        if (snapshotWriter == null) {
+            return resource.getContents();
+        }
+        long lastModified = resource.lastModified();
+        snapshotWriter.loaded(resource.path(), lastModified);
+        CatalogSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            byte[] contents = snapshot.getContents(resource.path(), lastModified);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        return resource.getContents();
     }
 
     boolean checkStoresOnStartup(XStreamPersister xp) {
@@ -477,7 +551,12 @@ public abstract class GeoServerLoader {
                     WorkspaceInfo ws;
                     final Resource workspaceResource = wc.resource;
                     try {
-                        ws = depersist(xp, wc.contents, WorkspaceInfo.class);
+                        ws =
+                                depersist(
+                                        xp,
+                                        workspaceResource.get("workspace.xml"),
+                                        wc.contents,
+                                        WorkspaceInfo.class);
                         catalog.add(ws);
                         if (LOGGER.isLoggable(Level.INFO)) {
                             LOGGER.info("Loaded workspace '" + ws.getName() + "'");
@@ -493,7 +572,12 @@ public abstract class GeoServerLoader {
                     // load the namespace
                     NamespaceInfo ns = null;
                     try {
-                        ns = depersist(xp, wc.nsContents, NamespaceInfo.class);
+                        ns =
+                                depersist(
+                                        xp,
+                                        workspaceResource.get("namespace.xml"),
+                                        wc.nsContents,
+                                        NamespaceInfo.class);
                         catalog.add(ns);
                     } catch (Exception e) {
                         LOGGER.log(
@@ -542,19 +626,19 @@ public abstract class GeoServerLoader {
                     sd -> {
                         Resource f = sd.get("datastore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return new StoreContents(f, getContents(f));
                         }
                         f = sd.get("coveragestore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return new StoreContents(f, getContents(f));
                         }
                         f = sd.get("wmsstore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return new StoreContents(f, getContents(f));
                         }
                         f = sd.get("wmtsstore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return new StoreContents(f, getContents(f));
                         }
                         if (!isConfigDirectory(sd)) {
                             LOGGER.warning("Ignoring store directory '" + sd.name() + "'");
@@ -618,7 +702,7 @@ public abstract class GeoServerLoader {
         final Resource storeResource = storeContents.resource;
         WMSStoreInfo wms = null;
         try {
-            wms = depersist(xp, storeContents.contents, WMSStoreInfo.class);
+            wms = depersist(xp, storeResource, storeContents.contents, WMSStoreInfo.class);
             catalog.add(wms);
 
             LOGGER.info(
@@ -638,7 +722,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMS_LAYER_MAPPER)) {
+                        wmsLayerMapper)) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -651,7 +735,7 @@ public abstract class GeoServerLoader {
         final Resource storeResource = storeContents.resource;
         WMTSStoreInfo wmts = null;
         try {
-            wmts = depersist(xp, storeContents.contents, WMTSStoreInfo.class);
+            wmts = depersist(xp, storeResource, storeContents.contents, WMTSStoreInfo.class);
             catalog.add(wmts);
 
             LOGGER.info("Loaded wmtsstore '" + wmts.getName() + "'");
@@ -668,7 +752,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMTS_LAYER_MAPPER)) {
+                        wmtsLayerMapper)) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -681,7 +765,7 @@ public abstract class GeoServerLoader {
         CoverageStoreInfo cs = null;
         final Resource storeResource = storeContents.resource;
         try {
-            cs = depersist(xp, storeContents.contents, CoverageStoreInfo.class);
+            cs = depersist(xp, storeResource, storeContents.contents, CoverageStoreInfo.class);
             catalog.add(cs);
 
             if (LOGGER.isLoggable(Level.INFO)) {
@@ -706,7 +790,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        COVERAGE_LAYER_MAPPER)) {
+                        coverageLayerMapper)) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -722,7 +806,7 @@ public abstract class GeoServerLoader {
         final Resource storeResource = storeContents.resource;
         DataStoreInfo ds;
         try {
-            ds = depersist(xp, storeContents.contents, DataStoreInfo.class);
+            ds = depersist(xp, storeResource, storeContents.contents, DataStoreInfo.class);
             catalog.add(ds);
 
             if (LOGGER.isLoggable(Level.INFO)) {
@@ -760,7 +844,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        FEATURE_LAYER_MAPPER)) {
+                        featureLayerMapper)) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 featureLoader.accept(lc);
@@ -945,11 +1029,13 @@ public abstract class GeoServerLoader {
     void loadStyles(Resource styles, Catalog catalog, XStreamPersister xp) throws IOException {
         Filter<Resource> styleFilter =
                 r -> XML_FILTER.accept(r) && !Resources.exists(styles.get(r.name() + ".xml"));
-        try (AsynchResourceIterator<byte[]> it =
-                new AsynchResourceIterator<>(styles, styleFilter, r -> r.getContents())) {
+        try (AsynchResourceIterator<StoreContents> it =
+                new AsynchResourceIterator<>(
+                        styles, styleFilter, r -> new StoreContents(r, getContents(r)))) {
             while (it.hasNext()) {
                 try {
-                    StyleInfo s = depersist(xp, it.next(), StyleInfo.class);
+                    StoreContents sc = it.next();
+                    StyleInfo s = depersist(xp, sc.resource, sc.contents, StyleInfo.class);
                     catalog.add(s);
 
                     if (LOGGER.isLoggable(Level.INFO)) {
@@ -963,11 +1049,14 @@ public abstract class GeoServerLoader {
     }
 
     void loadLayerGroups(Resource layerGroups, Catalog catalog, XStreamPersister xp) {
-        try (AsynchResourceIterator<byte[]> it =
-                new AsynchResourceIterator<>(layerGroups, XML_FILTER, r -> r.getContents())) {
+        try (AsynchResourceIterator<StoreContents> it =
+                new AsynchResourceIterator<>(
+                        layerGroups, XML_FILTER, r -> new StoreContents(r, getContents(r)))) {
             while (it.hasNext()) {
                 try {
-                    LayerGroupInfo lg = depersist(xp, it.next(), LayerGroupInfo.class);
+                    StoreContents lgc = it.next();
+                    LayerGroupInfo lg =
+                            depersist(xp, lgc.resource, lgc.contents, LayerGroupInfo.class);
                     if (lg.getLayers() == null || lg.getLayers().size() == 0) {
                         LOGGER.warning(
                                 "Skipping empty layer group '" + lg.getName() + "', it is invalid");
@@ -1030,9 +1119,24 @@ public abstract class GeoServerLoader {
 
     /** Helper method which uses xstream to depersist an object as xml from disk. */
     <T> T depersist(XStreamPersister xp, Resource f, Class<T> clazz) throws IOException {
-        try (InputStream in = new ByteArrayInputStream(f.getContents())) {
-            return xp.load(in, clazz);
+        return depersist(xp, f, getContents(f), clazz);
+    }
+
+    /**
+     * Depersists contents read with {@link #getContents(Resource)}, falling back on the
+     * configuration file if the catalog snapshot contents cannot be decoded
+     */
+    <T> T depersist(XStreamPersister xp, Resource f, byte[] contents, Class<T> clazz)
+            throws IOException {
+        if (CatalogSnapshot.isPayload(contents)) {
+            try {
+                return CatalogSnapshot.load(xp, contents, clazz);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to read " + f.path() + " from the snapshot", e);
+                contents = f.getContents();
+            }
         }
+        return depersist(xp, contents, clazz);
     }
 
     /** Helper method which uses xstream to depersist an object as xml from disk. */
@@ -1044,6 +1148,13 @@ public abstract class GeoServerLoader {
     }
 
     public void destroy() throws Exception {
+        if (snapshotWriter != null) {
+            try {
+                snapshotWriter.write();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+            }
+        }
         // dispose
         geoserver.dispose();
     }
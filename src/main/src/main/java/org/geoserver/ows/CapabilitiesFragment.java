@@ -0,0 +1,140 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A portion of a capabilities document (e.g., the description of a single layer), stored as a
+ * compact serialized list of SAX events that can be replayed into the output of a later request.
+ *
+ * <p>Fragments are produced by a {@link CapabilitiesFragmentRecorder} and stored in the {@link
+ * CapabilitiesFragmentCache}.
+ */
+public final class CapabilitiesFragment {
+
+    static final byte START_ELEMENT = 1;
+
+    static final byte END_ELEMENT = 2;
+
+    static final byte CHARACTERS = 3;
+
+    static final byte IGNORABLE_WHITESPACE = 4;
+
+    static final byte COMMENT = 5;
+
+    static final byte START_PREFIX_MAPPING = 6;
+
+    static final byte END_PREFIX_MAPPING = 7;
+
+    final byte[] events;
+
+    final Set<String> describedIds;
+
+    CapabilitiesFragment(byte[] events) {
+        this(events, Collections.emptySet());
+    }
+
+    private CapabilitiesFragment(byte[] events, Set<String> describedIds) {
+        this.events = events;
+        this.describedIds = describedIds;
+    }
+
+    /**
+     * Returns a copy of this fragment recording the ids of the nested objects it describes (e.g.,
+     * the layers inside a group), which the document should not describe again elsewhere
+     */
+    public CapabilitiesFragment withDescribedIds(Set<String> ids) {
+        return new CapabilitiesFragment(events, Collections.unmodifiableSet(ids));
+    }
+
+    /** The ids of the nested objects described by this fragment */
+    public Set<String> getDescribedIds() {
+        return describedIds;
+    }
+
+    /** The size of the serialized events, in bytes */
+    public int getSize() {
+        return events.length;
+    }
+
+    /**
+     * Sends the recorded events to the given handler. Comments are sent only if the handler is
+     * also a {@link LexicalHandler}.
+     */
+    public void replay(ContentHandler handler) throws SAXException {
+        LexicalHandler lexical =
+                handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(events))) {
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                switch (type) {
+                    case START_ELEMENT:
+                        String uri = readString(in);
+                        String localName = readString(in);
+                        String qName = readString(in);
+                        int length = in.readInt();
+                        AttributesImpl atts = new AttributesImpl();
+                        for (int i = 0; i < length; i++) {
+                            atts.addAttribute(
+                                    readString(in),
+                                    readString(in),
+                                    readString(in),
+                                    readString(in),
+                                    readString(in));
+                        }
+                        handler.startElement(uri, localName, qName, atts);
+                        break;
+                    case END_ELEMENT:
+                        handler.endElement(readString(in), readString(in), readString(in));
+                        break;
+                    case CHARACTERS:
+                        char[] chars = readString(in).toCharArray();
+                        handler.characters(chars, 0, chars.length);
+                        break;
+                    case IGNORABLE_WHITESPACE:
+                        char[] ws = readString(in).toCharArray();
+                        handler.ignorableWhitespace(ws, 0, ws.length);
+                        break;
+                    case COMMENT:
+                        char[] comment = readString(in).toCharArray();
+                        if (lexical != null) {
+                            lexical.comment(comment, 0, comment.length);
+                        }
+                        break;
+                    case START_PREFIX_MAPPING:
+                        handler.startPrefixMapping(readString(in), readString(in));
+                        break;
+                    case END_PREFIX_MAPPING:
+                        handler.endPrefixMapping(readString(in));
+                        break;
+                    default:
+                        throw new SAXException("Unexpected event type " + type + " in fragment");
+                }
+            }
+        } catch (IOException e) {
+            throw new SAXException("Failed to read capabilities fragment", e);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
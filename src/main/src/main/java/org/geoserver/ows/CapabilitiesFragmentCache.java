@@ -0,0 +1,443 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import com.google.common.cache.CacheBuilderSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.BoundedResourceCache;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MeteredCache;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.DataAccessManager;
+import org.geoserver.security.ResourceAccessManager;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the {@link CapabilitiesFragment fragments} describing single layers and layer groups in
+ * the capabilities documents, so that they can be replayed instead of being computed again on
+ * each GetCapabilities request.
+ *
+ * <p>Fragments are keyed by the service, the id of the described object, and a request variant
+ * accounting for everything that can change their contents besides the configuration (service
+ * URL, virtual service, user roles, see {@link #getRequestVariant(String...)}). Global and
+ * workspace specific documents use the same store, and all requests sharing a variant share the
+ * same fragments.
+ *
+ * <p>Each fragment records the ids of the catalog objects it was built from, catalog events on
+ * any of them remove the fragment, while changes to the global settings, to the services or to the
+ * data access rules clear the whole cache.
+ *
+ * <p>The cache is only used with the default, role based, data security. A custom {@link
+ * ResourceAccessManager} (or {@link DataAccessManager}) can grant access by user name, or any other
+ * request property, and change its rules without notice, so with one in place the fragments are
+ * not cached at all.
+ *
+ * <p>The cache can be disabled setting the {@value #ENABLED_PROPERTY} property to false, its size
+ * can be configured with a cache specification in the {@code
+ * org.geoserver.catalog.cache.capabilitiesFragments} property, by default it holds up to 64MB of
+ * fragments.
+ */
+public class CapabilitiesFragmentCache implements CatalogListener, MeteredCache {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesFragmentCache.class);
+
+    /** Property enabling/disabling the cache, enabled by default */
+    public static final String ENABLED_PROPERTY = "org.geoserver.capabilities.fragmentCache";
+
+    /** Name of the cache, used to look up its specification */
+    public static final String CACHE_NAME = "capabilitiesFragments";
+
+    static final String DEFAULT_SPEC = "maximumWeight=67108864";
+
+    static final class Entry {
+        final CapabilitiesFragment fragment;
+
+        final Set<String> dependencies;
+
+        Entry(CapabilitiesFragment fragment, Set<String> dependencies) {
+            this.fragment = fragment;
+            this.dependencies = dependencies;
+        }
+    }
+
+    final boolean enabled;
+
+    final BoundedResourceCache<String, Entry> fragments;
+
+    /** The keys of the fragments depending on a given catalog object id */
+    final ConcurrentHashMap<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    /** Incremented on each invalidation, used to avoid caching fragments built on stale data */
+    final AtomicLong stamp = new AtomicLong();
+
+    /** Last modification of the data access rules the fragments have been built against */
+    volatile long rulesLastModified;
+
+    public CapabilitiesFragmentCache(GeoServer geoServer) {
+        this.enabled = !"false".equalsIgnoreCase(GeoServerExtensions.getProperty(ENABLED_PROPERTY));
+        CacheBuilderSpec spec = BoundedResourceCache.lookupSpec(CACHE_NAME);
+        if (spec == null) {
+            spec = CacheBuilderSpec.parse(DEFAULT_SPEC);
+        }
+        this.fragments =
+                new BoundedResourceCache<>(
+                        CACHE_NAME,
+                        spec,
+                        (k, e) -> k.length() * 2 + e.fragment.getSize(),
+                        this::unlink);
+
+        if (geoServer != null) {
+            geoServer.getCatalog().addListener(this);
+            geoServer.addListener(new ConfigurationClearer());
+        }
+    }
+
+    /**
+     * Returns true if the cache is enabled, and the visibility of the layers only depends on the
+     * user roles
+     */
+    public boolean isEnabled() {
+        return enabled && isRoleBasedSecurity();
+    }
+
+    /** True if the default, role based, resource access manager is in use */
+    boolean isRoleBasedSecurity() {
+        return GeoServerExtensions.extensions(ResourceAccessManager.class).isEmpty()
+                && GeoServerExtensions.extensions(DataAccessManager.class).isEmpty();
+    }
+
+    /**
+     * Returns the current invalidation stamp, to be grabbed before starting to build a fragment
+     * and then passed to {@link #put(String, CapabilitiesFragment, Set, long)}
+     */
+    public long getStamp() {
+        checkAccessRules();
+        return stamp.get();
+    }
+
+    /** Returns the fragment associated to the key, or null if not found */
+    public CapabilitiesFragment get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        checkAccessRules();
+        Entry entry = fragments.get(key);
+        return entry == null ? null : entry.fragment;
+    }
+
+    /**
+     * Stores a fragment in the cache. The fragment is silently dropped if the cache has been
+     * invalidated since the given stamp was taken, as it might have been built against outdated
+     * configuration.
+     *
+     * @param key The fragment key
+     * @param fragment The fragment
+     * @param dependencies The ids of the catalog objects the fragment has been built from
+     * @param stamp The value of {@link #getStamp()} before the fragment building started
+     */
+    public void put(
+            String key, CapabilitiesFragment fragment, Set<String> dependencies, long stamp) {
+        if (!isEnabled() || fragment == null || this.stamp.get() != stamp) {
+            return;
+        }
+        for (String id : dependencies) {
+            dependents.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        fragments.put(key, new Entry(fragment, dependencies));
+        // an invalidation might have happened in the meantime, be on the safe side
+        if (this.stamp.get() != stamp) {
+            fragments.remove(key);
+        }
+    }
+
+    /** Removes all the fragments built using the catalog object with the given id */
+    public void invalidate(String id) {
+        stamp.incrementAndGet();
+        Set<String> keys = dependents.remove(id);
+        if (keys != null) {
+            for (String key : keys) {
+                fragments.remove(key);
+            }
+        }
+    }
+
+    /** Removes all fragments */
+    public void clear() {
+        stamp.incrementAndGet();
+        fragments.clear();
+        dependents.clear();
+    }
+
+    /** Clears the cache if the data access rules changed since the fragments were built */
+    void checkAccessRules() {
+        DataAccessRuleDAO dao = DataAccessRuleDAO.get();
+        if (dao == null) {
+            return;
+        }
+        if (dao.isModified()) {
+            // the rules file was edited, reload it now rather than on the next access check
+            dao.getRules();
+        }
+        long lastModified = dao.getLastModified();
+        if (lastModified != rulesLastModified) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Data access rules changed, clearing capabilities fragments");
+            }
+            rulesLastModified = lastModified;
+            clear();
+        }
+    }
+
+    @Override
+    public ResourceCacheStatistics getStatistics() {
+        return fragments.getStatistics();
+    }
+
+    private void unlink(String key, Entry entry) {
+        for (String id : entry.dependencies) {
+            Set<String> keys = dependents.get(id);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Builds a request variant from the given elements, the current virtual service and the roles
+     * of the current user
+     *
+     * @param elements Other elements affecting the contents of the fragments, such as the service
+     *     version and the service URL as it would be encoded in the output
+     */
+    public static String getRequestVariant(String... elements) {
+        StringBuilder sb = new StringBuilder();
+        for (String element : elements) {
+            sb.append(element).append('|');
+        }
+        WorkspaceInfo ws = LocalWorkspace.get();
+        sb.append(ws == null ? "" : ws.getName()).append('|');
+        PublishedInfo published = LocalPublished.get();
+        sb.append(published == null ? "" : published.getName()).append('|');
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getAuthorities() != null) {
+            List<String> roles = new ArrayList<>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            sb.append(String.join(",", roles));
+        }
+        return sb.toString();
+    }
+
+    /** Returns the ids of the catalog objects used to describe the given layer or group */
+    public static Set<String> getDependencies(PublishedInfo published) {
+        Set<String> result = new LinkedHashSet<>();
+        collectDependencies(published, result);
+        return result;
+    }
+
+    /** Returns the ids of the catalog objects used to describe the given resource */
+    public static Set<String> getDependencies(ResourceInfo resource) {
+        Set<String> result = new LinkedHashSet<>();
+        collectDependencies(resource, result);
+        return result;
+    }
+
+    private static void collectDependencies(PublishedInfo published, Set<String> ids) {
+        if (published == null || !ids.add(published.getId())) {
+            return;
+        }
+        if (published instanceof LayerInfo) {
+            LayerInfo layer = (LayerInfo) published;
+            collectDependencies(layer.getResource(), ids);
+            addId(layer.getDefaultStyle(), ids);
+            if (layer.getStyles() != null) {
+                for (StyleInfo style : layer.getStyles()) {
+                    addId(style, ids);
+                }
+            }
+        } else if (published instanceof LayerGroupInfo) {
+            LayerGroupInfo group = (LayerGroupInfo) published;
+            addId(group.getWorkspace(), ids);
+            addId(group.getRootLayerStyle(), ids);
+            collectDependencies(group.getRootLayer(), ids);
+            if (group.getStyles() != null) {
+                for (StyleInfo style : group.getStyles()) {
+                    addId(style, ids);
+                }
+            }
+            if (group.getLayers() != null) {
+                for (PublishedInfo child : group.getLayers()) {
+                    collectDependencies(child, ids);
+                }
+            }
+        }
+    }
+
+    private static void collectDependencies(ResourceInfo resource, Set<String> ids) {
+        if (resource == null) {
+            return;
+        }
+        addId(resource, ids);
+        addId(resource.getNamespace(), ids);
+        StoreInfo store = resource.getStore();
+        if (store != null) {
+            addId(store, ids);
+            addId(store.getWorkspace(), ids);
+        }
+    }
+
+    private static void addId(CatalogInfo info, Set<String> ids) {
+        if (info != null && info.getId() != null) {
+            ids.add(info.getId());
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // a new object does not change the description of the existing ones
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        invalidate(event.getSource());
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        // again, fragments might have been built between the two events
+        invalidate(event.getSource());
+    }
+
+    private void invalidate(CatalogInfo source) {
+        if (source != null && source.getId() != null) {
+            invalidate(source.getId());
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    /** Clears the cache on configuration changes, which affect all fragments */
+    class ConfigurationClearer extends ConfigurationListenerAdapter {
+
+        AtomicBoolean globalChanged = new AtomicBoolean();
+
+        @Override
+        public void handleGlobalChange(
+                GeoServerInfo global,
+                List<String> propertyNames,
+                List<Object> oldValues,
+                List<Object> newValues) {
+            // the update sequence is bumped on every catalog change, but it's not part
+            // of the fragments
+            for (String name : propertyNames) {
+                if (!"updateSequence".equalsIgnoreCase(name)) {
+                    globalChanged.set(true);
+                    clear();
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void handlePostGlobalChange(GeoServerInfo global) {
+            if (globalChanged.getAndSet(false)) {
+                clear();
+            }
+        }
+
+        @Override
+        public void handleSettingsAdded(SettingsInfo settings) {
+            clear();
+        }
+
+        @Override
+        public void handleSettingsModified(
+                SettingsInfo settings,
+                List<String> propertyNames,
+                List<Object> oldValues,
+                List<Object> newValues) {
+            clear();
+        }
+
+        @Override
+        public void handleSettingsPostModified(SettingsInfo settings) {
+            clear();
+        }
+
+        @Override
+        public void handleSettingsRemoved(SettingsInfo settings) {
+            clear();
+        }
+
+        @Override
+        public void handleServiceChange(
+                ServiceInfo service,
+                List<String> propertyNames,
+                List<Object> oldValues,
+                List<Object> newValues) {
+            clear();
+        }
+
+        @Override
+        public void handlePostServiceChange(ServiceInfo service) {
+            clear();
+        }
+
+        @Override
+        public void handleServiceRemove(ServiceInfo service) {
+            clear();
+        }
+
+        @Override
+        public void reloaded() {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Configuration reloaded, clearing capabilities fragments");
+            }
+            clear();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.geoserver.ows.CapabilitiesFragment.CHARACTERS;
+import static org.geoserver.ows.CapabilitiesFragment.COMMENT;
+import static org.geoserver.ows.CapabilitiesFragment.END_ELEMENT;
+import static org.geoserver.ows.CapabilitiesFragment.END_PREFIX_MAPPING;
+import static org.geoserver.ows.CapabilitiesFragment.IGNORABLE_WHITESPACE;
+import static org.geoserver.ows.CapabilitiesFragment.START_ELEMENT;
+import static org.geoserver.ows.CapabilitiesFragment.START_PREFIX_MAPPING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * A {@link ContentHandler} wrapper that passes all events to the delegate and, when requested,
+ * records them into a {@link CapabilitiesFragment}.
+ *
+ * <p>Meant to be placed between a capabilities translator and its output handler, calling {@link
+ * #startRecording()} before a layer is encoded and {@link #stopRecording()} once its events have
+ * been sent out. Fragments are replayed with {@link #replay(CapabilitiesFragment)}.
+ */
+public class CapabilitiesFragmentRecorder implements ContentHandler, LexicalHandler {
+
+    final ContentHandler delegate;
+
+    ByteArrayOutputStream bytes;
+
+    DataOutputStream out;
+
+    boolean unsupported;
+
+    public CapabilitiesFragmentRecorder(ContentHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    /** The wrapped handler */
+    public ContentHandler getDelegate() {
+        return delegate;
+    }
+
+    /** Starts recording the events, discarding any previous unfinished recording */
+    public void startRecording() {
+        bytes = new ByteArrayOutputStream();
+        out = new DataOutputStream(bytes);
+        unsupported = false;
+    }
+
+    /** Returns true if a recording is in progress */
+    public boolean isRecording() {
+        return out != null;
+    }
+
+    /**
+     * Stops recording and returns the fragment, or null if no recording was in progress or some
+     * of the events could not be recorded
+     */
+    public CapabilitiesFragment stopRecording() {
+        if (out == null) {
+            return null;
+        }
+        CapabilitiesFragment result =
+                unsupported ? null : new CapabilitiesFragment(bytes.toByteArray());
+        cancelRecording();
+        return result;
+    }
+
+    /** Stops recording discarding the events recorded so far */
+    public void cancelRecording() {
+        bytes = null;
+        out = null;
+    }
+
+    /** Sends the fragment events to the delegate handler */
+    public void replay(CapabilitiesFragment fragment) throws SAXException {
+        fragment.replay(delegate);
+    }
+
+    private void writeString(String s) throws SAXException {
+        try {
+            if (s == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private void writeType(byte type) throws SAXException {
+        try {
+            out.writeByte(type);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private void writeInt(int value) throws SAXException {
+        try {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        delegate.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        unsupported |= out != null;
+        delegate.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        unsupported |= out != null;
+        delegate.endDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (out != null) {
+            writeType(START_PREFIX_MAPPING);
+            writeString(prefix);
+            writeString(uri);
+        }
+        delegate.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (out != null) {
+            writeType(END_PREFIX_MAPPING);
+            writeString(prefix);
+        }
+        delegate.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+        if (out != null) {
+            writeType(START_ELEMENT);
+            writeString(uri);
+            writeString(localName);
+            writeString(qName);
+            int length = atts == null ? 0 : atts.getLength();
+            writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeString(atts.getURI(i));
+                writeString(atts.getLocalName(i));
+                writeString(atts.getQName(i));
+                writeString(atts.getType(i));
+                writeString(atts.getValue(i));
+            }
+        }
+        delegate.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (out != null) {
+            writeType(END_ELEMENT);
+            writeString(uri);
+            writeString(localName);
+            writeString(qName);
+        }
+        delegate.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (out != null) {
+            writeType(CHARACTERS);
+            writeString(new String(ch, start, length));
+        }
+        delegate.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (out != null) {
+            writeType(IGNORABLE_WHITESPACE);
+            writeString(new String(ch, start, length));
+        }
+        delegate.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        unsupported |= out != null;
+        delegate.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        unsupported |= out != null;
+        delegate.skippedEntity(name);
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (out != null) {
+            writeType(COMMENT);
+            writeString(new String(ch, start, length));
+        }
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).comment(ch, start, length);
+        }
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startDTD(name, publicId, systemId);
+        }
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endDTD();
+        }
+    }
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startEntity(name);
+        }
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endEntity(name);
+        }
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        unsupported |= out != null;
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endCDATA();
+        }
+    }
+}
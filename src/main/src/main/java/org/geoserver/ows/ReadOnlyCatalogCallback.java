@@ -0,0 +1,81 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.geoserver.catalog.impl.ReadOnlyCatalogMode;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Enables the {@link ReadOnlyCatalogMode} for the OWS operations listed in the {@link
+ * #OPERATIONS_PROPERTY} property, as a comma separated list of <code>SERVICE.Operation</code> or
+ * <code>Operation</code> names, e.g. <code>
+ * -Dorg.geoserver.catalog.readOnlyOperations=WMS.GetCapabilities,WMS.GetMap,WFS.GetCapabilities
+ * </code>.
+ *
+ * <p>The mode is not enabled by default, as operations running in read only mode cannot alter the
+ * catalog objects they get, not even temporarily, and some extensions might rely on it.
+ */
+public class ReadOnlyCatalogCallback extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(ReadOnlyCatalogCallback.class);
+
+    public static final String OPERATIONS_PROPERTY = "org.geoserver.catalog.readOnlyOperations";
+
+    Set<String> operations;
+
+    public ReadOnlyCatalogCallback() {
+        this(GeoServerExtensions.getProperty(OPERATIONS_PROPERTY));
+    }
+
+    ReadOnlyCatalogCallback(String operations) {
+        if (operations == null || operations.trim().isEmpty()) {
+            this.operations = Collections.emptySet();
+        } else {
+            this.operations = new HashSet<>();
+            for (String operation : operations.split("\\s*,\\s*")) {
+                if (!operation.trim().isEmpty()) {
+                    this.operations.add(operation.trim().toUpperCase(Locale.ENGLISH));
+                }
+            }
+            LOGGER.info("Catalog read only mode enabled for operations: " + this.operations);
+        }
+    }
+
+    @Override
+    public Operation operationDispatched(Request request, Operation operation) {
+        if (!operations.isEmpty() && isReadOnly(operation)) {
+            ReadOnlyCatalogMode.enable();
+        }
+        return operation;
+    }
+
+    boolean isReadOnly(Operation operation) {
+        String name = operation.getId();
+        if (name == null) {
+            return false;
+        }
+        name = name.toUpperCase(Locale.ENGLISH);
+        if (operations.contains(name)) {
+            return true;
+        }
+        Service service = operation.getService();
+        return service != null
+                && service.getId() != null
+                && operations.contains(service.getId().toUpperCase(Locale.ENGLISH) + "." + name);
+    }
+
+    @Override
+    public void finished(Request request) {
+        ReadOnlyCatalogMode.disable();
+    }
+}
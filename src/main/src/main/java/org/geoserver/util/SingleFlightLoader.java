@@ -0,0 +1,120 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes sure that, for a given key, a single thread at a time runs an expensive load operation,
+ * with all other threads asking for the same key waiting for its result instead of loading the
+ * same resource again.
+ *
+ * <p>Loads for different keys never block each other. The load is not cached, once the value is
+ * returned the next request for the same key will run the loader again: callers are expected to
+ * check their own cache inside the loader, as in:
+ *
+ * <pre>{@code
+ * V value = cache.get(key);
+ * if (value == null) {
+ *     value = loader.load(key, () -> {
+ *         V v = cache.get(key);
+ *         if (v == null) {
+ *             v = build(key);
+ *             cache.put(key, v);
+ *         }
+ *         return v;
+ *     });
+ * }
+ * }</pre>
+ *
+ * A thread calling back into the loader for a key it's already loading runs the nested load
+ * directly, instead of deadlocking on its own result.
+ *
+ * @param <K> The key type
+ * @param <V> The loaded value type
+ */
+public class SingleFlightLoader<K, V> {
+
+    /** Loads a value, possibly failing with an {@link IOException} */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    static class Flight<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+
+        final Thread owner = Thread.currentThread();
+    }
+
+    final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the loader for the given key, or waits for the result of the load already in progress
+     * for the same key, if any.
+     *
+     * @param key The key, if null the loader is run directly without any de-duplication
+     * @param loader The loader
+     * @return The loaded value
+     * @throws IOException If the loader failed with an {@link IOException}, or the waiting thread
+     *     got interrupted
+     */
+    public V load(K key, Loader<V> loader) throws IOException {
+        if (key == null) {
+            return loader.load();
+        }
+
+        Flight<V> flight = new Flight<>();
+        Flight<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            if (existing.owner == Thread.currentThread()) {
+                // re-entrant call, waiting would result in a deadlock
+                return loader.load();
+            }
+            return await(existing.future);
+        }
+
+        try {
+            V value = loader.load();
+            flight.future.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /** Returns true if a load is in progress for the given key */
+    public boolean isLoading(K key) {
+        return key != null && flights.containsKey(key);
+    }
+
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException)
+                    new InterruptedIOException("Interrupted while waiting for resource load")
+                            .initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
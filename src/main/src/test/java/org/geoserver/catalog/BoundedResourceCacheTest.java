@@ -0,0 +1,107 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.cache.CacheBuilderSpec;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BoundedResourceCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>("test", CacheBuilderSpec.parse(""), null, null);
+        assertNull(cache.get("a"));
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+        // null keys are a miss, like in a HashMap
+        assertNull(cache.get(null));
+        assertNull(cache.remove(null));
+        assertFalse(cache.containsKey(null));
+
+        ResourceCacheStatistics stats = cache.getStatistics();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0.5, stats.getHitRatio(), 0d);
+    }
+
+    @Test
+    public void testSizeEviction() {
+        List<String> disposed = new ArrayList<>();
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>(
+                        "test",
+                        CacheBuilderSpec.parse("maximumSize=2,concurrencyLevel=1"),
+                        null,
+                        (k, v) -> disposed.add(k));
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        assertEquals(1, disposed.size());
+        assertEquals("b", disposed.get(0));
+    }
+
+    @Test
+    public void testWeightEviction() {
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>(
+                        "test",
+                        CacheBuilderSpec.parse("maximumWeight=10,concurrencyLevel=1"),
+                        (k, v) -> v.length(),
+                        null);
+        cache.put("a", "123456");
+        cache.put("b", "123456");
+
+        assertEquals(1, cache.size());
+        assertTrue(cache.containsKey("b"));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        List<String> disposed = new ArrayList<>();
+        BoundedResourceCache<String, String> cache =
+                new BoundedResourceCache<>(
+                        "test", CacheBuilderSpec.parse(""), null, (k, v) -> disposed.add(v));
+        cache.put("a", "A");
+        cache.put("a", "B");
+        // replacement is not a disposal
+        assertTrue(disposed.isEmpty());
+
+        cache.remove("a");
+        assertEquals(1, disposed.size());
+        assertEquals("B", disposed.get(0));
+        // explicit removals are not evictions
+        assertEquals(0, cache.getStatistics().getEvictionCount());
+
+        cache.put("a", "C");
+        cache.clear();
+        assertEquals(2, disposed.size());
+    }
+
+    @Test
+    public void testLoadStatistics() {
+        ResourceCacheStatistics stats = new ResourceCacheStatistics();
+        stats.recordLoad(2000000);
+        stats.recordLoad(4000000);
+        assertEquals(2, stats.getLoadCount());
+        assertEquals(6, stats.getTotalLoadTime());
+        assertEquals(3, stats.getAverageLoadTime(), 1e-9);
+    }
+}
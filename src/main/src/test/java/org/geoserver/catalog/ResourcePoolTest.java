@@ -173,6 +173,24 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertSame(ft1, ft3);
     }
 
+    @Test
+    public void testCacheStatistics() throws Exception {
+        ResourcePool pool = ResourcePool.create(getCatalog());
+        FeatureTypeInfo info =
+                getCatalog()
+                        .getFeatureTypeByName(
+                                MockData.LAKES.getNamespaceURI(), MockData.LAKES.getLocalPart());
+        pool.getFeatureType(info);
+        pool.getFeatureType(info);
+
+        ResourceCacheStatistics stats =
+                pool.getCacheStatistics().get(ResourcePool.FEATURETYPE_CACHE);
+        assertNotNull(stats);
+        assertEquals(1, stats.getLoadCount());
+        assertTrue(stats.getHitCount() >= 1);
+        assertTrue(pool.getCacheStatistics().containsKey(ResourcePool.STYLE_CACHE));
+    }
+
     @Test
     public void testAttributeCache() throws Exception {
         final Catalog catalog = getCatalog();
@@ -0,0 +1,164 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.MultiValuedFilter.MatchAction;
+
+public class CatalogInfoIndexTest {
+
+    CatalogImpl catalog;
+
+    WorkspaceInfo ws1;
+
+    WorkspaceInfo ws2;
+
+    @Before
+    public void setUp() {
+        catalog = new CatalogImpl();
+        ws1 = addWorkspace("ws1");
+        ws2 = addWorkspace("ws2");
+        addStore(ws1, "s1");
+        addStore(ws1, "s2");
+        addStore(ws2, "s3");
+    }
+
+    private WorkspaceInfo addWorkspace(String name) {
+        CatalogFactory factory = catalog.getFactory();
+        WorkspaceInfo ws = factory.createWorkspace();
+        ws.setName(name);
+        catalog.add(ws);
+        return catalog.getWorkspaceByName(name);
+    }
+
+    private void addStore(WorkspaceInfo ws, String name) {
+        DataStoreInfo store = catalog.getFactory().createDataStore();
+        store.setName(name);
+        store.setWorkspace(ws);
+        store.setEnabled(true);
+        catalog.add(store);
+    }
+
+    private <T extends StoreInfo> int count(Class<T> clazz, Filter filter) {
+        int count = 0;
+        try (CloseableIterator<T> it = catalog.list(clazz, filter)) {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testFilterKeys() {
+        CatalogInfoIndex<StoreInfo> index =
+                CatalogInfoIndex.byReference("workspace", StoreInfo::getWorkspace);
+        assertEquals("abc", index.getKey(Predicates.equal("workspace.id", "abc")));
+        assertEquals(
+                "abc",
+                index.getKey(
+                        Predicates.and(
+                                Predicates.equal("enabled", true),
+                                Predicates.equal("workspace.id", "abc"))));
+        assertEquals(
+                CatalogInfoIndex.NULL_KEY, index.getKey(Predicates.isNull("workspace.id")));
+        // cannot be answered by a single bucket
+        assertNull(
+                index.getKey(
+                        Predicates.or(
+                                Predicates.equal("enabled", true),
+                                Predicates.equal("workspace.id", "abc"))));
+        assertNull(index.getKey(Predicates.equal("workspace.name", "abc")));
+        assertNull(index.getKey(Predicates.equal("workspace.id", "abc", MatchAction.ALL)));
+    }
+
+    @Test
+    public void testStylesIndex() {
+        CatalogInfoIndex<?> index =
+                ((DefaultCatalogFacade) catalog.getFacade())
+                        .layers.getIndex(DefaultCatalogFacade.STYLE_INDEX);
+        Filter usage =
+                Predicates.or(
+                        Predicates.equal("defaultStyle.id", "abc"),
+                        Predicates.equal("styles.id", "abc", MatchAction.ANY));
+        assertEquals("abc", index.getKey(usage));
+        // null checks cannot be answered by a multi valued index
+        assertNull(index.getKey(Predicates.isNull("defaultStyle.id")));
+    }
+
+    @Test
+    public void testListByWorkspace() {
+        assertEquals(2, count(StoreInfo.class, Predicates.equal("workspace.id", ws1.getId())));
+        assertEquals(1, count(StoreInfo.class, Predicates.equal("workspace.id", ws2.getId())));
+        assertEquals(
+                2, count(DataStoreInfo.class, Predicates.equal("workspace.id", ws1.getId())));
+        assertEquals(
+                1,
+                count(
+                        StoreInfo.class,
+                        Predicates.and(
+                                Predicates.equal("workspace.id", ws1.getId()),
+                                Predicates.equal("name", "s2"))));
+
+        List<DataStoreInfo> stores = catalog.getDataStoresByWorkspace(ws1);
+        assertEquals(2, stores.size());
+        // sorted by name like a full scan would do
+        assertEquals("s1", stores.get(0).getName());
+        assertEquals("s2", stores.get(1).getName());
+    }
+
+    @Test
+    public void testUpdatesAndRemovals() {
+        DataStoreInfo store = catalog.getDataStoreByName(ws1, "s2");
+        store.setWorkspace(ws2);
+        catalog.save(store);
+
+        assertEquals(1, catalog.getDataStoresByWorkspace(ws1).size());
+        assertEquals(2, catalog.getDataStoresByWorkspace(ws2).size());
+        assertEquals(2, count(StoreInfo.class, Predicates.equal("workspace.id", ws2.getId())));
+
+        catalog.remove(catalog.getDataStoreByName(ws2, "s3"));
+        List<DataStoreInfo> stores = catalog.getDataStoresByWorkspace(ws2);
+        assertEquals(1, stores.size());
+        assertEquals("s2", stores.get(0).getName());
+    }
+
+    @Test
+    public void testStylesByWorkspace() {
+        StyleInfo global = catalog.getFactory().createStyle();
+        global.setName("global");
+        global.setFilename("global.sld");
+        catalog.add(global);
+        StyleInfo local = catalog.getFactory().createStyle();
+        local.setName("local");
+        local.setFilename("local.sld");
+        local.setWorkspace(ws1);
+        catalog.add(local);
+
+        List<StyleInfo> globals = catalog.getStylesByWorkspace(CatalogFacade.NO_WORKSPACE);
+        assertEquals(1, globals.size());
+        assertEquals("global", globals.get(0).getName());
+        List<StyleInfo> locals = catalog.getStylesByWorkspace(ws1);
+        assertEquals(1, locals.size());
+        assertEquals("local", locals.get(0).getName());
+        assertTrue(catalog.getStylesByWorkspace(ws2).isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadOnlyProxyTest {
+
+    CatalogImpl catalog;
+
+    DefaultCatalogFacade facade;
+
+    @Before
+    public void setUp() {
+        catalog = new CatalogImpl();
+        facade = (DefaultCatalogFacade) catalog.getFacade();
+        addWorkspace("ws1");
+        addWorkspace("ws2");
+    }
+
+    @After
+    public void tearDown() {
+        ReadOnlyCatalogMode.disable();
+    }
+
+    private void addWorkspace(String name) {
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setName(name);
+        catalog.add(ws);
+        NamespaceInfoImpl ns = new NamespaceInfoImpl();
+        ns.setPrefix(name);
+        ns.setURI("http://www.geoserver.org/" + name);
+        catalog.add(ns);
+    }
+
+    @Test
+    public void testReadOnlyProxies() {
+        ReadOnlyCatalogMode.enable();
+        WorkspaceInfo ws = catalog.getWorkspaceByName("ws1");
+        assertTrue(Proxy.getInvocationHandler(ws) instanceof ReadOnlyProxy);
+        assertEquals("ws1", ws.getName());
+        // shared among lookups
+        assertSame(ws, catalog.getWorkspaceByName("ws1"));
+        // the modification proxy utilities still work
+        assertTrue(ModificationProxy.unwrap(ws) instanceof WorkspaceInfoImpl);
+
+        try {
+            ws.setName("changed");
+            fail("Should not be able to modify a catalog object in read only mode");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        try {
+            ws.getMetadata().put("foo", "bar");
+            fail("Should not be able to modify a catalog object in read only mode");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertNull(ws.getMetadata().get("foo"));
+    }
+
+    @Test
+    public void testSnapshotListings() {
+        ReadOnlyCatalogMode.enable();
+        List<WorkspaceInfo> workspaces = catalog.getWorkspaces();
+        assertEquals(2, workspaces.size());
+        assertSame(workspaces, catalog.getWorkspaces());
+        try {
+            workspaces.remove(0);
+            fail("Snapshot listings should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+
+        // a write publishes a new snapshot
+        ReadOnlyCatalogMode.disable();
+        long version = facade.getVersion();
+        addWorkspace("ws3");
+        assertTrue(facade.getVersion() > version);
+
+        ReadOnlyCatalogMode.enable();
+        List<WorkspaceInfo> updated = catalog.getWorkspaces();
+        assertNotSame(workspaces, updated);
+        assertEquals(3, updated.size());
+    }
+
+    @Test
+    public void testWritesStillWork() {
+        ReadOnlyCatalogMode.enable();
+        NamespaceInfo readOnly = catalog.getNamespaceByPrefix("ws1");
+        ReadOnlyCatalogMode.disable();
+
+        NamespaceInfo ns = catalog.getNamespaceByPrefix("ws1");
+        assertTrue(Proxy.getInvocationHandler(ns) instanceof ModificationProxy);
+        assertTrue(!(Proxy.getInvocationHandler(ns) instanceof ReadOnlyProxy));
+        ns.setURI("http://www.geoserver.org/updated");
+        catalog.save(ns);
+
+        // read only proxies read through the live object
+        assertEquals("http://www.geoserver.org/updated", readOnly.getURI());
+        assertEquals(
+                "http://www.geoserver.org/updated",
+                catalog.getNamespaceByPrefix("ws1").getURI());
+    }
+
+    @Test
+    public void testModeIsThreadBound() throws Exception {
+        ReadOnlyCatalogMode.enable();
+        Catalog cat = catalog;
+        Object[] handler = new Object[1];
+        Thread t =
+                new Thread(
+                        () ->
+                                handler[0] =
+                                        Proxy.getInvocationHandler(
+                                                cat.getWorkspaceByName("ws1")));
+        t.start();
+        t.join();
+        assertTrue(!(handler[0] instanceof ReadOnlyProxy));
+    }
+}
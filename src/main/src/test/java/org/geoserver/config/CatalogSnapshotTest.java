@@ -0,0 +1,142 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.NamespaceInfoImpl;
+import org.geoserver.catalog.impl.WorkspaceInfoImpl;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerExtensionsHelper;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Files;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogSnapshotTest {
+
+    static final String PATH = "workspaces/topp/workspace.xml";
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        GeoServerExtensionsHelper.clear();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        xp.setCatalog(new CatalogImpl());
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setId("ws-id");
+        ws.setName("topp");
+
+        File file = new File(folder.getRoot(), CatalogSnapshot.SNAPSHOT_FILE);
+        try (CatalogSnapshot.Writer writer =
+                new CatalogSnapshot.Writer(new FileOutputStream(file), xp)) {
+            writer.add(PATH, 1234, ws);
+        }
+
+        CatalogSnapshot snapshot = CatalogSnapshot.open(Files.asResource(file));
+        assertNotNull(snapshot);
+        // modified since the snapshot was written
+        assertNull(snapshot.getContents(PATH, 4321));
+        // not in the snapshot
+        assertNull(snapshot.getContents("workspaces/sf/workspace.xml", 1234));
+
+        byte[] contents = snapshot.getContents(PATH, 1234);
+        assertTrue(CatalogSnapshot.isPayload(contents));
+        WorkspaceInfo read = CatalogSnapshot.load(xp, contents, WorkspaceInfo.class);
+        assertEquals("ws-id", read.getId());
+        assertEquals("topp", read.getName());
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws Exception {
+        File file = folder.newFile(CatalogSnapshot.SNAPSHOT_FILE);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write("not a snapshot".getBytes(StandardCharsets.UTF_8));
+        }
+        assertNull(CatalogSnapshot.open(Files.asResource(file)));
+    }
+
+    @Test
+    public void testXMLIsNotPayload() throws Exception {
+        assertFalse(CatalogSnapshot.isPayload("<workspace/>".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(CatalogSnapshot.isPayload(new byte[0]));
+    }
+
+    @Test
+    public void testManualEditAfterChange() throws Exception {
+        GeoServerExtensionsHelper.property(CatalogSnapshot.SNAPSHOT_PROPERTY, "true");
+        GeoServerResourceLoader resourceLoader = new GeoServerResourceLoader(folder.getRoot());
+        GeoServerExtensionsHelper.singleton(
+                "resourceLoader", resourceLoader, GeoServerResourceLoader.class);
+        DefaultGeoServerLoader loader = new DefaultGeoServerLoader(resourceLoader);
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        GeoServerImpl gs = new GeoServerImpl();
+        gs.setCatalog(catalog);
+        loader.postProcessBeforeInitialization(catalog, "catalog");
+        loader.postProcessBeforeInitialization(gs, "geoServer");
+
+        // changes written by GeoServer
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setName("topp");
+        catalog.add(ws);
+        NamespaceInfoImpl ns = new NamespaceInfoImpl();
+        ns.setPrefix("topp");
+        ns.setURI("http://www.openplans.org/topp");
+        catalog.add(ns);
+
+        // edited by hand before the delayed snapshot write
+        File nsFile = new File(folder.getRoot(), "workspaces/topp/namespace.xml");
+        String xml = FileUtils.readFileToString(nsFile, StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(
+                nsFile, xml.replace("www.openplans.org", "www.edited.org"), StandardCharsets.UTF_8);
+        assertTrue(nsFile.setLastModified(nsFile.lastModified() + 10000));
+
+        // the reload writes the snapshot, then loads from it
+        loader.reload();
+        NamespaceInfo reloaded = catalog.getNamespaceByPrefix("topp");
+        assertEquals("http://www.edited.org/topp", reloaded.getURI());
+        assertNotNull(catalog.getWorkspaceByName("topp"));
+
+        // once reloaded, the edited namespace goes in the snapshot as well
+        loader.snapshotWriter.write();
+        CatalogSnapshot snapshot =
+                CatalogSnapshot.open(resourceLoader.get(CatalogSnapshot.SNAPSHOT_FILE));
+        assertNotNull(snapshot);
+        try {
+            File wsFile = new File(folder.getRoot(), PATH);
+            assertNotNull(snapshot.getContents(PATH, wsFile.lastModified()));
+            byte[] contents =
+                    snapshot.getContents("workspaces/topp/namespace.xml", nsFile.lastModified());
+            assertNotNull(contents);
+            XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+            xp.setCatalog(catalog);
+            NamespaceInfo read = CatalogSnapshot.load(xp, contents, NamespaceInfo.class);
+            assertEquals("http://www.edited.org/topp", read.getURI());
+        } finally {
+            snapshot.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import org.geoserver.platform.GeoServerExtensionsHelper.ExtensionsHelperRule;
+import org.geoserver.security.ResourceAccessManager;
+import org.geoserver.security.impl.DataAccessRuleDAO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class CapabilitiesFragmentCacheTest {
+
+    @Rule public ExtensionsHelperRule extensions = new ExtensionsHelperRule();
+
+    private CapabilitiesFragment record(CapabilitiesFragmentRecorder recorder, String name)
+            throws SAXException {
+        recorder.startRecording();
+        AttributesImpl atts = new AttributesImpl();
+        atts.addAttribute("", "queryable", "queryable", "CDATA", "1");
+        recorder.startElement("", "Layer", "Layer", atts);
+        recorder.startElement("", "Name", "Name", new AttributesImpl());
+        char[] chars = name.toCharArray();
+        recorder.characters(chars, 0, chars.length);
+        recorder.endElement("", "Name", "Name");
+        recorder.endElement("", "Layer", "Layer");
+        return recorder.stopRecording();
+    }
+
+    @Test
+    public void testRecordReplay() throws Exception {
+        StringWriter recorded = new StringWriter();
+        CapabilitiesFragmentRecorder recorder = new CapabilitiesFragmentRecorder(handler(recorded));
+        recorder.startDocument();
+        CapabilitiesFragment fragment = record(recorder, "topp:states");
+        recorder.endDocument();
+        assertNotNull(fragment);
+
+        StringWriter replayed = new StringWriter();
+        TransformerHandler handler = handler(replayed);
+        handler.startDocument();
+        fragment.replay(handler);
+        handler.endDocument();
+        assertEquals(recorded.toString(), replayed.toString());
+    }
+
+    @Test
+    public void testUnsupportedEvents() throws Exception {
+        CapabilitiesFragmentRecorder recorder =
+                new CapabilitiesFragmentRecorder(new DefaultHandler());
+        recorder.startRecording();
+        recorder.processingInstruction("target", "data");
+        assertNull(recorder.stopRecording());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        CapabilitiesFragmentCache cache = new CapabilitiesFragmentCache(null);
+        CapabilitiesFragment fragment =
+                record(new CapabilitiesFragmentRecorder(new DefaultHandler()), "a");
+        cache.put("k1", fragment, new HashSet<>(Arrays.asList("l1", "s1")), cache.getStamp());
+        cache.put("k2", fragment, new HashSet<>(Arrays.asList("l2", "s1")), cache.getStamp());
+        cache.put("k3", fragment, new HashSet<>(Arrays.asList("l3")), cache.getStamp());
+        assertSame(fragment, cache.get("k1"));
+
+        cache.invalidate("s1");
+        assertNull(cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertSame(fragment, cache.get("k3"));
+
+        cache.clear();
+        assertNull(cache.get("k3"));
+    }
+
+    @Test
+    public void testStaleFragment() throws Exception {
+        CapabilitiesFragmentCache cache = new CapabilitiesFragmentCache(null);
+        CapabilitiesFragment fragment =
+                record(new CapabilitiesFragmentRecorder(new DefaultHandler()), "a");
+        long stamp = cache.getStamp();
+        // configuration changed while the fragment was being built
+        cache.invalidate("other");
+        cache.put("k1", fragment, new HashSet<>(Arrays.asList("l1")), stamp);
+        assertNull(cache.get("k1"));
+    }
+
+    @Test
+    public void testAccessRulesChange() throws Exception {
+        DataAccessRuleDAO dao = createNiceMock(DataAccessRuleDAO.class);
+        expect(dao.getLastModified()).andReturn(1L).times(2);
+        expect(dao.getLastModified()).andReturn(2L).anyTimes();
+        replay(dao);
+        extensions.singleton("accessRulesDao", dao, DataAccessRuleDAO.class);
+
+        CapabilitiesFragmentCache cache = new CapabilitiesFragmentCache(null);
+        CapabilitiesFragment fragment =
+                record(new CapabilitiesFragmentRecorder(new DefaultHandler()), "a");
+        cache.put("k1", fragment, new HashSet<>(Arrays.asList("l1")), cache.getStamp());
+        assertSame(fragment, cache.get("k1"));
+        // the rules changed, the fragments might show layers that are now hidden
+        assertNull(cache.get("k1"));
+    }
+
+    @Test
+    public void testCustomAccessManager() throws Exception {
+        CapabilitiesFragmentCache cache = new CapabilitiesFragmentCache(null);
+        assertTrue(cache.isEnabled());
+
+        // access might depend on the user name, or anything else
+        ResourceAccessManager manager = createNiceMock(ResourceAccessManager.class);
+        extensions.singleton("customAccessManager", manager, ResourceAccessManager.class);
+        assertFalse(cache.isEnabled());
+        CapabilitiesFragment fragment =
+                record(new CapabilitiesFragmentRecorder(new DefaultHandler()), "a");
+        cache.put("k1", fragment, new HashSet<>(Arrays.asList("l1")), cache.getStamp());
+        assertNull(cache.get("k1"));
+    }
+
+    private TransformerHandler handler(StringWriter writer) throws Exception {
+        SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+        TransformerHandler handler = factory.newTransformerHandler();
+        handler.setResult(new StreamResult(writer));
+        return handler;
+    }
+}
@@ -0,0 +1,115 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightLoaderTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentLoadsRunOnce() throws Exception {
+        SingleFlightLoader<String, Object> loader = new SingleFlightLoader<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Object value = new Object();
+
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(
+                    executor.submit(
+                            () ->
+                                    loader.load(
+                                            "key",
+                                            () -> {
+                                                loads.incrementAndGet();
+                                                try {
+                                                    release.await();
+                                                } catch (InterruptedException e) {
+                                                    throw new IOException(e);
+                                                }
+                                                return value;
+                                            })));
+        }
+        // give all threads a chance to pile up on the same key
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<Object> future : futures) {
+            assertSame(value, future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertFalse(loader.isLoading("key"));
+    }
+
+    @Test
+    public void testDifferentKeysDoNotBlock() throws Exception {
+        SingleFlightLoader<String, String> loader = new SingleFlightLoader<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked =
+                executor.submit(
+                        () ->
+                                loader.load(
+                                        "a",
+                                        () -> {
+                                            try {
+                                                release.await();
+                                            } catch (InterruptedException e) {
+                                                throw new IOException(e);
+                                            }
+                                            return "A";
+                                        }));
+        // a load on another key completes while the first one is still running
+        Future<String> other = executor.submit(() -> loader.load("b", () -> "B"));
+        assertEquals("B", other.get(10, TimeUnit.SECONDS));
+        assertFalse(blocked.isDone());
+        release.countDown();
+        assertEquals("A", blocked.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailurePropagatesAndIsNotCached() throws Exception {
+        SingleFlightLoader<String, String> loader = new SingleFlightLoader<>();
+        try {
+            loader.load(
+                    "key",
+                    () -> {
+                        throw new IOException("failed");
+                    });
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals("value", loader.load("key", () -> "value"));
+    }
+
+    @Test
+    public void testReentrantLoad() throws Exception {
+        SingleFlightLoader<String, String> loader = new SingleFlightLoader<>();
+        String value = loader.load("key", () -> loader.load("key", () -> "inner") + "-outer");
+        assertEquals("inner-outer", value);
+    }
+}
@@ -179,6 +179,20 @@ public class FileSystemResourceStore implements ResourceStore {
             return lockProvider.acquire(path);
         }
 
+        /** Acquires a shared lock if the lock provider supports them, an exclusive one otherwise */
+        Lock sharedLock() {
+            if (lockProvider instanceof ReadWriteLockProvider) {
+                return ((ReadWriteLockProvider) lockProvider).acquireShared(path);
+            }
+            return lockProvider.acquire(path);
+        }
+
+        /** Returns true if the lock provider supports shared locks, rather than exclusive only */
+        boolean sharedLocksSupported() {
+            return lockProvider instanceof ReadWriteLockProvider
+                    && ((ReadWriteLockProvider) lockProvider).supportsSharedLocks();
+        }
+
         @Override
         public void addListener(ResourceListener listener) {
             getResourceNotificationDispatcher().addListener(path, listener);
@@ -195,7 +209,8 @@ public class FileSystemResourceStore implements ResourceStore {
             if (!actualFile.exists()) {
                 throw new IllegalStateException("File not found " + actualFile);
             }
-            final Lock lock = lock();
+            // readers only exclude writers
+            final Lock lock = sharedLock();
             final Throwable tracer;
             if (TRACE_ENABLED) {
                 tracer = new Exception();
@@ -521,7 +536,16 @@ public class FileSystemResourceStore implements ResourceStore {
 
         @Override
         public byte[] getContents() throws IOException {
-            return java.nio.file.Files.readAllBytes(file.toPath());
+            if (!sharedLocksSupported()) {
+                // an exclusive lock would serialize all the readers, read without locking instead
+                return java.nio.file.Files.readAllBytes(file.toPath());
+            }
+            Lock lock = sharedLock();
+            try {
+                return java.nio.file.Files.readAllBytes(file.toPath());
+            } finally {
+                lock.release();
+            }
         }
 
         @Override
@@ -564,7 +588,7 @@ public class FileSystemResourceStore implements ResourceStore {
     public ResourceNotificationDispatcher getResourceNotificationDispatcher() {
         if (watcher == null) {
             watcher =
-                    new FileSystemWatcher(
+                    FileSystemWatcher.create(
                             new FileSystemWatcher.FileExtractor() {
 
                                 @Override
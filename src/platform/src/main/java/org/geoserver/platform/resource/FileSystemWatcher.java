@@ -6,6 +6,7 @@
 package org.geoserver.platform.resource;
 
 import java.io.File;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,9 +25,9 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 /**
  * Active object (using a ScheduledExecutorService) used to watch file system for changes.
  *
- * <p>This implementation currently polls the file system and should be updated with Java 7
- * WatchService when available. The internal design is similar to WatchService, WatchKey and
- * WatchEvent in order to facilitate this transition.
+ * <p>This implementation polls the file system, see {@link WatchServiceWatcher} for an event driven
+ * implementation checking each watch only when the file system reports a change. Use {@link
+ * #create(FileExtractor)} to get the most efficient implementation available.
  *
  * <p>This implementation makes a few concessions to being associated with ResourceStore, reporting
  * changes with resource paths rather than files.
@@ -35,6 +36,9 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
  */
 public class FileSystemWatcher implements ResourceNotificationDispatcher, DisposableBean {
 
+    /** System property forcing polling, even if native file system events are available */
+    static final String GS_WATCHER_POLLING = "GS_WATCHER_POLLING";
+
     interface FileExtractor {
         public File getFile(String path);
     }
@@ -87,7 +91,7 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
     }
 
     /** Record of a ResourceListener that wishes to be notified of changes to a path. */
-    private class Watch implements Comparable<Watch> {
+    class Watch implements Comparable<Watch> {
         /** File being watched */
         final File file;
 
@@ -275,7 +279,7 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         }
     }
 
-    private ScheduledExecutorService pool;
+    ScheduledExecutorService pool;
 
     private FileExtractor fileExtractor;
 
@@ -294,56 +298,39 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
                 public void run() {
                     long now = System.currentTimeMillis();
                     for (Watch watch : watchers) {
-                        if (watch.getListeners().isEmpty()) {
-                            watchers.remove(watch);
-                            continue;
-                        }
-                        Delta delta = watch.changed(now);
-                        if (delta != null) {
-
-                            /** Created based on created/removed/modified files */
-                            List<ResourceNotification.Event> events =
-                                    ResourceNotification.delta(
-                                            watch.file,
-                                            delta.created,
-                                            delta.removed,
-                                            delta.modified);
-
-                            ResourceNotification notify =
-                                    new ResourceNotification(
-                                            watch.getPath(), delta.kind, watch.last, events);
-
-                            for (ResourceListener listener : watch.getListeners()) {
-                                try {
-                                    listener.changed(notify);
-                                } catch (Throwable t) {
-                                    Logger logger =
-                                            Logger.getLogger(
-                                                    listener.getClass().getPackage().getName());
-                                    logger.log(
-                                            Level.FINE,
-                                            "Unable to notify " + watch + ":" + t.getMessage(),
-                                            t);
-                                }
-                            }
-                        }
+                        check(watch, now);
                     }
                 }
             };
 
     private ScheduledFuture<?> monitor;
 
-    private TimeUnit unit = TimeUnit.SECONDS;
+    TimeUnit unit = TimeUnit.SECONDS;
 
-    private long delay = 10;
+    long delay = 10;
 
-    private static CustomizableThreadFactory tFactory;
+    static CustomizableThreadFactory tFactory;
 
     static {
         tFactory = new CustomizableThreadFactory("FileSystemWatcher-");
         tFactory.setDaemon(true);
     }
 
+    /**
+     * Creates the watcher used to track file changes, using native file system events when
+     * available, and polling otherwise (or if the {@link #GS_WATCHER_POLLING} system property is
+     * set to true).
+     */
+    static FileSystemWatcher create(FileExtractor fileExtractor) {
+        if (!Boolean.getBoolean(GS_WATCHER_POLLING)) {
+            WatchService service = WatchServiceWatcher.newNativeWatchService();
+            if (service != null) {
+                return new WatchServiceWatcher(fileExtractor, service);
+            }
+        }
+        return new FileSystemWatcher(fileExtractor);
+    }
+
     /**
      * FileSystemWatcher used to track file changes.
      *
@@ -364,6 +351,39 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
                 });
     }
 
+    /**
+     * Checks the watch for changes, notifying its listeners if any
+     *
+     * @param watch the watch to check
+     * @param now the check time
+     */
+    void check(Watch watch, long now) {
+        if (watch.getListeners().isEmpty()) {
+            watchers.remove(watch);
+            return;
+        }
+        Delta delta = watch.changed(now);
+        if (delta != null) {
+
+            /** Created based on created/removed/modified files */
+            List<ResourceNotification.Event> events =
+                    ResourceNotification.delta(
+                            watch.file, delta.created, delta.removed, delta.modified);
+
+            ResourceNotification notify =
+                    new ResourceNotification(watch.getPath(), delta.kind, watch.last, events);
+
+            for (ResourceListener listener : watch.getListeners()) {
+                try {
+                    listener.changed(notify);
+                } catch (Throwable t) {
+                    Logger logger = Logger.getLogger(listener.getClass().getPackage().getName());
+                    logger.log(Level.FINE, "Unable to notify " + watch + ":" + t.getMessage(), t);
+                }
+            }
+        }
+    }
+
     private Watch watch(File file, String path) {
         if (file == null || path == null) {
             return null;
@@ -388,9 +408,7 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
         if (watch == null) {
             watch = new Watch(file, path);
             watchers.add(watch);
-            if (monitor == null) {
-                monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
-            }
+            watchAdded(watch);
         }
         watch.addListener(listener);
     }
@@ -411,15 +429,27 @@ public class FileSystemWatcher implements ResourceNotificationDispatcher, Dispos
                 removed = watchers.remove(watch);
             }
         }
-        if (removed && watchers.isEmpty()) {
-            if (monitor != null) {
-                monitor.cancel(false); // stop watching nobody is looking
-                monitor = null;
-            }
+        if (removed) {
+            watchRemoved(watch);
         }
         return removed;
     }
 
+    /** Called when a new watch is added, starts polling if not already running */
+    void watchAdded(Watch watch) {
+        if (monitor == null) {
+            monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
+        }
+    }
+
+    /** Called when a watch is removed, stops polling if there is nothing left to watch */
+    void watchRemoved(Watch watch) {
+        if (watchers.isEmpty() && monitor != null) {
+            monitor.cancel(false); // stop watching nobody is looking
+            monitor = null;
+        }
+    }
+
     /**
      * To allow test cases to set a shorter delay for testing.
      *
@@ -17,7 +17,7 @@ import org.geoserver.platform.resource.Resource.Lock;
  * @author Andrea Aime - GeoSolutions
  * @author Jody Garnett (Boundless)
  */
-public class GlobalLockProvider implements LockProvider {
+public class GlobalLockProvider implements ReadWriteLockProvider {
 
     LockProvider delegate = new NullLockProvider();
 
@@ -47,6 +47,25 @@ public class GlobalLockProvider implements LockProvider {
         return delegate.acquire(path);
     }
 
+    /**
+     * Acquires a shared lock if the delegate supports them, an exclusive one otherwise
+     *
+     * @param path Resource path used as lock key
+     */
+    @Override
+    public Lock acquireShared(String path) {
+        if (delegate instanceof ReadWriteLockProvider) {
+            return ((ReadWriteLockProvider) delegate).acquireShared(path);
+        }
+        return delegate.acquire(path);
+    }
+
+    @Override
+    public boolean supportsSharedLocks() {
+        return delegate instanceof ReadWriteLockProvider
+                && ((ReadWriteLockProvider) delegate).supportsSharedLocks();
+    }
+
     @Override
     public String toString() {
         if (delegate instanceof NullLockProvider) {
@@ -0,0 +1,311 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in memory lock provider with shared and exclusive locks, aware of the path hierarchy.
+ *
+ * <p>A lock on a path covers the whole subtree below it, e.g., an exclusive lock on {@code
+ * workspaces/topp} blocks both readers and writers of {@code workspaces/topp/states/layer.xml}, and
+ * the other way around. This is implemented with multiple granularity locking: locking a path also
+ * places an intention lock on each of its ancestors, which does not conflict with other intention
+ * locks, so that unrelated paths sharing an ancestor are not serialized. The root (empty path) is
+ * not considered an ancestor, to avoid having every acquisition go through the same stripe.
+ *
+ * <p>Paths are hashed onto a fixed number of lock stripes, the locks are reentrant on a per stripe
+ * basis, and the count of acquisitions, contended acquisitions and time spent waiting is tracked
+ * for each stripe, see {@link #getStatistics()}.
+ */
+public class HierarchicalLockProvider implements ReadWriteLockProvider {
+
+    /** Lock modes, in order of strength */
+    enum Mode {
+        /** Intention shared, a descendant is locked in shared mode */
+        IS,
+        /** Intention exclusive, a descendant is locked in exclusive mode */
+        IX,
+        /** Shared */
+        S,
+        /** Exclusive */
+        X;
+
+        boolean compatible(Mode other) {
+            switch (this) {
+                case IS:
+                    return other != X;
+                case IX:
+                    return other == IS || other == IX;
+                case S:
+                    return other == IS || other == S;
+                default:
+                    return false;
+            }
+        }
+
+        /** The weakest mode covering both this and the other */
+        Mode join(Mode other) {
+            if (this == other || other == IS) {
+                return this;
+            } else if (this == IS) {
+                return other;
+            } else {
+                // IX + S would be SIX, X is a close enough approximation
+                return X;
+            }
+        }
+
+        /** The mode to be used on the ancestors of a path locked in this mode */
+        Mode intention() {
+            return this == X || this == IX ? IX : IS;
+        }
+    }
+
+    /** Usage statistics of a lock stripe */
+    public static class StripeStatistics {
+        final int stripe;
+
+        final long acquisitions;
+
+        final long contended;
+
+        final long waitNanos;
+
+        StripeStatistics(int stripe, long acquisitions, long contended, long waitNanos) {
+            this.stripe = stripe;
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.waitNanos = waitNanos;
+        }
+
+        /** The stripe index */
+        public int getStripe() {
+            return stripe;
+        }
+
+        /** Number of times the stripe was locked */
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        /** Number of times a thread had to wait to lock the stripe */
+        public long getContended() {
+            return contended;
+        }
+
+        /** Total time spent waiting to lock the stripe, in nanoseconds */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Stripe "
+                    + stripe
+                    + " [acquisitions="
+                    + acquisitions
+                    + ", contended="
+                    + contended
+                    + ", waitNanos="
+                    + waitNanos
+                    + "]";
+        }
+    }
+
+    /** A lock stripe, tracking the modes held by each thread */
+    static final class Stripe {
+
+        final int[] held = new int[Mode.values().length];
+
+        final Map<Thread, int[]> owners = new HashMap<>();
+
+        long acquisitions;
+
+        long contended;
+
+        long waitNanos;
+
+        synchronized void lock(Mode mode, Thread owner) {
+            acquisitions++;
+            int[] own = owners.get(owner);
+            if (!available(mode, own)) {
+                contended++;
+                long start = System.nanoTime();
+                boolean interrupted = false;
+                while (!available(mode, own)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // like Lock.lock(), keep waiting, but preserve the interrupt
+                        interrupted = true;
+                    }
+                }
+                waitNanos += System.nanoTime() - start;
+                if (interrupted) {
+                    owner.interrupt();
+                }
+            }
+            if (own == null) {
+                own = new int[held.length];
+                owners.put(owner, own);
+            }
+            own[mode.ordinal()]++;
+            held[mode.ordinal()]++;
+        }
+
+        synchronized void unlock(Mode mode, Thread owner) {
+            int[] own = owners.get(owner);
+            if (own == null || own[mode.ordinal()] == 0) {
+                throw new IllegalStateException("Lock " + mode + " not held by " + owner);
+            }
+            own[mode.ordinal()]--;
+            held[mode.ordinal()]--;
+            boolean empty = true;
+            for (int count : own) {
+                empty &= count == 0;
+            }
+            if (empty) {
+                owners.remove(owner);
+            }
+            notifyAll();
+        }
+
+        /** Checks the mode is compatible with the ones held by the other threads */
+        private boolean available(Mode mode, int[] own) {
+            for (Mode other : Mode.values()) {
+                int count = held[other.ordinal()] - (own != null ? own[other.ordinal()] : 0);
+                if (count > 0 && !mode.compatible(other)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        synchronized StripeStatistics statistics(int index) {
+            return new StripeStatistics(index, acquisitions, contended, waitNanos);
+        }
+    }
+
+    final Stripe[] stripes;
+
+    final int mask;
+
+    public HierarchicalLockProvider() {
+        this(1024);
+    }
+
+    /** @param concurrency The number of stripes, rounded up to the next power of two */
+    public HierarchicalLockProvider(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        int size = Integer.highestOneBit(concurrency);
+        if (size < concurrency) {
+            size <<= 1;
+        }
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public Resource.Lock acquire(String path) {
+        return lock(path, Mode.X);
+    }
+
+    @Override
+    public Resource.Lock acquireShared(String path) {
+        return lock(path, Mode.S);
+    }
+
+    Resource.Lock lock(final String path, final Mode mode) {
+        // the stripes to lock, sorted by index to avoid deadlocks among concurrent acquisitions
+        final TreeMap<Integer, Mode> plan = new TreeMap<>();
+        StringBuilder ancestor = new StringBuilder();
+        String[] names = path.split("/");
+        int last = names.length - 1;
+        while (last >= 0 && names[last].isEmpty()) {
+            last--;
+        }
+        for (int i = 0; i <= last; i++) {
+            if (names[i].isEmpty()) {
+                continue;
+            }
+            if (ancestor.length() > 0) {
+                ancestor.append('/');
+            }
+            ancestor.append(names[i]);
+            Mode required = i == last ? mode : mode.intention();
+            plan.merge(getIndex(ancestor.toString()), required, Mode::join);
+        }
+        if (plan.isEmpty()) {
+            // the root
+            plan.put(getIndex(""), mode);
+        }
+
+        final Thread owner = Thread.currentThread();
+        for (Map.Entry<Integer, Mode> entry : plan.entrySet()) {
+            stripes[entry.getKey()].lock(entry.getValue(), owner);
+        }
+        return new Resource.Lock() {
+
+            boolean released = false;
+
+            public void release() {
+                if (!released) {
+                    released = true;
+                    for (Map.Entry<Integer, Mode> entry : plan.descendingMap().entrySet()) {
+                        stripes[entry.getKey()].unlock(entry.getValue(), owner);
+                    }
+                }
+            }
+
+            public String toString() {
+                return "HierarchicalLock " + mode + " " + path;
+            }
+        };
+    }
+
+    int getIndex(String path) {
+        // the String hash has poor low bits for similar paths, spread them with the
+        // murmur3 finalizer, a lot cheaper than a cryptographic digest
+        int h = path.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    /** Returns the usage statistics of the stripes that have been locked at least once */
+    public List<StripeStatistics> getStatistics() {
+        List<StripeStatistics> result = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            StripeStatistics statistics = stripes[i].statistics(i);
+            if (statistics.acquisitions > 0) {
+                result.add(statistics);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of lock stripes */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "HierarchicalLockProvider";
+    }
+}
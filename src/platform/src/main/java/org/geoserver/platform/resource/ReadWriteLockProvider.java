@@ -0,0 +1,31 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+/**
+ * A {@link LockProvider} also supporting shared locks, allowing concurrent readers of the same
+ * resource while still excluding the writers.
+ *
+ * <p>Shared locks should not be upgraded: a thread holding a shared lock and asking for an
+ * exclusive one on the same path may deadlock against another thread doing the same.
+ */
+public interface ReadWriteLockProvider extends LockProvider {
+
+    /**
+     * Acquires a shared lock (using resource path as key). Shared locks on the same path can be
+     * held by many threads at the same time, but not while an exclusive lock is held.
+     *
+     * @param path Resource path used as lock key
+     */
+    public Resource.Lock acquireShared(String path);
+
+    /**
+     * Returns true if {@link #acquireShared(String)} returns actual shared locks, false if it falls
+     * back on exclusive ones
+     */
+    public default boolean supportsSharedLocks() {
+        return true;
+    }
+}
@@ -0,0 +1,235 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Event driven {@link FileSystemWatcher}, checking a watch only when the file system reports a
+ * change that may affect it, instead of polling all watches on a timer.
+ *
+ * <p>For each watch the directory containing the watched file is registered with a {@link
+ * WatchService}, along with the watched file itself when it is a directory. When the containing
+ * directory does not exist yet the nearest existing ancestor is registered instead, and the
+ * registration moves down the tree as the missing directories are created.
+ *
+ * <p>Events are coalesced: the affected watches are collected and checked once after a short delay
+ * (see {@link #schedule(long, TimeUnit)}), so that a burst of changes (e.g., a directory being
+ * copied) results in a single notification per watch. The notification contents are computed by
+ * the same {@link Watch#changed(long)} logic used when polling.
+ */
+class WatchServiceWatcher extends FileSystemWatcher {
+
+    static final Logger LOGGER = Logging.getLogger(WatchServiceWatcher.class);
+
+    /** Default delay, in milliseconds, used to coalesce the events of a burst of changes */
+    static final long COALESCE_DELAY = 100;
+
+    final WatchService service;
+
+    /** The registered directories */
+    final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+    /** The watches to be checked at the next flush */
+    final Set<Watch> dirty = ConcurrentHashMap.newKeySet();
+
+    final AtomicBoolean flushPending = new AtomicBoolean();
+
+    final Thread dispatcher;
+
+    volatile boolean closed;
+
+    WatchServiceWatcher(FileExtractor fileExtractor, WatchService service) {
+        super(fileExtractor);
+        this.service = service;
+        schedule(COALESCE_DELAY, TimeUnit.MILLISECONDS);
+        this.dispatcher = tFactory.newThread(this::dispatch);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Returns a new WatchService backed by native file system events, or null if the platform does
+     * not provide one
+     */
+    static WatchService newNativeWatchService() {
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            // on platforms without native events the JDK falls back on a polling implementation,
+            // with a fixed 10 seconds interval and no directory contents delta
+            if (service.getClass().getSimpleName().startsWith("Polling")) {
+                service.close();
+                return null;
+            }
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(Level.FINE, "Native file system events not available, will poll", e);
+            return null;
+        }
+    }
+
+    @Override
+    void watchAdded(Watch watch) {
+        register(watch);
+        // catch changes happened before the registration
+        markDirty(watch);
+    }
+
+    @Override
+    void watchRemoved(Watch watch) {
+        dirty.remove(watch);
+        Set<Path> required = new HashSet<>();
+        for (Watch w : watchers) {
+            required.addAll(directories(w));
+        }
+        for (Iterator<Map.Entry<Path, WatchKey>> it = keys.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, WatchKey> entry = it.next();
+            if (!required.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /** Returns the directories to be registered in order to track changes to the watch */
+    List<Path> directories(Watch watch) {
+        List<Path> result = new ArrayList<>(2);
+        Path path = path(watch);
+        if (path.toFile().isDirectory()) {
+            result.add(path);
+        }
+        Path parent = path.getParent();
+        while (parent != null && !parent.toFile().isDirectory()) {
+            parent = parent.getParent();
+        }
+        if (parent != null) {
+            result.add(parent);
+        }
+        return result;
+    }
+
+    private synchronized void register(Watch watch) {
+        for (Path directory : directories(watch)) {
+            keys.computeIfAbsent(
+                    directory,
+                    d -> {
+                        try {
+                            return d.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                        } catch (IOException | ClosedWatchServiceException e) {
+                            LOGGER.log(Level.FINE, "Unable to watch " + d, e);
+                            return null;
+                        }
+                    });
+        }
+    }
+
+    private static Path path(Watch watch) {
+        return watch.file.toPath().toAbsolutePath();
+    }
+
+    /** Dispatcher thread loop, collects the watches affected by each file system event */
+    private void dispatch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // events have been lost, check everything
+                    dirty.addAll(watchers);
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                boolean created = event.kind() == ENTRY_CREATE && child.toFile().isDirectory();
+                for (Watch watch : watchers) {
+                    Path path = path(watch);
+                    if (path.equals(directory) || path.startsWith(child)) {
+                        dirty.add(watch);
+                        if (created) {
+                            // move the registration down to the newly created directory
+                            register(watch);
+                        }
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // directory removed, fall back on the nearest existing ancestor
+                keys.remove(directory, key);
+                for (Watch watch : watchers) {
+                    if (path(watch).startsWith(directory)) {
+                        register(watch);
+                        dirty.add(watch);
+                    }
+                }
+            }
+            scheduleFlush();
+        }
+    }
+
+    private void markDirty(Watch watch) {
+        dirty.add(watch);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!closed && !dirty.isEmpty() && flushPending.compareAndSet(false, true)) {
+            try {
+                pool.schedule(this::flush, delay, unit);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                flushPending.set(false);
+            }
+        }
+    }
+
+    /** Checks the watches affected by the events received since the last flush */
+    private void flush() {
+        flushPending.set(false);
+        long now = System.currentTimeMillis();
+        for (Iterator<Watch> it = dirty.iterator(); it.hasNext(); ) {
+            Watch watch = it.next();
+            it.remove();
+            check(watch, now);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        closed = true;
+        try {
+            service.close();
+        } finally {
+            dispatcher.interrupt();
+            super.destroy();
+        }
+    }
+}
@@ -5,9 +5,15 @@
 package org.geoserver.platform.resource;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -70,6 +76,61 @@ public class FileSystemResourceStoreTest {
         assertEquals(newName, folder.getRoot().list()[0]);
     }
 
+    @Test
+    public void concurrentReaders() throws Exception {
+        folder.newFile("FileA");
+        FileSystemResourceStore store = new FileSystemResourceStore(folder.getRoot());
+        store.setLockProvider(new HierarchicalLockProvider());
+        Resource resource = store.get("FileA");
+        resource.setContents("contents".getBytes());
+
+        try (InputStream in = resource.in()) {
+            // another reader gets in, while a writer has to wait
+            assertTrue(inOtherThread(() -> resource.in().close()));
+            assertTrue(inOtherThread(() -> resource.getContents()));
+            assertFalse(inOtherThread(() -> resource.lock().release()));
+        }
+    }
+
+    @Test
+    public void contentsWithoutSharedLocks() throws Exception {
+        folder.newFile("FileA");
+        FileSystemResourceStore store = new FileSystemResourceStore(folder.getRoot());
+        GlobalLockProvider lockProvider = new GlobalLockProvider();
+        lockProvider.setDelegate(new MemoryLockProvider());
+        store.setLockProvider(lockProvider);
+        Resource resource = store.get("FileA");
+        resource.setContents("contents".getBytes());
+
+        // exclusive locks only, reading the contents does not lock at all
+        assertFalse(lockProvider.supportsSharedLocks());
+        Resource.Lock lock = resource.lock();
+        try {
+            assertTrue(inOtherThread(() -> resource.getContents()));
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Runs the action in another thread, returns true if it completed in a short time */
+    private boolean inOtherThread(Callable<?> action) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread t =
+                new Thread(
+                        () -> {
+                            try {
+                                action.call();
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            } finally {
+                                done.countDown();
+                            }
+                        });
+        t.setDaemon(true);
+        t.start();
+        return done.await(500, TimeUnit.MILLISECONDS);
+    }
+
     private void attemptRenameDir(String oldName, String newName) throws IOException {
         File toBeRenamed = folder.newFolder(oldName);
         attemptRename(oldName, newName);
@@ -0,0 +1,163 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.geoserver.platform.resource.HierarchicalLockProvider.StripeStatistics;
+import org.junit.Test;
+
+public class HierarchicalLockProviderTest {
+
+    HierarchicalLockProvider provider = new HierarchicalLockProvider(4096);
+
+    /** Tries to lock from another thread, returns true if the lock was obtained in a short time */
+    boolean canLock(Function<String, Resource.Lock> locker, String path) throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread t =
+                new Thread(
+                        () -> {
+                            Resource.Lock lock = locker.apply(path);
+                            locked.countDown();
+                            lock.release();
+                            done.countDown();
+                        });
+        t.setDaemon(true);
+        t.start();
+        boolean result = locked.await(100, TimeUnit.MILLISECONDS);
+        if (!result) {
+            // the thread is still waiting, let the test release and join it later
+            pending.add(done);
+        }
+        return result;
+    }
+
+    Set<CountDownLatch> pending = new HashSet<>();
+
+    void awaitPending() throws Exception {
+        for (CountDownLatch latch : pending) {
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testSharedLocks() throws Exception {
+        Resource.Lock shared = provider.acquireShared("styles/point.sld");
+        assertTrue(canLock(provider::acquireShared, "styles/point.sld"));
+        assertFalse(canLock(provider::acquire, "styles/point.sld"));
+        shared.release();
+        awaitPending();
+
+        Resource.Lock exclusive = provider.acquire("styles/point.sld");
+        assertFalse(canLock(provider::acquireShared, "styles/point.sld"));
+        exclusive.release();
+        awaitPending();
+    }
+
+    @Test
+    public void testSubtreeLock() throws Exception {
+        Resource.Lock tree = provider.acquire("workspaces/topp");
+        assertFalse(canLock(provider::acquireShared, "workspaces/topp/states/featuretype.xml"));
+        assertFalse(canLock(provider::acquire, "workspaces/topp/workspace.xml"));
+        // siblings and parents can still be used for intentions
+        assertTrue(canLock(provider::acquire, "workspaces/sf/workspace.xml"));
+        assertFalse(canLock(provider::acquireShared, "workspaces"));
+        tree.release();
+        awaitPending();
+
+        // readers of the subtree allow other readers, but no writers
+        Resource.Lock sharedTree = provider.acquireShared("workspaces/topp");
+        assertTrue(canLock(provider::acquireShared, "workspaces/topp/states/featuretype.xml"));
+        assertFalse(canLock(provider::acquire, "workspaces/topp/states/featuretype.xml"));
+        sharedTree.release();
+        awaitPending();
+    }
+
+    @Test
+    public void testDescendantBlocksAncestor() throws Exception {
+        Resource.Lock leaf = provider.acquire("workspaces/topp/states/featuretype.xml");
+        assertFalse(canLock(provider::acquire, "workspaces/topp"));
+        assertFalse(canLock(provider::acquireShared, "workspaces/topp/states"));
+        // intention locks do not conflict among themselves
+        assertTrue(canLock(provider::acquire, "workspaces/topp/roads/featuretype.xml"));
+        leaf.release();
+        awaitPending();
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+        Resource.Lock tree = provider.acquire("workspaces/topp");
+        Resource.Lock leaf = provider.acquire("/workspaces/topp/workspace.xml");
+        Resource.Lock again = provider.acquire("workspaces/topp/");
+        again.release();
+        leaf.release();
+        assertFalse(canLock(provider::acquireShared, "workspaces/topp/workspace.xml"));
+        tree.release();
+        // double release is harmless
+        tree.release();
+        awaitPending();
+        assertTrue(canLock(provider::acquire, "workspaces/topp"));
+    }
+
+    @Test
+    public void testReleaseFromOtherThread() throws Exception {
+        Resource.Lock lock = provider.acquire("global.xml");
+        Thread t = new Thread(lock::release);
+        t.start();
+        t.join();
+        assertTrue(canLock(provider::acquire, "global.xml"));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        Resource.Lock lock = provider.acquire("a/b");
+        assertFalse(canLock(provider::acquire, "a/b"));
+        lock.release();
+        awaitPending();
+
+        List<StripeStatistics> statistics = provider.getStatistics();
+        long acquisitions = 0;
+        long contended = 0;
+        for (StripeStatistics stripe : statistics) {
+            acquisitions += stripe.getAcquisitions();
+            contended += stripe.getContended();
+            if (stripe.getContended() > 0) {
+                assertTrue(stripe.getWaitNanos() > 0);
+            }
+        }
+        // two paths locked twice each
+        assertEquals(4, acquisitions);
+        assertTrue(contended >= 1);
+    }
+
+    @Test
+    public void testStripeCount() {
+        assertEquals(1024, new HierarchicalLockProvider().getStripeCount());
+        assertEquals(16, new HierarchicalLockProvider(10).getStripeCount());
+        assertEquals(1, new HierarchicalLockProvider(1).getStripeCount());
+    }
+
+    @Test
+    public void testDistribution() {
+        // similar paths should spread over the stripes
+        HierarchicalLockProvider provider = new HierarchicalLockProvider(64);
+        Set<Integer> indexes = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            indexes.add(provider.getIndex("workspaces/ws/store/layer" + i + ".xml"));
+        }
+        assertTrue(indexes.size() > 32);
+        assertNotEquals(provider.getIndex("a"), provider.getIndex("b"));
+    }
+}
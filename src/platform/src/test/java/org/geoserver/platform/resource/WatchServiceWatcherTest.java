@@ -0,0 +1,109 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.platform.resource.ResourceNotification.Event;
+import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatchServiceWatcherTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    WatchServiceWatcher watcher;
+
+    static class QueueListener implements ResourceListener {
+        BlockingQueue<ResourceNotification> notifications = new LinkedBlockingQueue<>();
+
+        @Override
+        public void changed(ResourceNotification notify) {
+            notifications.add(notify);
+        }
+
+        ResourceNotification poll() throws InterruptedException {
+            return notifications.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Before
+    public void setup() {
+        WatchService service = WatchServiceWatcher.newNativeWatchService();
+        Assume.assumeNotNull(service);
+        watcher = new WatchServiceWatcher(path -> Paths.toFile(folder.getRoot(), path), service);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        if (watcher != null) {
+            watcher.destroy();
+        }
+    }
+
+    @Test
+    public void testFileInMissingDirectory() throws Exception {
+        QueueListener listener = new QueueListener();
+        watcher.addListener("DirA/DirB/FileC", listener);
+
+        File file = new File(folder.getRoot(), "DirA/DirB/FileC");
+        assertTrue(file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+        ResourceNotification n = listener.poll();
+        assertNotNull("created", n);
+        assertEquals(Kind.ENTRY_CREATE, n.getKind());
+        assertEquals("DirA/DirB/FileC", n.getPath());
+
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+        n = listener.poll();
+        assertNotNull("modified", n);
+        assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+
+        assertTrue(file.delete());
+        n = listener.poll();
+        assertNotNull("deleted", n);
+        assertEquals(Kind.ENTRY_DELETE, n.getKind());
+
+        assertTrue(watcher.removeListener("DirA/DirB/FileC", listener));
+        assertTrue(watcher.keys.isEmpty());
+    }
+
+    @Test
+    public void testCoalesceDirectoryEvents() throws Exception {
+        File dir = folder.newFolder("DirA");
+        // wide enough for all the files to be written before the flush
+        watcher.schedule(1, TimeUnit.SECONDS);
+        QueueListener listener = new QueueListener();
+        watcher.addListener("DirA", listener);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(new File(dir, "File" + i).createNewFile());
+        }
+        ResourceNotification n = listener.poll();
+        assertNotNull(n);
+        assertEquals("DirA", n.getPath());
+        Set<String> created = new HashSet<>();
+        for (Event e : n.events()) {
+            assertEquals(Kind.ENTRY_CREATE, e.getKind());
+            created.add(e.getPath());
+        }
+        assertEquals(5, created.size());
+        assertTrue(listener.notifications.isEmpty());
+    }
+}
@@ -37,6 +37,9 @@ import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.config.ContactInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.ResourceErrorHandling;
+import org.geoserver.ows.CapabilitiesFragment;
+import org.geoserver.ows.CapabilitiesFragmentCache;
+import org.geoserver.ows.CapabilitiesFragmentRecorder;
 import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.xml.v1_0.OWS;
 import org.geoserver.platform.GeoServerExtensions;
@@ -64,6 +67,7 @@ import org.vfny.geoserver.global.FeatureTypeInfoTitleComparator;
 import org.vfny.geoserver.util.ResponseUtils;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 /**
@@ -969,6 +973,19 @@ public abstract class CapabilitiesTransformer extends TransformerBase {
             return new CapabilitiesTranslator1_1(handler, baseUrl, wfs, extCapsProviders);
         }
 
+        /**
+         * Wraps the handler in a {@link CapabilitiesFragmentRecorder} if the capabilities fragment
+         * cache is enabled
+         */
+        static ContentHandler recordingHandler(ContentHandler handler) {
+            CapabilitiesFragmentCache cache =
+                    GeoServerExtensions.bean(CapabilitiesFragmentCache.class);
+            if (cache != null && cache.isEnabled()) {
+                return new CapabilitiesFragmentRecorder(handler);
+            }
+            return handler;
+        }
+
         protected class CapabilitiesTranslator1_1 extends TranslatorSupport {
             protected static final String GML_3_1_1_FORMAT = "text/xml; subtype=gml/3.1.1";
             GetCapabilitiesRequest request;
@@ -976,15 +993,28 @@ public abstract class CapabilitiesTransformer extends TransformerBase {
             protected final WFSInfo wfs;
             protected final String schemaBaseURL;
 
+            /** Cache of the feature type descriptions, null if disabled */
+            CapabilitiesFragmentCache fragmentCache;
+
+            /** Records the feature type descriptions, not null only if the cache is enabled */
+            CapabilitiesFragmentRecorder recorder;
+
+            /** The part of the fragment keys depending on the current request */
+            String fragmentVariant;
+
             public CapabilitiesTranslator1_1(
                     ContentHandler handler,
                     String baseUrl,
                     WFSInfo wfs,
                     Collection<WFSExtendedCapabilitiesProvider> extCapsProviders) {
-                super(handler, null, null);
+                super(recordingHandler(handler), null, null);
                 this.wfs = wfs;
                 this.extCapsProviders = extCapsProviders;
                 this.schemaBaseURL = baseUrl;
+                if (contentHandler instanceof CapabilitiesFragmentRecorder) {
+                    this.recorder = (CapabilitiesFragmentRecorder) contentHandler;
+                    this.fragmentCache = GeoServerExtensions.bean(CapabilitiesFragmentCache.class);
+                }
 
                 // register namespaces provided by extended capabilities
                 for (WFSExtendedCapabilitiesProvider cp : extCapsProviders) {
@@ -1555,11 +1585,19 @@ public abstract class CapabilitiesTransformer extends TransformerBase {
                 for (Iterator i = featureTypes.iterator(); i.hasNext(); ) {
                     FeatureTypeInfo featureType = (FeatureTypeInfo) i.next();
                     if (featureType.enabled()) {
+                        String key = getFragmentKey(featureType, crs);
+                        if (replayFragment(key)) {
+                            continue;
+                        }
+                        long stamp = key != null ? fragmentCache.getStamp() : 0;
                         try {
                             mark();
                             featureType(featureType, crs);
-                            commit();
+                            commitFragment(key, featureType, stamp);
                         } catch (RuntimeException ex) {
+                            if (recorder != null) {
+                                recorder.cancelRecording();
+                            }
                             if (skipMisconfigured) {
                                 reset();
                                 LOGGER.log(
@@ -1575,6 +1613,55 @@ public abstract class CapabilitiesTransformer extends TransformerBase {
                 }
             }
 
+            /**
+             * Returns the key of the cached description of the feature type, or null if the cache
+             * is disabled
+             */
+            String getFragmentKey(FeatureTypeInfo featureType, boolean crs) {
+                if (fragmentCache == null || featureType.getId() == null) {
+                    return null;
+                }
+                if (fragmentVariant == null) {
+                    // the service URL accounts for proxy base and virtual services mangling
+                    String serviceURL =
+                            buildURL(request.getBaseUrl(), "wfs", null, URLType.SERVICE);
+                    fragmentVariant =
+                            CapabilitiesFragmentCache.getRequestVariant(
+                                    "WFS", version.toString(), serviceURL);
+                }
+                return fragmentVariant + "|" + crs + "|" + featureType.getId();
+            }
+
+            /** Replays the cached description, if found */
+            boolean replayFragment(String key) {
+                CapabilitiesFragment fragment = key != null ? fragmentCache.get(key) : null;
+                if (fragment == null) {
+                    return false;
+                }
+                try {
+                    recorder.replay(fragment);
+                } catch (SAXException e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            }
+
+            /** Commits the buffered description, storing it in the cache along the way */
+            void commitFragment(String key, FeatureTypeInfo featureType, long stamp) {
+                if (key == null) {
+                    commit();
+                    return;
+                }
+                recorder.startRecording();
+                commit();
+                CapabilitiesFragment fragment = recorder.stopRecording();
+                fragmentCache.put(
+                        key,
+                        fragment,
+                        CapabilitiesFragmentCache.getDependencies(featureType),
+                        stamp);
+            }
+
             /**
              * Encodes the wfs:FeatureType element.
              *
@@ -401,4 +401,17 @@ public class GeoJSONBuilder extends JSONBuilder {
     public void setEncodeMeasures(boolean encodeMeasures) {
         this.encodeMeasures = encodeMeasures;
     }
+
+    int getNumberOfDecimals() {
+        return numDecimals;
+    }
+
+    boolean isEncodeMeasures() {
+        return encodeMeasures;
+    }
+
+    /** Returns the writer the JSON is being written into */
+    Writer getWriter() {
+        return writer;
+    }
 }
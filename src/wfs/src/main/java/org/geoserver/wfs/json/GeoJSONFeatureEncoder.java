@@ -0,0 +1,544 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Streams simple features as GeoJSON, producing the same output as {@link GeoJSONBuilder}, but
+ * without going through the {@link net.sf.json.util.JSONBuilder} state machine. The only
+ * difference is that coordinates are always written in plain decimal notation, e.g., {@code
+ * 12345678.9} instead of {@code 1.23456789E7}, which parses to the same value.
+ *
+ * <p>The output is accumulated in a reusable character buffer, flushed to the target writer in
+ * chunks. Coordinates are read straight from the {@link CoordinateSequence} and rounded and
+ * formatted directly into the buffer, without building intermediate strings. The JSON keys of
+ * each feature type are computed once, and reused for all its features.
+ *
+ * <p>The encoder writes into the same writer used by the {@link GeoJSONBuilder} encoding the
+ * collection, {@link #flush()} must be called before the builder is used again.
+ */
+class GeoJSONFeatureEncoder {
+
+    static final int BUFFER_SIZE = 8192;
+
+    /** Max number of decimals handled by the fast number formatting */
+    static final int MAX_DECIMALS = 15;
+
+    /** Scaled values beyond this limit cannot be represented exactly as a long in a double */
+    static final double MAX_SCALED = 1L << 53;
+
+    static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** The precomputed parts of the features of a given feature type */
+    static class FeatureTypeTemplate {
+        final GeometryDescriptor defaultGeometry;
+
+        final CoordinateReferenceSystem crs;
+
+        final CRS.AxisOrder axisOrder;
+
+        /** The geometry_name key and value, or null if there is no default geometry */
+        final char[] geometryName;
+
+        /** The property keys, including the quotes and the colon, null if skipped */
+        final char[][] keys;
+
+        /** True if the attribute is a geometry */
+        final boolean[] geometries;
+
+        FeatureTypeTemplate(SimpleFeatureType type, String idOption) {
+            defaultGeometry = type.getGeometryDescriptor();
+            if (defaultGeometry != null) {
+                crs = defaultGeometry.getCoordinateReferenceSystem();
+                axisOrder = CRS.getAxisOrder(crs);
+                geometryName =
+                        (",\"geometry_name\":" + JSONUtils.quote(defaultGeometry.getLocalName()))
+                                .toCharArray();
+            } else {
+                crs = null;
+                // If we don't know, assume EAST_NORTH so that no swapping occurs
+                axisOrder = CRS.AxisOrder.EAST_NORTH;
+                geometryName = null;
+            }
+            List<AttributeDescriptor> descriptors = type.getAttributeDescriptors();
+            keys = new char[descriptors.size()][];
+            geometries = new boolean[descriptors.size()];
+            for (int i = 0; i < descriptors.size(); i++) {
+                AttributeDescriptor ad = descriptors.get(i);
+                String name = ad.getLocalName();
+                if ((idOption != null && idOption.equals(name)) || ad.equals(defaultGeometry)) {
+                    // skip the attribute used as the id, and the default geometry, already
+                    // encoded in the feature
+                    continue;
+                }
+                keys[i] = (JSONUtils.quote(name) + ":").toCharArray();
+                geometries[i] = ad instanceof GeometryDescriptor;
+            }
+        }
+    }
+
+    final Writer writer;
+
+    final char[] buffer = new char[BUFFER_SIZE];
+
+    int position;
+
+    final int numDecimals;
+
+    final double scale;
+
+    final boolean encodeMeasures;
+
+    final String idOption;
+
+    final boolean featureBounding;
+
+    final Map<SimpleFeatureType, FeatureTypeTemplate> templates = new IdentityHashMap<>();
+
+    /** Used to encode the less common attribute types */
+    final StringWriter scratch = new StringWriter();
+
+    /** Writes into {@link #scratch}, created on first use and reused for all the values */
+    GeoJSONBuilder scratchBuilder;
+
+    CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
+
+    /**
+     * Builds a new encoder
+     *
+     * @param writer The target writer
+     * @param numDecimals The number of decimals used to encode coordinates
+     * @param encodeMeasures Whether the measures should be encoded
+     * @param idOption The id policy, see {@link JSONType#getIdPolicy(Map)}
+     * @param featureBounding Whether the features bounding box should be encoded
+     */
+    GeoJSONFeatureEncoder(
+            Writer writer,
+            int numDecimals,
+            boolean encodeMeasures,
+            String idOption,
+            boolean featureBounding) {
+        this.writer = writer;
+        this.numDecimals = numDecimals;
+        this.scale = Math.pow(10, numDecimals);
+        this.encodeMeasures = encodeMeasures;
+        this.idOption = idOption;
+        this.featureBounding = featureBounding;
+    }
+
+    /** Returns the template for the given feature type */
+    FeatureTypeTemplate getTemplate(SimpleFeatureType type) {
+        FeatureTypeTemplate template = templates.get(type);
+        if (template == null) {
+            template = new FeatureTypeTemplate(type, idOption);
+            templates.put(type, template);
+        }
+        return template;
+    }
+
+    /**
+     * Encodes a feature
+     *
+     * @param feature The feature
+     * @param first True if this is the first feature in the array
+     * @return True if the feature had a default geometry
+     */
+    boolean writeFeature(SimpleFeature feature, boolean first) throws IOException {
+        FeatureTypeTemplate template = getTemplate(feature.getFeatureType());
+        axisOrder = template.axisOrder;
+        if (!first) {
+            append(',');
+        }
+        append("{\"type\":\"Feature\"");
+        if (idOption == null) {
+            // no specific attribute nominated, use the simple feature id
+            append(",\"id\":");
+            writeValue(feature.getID());
+        } else if (idOption.length() != 0) {
+            // a specific attribute was nominated to be used as id
+            append(",\"id\":");
+            writeValue(feature.getAttribute(idOption));
+        }
+        append(",\"geometry\":");
+        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        if (geometry != null) {
+            writeGeometry(geometry);
+        } else {
+            append("null");
+        }
+        if (template.geometryName != null) {
+            append(template.geometryName);
+        }
+        append(",\"properties\":{");
+        boolean comma = false;
+        for (int i = 0; i < template.keys.length; i++) {
+            char[] key = template.keys[i];
+            if (key == null) {
+                continue;
+            }
+            if (comma) {
+                append(',');
+            }
+            comma = true;
+            append(key);
+            Object value = feature.getAttribute(i);
+            if (template.geometries[i] && value != null) {
+                writeGeometry((Geometry) value);
+            } else {
+                writeValue(value);
+            }
+        }
+        // Bounding box for feature in properties
+        if (featureBounding) {
+            ReferencedEnvelope envelope = ReferencedEnvelope.reference(feature.getBounds());
+            if (!envelope.isEmpty()) {
+                if (comma) {
+                    append(',');
+                }
+                writeBoundingBox(envelope);
+            }
+        }
+        append("}}");
+        return geometry != null;
+    }
+
+    /** Returns the CRS of the default geometry of the given feature type, if any */
+    CoordinateReferenceSystem getCrs(SimpleFeatureType type) {
+        return getTemplate(type).crs;
+    }
+
+    /** Sends the buffered output to the writer */
+    void flush() throws IOException {
+        if (position > 0) {
+            writer.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void writeBoundingBox(Envelope env) throws IOException {
+        append("\"bbox\":[");
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeOrdinate(env.getMinY());
+            append(',');
+            writeOrdinate(env.getMinX());
+            append(',');
+            writeOrdinate(env.getMaxY());
+            append(',');
+            writeOrdinate(env.getMaxX());
+        } else {
+            writeOrdinate(env.getMinX());
+            append(',');
+            writeOrdinate(env.getMinY());
+            append(',');
+            writeOrdinate(env.getMaxX());
+            append(',');
+            writeOrdinate(env.getMaxY());
+        }
+        append(']');
+    }
+
+    void writeGeometry(Geometry geometry) throws IOException {
+        append("{\"type\":\"");
+        append(GeoJSONBuilder.getGeometryName(geometry));
+        append('"');
+        int type = GeoJSONBuilder.getGeometryType(geometry);
+        if (type == GeoJSONBuilder.MULTIGEOMETRY) {
+            append(",\"geometries\":[");
+            GeometryCollection collection = (GeometryCollection) geometry;
+            for (int i = 0, n = collection.getNumGeometries(); i < n; i++) {
+                if (i > 0) {
+                    append(',');
+                }
+                writeGeometry(collection.getGeometryN(i));
+            }
+            append("]}");
+            return;
+        }
+
+        append(",\"coordinates\":");
+        switch (type) {
+            case GeoJSONBuilder.POINT:
+                writeCoordinate(((Point) geometry).getCoordinateSequence(), 0);
+                break;
+            case GeoJSONBuilder.LINESTRING:
+                writeCoordinates(((LineString) geometry).getCoordinateSequence());
+                break;
+            case GeoJSONBuilder.POLYGON:
+                writePolygon((Polygon) geometry);
+                break;
+            case GeoJSONBuilder.MULTIPOINT:
+                append('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        append(',');
+                    }
+                    writeCoordinate(((Point) geometry.getGeometryN(i)).getCoordinateSequence(), 0);
+                }
+                append(']');
+                break;
+            case GeoJSONBuilder.MULTILINESTRING:
+                append('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        append(',');
+                    }
+                    LineString line = (LineString) geometry.getGeometryN(i);
+                    writeCoordinates(line.getCoordinateSequence());
+                }
+                append(']');
+                break;
+            case GeoJSONBuilder.MULTIPOLYGON:
+                append('[');
+                for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                    if (i > 0) {
+                        append(',');
+                    }
+                    writePolygon((Polygon) geometry.getGeometryN(i));
+                }
+                append(']');
+                break;
+        }
+        append('}');
+    }
+
+    private void writePolygon(Polygon polygon) throws IOException {
+        append('[');
+        writeCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0, n = polygon.getNumInteriorRing(); i < n; i++) {
+            append(',');
+            writeCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+        append(']');
+    }
+
+    private void writeCoordinates(CoordinateSequence coordinates) throws IOException {
+        append('[');
+        for (int i = 0, n = coordinates.size(); i < n; i++) {
+            if (i > 0) {
+                append(',');
+            }
+            writeCoordinate(coordinates, i);
+        }
+        append(']');
+    }
+
+    /** Same logic as GeoJSONBuilder#writeCoordinate(double, double, double, double) */
+    private void writeCoordinate(CoordinateSequence coordinates, int i) throws IOException {
+        double x = coordinates.getX(i);
+        double y = coordinates.getY(i);
+        double z = coordinates.getZ(i);
+        // let's see if we need to encode measures, NaN values will not be encoded
+        double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
+        append('[');
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeOrdinate(y);
+            append(',');
+            writeOrdinate(x);
+        } else {
+            writeOrdinate(x);
+            append(',');
+            writeOrdinate(y);
+        }
+        // if Z value is not available but we have a measure, we set Z value to zero
+        z = Double.isNaN(z) && !Double.isNaN(m) ? 0 : z;
+        if (!Double.isNaN(z)) {
+            append(',');
+            writeOrdinate(z);
+        }
+        if (!Double.isNaN(m)) {
+            append(',');
+            writeOrdinate(m);
+        }
+        append(']');
+    }
+
+    /**
+     * Writes the value rounded to the configured number of decimals, see {@link
+     * RoundingUtil#round(double, int)}, without trailing zeros
+     */
+    void writeOrdinate(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers.");
+        }
+        double scaled = value * scale;
+        if (numDecimals < 0
+                || numDecimals > MAX_DECIMALS
+                || Math.ulp(value) * scale > 1d
+                || Math.abs(scaled) >= MAX_SCALED) {
+            // out of the range of the fast path, rare enough to use strings
+            append(numberToString(Double.toString(RoundingUtil.round(value, numDecimals))));
+            return;
+        }
+        long rounded = (long) Math.floor(scaled + 0.5);
+        if (rounded < 0) {
+            append('-');
+            rounded = -rounded;
+        }
+        long integer = rounded / POWERS_OF_TEN[numDecimals];
+        long fraction = rounded % POWERS_OF_TEN[numDecimals];
+        appendDigits(integer, 1);
+        if (fraction != 0) {
+            int digits = numDecimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            append('.');
+            appendDigits(fraction, digits);
+        }
+    }
+
+    /** Appends the digits of a non negative number, left padding with zeros up to minDigits */
+    private void appendDigits(long value, int minDigits) throws IOException {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        ensureCapacity(digits);
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    /** Writes an attribute value, like {@link GeoJSONBuilder#value(Object)} would */
+    void writeValue(Object value) throws IOException {
+        if (value == null) {
+            append("null");
+        } else if (value instanceof String) {
+            append(JSONUtils.quote((String) value));
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            long l = ((Number) value).longValue();
+            if (l < 0) {
+                if (l == Long.MIN_VALUE) {
+                    append(String.valueOf(l));
+                    return;
+                }
+                append('-');
+                l = -l;
+            }
+            appendDigits(l, 1);
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new JSONException("JSON does not allow non-finite numbers.");
+            }
+            append(numberToString(value.toString()));
+        } else if (value instanceof Boolean) {
+            append(((Boolean) value).booleanValue() ? "true" : "false");
+        } else if (value instanceof Geometry) {
+            writeGeometry((Geometry) value);
+        } else {
+            // dates, lists, maps and anything else, let the builder handle them. The builder
+            // stays inside an array that is never closed, a builder cannot be reused once its
+            // top level value is complete, so all values but the first start with a comma
+            if (scratchBuilder == null) {
+                scratchBuilder = new GeoJSONBuilder(scratch);
+                scratchBuilder.setNumberOfDecimals(numDecimals);
+                scratchBuilder.setEncodeMeasures(encodeMeasures);
+                scratchBuilder.array();
+            }
+            scratchBuilder.setAxisOrder(axisOrder);
+            StringBuffer sb = scratch.getBuffer();
+            sb.setLength(0);
+            try {
+                scratchBuilder.value(value);
+            } catch (RuntimeException e) {
+                // the builder state is unknown, start over with the next value
+                scratchBuilder = null;
+                throw e;
+            }
+            append(sb.substring(sb.length() > 0 && sb.charAt(0) == ',' ? 1 : 0));
+        }
+    }
+
+    /**
+     * Same as {@link JSONUtils#numberToString(Number)}, strips the trailing zeros of a number
+     * converted to string, unless it uses the exponential notation
+     */
+    static String numberToString(String s) {
+        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+            s = s.substring(0, end);
+        }
+        return s;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flush();
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = c;
+    }
+
+    private void append(char[] chars) throws IOException {
+        if (chars.length > buffer.length) {
+            flush();
+            writer.write(chars);
+            return;
+        }
+        ensureCapacity(chars.length);
+        System.arraycopy(chars, 0, buffer, position, chars.length);
+        position += chars.length;
+    }
+
+    private void append(String s) throws IOException {
+        int length = s.length();
+        if (length > buffer.length) {
+            flush();
+            writer.write(s);
+            return;
+        }
+        ensureCapacity(length);
+        s.getChars(0, length, buffer, position);
+        position += length;
+    }
+}
@@ -56,9 +56,29 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
     // store the response type
     protected final boolean jsonp;
 
+    // true if a subclass writes extra properties in each feature
+    private final boolean extraFeatureProperties;
+
     public GeoJSONGetFeatureResponse(GeoServer gs, String format) {
         super(gs, format);
         jsonp = JSONType.isJsonpMimeType(format);
+        extraFeatureProperties = overridesExtraFeatureProperties(getClass());
+    }
+
+    private static boolean overridesExtraFeatureProperties(Class<?> clazz) {
+        for (Class<?> c = clazz; c != GeoJSONGetFeatureResponse.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(
+                        "writeExtraFeatureProperties",
+                        Feature.class,
+                        Operation.class,
+                        GeoJSONBuilder.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not overridden at this level, check the parent class
+            }
+        }
+        return false;
     }
 
     /** capabilities output format string. */
@@ -202,7 +222,9 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             boolean isComplex,
             GeoJSONBuilder jsonWriter) {
         FeaturesInfo featuresInfo;
-        if (!isComplex) {
+        if (!isComplex && isStreamingEncoderEnabled(jsonWriter)) {
+            featuresInfo = streamSimpleFeatures(jsonWriter, resultsList, isFeatureBounding());
+        } else if (!isComplex) {
             featuresInfo =
                     encodeSimpleFeatures(jsonWriter, resultsList, isFeatureBounding(), operation);
         } else {
@@ -474,6 +496,57 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         return new FeaturesInfo(crs, hasGeom, featureCount);
     }
 
+    /**
+     * Returns true if the simple features can be written with the {@link GeoJSONFeatureEncoder},
+     * that is, the builder is not a custom one and no extra properties are added to the features.
+     * The encoder can be disabled by setting the GEOSERVER_GEOJSON_LEGACY_ENCODER property to true
+     */
+    private boolean isStreamingEncoderEnabled(GeoJSONBuilder jsonWriter) {
+        String legacy = GeoServerExtensions.getProperty("GEOSERVER_GEOJSON_LEGACY_ENCODER");
+        return !extraFeatureProperties
+                && jsonWriter.getClass() == GeoJSONBuilder.class
+                && !"true".equals(legacy);
+    }
+
+    /**
+     * Same as {@link #encodeSimpleFeatures(GeoJSONBuilder, List, boolean, Operation)}, but writes
+     * the features directly into the builder output with a {@link GeoJSONFeatureEncoder}
+     */
+    private FeaturesInfo streamSimpleFeatures(
+            GeoJSONBuilder jsonWriter,
+            List<FeatureCollection> resultsList,
+            boolean featureBounding) {
+        GeoJSONFeatureEncoder encoder =
+                new GeoJSONFeatureEncoder(
+                        jsonWriter.getWriter(),
+                        jsonWriter.getNumberOfDecimals(),
+                        jsonWriter.isEncodeMeasures(),
+                        getIdOption(),
+                        featureBounding);
+        CoordinateReferenceSystem crs = null;
+        boolean hasGeom = false;
+        long featureCount = 0;
+        try {
+            for (FeatureCollection collection : resultsList) {
+                try (FeatureIterator iterator = collection.features()) {
+                    while (iterator.hasNext()) {
+                        SimpleFeature simpleFeature = (SimpleFeature) iterator.next();
+                        hasGeom |= encoder.writeFeature(simpleFeature, featureCount == 0);
+                        featureCount++;
+                        if (crs == null) {
+                            crs = encoder.getCrs(simpleFeature.getFeatureType());
+                        }
+                    }
+                }
+            }
+            // the builder will write again in the same writer
+            encoder.flush();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return new FeaturesInfo(crs, hasGeom, featureCount);
+    }
+
     private String getIdOption() {
         // include fid?
         String id_option = null; // null - default, "" - none, or "property"
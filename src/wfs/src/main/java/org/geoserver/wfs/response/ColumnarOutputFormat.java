@@ -0,0 +1,509 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.config.GeoServer;
+import org.geoserver.feature.FlatteningFeatureCollection;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.WFSGetFeatureOutputFormat;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.request.GetFeatureRequest;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * WFS output format for a GetFeature operation streaming the features as columnar record batches,
+ * in the spirit of the Apache Arrow streaming format, for clients that want to load large amounts
+ * of features without parsing text.
+ *
+ * <p>The stream is little endian and every buffer starts at an offset multiple of 8, so that
+ * clients can map the columns in memory without copying them:
+ *
+ * <pre>
+ * stream  := "GSCOLUMN" table* END
+ * table   := SCHEMA batch*
+ * SCHEMA  := int32 1, int32 columnCount, (int32 type, int32 srid, int32 nameLength, name)*, pad
+ * batch   := int32 2, int32 rowCount, int64 bodyLength, body
+ * body    := for each column: validity bitmap, [int32 offsets,] values, each padded to 8 bytes
+ * END     := int32 0, int32 0
+ * </pre>
+ *
+ * A table is written for each feature collection in the response, the first column contains the
+ * feature ids, the others the feature attributes, in the order of the feature type schema.
+ * Geometries are encoded as little endian WKB. Variable length columns (strings and geometries)
+ * have rowCount + 1 offsets into their values buffer, the validity bitmap has a bit set for each
+ * non null value, least significant bit first. Batches are bounded both in number of rows and
+ * size.
+ *
+ * <p>Arbitrary precision numbers (BigInteger and BigDecimal) are encoded as UTF8 strings, to avoid
+ * silently losing precision or overflowing in a 64 bit column.
+ */
+public class ColumnarOutputFormat extends WFSGetFeatureOutputFormat {
+
+    static final Logger LOGGER = Logging.getLogger(ColumnarOutputFormat.class);
+
+    public static final String MIME_TYPE = "application/vnd.geoserver.columnar";
+
+    static final byte[] MAGIC = "GSCOLUMN".getBytes(StandardCharsets.US_ASCII);
+
+    static final int END = 0;
+
+    static final int SCHEMA = 1;
+
+    static final int BATCH = 2;
+
+    /** Boolean column, one byte per value */
+    static final int BOOLEAN = 1;
+
+    static final int INT32 = 2;
+
+    static final int INT64 = 3;
+
+    static final int FLOAT32 = 4;
+
+    static final int FLOAT64 = 5;
+
+    static final int UTF8 = 6;
+
+    static final int WKB = 7;
+
+    /** Milliseconds since the epoch, as an INT64 */
+    static final int TIMESTAMP = 8;
+
+    int maxBatchRows = 64 * 1024;
+
+    long maxBatchSize = 16 * 1024 * 1024;
+
+    public ColumnarOutputFormat(GeoServer gs) {
+        super(gs, new LinkedHashSet<>(Arrays.asList("columnar", MIME_TYPE)));
+    }
+
+    /** Sets the max number of rows in a record batch */
+    public void setMaxBatchRows(int maxBatchRows) {
+        this.maxBatchRows = maxBatchRows;
+    }
+
+    /** Sets the max size, in bytes, of a record batch, the last row can make it overflow */
+    public void setMaxBatchSize(long maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        return DISPOSITION_ATTACH;
+    }
+
+    @Override
+    public String getAttachmentFileName(Object value, Operation operation) {
+        GetFeatureRequest request = GetFeatureRequest.adapt(operation.getParameters()[0]);
+        String outputFileName = request.getQueries().get(0).getTypeNames().get(0).getLocalPart();
+        return outputFileName + ".columnar";
+    }
+
+    @Override
+    public String getCapabilitiesElementName() {
+        return "COLUMNAR";
+    }
+
+    @Override
+    protected void write(
+            FeatureCollectionResponse featureCollection, OutputStream output, Operation getFeature)
+            throws IOException, ServiceException {
+        OutputStream out = new BufferedOutputStream(output, 64 * 1024);
+        out.write(MAGIC);
+        for (FeatureCollection fc : featureCollection.getFeature()) {
+            if (!(fc.getSchema() instanceof SimpleFeatureType)) {
+                throw new ServiceException(
+                        "The columnar output format supports only simple features");
+            }
+            // flatten the collection if necessary (WFS 2.0 joins)
+            writeTable(FlatteningFeatureCollection.flatten((SimpleFeatureCollection) fc), out);
+        }
+        ColumnBuffer end = new ColumnBuffer(8);
+        end.putInt(END);
+        end.putInt(0);
+        end.writeTo(out);
+        out.flush();
+    }
+
+    void writeTable(SimpleFeatureCollection fc, OutputStream out) throws IOException {
+        SimpleFeatureType schema = fc.getSchema();
+        List<Column> columns = new ArrayList<>();
+        columns.add(new VariableColumn("FID", UTF8, 0));
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            columns.add(buildColumn(ad));
+        }
+        writeSchema(columns, out);
+
+        try (SimpleFeatureIterator it = fc.features()) {
+            int rows = 0;
+            while (it.hasNext()) {
+                SimpleFeature feature = it.next();
+                columns.get(0).add(feature.getID());
+                for (int i = 1; i < columns.size(); i++) {
+                    columns.get(i).add(feature.getAttribute(i - 1));
+                }
+                rows++;
+                if (rows >= maxBatchRows || getBodyLength(columns) >= maxBatchSize) {
+                    writeBatch(columns, rows, out);
+                    rows = 0;
+                }
+            }
+            if (rows > 0) {
+                writeBatch(columns, rows, out);
+            }
+        }
+    }
+
+    private Column buildColumn(AttributeDescriptor ad) {
+        String name = ad.getLocalName();
+        Class<?> binding = ad.getType().getBinding();
+        if (ad instanceof GeometryDescriptor) {
+            int srid = getSRID(((GeometryDescriptor) ad).getCoordinateReferenceSystem());
+            return new VariableColumn(name, WKB, srid);
+        } else if (Boolean.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, BOOLEAN, 1);
+        } else if (Integer.class.isAssignableFrom(binding)
+                || Short.class.isAssignableFrom(binding)
+                || Byte.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, INT32, 4);
+        } else if (Long.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, INT64, 8);
+        } else if (Float.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, FLOAT32, 4);
+        } else if (Double.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, FLOAT64, 8);
+        } else if (Date.class.isAssignableFrom(binding)) {
+            return new FixedColumn(name, TIMESTAMP, 8);
+        }
+        // anything else, including BigInteger and BigDecimal, which might not fit in 64 bits
+        return new VariableColumn(name, UTF8, 0);
+    }
+
+    private int getSRID(CoordinateReferenceSystem crs) {
+        if (crs == null) {
+            return 0;
+        }
+        try {
+            Integer code = CRS.lookupEpsgCode(crs, false);
+            return code == null ? 0 : code;
+        } catch (FactoryException e) {
+            LOGGER.log(Level.FINE, "Could not find the EPSG code of " + crs, e);
+            return 0;
+        }
+    }
+
+    private long getBodyLength(List<Column> columns) {
+        long length = 0;
+        for (Column column : columns) {
+            length += column.getLength();
+        }
+        return length;
+    }
+
+    private void writeSchema(List<Column> columns, OutputStream out) throws IOException {
+        ColumnBuffer buffer = new ColumnBuffer(256);
+        buffer.putInt(SCHEMA);
+        buffer.putInt(columns.size());
+        for (Column column : columns) {
+            byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(column.type);
+            buffer.putInt(column.srid);
+            buffer.putInt(name.length);
+            buffer.put(name, 0, name.length);
+        }
+        buffer.pad();
+        buffer.writeTo(out);
+    }
+
+    private void writeBatch(List<Column> columns, int rows, OutputStream out) throws IOException {
+        ColumnBuffer header = new ColumnBuffer(16);
+        header.putInt(BATCH);
+        header.putInt(rows);
+        header.putLong(getBodyLength(columns));
+        header.writeTo(out);
+        for (Column column : columns) {
+            column.writeTo(out);
+            column.reset();
+        }
+    }
+
+    /** A growable little endian byte buffer */
+    static class ColumnBuffer {
+        byte[] data;
+
+        int length;
+
+        ColumnBuffer(int capacity) {
+            data = new byte[capacity];
+        }
+
+        void ensureCapacity(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+
+        void put(byte b) {
+            ensureCapacity(1);
+            data[length++] = b;
+        }
+
+        void put(byte[] bytes, int offset, int count) {
+            ensureCapacity(count);
+            System.arraycopy(bytes, offset, data, length, count);
+            length += count;
+        }
+
+        void putInt(int value) {
+            ensureCapacity(4);
+            data[length++] = (byte) value;
+            data[length++] = (byte) (value >>> 8);
+            data[length++] = (byte) (value >>> 16);
+            data[length++] = (byte) (value >>> 24);
+        }
+
+        void putLong(long value) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+
+        /** Length of the buffer once padded to a multiple of 8 bytes */
+        int getPaddedLength() {
+            return (length + 7) & ~7;
+        }
+
+        void pad() {
+            int padded = getPaddedLength();
+            ensureCapacity(padded - length);
+            while (length < padded) {
+                data[length++] = 0;
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(data, 0, length);
+        }
+
+        void reset() {
+            length = 0;
+        }
+    }
+
+    /** Accumulates the values of an attribute for a record batch */
+    abstract static class Column {
+        final String name;
+
+        final int type;
+
+        final int srid;
+
+        final ColumnBuffer validity = new ColumnBuffer(64);
+
+        int rows;
+
+        Column(String name, int type, int srid) {
+            this.name = name;
+            this.type = type;
+            this.srid = srid;
+        }
+
+        void add(Object value) {
+            if (rows % 8 == 0) {
+                validity.put((byte) 0);
+            }
+            if (value != null) {
+                validity.data[rows / 8] |= 1 << (rows % 8);
+                addValue(value);
+            } else {
+                addNull();
+            }
+            rows++;
+        }
+
+        abstract void addValue(Object value);
+
+        abstract void addNull();
+
+        /** The length of the column buffers in the batch body, including the padding */
+        abstract long getLength();
+
+        abstract void writeTo(OutputStream out) throws IOException;
+
+        void reset() {
+            validity.reset();
+            rows = 0;
+        }
+    }
+
+    /** A column of fixed size values */
+    static class FixedColumn extends Column {
+        final ColumnBuffer values = new ColumnBuffer(1024);
+
+        final int width;
+
+        FixedColumn(String name, int type, int width) {
+            super(name, type, 0);
+            this.width = width;
+        }
+
+        @Override
+        void addValue(Object value) {
+            switch (type) {
+                case BOOLEAN:
+                    values.put((byte) (Boolean.TRUE.equals(toBoolean(value)) ? 1 : 0));
+                    break;
+                case INT32:
+                    values.putInt(((Number) value).intValue());
+                    break;
+                case INT64:
+                    values.putLong(((Number) value).longValue());
+                    break;
+                case FLOAT32:
+                    values.putInt(Float.floatToIntBits(((Number) value).floatValue()));
+                    break;
+                case FLOAT64:
+                    values.putLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+                    break;
+                case TIMESTAMP:
+                    values.putLong(((Date) value).getTime());
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected fixed column type " + type);
+            }
+        }
+
+        private Boolean toBoolean(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            return Converters.convert(value, Boolean.class);
+        }
+
+        @Override
+        void addNull() {
+            values.ensureCapacity(width);
+            Arrays.fill(values.data, values.length, values.length + width, (byte) 0);
+            values.length += width;
+        }
+
+        @Override
+        long getLength() {
+            return validity.getPaddedLength() + values.getPaddedLength();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            validity.pad();
+            validity.writeTo(out);
+            values.pad();
+            values.writeTo(out);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            values.reset();
+        }
+    }
+
+    /** A column of variable size values, strings or WKB geometries */
+    static class VariableColumn extends Column {
+        final ColumnBuffer offsets = new ColumnBuffer(1024);
+
+        final ColumnBuffer values = new ColumnBuffer(8192);
+
+        final WKBWriter wkb2d = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN);
+
+        final WKBWriter wkb3d = new WKBWriter(3, ByteOrderValues.LITTLE_ENDIAN);
+
+        VariableColumn(String name, int type, int srid) {
+            super(name, type, srid);
+            offsets.putInt(0);
+        }
+
+        @Override
+        void addValue(Object value) {
+            byte[] bytes;
+            if (type == WKB) {
+                Geometry geometry = (Geometry) value;
+                Coordinate c = geometry.getCoordinate();
+                WKBWriter writer = c != null && !Double.isNaN(c.getZ()) ? wkb3d : wkb2d;
+                bytes = writer.write(geometry);
+            } else {
+                String s = value instanceof String ? (String) value : toString(value);
+                bytes = s.getBytes(StandardCharsets.UTF_8);
+            }
+            values.put(bytes, 0, bytes.length);
+            offsets.putInt(values.length);
+        }
+
+        private String toString(Object value) {
+            String converted = Converters.convert(value, String.class);
+            return converted != null ? converted : value.toString();
+        }
+
+        @Override
+        void addNull() {
+            offsets.putInt(values.length);
+        }
+
+        @Override
+        long getLength() {
+            return validity.getPaddedLength()
+                    + offsets.getPaddedLength()
+                    + values.getPaddedLength();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            validity.pad();
+            validity.writeTo(out);
+            offsets.pad();
+            offsets.writeTo(out);
+            values.pad();
+            values.writeTo(out);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            offsets.reset();
+            offsets.putInt(0);
+            values.reset();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Random;
+import net.sf.json.JSONObject;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class GeoJSONFeatureEncoderTest {
+
+    static final String[] GEOMETRIES = {
+        "POINT(2.1234 0.1234)",
+        "POINT(2.1234 0.1234 20.9999)",
+        "LINESTRING(1E-3 1E-4 1E-5, 0 10.12312321 1.000002, 10.1 10.2 2.0, 10 0 3, 0 0 0)",
+        "POLYGON((0.1 0.2, 0.1 10.1, 10.2 10.3, 9.5 0.4, 0.1 0.2),(1 1, 1 2, 2 2, 2 1, 1 1))",
+        "MULTIPOINT((0 0), (-1.0005 2.5))",
+        "MULTILINESTRING((0 0, 1 1), (-2 -3, 4 5.00049))",
+        "MULTIPOLYGON(((0 0, 0 1, 1 1, 0 0)), ((5 5, 5 6, 6 6, 5 5)))",
+        "GEOMETRYCOLLECTION(POINT(1 2), LINESTRING(0 0, 1.23456 1))"
+    };
+
+    @Test
+    public void testGeometriesSameAsBuilder() throws Exception {
+        WKTReader reader = new WKTReader();
+        for (String wkt : GEOMETRIES) {
+            Geometry geometry = reader.read(wkt);
+
+            StringWriter expected = new StringWriter();
+            GeoJSONBuilder builder = new GeoJSONBuilder(expected);
+            builder.setNumberOfDecimals(3);
+            builder.writeGeom(geometry);
+
+            StringWriter actual = new StringWriter();
+            GeoJSONFeatureEncoder encoder =
+                    new GeoJSONFeatureEncoder(actual, 3, false, null, false);
+            encoder.writeGeometry(geometry);
+            encoder.flush();
+
+            assertEquals(wkt, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testOrdinatesSameAsRounding() throws Exception {
+        Random random = new Random(0);
+        for (int numDecimals = 0; numDecimals < 12; numDecimals++) {
+            for (int i = 0; i < 1000; i++) {
+                double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 4);
+                StringWriter writer = new StringWriter();
+                GeoJSONFeatureEncoder encoder =
+                        new GeoJSONFeatureEncoder(writer, numDecimals, false, null, false);
+                encoder.writeOrdinate(value);
+                encoder.flush();
+
+                String encoded = writer.toString();
+                assertFalse(encoded, encoded.endsWith("."));
+                assertEquals(
+                        encoded,
+                        RoundingUtil.round(value, numDecimals),
+                        Double.parseDouble(encoded),
+                        0d);
+            }
+        }
+    }
+
+    @Test
+    public void testFeature() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("geom", Point.class);
+        tb.add("name", String.class);
+        tb.add("count", Integer.class);
+        tb.add("value", Double.class);
+        tb.add("path", LineString.class);
+        tb.add("missing", String.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+        WKTReader reader = new WKTReader();
+        SimpleFeature feature =
+                SimpleFeatureBuilder.build(
+                        type,
+                        new Object[] {
+                            reader.read("POINT(1 2)"),
+                            "a \"quoted\" name",
+                            -12,
+                            1.5,
+                            reader.read("LINESTRING(0 0, 1 1)"),
+                            null
+                        },
+                        "test.1");
+
+        StringWriter writer = new StringWriter();
+        GeoJSONFeatureEncoder encoder = new GeoJSONFeatureEncoder(writer, 4, false, null, true);
+        assertTrue(encoder.writeFeature(feature, true));
+        encoder.flush();
+
+        JSONObject json = JSONObject.fromObject(writer.toString());
+        assertEquals("Feature", json.getString("type"));
+        assertEquals("test.1", json.getString("id"));
+        assertEquals("Point", json.getJSONObject("geometry").getString("type"));
+        assertEquals("geom", json.getString("geometry_name"));
+        JSONObject properties = json.getJSONObject("properties");
+        assertFalse(properties.containsKey("geom"));
+        assertEquals("a \"quoted\" name", properties.getString("name"));
+        assertEquals(-12, properties.getInt("count"));
+        assertEquals(1.5, properties.getDouble("value"), 0d);
+        assertEquals("LineString", properties.getJSONObject("path").getString("type"));
+        assertTrue(properties.getJSONObject("missing").isNullObject());
+        assertEquals("[1,2,1,2]", properties.getJSONArray("bbox").toString());
+    }
+
+    @Test
+    public void testValuesSameAsBuilder() throws Exception {
+        Object[] values = {
+            new Date(0),
+            Arrays.asList(1, "two", 3.5),
+            Collections.singletonMap("key", "value"),
+            new Date(1000000000000L),
+            Collections.emptyList(),
+            Arrays.asList(Arrays.asList(1, 2), Collections.singletonMap("a", new Date(0)))
+        };
+        StringWriter actual = new StringWriter();
+        GeoJSONFeatureEncoder encoder = new GeoJSONFeatureEncoder(actual, 4, false, null, false);
+        StringBuilder expected = new StringBuilder();
+        for (Object value : values) {
+            // the encoder reuses its builder, compare with a new one for each value
+            StringWriter single = new StringWriter();
+            GeoJSONBuilder builder = new GeoJSONBuilder(single);
+            builder.array();
+            builder.value(value);
+            builder.endArray();
+            String json = single.toString();
+            expected.append(json, 1, json.length() - 1).append(';');
+
+            encoder.writeValue(value);
+            encoder.flush();
+            actual.write(';');
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testIdOption() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("code", String.class);
+        tb.add("name", String.class);
+        SimpleFeatureType type = tb.buildFeatureType();
+        SimpleFeature feature = SimpleFeatureBuilder.build(type, new Object[] {"c1", "n1"}, "f1");
+
+        StringWriter writer = new StringWriter();
+        GeoJSONFeatureEncoder encoder = new GeoJSONFeatureEncoder(writer, 4, false, "code", false);
+        assertFalse(encoder.writeFeature(feature, true));
+        encoder.flush();
+
+        assertEquals(
+                "{\"type\":\"Feature\",\"id\":\"c1\",\"geometry\":null,"
+                        + "\"properties\":{\"name\":\"n1\"}}",
+                writer.toString());
+    }
+}
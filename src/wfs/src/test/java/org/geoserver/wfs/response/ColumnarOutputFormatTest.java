@@ -0,0 +1,296 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.Converters;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ColumnarOutputFormatTest extends WFSTestSupport {
+
+    static final String REQUEST =
+            "wfs?version=1.1.0&request=GetFeature&typeName=sf:PrimitiveGeoFeature"
+                    + "&outputFormat=columnar";
+
+    @Test
+    public void testFullRequest() throws Exception {
+        MockHttpServletResponse resp = getAsServletResponse(REQUEST);
+        assertEquals(ColumnarOutputFormat.MIME_TYPE, resp.getContentType());
+        assertEquals(
+                "attachment; filename=PrimitiveGeoFeature.columnar",
+                resp.getHeader("Content-Disposition"));
+
+        FeatureSource fs = getFeatureSource(MockData.PRIMITIVEGEOFEATURE);
+        Table table = read(resp.getContentAsByteArray());
+        assertEquals(fs.getSchema().getDescriptors().size() + 1, table.names.size());
+        assertEquals("FID", table.names.get(0));
+        int i = 1;
+        for (Object ad : fs.getSchema().getDescriptors()) {
+            assertEquals(((AttributeDescriptor) ad).getLocalName(), table.names.get(i++));
+        }
+        assertEquals(fs.getCount(Query.ALL), table.rows);
+        assertEquals(1, table.batches);
+        assertFalse(table.geometries.isEmpty());
+
+        // the decoded values match the source ones, for each column type in the test data
+        assertEquals(
+                Arrays.asList(
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.WKB,
+                        ColumnarOutputFormat.WKB,
+                        ColumnarOutputFormat.WKB,
+                        ColumnarOutputFormat.INT32,
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.TIMESTAMP,
+                        ColumnarOutputFormat.TIMESTAMP,
+                        ColumnarOutputFormat.FLOAT64,
+                        ColumnarOutputFormat.BOOLEAN),
+                table.types);
+        int row = 0;
+        try (FeatureIterator it = fs.getFeatures().features()) {
+            while (it.hasNext()) {
+                Feature feature = it.next();
+                assertEquals(feature.getIdentifier().getID(), table.values.get(0).get(row));
+                int column = 1;
+                for (Property p : feature.getProperties()) {
+                    assertValue(p.getValue(), table.values.get(column++).get(row));
+                }
+                row++;
+            }
+        }
+        assertEquals(table.rows, row);
+    }
+
+    @Test
+    public void testNumericColumns() throws Exception {
+        SimpleFeatureType type =
+                DataUtilities.createType(
+                        "numbers",
+                        "long:Long,float:Float,bigint:java.math.BigInteger,"
+                                + "bigdec:java.math.BigDecimal");
+        BigInteger bigint = new BigInteger("123456789012345678901234567890");
+        BigDecimal bigdec = new BigDecimal("0.1000000000000000000001");
+        SimpleFeatureCollection fc =
+                DataUtilities.collection(
+                        new SimpleFeature[] {
+                            SimpleFeatureBuilder.build(
+                                    type,
+                                    new Object[] {Long.MAX_VALUE, 1.5f, bigint, bigdec},
+                                    "numbers.1"),
+                            SimpleFeatureBuilder.build(type, new Object[4], "numbers.2")
+                        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ColumnarOutputFormat.MAGIC);
+        new ColumnarOutputFormat(getGeoServer()).writeTable(fc, out);
+        out.write(new byte[8]); // END
+        Table table = read(out.toByteArray());
+
+        assertEquals(
+                Arrays.asList(
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.INT64,
+                        ColumnarOutputFormat.FLOAT32,
+                        ColumnarOutputFormat.UTF8,
+                        ColumnarOutputFormat.UTF8),
+                table.types);
+        assertEquals(2, table.rows);
+        assertEquals(Arrays.asList("numbers.1", "numbers.2"), table.values.get(0));
+        assertEquals(Arrays.asList(Long.MAX_VALUE, null), table.values.get(1));
+        assertEquals(Arrays.asList(1.5f, null), table.values.get(2));
+        // arbitrary precision numbers are not narrowed
+        assertEquals(Arrays.asList(bigint.toString(), null), table.values.get(3));
+        assertEquals(Arrays.asList(bigdec.toString(), null), table.values.get(4));
+    }
+
+    private void assertValue(Object expected, Object actual) {
+        if (expected == null) {
+            assertNull(actual);
+        } else if (expected instanceof Geometry) {
+            // compare axis order independent properties, the output might be lat/lon
+            Geometry g1 = (Geometry) expected;
+            Geometry g2 = (Geometry) actual;
+            assertEquals(g1.getGeometryType(), g2.getGeometryType());
+            assertEquals(g1.getNumPoints(), g2.getNumPoints());
+            assertEquals(g1.getLength(), g2.getLength(), 1e-9);
+            assertEquals(g1.getArea(), g2.getArea(), 1e-9);
+        } else if (expected instanceof Date) {
+            assertEquals(((Date) expected).getTime(), ((Date) actual).getTime());
+        } else if (expected instanceof Number || expected instanceof Boolean) {
+            assertEquals(expected, actual);
+        } else {
+            String converted = Converters.convert(expected, String.class);
+            assertEquals(converted != null ? converted : expected.toString(), actual);
+        }
+    }
+
+    @Test
+    public void testBoundedBatches() throws Exception {
+        ColumnarOutputFormat format =
+                applicationContext.getBean("columnarOutputFormat", ColumnarOutputFormat.class);
+        format.setMaxBatchRows(2);
+        try {
+            MockHttpServletResponse resp = getAsServletResponse(REQUEST);
+            Table table = read(resp.getContentAsByteArray());
+            int count = getFeatureSource(MockData.PRIMITIVEGEOFEATURE).getCount(Query.ALL);
+            assertEquals(count, table.rows);
+            assertEquals((count + 1) / 2, table.batches);
+        } finally {
+            format.setMaxBatchRows(64 * 1024);
+        }
+    }
+
+    /** The summary of the single table in a columnar response */
+    static class Table {
+        List<String> names = new ArrayList<>();
+
+        List<Integer> types = new ArrayList<>();
+
+        /** The decoded values, by column */
+        List<List<Object>> values = new ArrayList<>();
+
+        int rows;
+
+        int batches;
+
+        List<Geometry> geometries = new ArrayList<>();
+    }
+
+    private Table read(byte[] bytes) throws Exception {
+        ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[8];
+        bb.get(magic);
+        assertArrayEquals(ColumnarOutputFormat.MAGIC, magic);
+
+        Table table = new Table();
+        assertEquals(ColumnarOutputFormat.SCHEMA, bb.getInt());
+        int columns = bb.getInt();
+        for (int i = 0; i < columns; i++) {
+            table.types.add(bb.getInt());
+            bb.getInt(); // srid
+            byte[] name = new byte[bb.getInt()];
+            bb.get(name);
+            table.names.add(new String(name, StandardCharsets.UTF_8));
+            table.values.add(new ArrayList<>());
+        }
+        bb.position(align(bb.position()));
+
+        WKBReader reader = new WKBReader();
+        int type;
+        while ((type = bb.getInt()) == ColumnarOutputFormat.BATCH) {
+            int rows = bb.getInt();
+            long length = bb.getLong();
+            int end = bb.position() + (int) length;
+            for (int c = 0; c < columns; c++) {
+                int validity = bb.position();
+                bb.position(align(validity + (rows + 7) / 8));
+                int columnType = table.types.get(c);
+                List<Object> decoded = table.values.get(c);
+                if (columnType == ColumnarOutputFormat.UTF8
+                        || columnType == ColumnarOutputFormat.WKB) {
+                    int offsets = bb.position();
+                    int values = align(offsets + (rows + 1) * 4);
+                    for (int r = 0; r < rows; r++) {
+                        int start = bb.getInt(offsets + r * 4);
+                        int stop = bb.getInt(offsets + r * 4 + 4);
+                        boolean valid = (bytes[validity + r / 8] & (1 << (r % 8))) != 0;
+                        assertTrue(valid || start == stop);
+                        if (!valid) {
+                            decoded.add(null);
+                        } else if (columnType == ColumnarOutputFormat.WKB) {
+                            byte[] wkb = new byte[stop - start];
+                            System.arraycopy(bytes, values + start, wkb, 0, wkb.length);
+                            Geometry geometry = reader.read(wkb);
+                            table.geometries.add(geometry);
+                            decoded.add(geometry);
+                        } else {
+                            byte[] utf8 = Arrays.copyOfRange(bytes, values + start, values + stop);
+                            decoded.add(new String(utf8, StandardCharsets.UTF_8));
+                        }
+                    }
+                    bb.position(align(values + bb.getInt(offsets + rows * 4)));
+                } else {
+                    int width =
+                            columnType == ColumnarOutputFormat.BOOLEAN
+                                    ? 1
+                                    : columnType == ColumnarOutputFormat.INT32
+                                                    || columnType == ColumnarOutputFormat.FLOAT32
+                                            ? 4
+                                            : 8;
+                    int values = bb.position();
+                    for (int r = 0; r < rows; r++) {
+                        boolean valid = (bytes[validity + r / 8] & (1 << (r % 8))) != 0;
+                        decoded.add(valid ? decode(bb, columnType, values + r * width) : null);
+                    }
+                    bb.position(align(values + rows * width));
+                }
+            }
+            assertEquals(end, bb.position());
+            table.rows += rows;
+            table.batches++;
+        }
+        assertEquals(ColumnarOutputFormat.END, type);
+        assertEquals(0, bb.getInt());
+        assertFalse(bb.hasRemaining());
+        return table;
+    }
+
+    private Object decode(ByteBuffer bb, int type, int position) {
+        switch (type) {
+            case ColumnarOutputFormat.BOOLEAN:
+                return bb.get(position) != 0;
+            case ColumnarOutputFormat.INT32:
+                return bb.getInt(position);
+            case ColumnarOutputFormat.INT64:
+                return bb.getLong(position);
+            case ColumnarOutputFormat.FLOAT32:
+                return bb.getFloat(position);
+            case ColumnarOutputFormat.FLOAT64:
+                return bb.getDouble(position);
+            case ColumnarOutputFormat.TIMESTAMP:
+                return new Date(bb.getLong(position));
+            default:
+                throw new IllegalArgumentException("Unexpected fixed column type " + type);
+        }
+    }
+
+    private int align(int position) {
+        return (position + 7) & ~7;
+    }
+}
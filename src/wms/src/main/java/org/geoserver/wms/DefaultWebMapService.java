@@ -94,6 +94,9 @@ public class DefaultWebMapService
     /** default for 'transparent' parameter. */
     public static ExecutorService RENDERING_POOL;
 
+    /** Bounded pool used to render the layers of a single map in parallel */
+    public static ExecutorService LAYER_RENDERING_POOL;
+
     /** default for 'bbox' paramter */
     public static ReferencedEnvelope BBOX =
             new ReferencedEnvelope(new Envelope(-180, 180, -90, 90), DefaultGeographicCRS.WGS84);
@@ -114,6 +117,9 @@ public class DefaultWebMapService
     /** Use a global rendering pool, or use a new pool each time */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /** Max number of threads rendering map layers in parallel, parallel rendering is off if < 2 */
+    private static Integer PARALLEL_LAYER_RENDERING_THREADS = null;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -191,6 +197,15 @@ public class DefaultWebMapService
             if (usePool == null) USE_GLOBAL_RENDERING_POOL = true;
             else USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // control parallel rendering of the map layers
+        if (PARALLEL_LAYER_RENDERING_THREADS == null) {
+            String threads =
+                    GeoServerExtensions.getProperty("PARALLEL_LAYER_RENDERING_THREADS", context);
+            // default to disabled
+            if (threads == null) PARALLEL_LAYER_RENDERING_THREADS = 0;
+            else PARALLEL_LAYER_RENDERING_THREADS = Integer.valueOf(threads);
+        }
     }
 
     /**
@@ -601,11 +616,55 @@ public class DefaultWebMapService
         return RENDERING_POOL;
     }
 
+    /**
+     * Returns the max number of threads used to render the layers of a single map in parallel (the
+     * PARALLEL_LAYER_RENDERING_THREADS property, parallel rendering is disabled if less than 2)
+     */
+    public static int getParallelLayerRenderingThreads() {
+        return PARALLEL_LAYER_RENDERING_THREADS == null ? 0 : PARALLEL_LAYER_RENDERING_THREADS;
+    }
+
+    /**
+     * Overrides the PARALLEL_LAYER_RENDERING_THREADS property, mostly for testing purposes. The
+     * layer rendering pool is shut down, and created again with the new size when next needed.
+     */
+    public static void setParallelLayerRenderingThreads(int threads) {
+        synchronized (DefaultWebMapService.class) {
+            PARALLEL_LAYER_RENDERING_THREADS = threads;
+            if (LAYER_RENDERING_POOL != null) {
+                LAYER_RENDERING_POOL.shutdown();
+                LAYER_RENDERING_POOL = null;
+            }
+        }
+    }
+
+    /**
+     * Returns an app wide bounded pool used to render the layers of a map in parallel, or null if
+     * parallel layer rendering is disabled
+     */
+    public static ExecutorService getLayerRenderingPool() {
+        int threads = getParallelLayerRenderingThreads();
+        if (threads > 1 && LAYER_RENDERING_POOL == null) {
+            synchronized (DefaultWebMapService.class) {
+                if (LAYER_RENDERING_POOL == null) {
+                    LAYER_RENDERING_POOL = new ThreadLocalTransferExecutor(threads);
+                }
+            }
+        }
+
+        return LAYER_RENDERING_POOL;
+    }
+
     public void destroy() throws Exception {
         if (RENDERING_POOL != null) {
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
             RENDERING_POOL = null;
         }
+        if (LAYER_RENDERING_POOL != null) {
+            LAYER_RENDERING_POOL.shutdown();
+            LAYER_RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
+            LAYER_RENDERING_POOL = null;
+        }
     }
 }
@@ -19,6 +19,7 @@ import org.geoserver.config.GeoServerDataDirectory;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.Resources;
+import org.geoserver.wms.map.png.PNGJWriter;
 import org.geotools.renderer.style.DynamicSymbolFactoryFinder;
 import org.geotools.renderer.style.ExternalGraphicFactory;
 import org.geotools.renderer.style.FontCache;
@@ -48,6 +49,8 @@ public class WMSLifecycleHandler implements GeoServerLifecycleHandler, Applicati
     public void onDispose() {
         // dispose the WMS Animator Executor Service
         shutdownAnimatorExecutorService();
+        // and the parallel PNG encoding threads
+        PNGJWriter.shutdownParallelPool();
     }
 
     public void beforeReload() {
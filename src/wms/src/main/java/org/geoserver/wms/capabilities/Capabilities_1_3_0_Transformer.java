@@ -38,6 +38,7 @@ import org.geoserver.catalog.AttributionInfo;
 import org.geoserver.catalog.AuthorityURLInfo;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.DataLinkInfo;
+import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.KeywordInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerIdentifierInfo;
@@ -54,6 +55,9 @@ import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.config.ContactInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.ResourceErrorHandling;
+import org.geoserver.ows.CapabilitiesFragment;
+import org.geoserver.ows.CapabilitiesFragmentCache;
+import org.geoserver.ows.CapabilitiesFragmentRecorder;
 import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
@@ -86,6 +90,7 @@ import org.springframework.util.Assert;
 import org.vfny.geoserver.util.ResponseUtils;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 /**
@@ -152,8 +157,15 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
 
     @Override
     public Translator createTranslator(ContentHandler handler) {
+        CapabilitiesFragmentCache fragmentCache =
+                GeoServerExtensions.bean(CapabilitiesFragmentCache.class);
+        if (fragmentCache != null && fragmentCache.isEnabled()) {
+            handler = new CapabilitiesFragmentRecorder(handler);
+        } else {
+            fragmentCache = null;
+        }
         return new Capabilities_1_3_0_Translator(
-                handler, wmsConfig, getMapFormats, extCapsProviders, schemaBaseURL);
+                handler, wmsConfig, getMapFormats, extCapsProviders, schemaBaseURL, fragmentCache);
     }
 
     /**
@@ -193,20 +205,35 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
 
         private LegendSample legendSample;
 
+        /** Cache of the layer and group descriptions, null if disabled */
+        private CapabilitiesFragmentCache fragmentCache;
+
+        /** Records the layer and group descriptions, not null only if the cache is enabled */
+        private CapabilitiesFragmentRecorder recorder;
+
+        /** The part of the fragment keys depending on the current request */
+        private String fragmentVariant;
+
         /**
          * Creates a new CapabilitiesTranslator object.
          *
          * @param handler content handler to send sax events to.
          * @param schemaBaseURL
-         * @param schemaLoc
+         * @param fragmentCache the layer description cache, or null if not available. If not null
+         *     the handler must be a {@link CapabilitiesFragmentRecorder}
          */
         public Capabilities_1_3_0_Translator(
                 ContentHandler handler,
                 WMS wmsConfig,
                 Collection<GetMapOutputFormat> getMapFormats,
                 Collection<ExtendedCapabilitiesProvider> extCapsProviders,
-                String schemaBaseURL) {
+                String schemaBaseURL,
+                CapabilitiesFragmentCache fragmentCache) {
             super(handler, null, null);
+            if (fragmentCache != null && handler instanceof CapabilitiesFragmentRecorder) {
+                this.fragmentCache = fragmentCache;
+                this.recorder = (CapabilitiesFragmentRecorder) handler;
+            }
             this.wmsConfig = wmsConfig;
             this.getMapFormats = getMapFormats;
             this.extCapsProviders = extCapsProviders;
@@ -258,6 +285,12 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             }
 
             this.request = (GetCapabilitiesRequest) o;
+            if (fragmentCache != null) {
+                // the service URL accounts for proxy base and virtual services mangling
+                String serviceURL = buildURL(request.getBaseUrl(), "ows", null, URLType.SERVICE);
+                this.fragmentVariant =
+                        CapabilitiesFragmentCache.getRequestVariant("WMS", "1.3.0", serviceURL);
+            }
 
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine(
@@ -931,11 +964,17 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         }
 
         private void doHandleLayer(LayerInfo layer) {
+            String key = getFragmentKey(layer);
+            if (replayFragment(key) != null) {
+                return;
+            }
+            long stamp = key != null ? fragmentCache.getStamp() : 0;
             try {
                 mark();
                 handleLayer(layer);
-                commit();
+                commitFragment(key, layer, stamp);
             } catch (Exception e) {
+                cancelFragment();
                 // report what layer we failed on to help the admin locate and fix it
 
                 if (skipping) {
@@ -953,6 +992,101 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             }
         }
 
+        /**
+         * Returns the key of the cached description of the layer or group, or null if the
+         * description cannot be cached
+         */
+        private String getFragmentKey(PublishedInfo published) {
+            if (fragmentCache == null || published == null || published.getId() == null) {
+                return null;
+            }
+            if (published instanceof LayerGroupInfo) {
+                LayerGroupInfo group = (LayerGroupInfo) published;
+                if (!isCacheable(group.getRootLayer())) {
+                    return null;
+                }
+                for (LayerInfo layer : group.layers()) {
+                    if (!isCacheable(layer)) {
+                        return null;
+                    }
+                }
+            } else if (!isCacheable((LayerInfo) published)) {
+                return null;
+            }
+            return fragmentVariant + "|" + published.getId();
+        }
+
+        /**
+         * Dimension values are computed from the data, and cascaded layers depend on remote
+         * capabilities, neither can be invalidated by catalog events
+         */
+        private boolean isCacheable(LayerInfo layer) {
+            if (layer == null) {
+                return true;
+            }
+            PublishedType type = layer.getType();
+            if (type == PublishedType.WMS || type == PublishedType.WMTS) {
+                return false;
+            }
+            if (layer.getResource() != null) {
+                for (Object value : layer.getResource().getMetadata().values()) {
+                    if (value instanceof DimensionInfo && ((DimensionInfo) value).isEnabled()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Replays the cached description, if found, and returns it */
+        private CapabilitiesFragment replayFragment(String key) {
+            CapabilitiesFragment fragment = key != null ? fragmentCache.get(key) : null;
+            if (fragment == null) {
+                return null;
+            }
+            try {
+                recorder.replay(fragment);
+            } catch (SAXException e) {
+                throw new RuntimeException(e);
+            }
+            return fragment;
+        }
+
+        /** Commits the buffered description, storing it in the cache along the way */
+        private void commitFragment(String key, PublishedInfo published, long stamp) {
+            commitFragment(key, published, Collections.emptySet(), stamp);
+        }
+
+        /**
+         * Commits the buffered description, storing it in the cache along with the layers it
+         * describes besides the published one
+         */
+        private void commitFragment(
+                String key, PublishedInfo published, Set<LayerInfo> described, long stamp) {
+            if (key == null) {
+                commit();
+                return;
+            }
+            recorder.startRecording();
+            commit();
+            CapabilitiesFragment fragment = recorder.stopRecording();
+            if (fragment != null && !described.isEmpty()) {
+                Set<String> ids = new HashSet<>();
+                for (LayerInfo layer : described) {
+                    ids.add(layer.getId());
+                }
+                fragment = fragment.withDescribedIds(ids);
+            }
+            fragmentCache.put(
+                    key, fragment, CapabilitiesFragmentCache.getDependencies(published), stamp);
+        }
+
+        private void cancelFragment() {
+            if (recorder != null) {
+                recorder.cancelRecording();
+            }
+        }
+
         private boolean isExposable(LayerInfo layer) {
             // we filtered by the isEnabled property,but check for enabled() to account for the
             // resource and store
@@ -1144,11 +1278,31 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
             List<LayerGroupInfo> topLevelGroups = filterNestedGroups(layerGroups);
 
             for (LayerGroupInfo group : topLevelGroups) {
+                String key = getFragmentKey(group);
+                CapabilitiesFragment fragment = replayFragment(key);
+                if (fragment != null) {
+                    // the layers the cached description already covers
+                    Set<String> described = fragment.getDescribedIds();
+                    for (LayerInfo layer : group.layers()) {
+                        if (layer != null && described.contains(layer.getId())) {
+                            layersAlreadyProcessed.add(layer);
+                        }
+                    }
+                    LayerInfo root = group.getRootLayer();
+                    if (root != null && described.contains(root.getId())) {
+                        layersAlreadyProcessed.add(root);
+                    }
+                    continue;
+                }
+                long stamp = key != null ? fragmentCache.getStamp() : 0;
                 try {
                     mark();
-                    handleLayerGroup(group, layersAlreadyProcessed);
-                    commit();
+                    Set<LayerInfo> groupLayers = new HashSet<>();
+                    handleLayerGroup(group, groupLayers);
+                    layersAlreadyProcessed.addAll(groupLayers);
+                    commitFragment(key, group, groupLayers, stamp);
                 } catch (Exception e) {
+                    cancelFragment();
                     // report what layer we failed on to help the admin locate and fix it
                     if (skipping) {
                         if (group != null) {
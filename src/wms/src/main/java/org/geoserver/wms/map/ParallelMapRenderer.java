@@ -0,0 +1,324 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.StyleLayer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Renders the layers of a map in parallel, each one in its own off-screen buffer, on the {@link
+ * DefaultWebMapService#getLayerRenderingPool() layer rendering pool}. The buffers are composited
+ * on the output graphics in layer order as soon as they are available, at most {@code
+ * parallelism} buffers are alive at any given time.
+ *
+ * <p>Only maps whose layers can be rendered independently are eligible, see {@link
+ * #getParallelism(WMSMapContent, RenderedImage, long, long)}.
+ */
+class ParallelMapRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelMapRenderer.class);
+
+    final RenderedImageMapOutputFormat format;
+
+    final WMSMapContent mapContent;
+
+    final Rectangle paintArea;
+
+    final Map<RenderingHints.Key, Object> hintsMap;
+
+    final Map<Object, Object> rendererParams;
+
+    final int maxErrors;
+
+    final List<StreamingRenderer> renderers = new ArrayList<>();
+
+    final AtomicInteger errors = new AtomicInteger();
+
+    volatile Exception lastException;
+
+    volatile Exception renderException;
+
+    volatile boolean aborted;
+
+    boolean timedOut;
+
+    /**
+     * Returns the number of layers that can be rendered in parallel for the given map, or 0 if
+     * the map cannot be rendered in parallel, because parallel rendering is disabled, there are
+     * not enough layers, or the layers depend on each other (labels conflict resolution,
+     * compositing operations and sorting by group work across layers)
+     *
+     * @param mapContent The map to be rendered
+     * @param preparedImage The output image, paletted outputs are not supported
+     * @param availableMemory The memory available for the layer buffers, negative if unlimited
+     * @param layerMemory The memory used to render a single layer in its buffer
+     */
+    static int getParallelism(
+            WMSMapContent mapContent,
+            RenderedImage preparedImage,
+            long availableMemory,
+            long layerMemory) {
+        int threads = DefaultWebMapService.getParallelLayerRenderingThreads();
+        List<Layer> layers = mapContent.layers();
+        if (threads < 2
+                || layers.size() < 2
+                || preparedImage.getColorModel() instanceof IndexColorModel) {
+            return 0;
+        }
+        for (Layer layer : layers) {
+            if (layer instanceof StyleLayer && !isIndependent(((StyleLayer) layer).getStyle())) {
+                return 0;
+            }
+        }
+        long parallelism = Math.min(threads, layers.size());
+        if (availableMemory >= 0 && layerMemory > 0) {
+            parallelism = Math.min(parallelism, availableMemory / layerMemory);
+        }
+        return parallelism > 1 ? (int) parallelism : 0;
+    }
+
+    /**
+     * Returns true if the style does not label, does not use compositing, and does not sort
+     * features across layers
+     */
+    private static boolean isIndependent(Style style) {
+        if (style == null) {
+            return true;
+        }
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            Map<String, String> options = fts.getOptions();
+            if (options != null
+                    && (options.containsKey(FeatureTypeStyle.COMPOSITE)
+                            || options.containsKey(FeatureTypeStyle.COMPOSITE_BASE)
+                            || options.containsKey(FeatureTypeStyle.SORT_BY_GROUP))) {
+                return false;
+            }
+            for (Rule rule : fts.rules()) {
+                for (Symbolizer symbolizer : rule.symbolizers()) {
+                    if (symbolizer instanceof TextSymbolizer) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    ParallelMapRenderer(
+            RenderedImageMapOutputFormat format,
+            WMSMapContent mapContent,
+            Rectangle paintArea,
+            Map<RenderingHints.Key, Object> hintsMap,
+            Map<Object, Object> rendererParams,
+            int maxErrors) {
+        this.format = format;
+        this.mapContent = mapContent;
+        this.paintArea = paintArea;
+        this.hintsMap = hintsMap;
+        this.rendererParams = rendererParams;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Renders the map layers on the graphics
+     *
+     * @param graphic The output graphics
+     * @param parallelism Max number of layers rendered at the same time
+     * @param maxRenderingTime Max rendering time in milliseconds, no limit if not positive
+     */
+    void render(Graphics2D graphic, int parallelism, long maxRenderingTime) {
+        ExecutorService pool = DefaultWebMapService.getLayerRenderingPool();
+        List<Layer> layers = mapContent.layers();
+        int count = layers.size();
+        for (int i = 0; i < count; i++) {
+            renderers.add(buildRenderer());
+        }
+
+        long deadline = maxRenderingTime > 0 ? System.currentTimeMillis() + maxRenderingTime : 0;
+        List<Future<BufferedImage>> futures = new ArrayList<>(count);
+        try {
+            int next = 0;
+            for (; next < parallelism && next < count; next++) {
+                futures.add(submit(pool, layers.get(next), renderers.get(next)));
+            }
+            for (int i = 0; i < count && !aborted; i++) {
+                BufferedImage image = waitFor(futures.get(i), deadline);
+                futures.set(i, null);
+                if (image == null || aborted) {
+                    break;
+                }
+                // the buffers are composited in layer order
+                graphic.drawImage(image, 0, 0, null);
+                if (next < count) {
+                    futures.add(submit(pool, layers.get(next), renderers.get(next)));
+                    next++;
+                }
+            }
+        } finally {
+            for (Future<BufferedImage> future : futures) {
+                if (future != null) {
+                    abort();
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    private StreamingRenderer buildRenderer() {
+        StreamingRenderer renderer = format.buildRenderer();
+        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+        renderer.setJava2DHints(new RenderingHints(hintsMap));
+        renderer.setRendererHints(new HashMap<>(rendererParams));
+        // errors are counted across all layers, like in a single pass rendering
+        renderer.addRenderListener(
+                new RenderListener() {
+
+                    @Override
+                    public void featureRenderer(SimpleFeature feature) {}
+
+                    @Override
+                    public void errorOccurred(Exception e) {
+                        lastException = e;
+                        if (maxErrors > 0 && errors.incrementAndGet() > maxErrors) {
+                            abort();
+                        }
+                    }
+                });
+        RenderExceptionStrategy exceptionStrategy = new RenderExceptionStrategy(renderer);
+        renderer.addRenderListener(
+                new RenderListener() {
+
+                    @Override
+                    public void featureRenderer(SimpleFeature feature) {}
+
+                    @Override
+                    public void errorOccurred(Exception e) {
+                        exceptionStrategy.errorOccurred(e);
+                        if (exceptionStrategy.exceptionOccurred()) {
+                            renderException = exceptionStrategy.getException();
+                            abort();
+                        }
+                    }
+                });
+        format.onBeforeRender(renderer);
+        return renderer;
+    }
+
+    private Future<BufferedImage> submit(
+            ExecutorService pool, Layer layer, StreamingRenderer renderer) {
+        return pool.submit(() -> renderLayer(layer, renderer));
+    }
+
+    private BufferedImage renderLayer(Layer layer, StreamingRenderer renderer) {
+        if (aborted) {
+            return null;
+        }
+        BufferedImage image = ImageUtils.createImage(paintArea.width, paintArea.height, null, true);
+        Graphics2D graphic = image.createGraphics();
+        MapContent content = new MapContent();
+        try {
+            content.addLayer(layer);
+            graphic.setRenderingHints(hintsMap);
+            renderer.setMapContent(content);
+            renderer.paint(
+                    graphic,
+                    paintArea,
+                    mapContent.getRenderingArea(),
+                    mapContent.getRenderingTransform());
+        } finally {
+            graphic.dispose();
+            // the layer is owned by the original map content, don't dispose it
+            content.removeLayer(layer);
+            content.dispose();
+        }
+        return image;
+    }
+
+    private BufferedImage waitFor(Future<BufferedImage> future, long deadline) {
+        try {
+            if (deadline > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                return future.get(remaining, TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+        } catch (TimeoutException e) {
+            timedOut = true;
+            abort();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+        } catch (CancellationException e) {
+            abort();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.FINE, "Layer rendering failed", e.getCause());
+            Throwable cause = e.getCause();
+            renderException = cause instanceof Exception ? (Exception) cause : e;
+            abort();
+        }
+        return null;
+    }
+
+    /** Stops all the renderers */
+    void abort() {
+        aborted = true;
+        for (StreamingRenderer renderer : renderers) {
+            renderer.stopRendering();
+        }
+    }
+
+    /** True if the max error threshold was exceeded */
+    boolean exceedsMaxErrors() {
+        return maxErrors > 0 && errors.get() > maxErrors;
+    }
+
+    /** Returns the last rendering error occurred (or null if none happened) */
+    Exception getLastException() {
+        return lastException;
+    }
+
+    /** Returns the non ignorable exception that stopped the rendering, if any */
+    Exception getRenderException() {
+        return renderException;
+    }
+
+    /** Returns true if the rendering has been stopped due to the timeout */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+}
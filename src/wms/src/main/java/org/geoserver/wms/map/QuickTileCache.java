@@ -5,24 +5,31 @@
  */
 package org.geoserver.wms.map;
 
+import com.google.common.cache.CacheBuilderSpec;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.geoserver.catalog.BoundedResourceCache;
+import org.geoserver.catalog.MeteredCache;
+import org.geoserver.catalog.ResourceCacheStatistics;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.util.SingleFlightLoader;
+import org.geoserver.util.SingleFlightLoader.Loader;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
 import org.geoserver.wfs.WFSException;
@@ -30,10 +37,24 @@ import org.geoserver.wms.GetMapRequest;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
-import org.geotools.util.CanonicalSet;
 import org.locationtech.jts.geom.Envelope;
 
-public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+/**
+ * Caches the tiles of the meta-tiles rendered for tiled GetMap requests, making sure that a given
+ * meta-tile is rendered by only one thread at a time, the others waiting for its result.
+ *
+ * <p>The cache is bounded by the memory used by the tiles, 64MB by default, the limit can be
+ * configured with a cache specification in the {@code org.geoserver.catalog.cache.metaTiles}
+ * property. The cache is wiped out on any transaction and configuration change.
+ */
+public class QuickTileCache
+        implements TransactionListener, GeoServerLifecycleHandler, MeteredCache {
+
+    /** Name of the cache, used to look up its specification */
+    public static final String CACHE_NAME = "metaTiles";
+
+    static final String DEFAULT_SPEC = "maximumWeight=67108864";
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -52,10 +73,11 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         ignoredParameters.add("EXCEPTIONS");
     }
 
-    /** Canonicalizer used to return the same object when two threads ask for the same meta-tile */
-    private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
+    private final BoundedResourceCache<MetaTileKey, CacheElement> tileCache = buildTileCache();
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    /** Used to avoid multiple requests to trigger parallel computation of the same meta-tile */
+    private final SingleFlightLoader<MetaTileKey, RenderedImage[]> loader =
+            new SingleFlightLoader<>();
 
     public QuickTileCache(GeoServer geoServer) {
         geoServer.addListener(
@@ -85,10 +107,17 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     /** For testing only */
     QuickTileCache() {}
 
+    private static BoundedResourceCache<MetaTileKey, CacheElement> buildTileCache() {
+        CacheBuilderSpec spec = BoundedResourceCache.lookupSpec(CACHE_NAME);
+        if (spec == null) {
+            spec = CacheBuilderSpec.parse(DEFAULT_SPEC);
+        }
+        return new BoundedResourceCache<>(CACHE_NAME, spec, (k, v) -> v.getWeight(), null);
+    }
+
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
-     * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
-     * parallel computation of the same meta-tile
+     * specific meta-tile
      *
      * @param request
      */
@@ -115,12 +144,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
-
-        // since this will be used for thread synchronization, we have to make
-        // sure two thread asking for the same meta tile will get the same key
-        // object
-        return metaTileKeys.unique(key);
+        return new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
     }
 
     private ReferencedEnvelope getMetaTileEnvelope(
@@ -346,8 +370,8 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param key
      * @param request
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.get(key);
 
         if (ce == null) {
             return null;
@@ -379,15 +403,66 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param request
      * @param tiles
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
         tileCache.put(key, new CacheElement(tiles));
     }
 
-    class CacheElement {
+    /**
+     * Returns the tiles of the meta-tile, from the cache if available, or running the builder and
+     * caching its results otherwise. Only one thread at a time builds a given meta-tile, the other
+     * threads asking for it wait for its result.
+     *
+     * @param key The meta-tile key
+     * @param builder Renders the meta-tile and splits it into tiles
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, Loader<RenderedImage[]> builder)
+            throws IOException {
+        CacheElement ce = tileCache.get(key);
+        if (ce != null) {
+            return ce.tiles;
+        }
+        return loader.load(
+                key,
+                () -> {
+                    // might have been stored while we were waiting to start the load
+                    CacheElement cached = tileCache.get(key);
+                    if (cached != null) {
+                        return cached.tiles;
+                    }
+                    RenderedImage[] tiles = builder.load();
+                    storeTiles(key, tiles);
+                    return tiles;
+                });
+    }
+
+    @Override
+    public ResourceCacheStatistics getStatistics() {
+        return tileCache.getStatistics();
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
+        int weight;
+
         public CacheElement(RenderedImage[] tiles) {
             this.tiles = tiles;
+            long size = 0;
+            for (RenderedImage tile : tiles) {
+                if (tile != null) {
+                    SampleModel sm = tile.getSampleModel();
+                    long pixelSize = 0;
+                    for (int sampleSize : sm.getSampleSize()) {
+                        pixelSize += sampleSize;
+                    }
+                    size += ((long) tile.getWidth() * tile.getHeight() * pixelSize + 7) / 8;
+                }
+            }
+            this.weight = (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        int getWeight() {
+            return weight;
         }
     }
 
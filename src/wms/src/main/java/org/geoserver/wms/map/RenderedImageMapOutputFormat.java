@@ -312,7 +312,9 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // multiple featureTypeStyles against the same layer
         StreamingRenderer testRenderer = buildRenderer();
         testRenderer.setMapContent(mapContent);
-        memory += testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        long backBufferMemory =
+                testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        memory += backBufferMemory;
         if (maxMemory > 0 && memory > maxMemory) {
             long kbUsed = memory / KB;
             long kbMax = maxMemory / KB;
@@ -526,6 +528,33 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
 
         renderer.setRendererHints(rendererParams);
 
+        // render the layers in parallel if possible, each layer buffer counts against the
+        // memory limits
+        if (labelCache == null) {
+            long layerMemory =
+                    ImageUtils.getDrawingSurfaceMemoryUse(
+                                    paintArea.width, paintArea.height, null, true)
+                            + backBufferMemory;
+            int parallelism =
+                    ParallelMapRenderer.getParallelism(
+                            mapContent,
+                            preparedImage,
+                            maxMemory > 0 ? maxMemory - memory : -1,
+                            layerMemory);
+            if (parallelism > 1) {
+                return produceMapInParallel(
+                        mapContent,
+                        paintArea,
+                        graphic,
+                        hintsMap,
+                        rendererParams,
+                        parallelism,
+                        palette,
+                        preparedImage,
+                        layout);
+            }
+        }
+
         // if abort already requested bail out
         // if (this.abortRequested) {
         // graphic.dispose();
@@ -580,33 +609,14 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             timeout.stop();
 
             // Determine what (if any) exception should be thrown
-
-            // check if too many errors occurred
-            if (errorChecker.exceedsMaxErrors()) {
-                serviceException =
-                        new ServiceException(
-                                "More than "
-                                        + maxErrors
-                                        + " rendering errors occurred, bailing out.",
-                                errorChecker.getLastException(),
-                                "internalError");
-            }
-            // check if the request did timeout
-            if (timeout.isTimedOut()) {
-                serviceException =
-                        new ServiceException(
-                                "This request used more time than allowed and has been forcefully stopped. "
-                                        + "Max rendering time is "
-                                        + (maxRenderingTime / 1000.0)
-                                        + "s");
-            }
-            // check if a non ignorable error occurred
-            if (nonIgnorableExceptionListener.exceptionOccurred()) {
-                Exception renderError = nonIgnorableExceptionListener.getException();
-                serviceException =
-                        new ServiceException(
-                                "Rendering process failed", renderError, "internalError");
-            }
+            serviceException =
+                    getRenderingException(
+                            errorChecker.exceedsMaxErrors(),
+                            errorChecker.getLastException(),
+                            maxErrors,
+                            timeout.isTimedOut(),
+                            maxRenderingTime,
+                            nonIgnorableExceptionListener.getException());
 
             // If there were no exceptions, return the map
             if (serviceException == null) {
@@ -630,6 +640,99 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         throw serviceException;
     }
 
+    /**
+     * Renders the map layers in parallel, each one in its own buffer, and composites them on the
+     * graphics, see {@link ParallelMapRenderer}
+     */
+    private RenderedImageMap produceMapInParallel(
+            WMSMapContent mapContent,
+            Rectangle paintArea,
+            Graphics2D graphic,
+            Map<RenderingHints.Key, Object> hintsMap,
+            Map<Object, Object> rendererParams,
+            int parallelism,
+            IndexColorModel palette,
+            RenderedImage preparedImage,
+            MapDecorationLayout layout) {
+        final GetMapRequest request = mapContent.getRequest();
+        int maxErrors = wms.getMaxRenderingErrors();
+        int maxRenderingTime = wms.getMaxRenderingTime(request);
+        boolean saveMap =
+                (request.getRawKvp() != null
+                        && WMSServiceExceptionHandler.isPartialMapExceptionType(
+                                request.getRawKvp().get("EXCEPTIONS")));
+        ParallelMapRenderer renderer =
+                new ParallelMapRenderer(
+                        this, mapContent, paintArea, hintsMap, rendererParams, maxErrors);
+        ServiceException serviceException;
+        try {
+            renderer.render(graphic, parallelism, maxRenderingTime);
+
+            // apply watermarking
+            if (layout != null && !renderer.isTimedOut()) {
+                try {
+                    layout.paint(graphic, paintArea, mapContent);
+                } catch (Exception e) {
+                    throw new ServiceException(
+                            "Problem occurred while trying to watermark data", e);
+                }
+            }
+
+            serviceException =
+                    getRenderingException(
+                            renderer.exceedsMaxErrors(),
+                            renderer.getLastException(),
+                            maxErrors,
+                            renderer.isTimedOut(),
+                            maxRenderingTime,
+                            renderer.getRenderException());
+            if (serviceException == null) {
+                return optimizeAndBuildMap(palette, preparedImage, mapContent);
+            } else if (saveMap) {
+                // return the layers rendered so far along with the exception
+                RenderedImageMap map = optimizeAndBuildMap(palette, preparedImage, mapContent);
+                serviceException = new WMSPartialMapException(serviceException, map);
+            }
+        } finally {
+            graphic.dispose();
+        }
+        throw serviceException;
+    }
+
+    /** Builds the exception to be thrown at the end of the rendering, if any */
+    private ServiceException getRenderingException(
+            boolean exceedsMaxErrors,
+            Exception lastException,
+            int maxErrors,
+            boolean timedOut,
+            int maxRenderingTime,
+            Exception renderError) {
+        ServiceException serviceException = null;
+        // check if too many errors occurred
+        if (exceedsMaxErrors) {
+            serviceException =
+                    new ServiceException(
+                            "More than " + maxErrors + " rendering errors occurred, bailing out.",
+                            lastException,
+                            "internalError");
+        }
+        // check if the request did timeout
+        if (timedOut) {
+            serviceException =
+                    new ServiceException(
+                            "This request used more time than allowed and has been forcefully stopped. "
+                                    + "Max rendering time is "
+                                    + (maxRenderingTime / 1000.0)
+                                    + "s");
+        }
+        // check if a non ignorable error occurred
+        if (renderError != null) {
+            serviceException =
+                    new ServiceException("Rendering process failed", renderError, "internalError");
+        }
+        return serviceException;
+    }
+
     /**
      * Creates a {@link StreamingRenderer} instance (subclasses can provide their own specialized
      * subclasses of {@link StreamingRenderer}
@@ -9,6 +9,11 @@ import ar.com.hjg.pngj.FilterType;
 import it.geosolutions.imageio.plugins.png.PNGWriter;
 import java.awt.image.RenderedImage;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.WMSMapContent;
 import org.geotools.image.ImageWorker;
@@ -20,14 +25,69 @@ import org.geotools.styling.Style;
 /**
  * Encodes the image in PNG using the PNGJ library
  *
+ * <p>Large images can be encoded compressing bands of rows in parallel, see {@link
+ * ParallelPNGEncoder}. The parallel mode is enabled by setting the {@value #PARALLEL_THREADS_KEY}
+ * property to the number of threads to be used.
+ *
  * @author Andrea Aime - GeoSolutions
  */
 public class PNGJWriter {
 
+    /** Property setting the number of threads used for parallel encoding, disabled if < 2 */
+    public static final String PARALLEL_THREADS_KEY = "PARALLEL_PNG_ENCODING_THREADS";
+
+    /** Images smaller than this (uncompressed size) are not worth a parallel encoding */
+    static final int PARALLEL_MIN_SIZE = 4 * ParallelPNGEncoder.BAND_SIZE;
+
+    static final int PARALLEL_THREADS = getParallelThreads();
+
+    static volatile ExecutorService PARALLEL_POOL;
+
+    private static int getParallelThreads() {
+        String threads = GeoServerExtensions.getProperty(PARALLEL_THREADS_KEY);
+        try {
+            return threads == null ? 0 : Integer.parseInt(threads.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static ExecutorService getParallelPool() {
+        if (PARALLEL_POOL == null) {
+            synchronized (PNGJWriter.class) {
+                if (PARALLEL_POOL == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    ThreadFactory factory =
+                            r -> {
+                                Thread t = new Thread(r, "PNGEncoder-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            };
+                    PARALLEL_POOL = Executors.newFixedThreadPool(PARALLEL_THREADS, factory);
+                }
+            }
+        }
+        return PARALLEL_POOL;
+    }
+
+    /** Stops the parallel encoding threads, if any, a new pool is created when next needed */
+    public static void shutdownParallelPool() {
+        synchronized (PNGJWriter.class) {
+            if (PARALLEL_POOL != null) {
+                PARALLEL_POOL.shutdown();
+                PARALLEL_POOL = null;
+            }
+        }
+    }
+
     public RenderedImage writePNG(
             RenderedImage image, OutputStream outStream, float quality, WMSMapContent mapContent) {
         // what kind of scaline filtering are we going to use?
         FilterType filterType = getFilterType(mapContent);
+        if (isParallelEncodingEnabled(image, filterType)) {
+            return writeParallelPNG(image, outStream, quality, filterType, getParallelPool());
+        }
+
         // Creation of a new PNGWriter object
         PNGWriter writer = new PNGWriter();
         // Check if a Scanline is supported by the writer
@@ -52,6 +112,44 @@ public class PNGJWriter {
         return output;
     }
 
+    /**
+     * Returns true if the image is large enough to benefit from parallel encoding, and it can be
+     * encoded as is by the parallel encoder
+     */
+    boolean isParallelEncodingEnabled(RenderedImage image, FilterType filterType) {
+        if (PARALLEL_THREADS < 2) {
+            return false;
+        }
+        long size =
+                (long) image.getWidth()
+                        * image.getHeight()
+                        * image.getColorModel().getPixelSize()
+                        / 8;
+        return size >= PARALLEL_MIN_SIZE
+                && ParallelPNGEncoder.isSupported(filterType)
+                && ParallelPNGEncoder.isSupported(image);
+    }
+
+    /**
+     * Encodes the image deflating bands of rows in parallel, using the same compression level and
+     * filter type as the PNGJ path
+     */
+    RenderedImage writeParallelPNG(
+            RenderedImage image,
+            OutputStream outStream,
+            float quality,
+            FilterType filterType,
+            ExecutorService executor) {
+        // same quality to compression level mapping as the PNGJ based writer
+        int level = Math.max(0, Math.min(9, Math.round(9 * (1f - quality))));
+        try {
+            new ParallelPNGEncoder(executor, level, filterType).encode(image, outStream);
+        } catch (Exception e) {
+            throw new ServiceException("Failed to encode the PNG", e);
+        }
+        return image;
+    }
+
     /**
      * SUB filtering is useful for raster images with "high" variation, otherwise we go for NONE,
      * empirically it provides better compression at lower effort
@@ -0,0 +1,383 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import ar.com.hjg.pngj.FilterType;
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A PNG encoder that splits the image in bands of rows and deflates them in parallel.
+ *
+ * <p>Each band is compressed as a raw deflate block sequence, primed with the last 32KB of the
+ * previous band as a dictionary and terminated by a sync flush, so that the concatenation of the
+ * bands is a single valid zlib stream (the same technique used by pigz). The compression ratio is
+ * very close to the single threaded one, as the only loss is the match search across band
+ * boundaries beyond the primed window.
+ *
+ * <p>Supports 8 bit gray, gray/alpha, RGB and RGBA images and 1/2/4/8 bit paletted images, see
+ * {@link #isSupported(RenderedImage)}, with the NONE and SUB filter types.
+ */
+class ParallelPNGEncoder {
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    /** Deflate window size, used to prime the compression of each band */
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    /** Target size of the uncompressed bands */
+    static final int BAND_SIZE = 256 * 1024;
+
+    static final int COLOR_GRAY = 0;
+
+    static final int COLOR_RGB = 2;
+
+    static final int COLOR_PALETTE = 3;
+
+    static final int COLOR_GRAY_ALPHA = 4;
+
+    static final int COLOR_RGBA = 6;
+
+    final ExecutorService executor;
+
+    final int compressionLevel;
+
+    final FilterType filterType;
+
+    /**
+     * Builds a new encoder
+     *
+     * @param executor The executor used to compress the bands
+     * @param compressionLevel The deflate compression level, between 0 and 9
+     * @param filterType The scanline filter, either NONE or SUB
+     */
+    ParallelPNGEncoder(ExecutorService executor, int compressionLevel, FilterType filterType) {
+        this.executor = executor;
+        this.compressionLevel = compressionLevel;
+        this.filterType = filterType;
+    }
+
+    /** Returns true if the encoder can write the image as is */
+    static boolean isSupported(RenderedImage image) {
+        ColorModel cm = image.getColorModel();
+        int dataType = image.getSampleModel().getDataType();
+        if (cm instanceof IndexColorModel) {
+            int bits = cm.getPixelSize();
+            return (bits == 1 || bits == 2 || bits == 4 || bits == 8)
+                    && image.getSampleModel().getNumBands() == 1
+                    && dataType == DataBuffer.TYPE_BYTE;
+        } else if (cm instanceof ComponentColorModel) {
+            int components = cm.getNumComponents();
+            int csType = cm.getColorSpace().getType();
+            boolean colorSpaceSupported =
+                    (csType == ColorSpace.TYPE_GRAY && components <= 2)
+                            || (cm.getColorSpace().isCS_sRGB() && components >= 3);
+            return colorSpaceSupported
+                    && dataType == DataBuffer.TYPE_BYTE
+                    && components == image.getSampleModel().getNumBands()
+                    && components <= 4
+                    && !cm.isAlphaPremultiplied();
+        }
+        return false;
+    }
+
+    /** Returns true if the filter type can be used by this encoder */
+    static boolean isSupported(FilterType filterType) {
+        return filterType == FilterType.FILTER_NONE || filterType == FilterType.FILTER_SUB;
+    }
+
+    /** Encodes the image in the output stream */
+    void encode(RenderedImage image, OutputStream out) throws IOException {
+        ColorModel cm = image.getColorModel();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int bitDepth = cm instanceof IndexColorModel ? cm.getPixelSize() : 8;
+        int channels = cm instanceof IndexColorModel ? 1 : cm.getNumComponents();
+        int rowBytes = (width * channels * bitDepth + 7) / 8;
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+        writeHeader(dos, width, height, bitDepth, getColorType(cm));
+        if (cm instanceof IndexColorModel) {
+            writePalette(dos, (IndexColorModel) cm);
+        }
+
+        // split in bands and compress them in parallel
+        int bandRows = Math.max(1, BAND_SIZE / (rowBytes + 1));
+        List<Future<Band>> futures = new ArrayList<>();
+        for (int y = 0; y < height; y += bandRows) {
+            int rows = Math.min(bandRows, height - y);
+            Band band = new Band(image, y, rows, rowBytes, channels, bitDepth);
+            futures.add(executor.submit(band::filter));
+        }
+
+        // compression needs the previous band as a dictionary. The zlib stream is split in one
+        // IDAT chunk per band, written in order as soon as each band is compressed, rather than
+        // after the whole image
+        List<Future<Band>> compressed = new ArrayList<>();
+        Adler32 adler = new Adler32();
+        int written = 0;
+        Band previous = null;
+        for (int i = 0; i < futures.size(); i++) {
+            Band band = get(futures.get(i));
+            Band dictionary = previous;
+            boolean last = i == futures.size() - 1;
+            compressed.add(executor.submit(() -> band.deflate(dictionary, last)));
+            previous = band;
+            while (written < i && compressed.get(written).isDone()) {
+                writeBand(dos, compressed, written++, adler);
+            }
+        }
+        while (written < compressed.size()) {
+            writeBand(dos, compressed, written++, adler);
+        }
+        writeChunk(dos, "IEND");
+        dos.flush();
+    }
+
+    /**
+     * Writes a compressed band as an IDAT chunk, the first one starts with the zlib header, the
+     * last one ends with the checksum
+     */
+    private void writeBand(
+            DataOutputStream dos, List<Future<Band>> compressed, int i, Adler32 adler)
+            throws IOException {
+        Band band = get(compressed.get(i));
+        adler.update(band.data, 0, band.data.length);
+        byte[] header = i == 0 ? new byte[] {0x78, (byte) getZlibFlags()} : new byte[0];
+        byte[] trailer = new byte[0];
+        if (i == compressed.size() - 1) {
+            long checksum = adler.getValue();
+            trailer =
+                    new byte[] {
+                        (byte) (checksum >>> 24),
+                        (byte) (checksum >>> 16),
+                        (byte) (checksum >>> 8),
+                        (byte) checksum
+                    };
+        }
+        writeChunk(dos, "IDAT", header, band.compressed, trailer);
+        // the uncompressed data is still needed as the dictionary of the next band
+        band.compressed = null;
+    }
+
+    private Band get(Future<Band> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding the PNG");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode the PNG", e.getCause());
+        }
+    }
+
+    private int getZlibFlags() {
+        int level;
+        if (compressionLevel < 2) {
+            level = 0;
+        } else if (compressionLevel < 6) {
+            level = 1;
+        } else if (compressionLevel == 6) {
+            level = 2;
+        } else {
+            level = 3;
+        }
+        int flags = level << 6;
+        // the header check bits make CMF * 256 + FLG a multiple of 31
+        return flags + 31 - ((0x78 * 256 + flags) % 31);
+    }
+
+    private int getColorType(ColorModel cm) {
+        if (cm instanceof IndexColorModel) {
+            return COLOR_PALETTE;
+        }
+        switch (cm.getNumComponents()) {
+            case 1:
+                return COLOR_GRAY;
+            case 2:
+                return COLOR_GRAY_ALPHA;
+            case 3:
+                return COLOR_RGB;
+            default:
+                return COLOR_RGBA;
+        }
+    }
+
+    private void writeHeader(
+            DataOutputStream dos, int width, int height, int bitDepth, int colorType)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(bitDepth);
+        header.writeByte(colorType);
+        // compression, filter and interlace methods
+        header.writeByte(0);
+        header.writeByte(0);
+        header.writeByte(0);
+        writeChunk(dos, "IHDR", bos.toByteArray());
+    }
+
+    private void writePalette(DataOutputStream dos, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        byte[] palette = new byte[size * 3];
+        byte[] alpha = new byte[size];
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette[i * 3] = (byte) icm.getRed(i);
+            palette[i * 3 + 1] = (byte) icm.getGreen(i);
+            palette[i * 3 + 2] = (byte) icm.getBlue(i);
+            alpha[i] = (byte) icm.getAlpha(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(dos, "PLTE", palette);
+        if (lastTranslucent >= 0) {
+            writeChunk(dos, "tRNS", Arrays.copyOf(alpha, lastTranslucent + 1));
+        }
+    }
+
+    /** Writes a chunk, its data being the concatenation of the given parts */
+    private void writeChunk(DataOutputStream dos, String type, byte[]... parts)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        int length = 0;
+        for (byte[] part : parts) {
+            crc.update(part);
+            length += part.length;
+        }
+        dos.writeInt(length);
+        dos.write(typeBytes);
+        for (byte[] part : parts) {
+            dos.write(part);
+        }
+        dos.writeInt((int) crc.getValue());
+    }
+
+    /** A band of rows, filtered and then compressed */
+    class Band {
+        final RenderedImage image;
+
+        final int y;
+
+        final int rows;
+
+        final int rowBytes;
+
+        final int channels;
+
+        final int bitDepth;
+
+        /** The filtered rows, each one prefixed by the filter type */
+        byte[] data;
+
+        byte[] compressed;
+
+        Band(RenderedImage image, int y, int rows, int rowBytes, int channels, int bitDepth) {
+            this.image = image;
+            this.y = y;
+            this.rows = rows;
+            this.rowBytes = rowBytes;
+            this.channels = channels;
+            this.bitDepth = bitDepth;
+        }
+
+        Band filter() {
+            int width = image.getWidth();
+            Raster raster =
+                    image.getData(new Rectangle(image.getMinX(), image.getMinY() + y, width, rows));
+            int[] samples = new int[width * channels];
+            byte[] row = new byte[rowBytes];
+            data = new byte[rows * (rowBytes + 1)];
+            boolean sub = filterType == FilterType.FILTER_SUB;
+            int bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+            for (int r = 0; r < rows; r++) {
+                raster.getPixels(raster.getMinX(), raster.getMinY() + r, width, 1, samples);
+                pack(samples, row);
+                int offset = r * (rowBytes + 1);
+                data[offset] = (byte) (sub ? 1 : 0);
+                if (sub) {
+                    for (int i = 0; i < rowBytes; i++) {
+                        int left = i >= bytesPerPixel ? row[i - bytesPerPixel] : 0;
+                        data[offset + 1 + i] = (byte) (row[i] - left);
+                    }
+                } else {
+                    System.arraycopy(row, 0, data, offset + 1, rowBytes);
+                }
+            }
+            return this;
+        }
+
+        private void pack(int[] samples, byte[] row) {
+            if (bitDepth == 8) {
+                for (int i = 0; i < samples.length; i++) {
+                    row[i] = (byte) samples[i];
+                }
+            } else {
+                Arrays.fill(row, (byte) 0);
+                int pixelsPerByte = 8 / bitDepth;
+                for (int i = 0; i < samples.length; i++) {
+                    int shift = 8 - bitDepth * (i % pixelsPerByte + 1);
+                    row[i / pixelsPerByte] |= (samples[i] & ((1 << bitDepth) - 1)) << shift;
+                }
+            }
+        }
+
+        Band deflate(Band previous, boolean last) {
+            Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                if (previous != null) {
+                    int length = Math.min(WINDOW_SIZE, previous.data.length);
+                    deflater.setDictionary(
+                            previous.data, previous.data.length - length, length);
+                }
+                deflater.setInput(data);
+                if (last) {
+                    deflater.finish();
+                }
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+                while (true) {
+                    int count = deflater.deflate(buffer, 0, buffer.length, flush);
+                    bos.write(buffer, 0, count);
+                    if (last ? deflater.finished() : count < buffer.length) {
+                        break;
+                    }
+                }
+                compressed = bos.toByteArray();
+            } finally {
+                deflater.end();
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.WMSTestSupport;
+import org.geotools.data.FeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+
+public class ParallelMapRendererTest extends WMSTestSupport {
+
+    static final QName[] LAYERS = {
+        MockData.FORESTS,
+        MockData.LAKES,
+        MockData.STREAMS,
+        MockData.ROAD_SEGMENTS,
+        MockData.PONDS,
+        MockData.BUILDINGS,
+        MockData.DIVIDED_ROUTES,
+        MockData.BRIDGES
+    };
+
+    static final BufferedImage ARGB_IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private int threads;
+
+    @Before
+    public void saveThreads() {
+        threads = DefaultWebMapService.getParallelLayerRenderingThreads();
+    }
+
+    @After
+    public void restoreThreads() {
+        DefaultWebMapService.setParallelLayerRenderingThreads(threads);
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        DefaultWebMapService.setParallelLayerRenderingThreads(0);
+        WMSMapContent map = buildMap();
+        assertEquals(0, ParallelMapRenderer.getParallelism(map, ARGB_IMAGE, -1, 1));
+        BufferedImage sequential = render(map);
+
+        DefaultWebMapService.setParallelLayerRenderingThreads(4);
+        map = buildMap();
+        assertEquals(4, ParallelMapRenderer.getParallelism(map, ARGB_IMAGE, -1, 1));
+        BufferedImage parallel = render(map);
+
+        assertNotBlank("testSameAsSequential", parallel);
+        assertSameImage(sequential, parallel);
+    }
+
+    @Test
+    public void testMemoryLimit() throws Exception {
+        DefaultWebMapService.setParallelLayerRenderingThreads(4);
+        WMSMapContent map = buildMap();
+        assertEquals(3, ParallelMapRenderer.getParallelism(map, ARGB_IMAGE, 300, 100));
+        // not even two buffers fit
+        assertEquals(0, ParallelMapRenderer.getParallelism(map, ARGB_IMAGE, 100, 100));
+        map.dispose();
+    }
+
+    @Test
+    public void testPalettedFallback() throws Exception {
+        DefaultWebMapService.setParallelLayerRenderingThreads(4);
+        WMSMapContent map = buildMap();
+        BufferedImage paletted = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_INDEXED);
+        assertEquals(0, ParallelMapRenderer.getParallelism(map, paletted, -1, 1));
+        map.dispose();
+    }
+
+    @Test
+    public void testCompositeFallback() throws Exception {
+        Style style = polygonStyle();
+        style.featureTypeStyles().get(0).getOptions().put(FeatureTypeStyle.COMPOSITE, "multiply");
+        assertFallback(style);
+
+        style = polygonStyle();
+        style.featureTypeStyles().get(0).getOptions().put(FeatureTypeStyle.COMPOSITE_BASE, "true");
+        assertFallback(style);
+    }
+
+    @Test
+    public void testSortByGroupFallback() throws Exception {
+        Style style = polygonStyle();
+        style.featureTypeStyles().get(0).getOptions().put(FeatureTypeStyle.SORT_BY, "NAME");
+        style.featureTypeStyles().get(0).getOptions().put(FeatureTypeStyle.SORT_BY_GROUP, "g");
+        assertFallback(style);
+    }
+
+    @Test
+    public void testLabelsFallback() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style =
+                sb.createStyle(
+                        sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 10), "NAME"));
+        assertFallback(style);
+    }
+
+    private Style polygonStyle() {
+        StyleBuilder sb = new StyleBuilder();
+        return sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE));
+    }
+
+    /** Checks the style prevents parallel rendering, and the map still renders the same */
+    private void assertFallback(Style style) throws Exception {
+        DefaultWebMapService.setParallelLayerRenderingThreads(0);
+        WMSMapContent map = buildMap();
+        map.addLayer(new FeatureLayer(getFeatureSource(MockData.LAKES), style));
+        BufferedImage sequential = render(map);
+
+        DefaultWebMapService.setParallelLayerRenderingThreads(4);
+        map = buildMap();
+        map.addLayer(new FeatureLayer(getFeatureSource(MockData.LAKES), style));
+        assertEquals(0, ParallelMapRenderer.getParallelism(map, ARGB_IMAGE, -1, 1));
+        assertSameImage(sequential, render(map));
+    }
+
+    private BufferedImage render(WMSMapContent map) {
+        RenderedImageMapOutputFormat producer = new RenderedImageMapOutputFormat(getWMS());
+        RenderedImageMap imageMap = producer.produceMap(map);
+        try {
+            return (BufferedImage) imageMap.getImage();
+        } finally {
+            imageMap.dispose();
+        }
+    }
+
+    private FeatureSource getFeatureSource(QName typeName) throws IOException {
+        FeatureTypeInfo info =
+                getCatalog()
+                        .getFeatureTypeByName(typeName.getNamespaceURI(), typeName.getLocalPart());
+        return info.getFeatureSource(null, null);
+    }
+
+    private WMSMapContent buildMap() throws IOException {
+        Envelope env = getFeatureSource(MockData.LAKES).getBounds();
+        env.expandBy(env.getWidth() / 6);
+
+        GetMapRequest request = new GetMapRequest();
+        request.setFormat("image/png");
+        // no antialiasing, buffers and direct painting blend partial pixels a bit differently
+        request.getFormatOptions().put("antialias", "none");
+        WMSMapContent map = new WMSMapContent();
+        int w = 400;
+        int h = (int) Math.round((env.getHeight() * w) / env.getWidth());
+        map.setMapWidth(w);
+        map.setMapHeight(h);
+        map.setBgColor(BG_COLOR);
+        map.setTransparent(false);
+        map.setRequest(request);
+        for (QName layer : LAYERS) {
+            Style style =
+                    getCatalog()
+                            .getLayerByName(getLayerId(layer))
+                            .getDefaultStyle()
+                            .getStyle();
+            map.addLayer(new FeatureLayer(getFeatureSource(layer), style));
+        }
+        map.getViewport().setBounds(new ReferencedEnvelope(env, DefaultGeographicCRS.WGS84));
+        return map;
+    }
+
+    /** Compares the images allowing for rounding differences in translucent pixels */
+    private void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y);
+                int a = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((e >> shift) & 0xFF) - ((a >> shift) & 0xFF)) > 1) {
+                        fail(
+                                String.format(
+                                        "Pixel %d,%d differs, expected %08X but was %08X",
+                                        x, y, e, a));
+                    }
+                }
+            }
+        }
+    }
+}
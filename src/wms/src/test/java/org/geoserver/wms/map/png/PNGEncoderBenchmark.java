@@ -0,0 +1,90 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import ar.com.hjg.pngj.FilterType;
+import it.geosolutions.imageio.plugins.png.PNGWriter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the PNGJ based encoder with the {@link ParallelPNGEncoder}. Not a unit test, run it
+ * with the {@link #main(String[])} method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PNGEncoderBenchmark {
+
+    @Param({"768", "2048"})
+    int size;
+
+    @Param({"FILTER_NONE", "FILTER_SUB"})
+    FilterType filterType;
+
+    @Param({"2", "4", "8"})
+    int threads;
+
+    /** Same as the default PNG compression in the WMS settings */
+    float quality = 0.75f;
+
+    BufferedImage image;
+
+    ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        image = ParallelPNGEncoderTest.buildImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int pngj() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGWriter().writePNG(image, bos, quality, filterType);
+        return bos.size();
+    }
+
+    @Benchmark
+    public int parallel() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGJWriter().writeParallelPNG(image, bos, quality, filterType, executor);
+        return bos.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(PNGEncoderBenchmark.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,138 @@
+/* (c) 2019 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ar.com.hjg.pngj.FilterType;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelPNGEncoderTest {
+
+    static ExecutorService executor;
+
+    @BeforeClass
+    public static void setupExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    static BufferedImage buildImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        Random random = new Random(0);
+        for (int i = 0; i < 300; i++) {
+            graphics.setColor(
+                    new Color(
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256),
+                            random.nextInt(256)));
+            graphics.fillOval(
+                    random.nextInt(width),
+                    random.nextInt(height),
+                    random.nextInt(200),
+                    random.nextInt(200));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private void assertRoundTrip(int type, FilterType filterType) throws Exception {
+        // large enough to be split in several bands
+        BufferedImage image = buildImage(1024, 768, type);
+        assertTrue(ParallelPNGEncoder.isSupported(image));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(executor, 6, filterType).encode(image, bos);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testRGBA() throws Exception {
+        assertRoundTrip(BufferedImage.TYPE_4BYTE_ABGR, FilterType.FILTER_NONE);
+        assertRoundTrip(BufferedImage.TYPE_4BYTE_ABGR, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        assertRoundTrip(BufferedImage.TYPE_3BYTE_BGR, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testGray() throws Exception {
+        assertRoundTrip(BufferedImage.TYPE_BYTE_GRAY, FilterType.FILTER_NONE);
+    }
+
+    @Test
+    public void testPaletted() throws Exception {
+        assertRoundTrip(BufferedImage.TYPE_BYTE_INDEXED, FilterType.FILTER_NONE);
+        assertRoundTrip(BufferedImage.TYPE_BYTE_BINARY, FilterType.FILTER_SUB);
+    }
+
+    @Test
+    public void testChunkPerBand() throws Exception {
+        BufferedImage image = buildImage(1024, 768, BufferedImage.TYPE_4BYTE_ABGR);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(executor, 6, FilterType.FILTER_NONE).encode(image, bos);
+
+        // walk the chunks after the signature
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        dis.skipBytes(ParallelPNGEncoder.SIGNATURE.length);
+        List<String> types = new ArrayList<>();
+        while (dis.available() > 0) {
+            int length = dis.readInt();
+            byte[] type = new byte[4];
+            dis.readFully(type);
+            types.add(new String(type, StandardCharsets.US_ASCII));
+            dis.skipBytes(length + 4);
+        }
+        int bandRows = ParallelPNGEncoder.BAND_SIZE / (1024 * 4 + 1);
+        int bands = (768 + bandRows - 1) / bandRows;
+        assertEquals(bands, Collections.frequency(types, "IDAT"));
+        assertEquals("IEND", types.get(types.size() - 1));
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertFalse(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+        assertFalse(
+                ParallelPNGEncoder.isSupported(
+                        new BufferedImage(10, 10, BufferedImage.TYPE_USHORT_GRAY)));
+        assertFalse(ParallelPNGEncoder.isSupported(FilterType.FILTER_PAETH));
+    }
+}